@@ -25,10 +25,14 @@ CREATE TABLE IF NOT EXISTS clusters (
     expire_time TIMESTAMP NULL,
     status VARCHAR(32),
     latest_job_num BIGINT,
+    num_nodes INTEGER,
+    template_name VARCHAR(255),
+    summary BLOB,
     cluster MEDIUMBLOB,
     PRIMARY KEY (id),
     INDEX cluster_account_index (tenant_id, owner_id, id),
-    INDEX ctime_index (create_time)
+    INDEX ctime_index (create_time, id),
+    INDEX template_index (template_name)
 ) ENGINE = InnoDB;
 
 CREATE TABLE IF NOT EXISTS jobs ( 
@@ -36,6 +40,9 @@ CREATE TABLE IF NOT EXISTS jobs (
     cluster_id BIGINT,
     status VARCHAR(32),
     create_time TIMESTAMP DEFAULT '0000-00-00 00:00:00',
+    action VARCHAR(64),
+    num_tasks INTEGER,
+    num_completed_tasks INTEGER,
     job MEDIUMBLOB,
     PRIMARY KEY (cluster_id, job_num),
     FOREIGN KEY (cluster_id) REFERENCES clusters(id),
@@ -60,6 +67,44 @@ CREATE TABLE IF NOT EXISTS tasks (
     INDEX submit_time_index (submit_time)
 ) ENGINE = InnoDB;
 
+CREATE TABLE IF NOT EXISTS node_usage (
+    tenant_id VARCHAR(64) NOT NULL,
+    user_id VARCHAR(255) NOT NULL,
+    cluster_template_name VARCHAR(255) NOT NULL,
+    bucket_length BIGINT NOT NULL,
+    bucket_start BIGINT NOT NULL,
+    creates INTEGER,
+    create_offsets BIGINT,
+    deletes INTEGER,
+    delete_offsets BIGINT,
+    first_create_time BIGINT,
+    last_create_time BIGINT,
+    last_delete_time BIGINT,
+    PRIMARY KEY (tenant_id, user_id, cluster_template_name, bucket_length, bucket_start),
+    INDEX bucket_index (bucket_length, bucket_start)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS node_usage_live (
+    cluster_id BIGINT NOT NULL,
+    node_id VARCHAR(64) NOT NULL,
+    create_time BIGINT,
+    delete_time BIGINT,
+    PRIMARY KEY (cluster_id, node_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS node_usage_backfill (
+    id INTEGER NOT NULL,
+    status_time BIGINT,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS tenant_cluster_usage (
+    tenant_id VARCHAR(64) NOT NULL,
+    clusters INTEGER,
+    nodes INTEGER,
+    PRIMARY KEY (tenant_id)
+) ENGINE = InnoDB;
+
 CREATE TABLE IF NOT EXISTS nodes (
     id VARCHAR(64),
     cluster_id BIGINT,
@@ -68,6 +113,20 @@ CREATE TABLE IF NOT EXISTS nodes (
     INDEX cluster_node_index (cluster_id, id)
 ) ENGINE = InnoDB;
 
+CREATE TABLE IF NOT EXISTS node_actions (
+    node_id VARCHAR(64) NOT NULL,
+    task_id VARCHAR(255) NOT NULL,
+    submit_time BIGINT NOT NULL,
+    action MEDIUMBLOB,
+    PRIMARY KEY (node_id, task_id, submit_time)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS node_services (
+    digest VARCHAR(64) NOT NULL,
+    service MEDIUMBLOB,
+    PRIMARY KEY (digest)
+) ENGINE = InnoDB;
+
 CREATE TABLE IF NOT EXISTS providerTypes (
     name VARCHAR(255),
     version BIGINT,
@@ -57,3 +57,74 @@ BEGIN
   ALTER TABLE clusterTemplates ADD version BIGINT AFTER name;
   UPDATE clusterTemplates SET version = 1;
 END
+
+IF NOT EXISTS(SELECT * FROM sys.columns WHERE Name = N'num_nodes' AND OBJECT_ID = OBJECT_ID(N'clusters'))
+BEGIN
+  ALTER TABLE clusters ADD num_nodes INTEGER AFTER latest_job_num;
+END
+
+IF NOT EXISTS(SELECT * FROM sys.columns WHERE Name = N'summary' AND OBJECT_ID = OBJECT_ID(N'clusters'))
+BEGIN
+  ALTER TABLE clusters ADD template_name VARCHAR(255) AFTER num_nodes;
+  ALTER TABLE clusters ADD summary BLOB AFTER template_name;
+  ALTER TABLE clusters ADD INDEX template_index (template_name);
+END
+
+IF NOT EXISTS(SELECT * FROM sys.columns WHERE Name = N'action' AND OBJECT_ID = OBJECT_ID(N'jobs'))
+BEGIN
+  ALTER TABLE jobs ADD action VARCHAR(64) AFTER create_time;
+  ALTER TABLE jobs ADD num_tasks INTEGER AFTER action;
+  ALTER TABLE jobs ADD num_completed_tasks INTEGER AFTER num_tasks;
+END
+
+CREATE TABLE IF NOT EXISTS node_usage (
+    tenant_id VARCHAR(64) NOT NULL,
+    user_id VARCHAR(255) NOT NULL,
+    cluster_template_name VARCHAR(255) NOT NULL,
+    bucket_length BIGINT NOT NULL,
+    bucket_start BIGINT NOT NULL,
+    creates INTEGER,
+    create_offsets BIGINT,
+    deletes INTEGER,
+    delete_offsets BIGINT,
+    first_create_time BIGINT,
+    last_create_time BIGINT,
+    last_delete_time BIGINT,
+    PRIMARY KEY (tenant_id, user_id, cluster_template_name, bucket_length, bucket_start),
+    INDEX bucket_index (bucket_length, bucket_start)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS node_usage_live (
+    cluster_id BIGINT NOT NULL,
+    node_id VARCHAR(64) NOT NULL,
+    create_time BIGINT,
+    delete_time BIGINT,
+    PRIMARY KEY (cluster_id, node_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS node_usage_backfill (
+    id INTEGER NOT NULL,
+    status_time BIGINT,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS tenant_cluster_usage (
+    tenant_id VARCHAR(64) NOT NULL,
+    clusters INTEGER,
+    nodes INTEGER,
+    PRIMARY KEY (tenant_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS node_actions (
+    node_id VARCHAR(64) NOT NULL,
+    task_id VARCHAR(255) NOT NULL,
+    submit_time BIGINT NOT NULL,
+    action MEDIUMBLOB,
+    PRIMARY KEY (node_id, task_id, submit_time)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS node_services (
+    digest VARCHAR(64) NOT NULL,
+    service MEDIUMBLOB,
+    PRIMARY KEY (digest)
+) ENGINE = InnoDB;
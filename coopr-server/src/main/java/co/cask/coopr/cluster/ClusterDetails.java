@@ -16,6 +16,7 @@
 
 package co.cask.coopr.cluster;
 
+import co.cask.coopr.macro.ClusterTopology;
 import co.cask.coopr.macro.Expander;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.spec.Link;
@@ -43,10 +44,11 @@ public class ClusterDetails {
     this.progress = new ClusterJobProgress(job);
     this.message = job.getStatusMessage();
     // get links from the cluster template, expanding any macros in them and populating the field
+    ClusterTopology topology = new ClusterTopology(this.nodes);
     ImmutableList.Builder linksBuilder = ImmutableList.builder();
     for (Link link : cluster.getClusterTemplate().getLinks()) {
       try {
-        linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), cluster, nodes, null)));
+        linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), cluster, topology, null)));
       } catch (Exception e) {
         // if we couldn't expand the macro, just use the original string
         linksBuilder.add(link);
@@ -54,7 +56,7 @@ public class ClusterDetails {
     }
     this.links = linksBuilder.build();
     for (Node node : this.nodes) {
-      node.populateLinks(cluster, nodes);
+      node.populateLinks(cluster, topology);
     }
   }
 
@@ -28,6 +28,13 @@ public class ClusterJobProgress {
     this.stepscompleted = completedTasks;
   }
 
+  public ClusterJobProgress(ClusterAction action, ClusterJob.Status actionstatus, int stepstotal, int stepscompleted) {
+    this.action = action;
+    this.actionstatus = actionstatus;
+    this.stepstotal = stepstotal;
+    this.stepscompleted = stepscompleted;
+  }
+
   public ClusterAction getAction() {
     return action;
   }
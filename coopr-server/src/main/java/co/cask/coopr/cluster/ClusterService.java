@@ -56,14 +56,21 @@ import co.cask.coopr.spec.template.TemplateNotFoundException;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.cluster.ClusterStoreView;
+import co.cask.coopr.store.cluster.ClusterSummaryFilter;
+import co.cask.coopr.store.cluster.ClusterSummaryPage;
 import co.cask.coopr.store.credential.CredentialStore;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.entity.EntityStoreView;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
@@ -79,6 +86,7 @@ import java.util.Set;
  */
 public class ClusterService {
   private static final Logger LOG = LoggerFactory.getLogger(ClusterService.class);
+  private static final int MAX_RESOLVED_TEMPLATES = 1000;
 
   private final ClusterStoreService clusterStoreService;
   private final ClusterStore clusterStore;
@@ -94,6 +102,8 @@ public class ClusterService {
   private final QueueGroup solverQueues;
   private final QueueGroup jobQueues;
   private final TemplateMerger templateMerger;
+  // resolved templates by tenant and template name
+  private final Cache<List<String>, ResolvedTemplate> resolvedTemplates;
 
   @Inject
   public ClusterService(ClusterStoreService clusterStoreService,
@@ -120,22 +130,20 @@ public class ClusterService {
     this.solverQueues = queueService.getQueueGroup(QueueType.SOLVER);
     this.jobQueues = queueService.getQueueGroup(QueueType.JOB);
     this.templateMerger = templateMerger;
+    this.resolvedTemplates = CacheBuilder.newBuilder().maximumSize(MAX_RESOLVED_TEMPLATES).build();
   }
 
   /**
-   * Get a list of summaries of all clusters visible to the given account that are in one of the given states.
+   * Get a page of summaries of the clusters visible to the given account that match the given filter. Summaries are
+   * ordered from the most recently created cluster to the least recently created one.
    *
    * @param account Account to get cluster summaries for.
-   * @param states Returned clusters must be in one of these states.
-   * @return List of summaries of all clusters visible to the given account.
+   * @param filter Filter and page of the summaries to get.
+   * @return Page of summaries of the clusters visible to the given account that match the filter.
    * @throws IOException if there was an exception reading the cluster data from the store.
    */
-  public List<ClusterSummary> getClusterSummaries(Account account, Set<Cluster.Status> states) throws IOException {
-    if (states == null || states.isEmpty()) {
-      return clusterStoreService.getView(account).getAllClusterSummaries();
-    } else {
-      return clusterStoreService.getView(account).getAllClusterSummaries(states);
-    }
+  public ClusterSummaryPage getClusterSummaries(Account account, ClusterSummaryFilter filter) throws IOException {
+    return clusterStoreService.getView(account).getClusterSummaries(filter);
   }
 
   /**
@@ -659,7 +667,14 @@ public class ClusterService {
       throw new MissingEntityException("provider " + providerName + " does not exist.");
     }
 
-    return provider;
+    // the provider may be cached and shared by all requests, and provider fields from the request are added to the
+    // provider of the cluster, so the cluster gets its own copy
+    return Provider.builder()
+      .setProviderType(provider.getProviderType())
+      .setProvisionerFields(provider.getProvisionerFields())
+      .setBaseFields(provider.getName(), provider.getLabel(), provider.getDescription(),
+                     provider.getIcon(), provider.getVersion())
+      .build();
   }
 
   // try to add provider fields to the cluster's provider object, returning missing fields if there are any.
@@ -755,7 +770,7 @@ public class ClusterService {
   public ClusterTemplate resolveTemplate(Account account, ClusterTemplate clusterTemplate)
     throws TemplateNotFoundException, TemplateImmutabilityException, IOException {
     EntityStoreView entityStore = entityStoreService.getView(account);
-    return resolveTemplate(entityStore, clusterTemplate);
+    return resolveTemplate(account, entityStore, clusterTemplate);
   }
 
   /**
@@ -773,15 +788,47 @@ public class ClusterService {
     EntityStoreView entityStore = entityStoreService.getView(account);
     ClusterTemplate clusterTemplate = entityStore.getClusterTemplate(templateName);
     if  (clusterTemplate == null) {
+      // the template may have been deleted through another server
+      invalidateResolvedTemplate(account, templateName);
       throw new TemplateNotFoundException("Cluster template " + templateName + " does not exist");
     }
-    return resolveTemplate(entityStore, clusterTemplate);
+    return resolveTemplate(account, entityStore, clusterTemplate);
   }
 
-  private ClusterTemplate resolveTemplate(EntityStoreView entityStore, ClusterTemplate clusterTemplate)
+  /**
+   * Drop the resolved template of the given cluster template, if any. Should be called when the cluster template is
+   * deleted.
+   *
+   * @param account Account of the user that deleted the cluster template.
+   * @param templateName Name of the deleted cluster template.
+   */
+  public void invalidateResolvedTemplate(Account account, String templateName) {
+    resolvedTemplates.invalidate(ImmutableList.of(account.getTenantId(), templateName));
+  }
+
+  // templates are only merged again if the template, or the version of any of its parents or partials, changed.
+  // Resolved templates are kept serialized, so that every caller gets its own copy to change.
+  private ClusterTemplate resolveTemplate(Account account, EntityStoreView entityStore,
+                                          ClusterTemplate clusterTemplate)
     throws IOException, TemplateImmutabilityException, TemplateNotFoundException {
     Set<AbstractTemplate> mergeSet = getMergeCollection(entityStore, clusterTemplate);
-    return templateMerger.merge(mergeSet, clusterTemplate);
+    List<List<Object>> dependencyVersions = Lists.newArrayListWithCapacity(mergeSet.size());
+    for (AbstractTemplate template : mergeSet) {
+      if (template != clusterTemplate) {
+        dependencyVersions.add(ImmutableList.<Object>of(template.getClass(), template.getName(),
+                                                        template.getVersion()));
+      }
+    }
+
+    List<String> key = ImmutableList.of(account.getTenantId(), clusterTemplate.getName());
+    ResolvedTemplate resolvedTemplate = resolvedTemplates.getIfPresent(key);
+    if (resolvedTemplate != null && resolvedTemplate.isResolvedFrom(clusterTemplate, dependencyVersions)) {
+      return gson.fromJson(resolvedTemplate.resolved, ClusterTemplate.class);
+    }
+    ClusterTemplate resolved = templateMerger.merge(mergeSet, clusterTemplate);
+    resolvedTemplates.put(key, new ResolvedTemplate(clusterTemplate, dependencyVersions,
+                                                    gson.toJsonTree(resolved, ClusterTemplate.class)));
+    return resolved;
   }
 
   /*
@@ -822,4 +869,27 @@ public class ClusterService {
     }
     return partials;
   }
+
+  /**
+   * A resolved cluster template, along with the template and the versions of the parents and partials it was
+   * resolved from.
+   */
+  private static final class ResolvedTemplate {
+    private final ClusterTemplate template;
+    private final List<List<Object>> dependencyVersions;
+    private final JsonElement resolved;
+
+    private ResolvedTemplate(ClusterTemplate template, List<List<Object>> dependencyVersions,
+                             JsonElement resolved) {
+      this.template = template;
+      this.dependencyVersions = dependencyVersions;
+      this.resolved = resolved;
+    }
+
+    private boolean isResolvedFrom(ClusterTemplate template, List<List<Object>> dependencyVersions) {
+      // templates that are not persisted have no version of their own, so the template itself is compared
+      return this.dependencyVersions.equals(dependencyVersions) &&
+        (this.template == template || this.template.equals(template));
+    }
+  }
 }
@@ -46,6 +46,23 @@ public class ClusterSummary {
     this.progress = new ClusterJobProgress(clusterJob);
   }
 
+  public ClusterSummary(String id, String name, String description, String ownerId, long createTime,
+                        long expireTime, int numNodes, Cluster.Status status, BaseEntity provider,
+                        BaseEntity clusterTemplate, Set<String> services, ClusterJobProgress progress) {
+    this.id = id;
+    this.name = name;
+    this.description = description;
+    this.ownerId = ownerId;
+    this.createTime = createTime;
+    this.expireTime = expireTime;
+    this.numNodes = numNodes;
+    this.status = status;
+    this.provider = provider;
+    this.clusterTemplate = clusterTemplate;
+    this.services = services == null ? ImmutableSet.<String>of() : ImmutableSet.copyOf(services);
+    this.progress = progress;
+  }
+
   public String getId() {
     return id;
   }
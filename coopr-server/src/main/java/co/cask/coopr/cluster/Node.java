@@ -15,6 +15,7 @@
  */
 package co.cask.coopr.cluster;
 
+import co.cask.coopr.macro.ClusterTopology;
 import co.cask.coopr.macro.Expander;
 import co.cask.coopr.spec.Link;
 import co.cask.coopr.spec.service.Service;
@@ -38,7 +39,7 @@ public class Node implements Comparable<Node> {
   private final String clusterId;
   private final Set<Service> services;
   private final NodeProperties properties;
-  private final List<Action> actions;
+  private List<Action> actions;
   private final JsonObject provisionerResults;
   private List<Link> links;
 
@@ -132,6 +133,37 @@ public class Node implements Comparable<Node> {
     return actions.remove(0);
   }
 
+  /**
+   * Replace the list of actions that have been performed on the node, for example with the actions kept apart from
+   * the node in a persistent store.
+   *
+   * @param actions Actions performed on the node, from the oldest to the most recent one.
+   */
+  public void setActions(List<Action> actions) {
+    this.actions = Lists.newArrayList(actions);
+  }
+
+  /**
+   * Replace the list of actions that have been performed on the node with the given list, which is used as is instead
+   * of being copied. Used by persistent stores to give a list that only reads the actions kept apart from the node
+   * once they are needed, which includes when the node is serialized.
+   *
+   * @param actions Mutable list of actions performed on the node, from the oldest to the most recent one.
+   */
+  public void setActionList(List<Action> actions) {
+    this.actions = actions;
+  }
+
+  /**
+   * Get the list of actions that have been performed on the node as it was set, without copying it, so that a list
+   * given to {@link #setActionList(List)} is not read just by getting it.
+   *
+   * @return List of actions performed on the node.
+   */
+  public List<Action> getActionList() {
+    return actions;
+  }
+
   /**
    * Get the list of actions that have been performed on the node.
    *
@@ -176,13 +208,21 @@ public class Node implements Comparable<Node> {
    * purposes.
    */
   public void populateLinks(Cluster cluster, Set<Node> nodes) {
+    populateLinks(cluster, new ClusterTopology(nodes));
+  }
+
+  /**
+   * Same as {@link #populateLinks(Cluster, java.util.Set)}, with an index of the cluster nodes that can be shared by
+   * all nodes of the cluster.
+   */
+  public void populateLinks(Cluster cluster, ClusterTopology topology) {
     // take links from the services on this node, expand any self macros that may be there, and combine them all
     ImmutableList.Builder<Link> linksBuilder = ImmutableList.builder();
     for (Service service : services) {
       for (Link link : service.getLinks()) {
         try {
           // The service link may have macros like %host.self% that should get expanded.
-          linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), cluster, nodes, this)));
+          linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), cluster, topology, this)));
         } catch (Exception e) {
           // if we couldn't expand the macro, just use the original string
           linksBuilder.add(link);
@@ -240,6 +280,8 @@ public class Node implements Comparable<Node> {
     private Status status;
     private String stderr;
     private String stdout;
+    // not serialized, as it is only known to the store the action was read from
+    private transient boolean logged;
 
     public Action(String taskId, String service, String action) {
       this.taskId = taskId;
@@ -357,6 +399,25 @@ public class Node implements Comparable<Node> {
       this.stdout = stdout;
     }
 
+    /**
+     * Get whether the action was read from the log of actions a persistent store keeps apart from the node, in which
+     * case the store only writes it again when it is changed.
+     *
+     * @return Whether the action was read from the log of actions of the node.
+     */
+    public boolean isLogged() {
+      return logged;
+    }
+
+    /**
+     * Set whether the action was read from the log of actions a persistent store keeps apart from the node.
+     *
+     * @param logged Whether the action was read from the log of actions of the node.
+     */
+    public void setLogged(boolean logged) {
+      this.logged = logged;
+    }
+
     @Override
     public String toString() {
       return Objects.toStringHelper(this)
@@ -37,7 +37,8 @@ public class TakeTaskRequestCodec implements JsonDeserializer<TakeTaskRequest> {
     String workerId = context.deserialize(jsonObj.get("workerId"), String.class);
     String provisionerId = context.deserialize(jsonObj.get("provisionerId"), String.class);
     String tenantId = context.deserialize(jsonObj.get("tenantId"), String.class);
+    Long maxWaitMs = context.deserialize(jsonObj.get("maxWaitMs"), Long.class);
 
-    return new TakeTaskRequest(workerId, provisionerId, tenantId);
+    return new TakeTaskRequest(workerId, provisionerId, tenantId, maxWaitMs);
   }
 }
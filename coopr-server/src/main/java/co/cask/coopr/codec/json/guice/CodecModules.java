@@ -54,6 +54,7 @@ import co.cask.coopr.codec.json.current.ServiceDependenciesCodec;
 import co.cask.coopr.codec.json.current.ServiceStageDependenciesCodec;
 import co.cask.coopr.codec.json.current.SizeConstraintCodec;
 import co.cask.coopr.codec.json.current.TakeTaskRequestCodec;
+import co.cask.coopr.codec.json.current.TakeTasksRequestCodec;
 import co.cask.coopr.codec.json.current.TaskConfigCodec;
 import co.cask.coopr.codec.json.current.TenantCodec;
 import co.cask.coopr.codec.json.current.TenantSpecificationCodec;
@@ -65,6 +66,7 @@ import co.cask.coopr.http.request.ClusterOperationRequest;
 import co.cask.coopr.http.request.FinishTaskRequest;
 import co.cask.coopr.http.request.NodePropertiesRequest;
 import co.cask.coopr.http.request.TakeTaskRequest;
+import co.cask.coopr.http.request.TakeTasksRequest;
 import co.cask.coopr.http.request.TenantWriteRequest;
 import co.cask.coopr.provisioner.Provisioner;
 import co.cask.coopr.provisioner.plugin.ResourceCollection;
@@ -153,6 +155,7 @@ public class CodecModules {
       .registerTypeAdapter(ServiceStageDependencies.class, new ServiceStageDependenciesCodec())
       .registerTypeAdapter(SizeConstraint.class, new SizeConstraintCodec())
       .registerTypeAdapter(TakeTaskRequest.class, new TakeTaskRequestCodec())
+      .registerTypeAdapter(TakeTasksRequest.class, new TakeTasksRequestCodec())
       .registerTypeAdapter(TaskConfig.class, new TaskConfigCodec())
       .registerTypeAdapter(Tenant.class, new TenantCodec())
       .registerTypeAdapter(TenantSpecification.class, new TenantSpecificationCodec())
@@ -53,23 +53,31 @@ public class Constants {
   public static final String DB_PASSWORD = "server.db.password";
   public static final String DB_VALIDATION_QUERY = "server.jdbc.validation.query";
   public static final String DB_MAX_ACTIVE_CONNECTIONS = "server.jdbc.max.active.connections";
+  public static final String DB_BLOB_FORMAT = "server.db.blob.format";
   public static final String LOCAL_DATA_DIR = "server.local.data.dir";
   public static final String EMBEDDED_DERBY_DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
 
   public static final String SCHEDULER_INTERVAL_SECS = "server.scheduler.run.interval.seconds";
   public static final String SOLVER_NUM_THREADS = "server.solver.num.threads";
+  public static final String JOB_SCHEDULER_NUM_THREADS = "server.job.scheduler.num.threads";
+  public static final String JOB_EXECUTION_MODE = "server.job.execution.mode";
   public static final String TASK_TIMEOUT_SECS = "server.task.timeout.seconds";
+  public static final String TASK_TAKE_MAX_WAIT_SECS = "server.task.take.max.wait.seconds";
   public static final String CLUSTER_CLEANUP_SECS = "server.cluster.cleanup.seconds";
+  public static final String TENANT_USAGE_RECONCILE_SECS = "server.tenant.usage.reconcile.seconds";
+  public static final String ENTITY_CACHE_ENABLED = "server.entity.cache.enabled";
   public static final String NETTY_EXEC_NUM_THREADS = "server.netty.exec.num.threads";
   public static final String NETTY_WORKER_NUM_THREADS = "server.netty.worker.num.threads";
 
   public static final String MAX_PER_NODE_LOG_LENGTH = "server.node.max.log.length";
   public static final String MAX_PER_NODE_NUM_ACTIONS = "server.node.max.num.actions";
+  public static final String NODE_SERVICE_REFS_ENABLED = "server.node.service.refs.enabled";
   public static final String MAX_ACTION_RETRIES = "server.max.action.retries";
   public static final String MAX_CLUSTER_SIZE = "server.max.cluster.size";
 
   public static final String ID_START_NUM = "server.ids.start.num";
   public static final String ID_INCREMENT_BY = "server.ids.increment.by";
+  public static final String ID_TASK_LEASE_SIZE = "server.ids.task.lease.size";
 
   public static final String CALLBACK_CLASS = "server.callback.class";
   public static final String PLUGIN_STORE_CLASS = "server.plugin.store.class";
@@ -80,6 +88,7 @@ public class Constants {
   public static final String PROVISIONER_REQUEST_MAX_RETRIES = "server.provisioner.request.max.retries";
   public static final String PROVISIONER_REQUEST_MS_BETWEEN_RETRIES = "server.provisioner.request.ms.between.retries";
   public static final String PROVISIONER_REQUEST_SOCKET_TIMEOUT_MS = "server.provisioner.request.socket.timeout.ms";
+  public static final String PROVISIONER_REQUEST_THREADS = "server.provisioner.request.threads";
 
   /**
    * Config settings for the crendential store.
@@ -114,6 +123,7 @@ public class Constants {
    */
   public static final class Metrics {
     public static final String QUEUE_CACHE_SECONDS = "server.metrics.queue.cache.seconds";
+    public static final String USAGE_ROLLUP_ENABLED = "server.metrics.usage.rollup.enabled";
   }
 
   /**
@@ -149,6 +159,14 @@ public class Constants {
     public static final String DATA_DIR = "server.plugin.store.localfilestore.data.dir";
   }
 
+  /**
+   * Constants for the content addressed store implementation for plugin resources.
+   */
+  public static final class ContentAddressedPluginStore {
+    public static final String DATA_DIR = "server.plugin.store.contentaddressedstore.data.dir";
+    public static final String GC_INTERVAL_SECS = "server.plugin.store.contentaddressedstore.gc.interval.secs";
+  }
+
   /**
    * Queue related constants.
    */
@@ -178,6 +196,7 @@ public class Constants {
   public static final String USER_HEADER = "Coopr-UserID";
   public static final String API_KEY_HEADER = "Coopr-ApiKey";
   public static final String TENANT_HEADER = "Coopr-TenantID";
+  public static final String NEXT_CURSOR_HEADER = "Coopr-Next-Cursor";
   public static final String SUPERADMIN_TENANT = "superadmin";
   public static final String ADMIN_USER = "admin";
 
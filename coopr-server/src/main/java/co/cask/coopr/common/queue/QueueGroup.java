@@ -18,8 +18,11 @@ package co.cask.coopr.common.queue;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Service;
+import org.apache.twill.common.Cancellable;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -60,6 +63,17 @@ public interface QueueGroup extends Service {
    */
   Element take(String queueName, String consumerId);
 
+  /**
+   * Take an element from a specific queue in the group for each of the given consumers, in a single operation on the
+   * queue.
+   *
+   * @param queueName Name of the queue to take elements from.
+   * @param consumerIds Ids of the consumers taking the elements.
+   * @return Elements from the queue, where the i'th element was taken by the i'th consumer. Has fewer elements than
+   *         there are consumers if the queue runs out of elements to take.
+   */
+  List<Element> take(String queueName, List<String> consumerIds);
+
   /**
    * Records progress of consuming the given element from the given queue.
    *
@@ -74,6 +88,16 @@ public interface QueueGroup extends Service {
   TrackingQueue.PossessionState recordProgress(String consumerId, String queueName, String elementId,
                                                TrackingQueue.ConsumingStatus status, String result);
 
+  /**
+   * Finish consuming several elements from the given queue in a single operation on the queue.
+   *
+   * @param queueName Name of the queue the elements came from.
+   * @param elementConsumers Ids of the elements to finish, mapped to the id of the consumer that took the element.
+   * @param result Result of consuming the elements.
+   * @return Ids of the elements that were finished. Elements the consumer no longer possesses are left out.
+   */
+  Set<String> finish(String queueName, Map<String, String> elementConsumers, String result);
+
   /**
    * Remove the specified element from the specified queue.
    *
@@ -128,4 +152,31 @@ public interface QueueGroup extends Service {
    * @return Iterator over all queued elements in the queue.
    */
   Iterator<QueuedElement> getQueued(String queueName);
+
+  /**
+   * Add a listener that is called whenever an element is added to a queue in the group, or put back in a queue because
+   * its consumer reported it {@link TrackingQueue.ConsumingStatus#FAILED failed}, whether it was added through
+   * this instance of the group or through another instance of the group that shares the same queues. Listeners are
+   * only a signal that there may be new elements to take. Adds that happen close together may be reported only once,
+   * with only the queue of the last add, and adds through this instance may be reported twice, so listeners should take
+   * whatever is available rather than count on one call per element or per queue.
+   *
+   * @param listener Listener to add.
+   * @return Cancellable that removes the listener when cancelled.
+   */
+  Cancellable addListener(Listener listener);
+
+  /**
+   * Listener for elements added to the queues of a {@link QueueGroup}. Listeners are called from the thread that added
+   * the element or from a zookeeper event thread, and should return quickly.
+   */
+  interface Listener {
+
+    /**
+     * Called after an element was added to a queue in the group.
+     *
+     * @param queueName Name of the queue the element was added to.
+     */
+    void added(String queueName);
+  }
 }
@@ -18,6 +18,9 @@ package co.cask.coopr.common.queue;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Queue that tracks consuming of the elements and may re-add elements that were attempted to be consumed.
@@ -60,6 +63,17 @@ public interface TrackingQueue {
    */
   Element take(String consumerId);
 
+  /**
+   * Take the next available elements from the queue for several consumers at once, one element per consumer. Taking
+   * a batch of elements is done in a single operation on the queue, and is otherwise the same as taking the elements
+   * one by one with {@link #take(String)}.
+   *
+   * @param consumerIds consumers to take elements for
+   * @return taken elements, where the i'th element was taken by the i'th consumer. Fewer elements than consumers are
+   *         returned if the queue runs out of available elements.
+   */
+  List<Element> take(List<String> consumerIds);
+
   /**
    * Records progress of consuming the element. If element no longer belongs to this consumer this will be noted in
    * returned possession state as {@link PossessionState#NOT_POSSESSES}. This may happen e.g. if {@link TrackingQueue}
@@ -81,6 +95,17 @@ public interface TrackingQueue {
    */
   PossessionState recordProgress(String consumerId, String elementId, ConsumingStatus status, String result);
 
+  /**
+   * Finishes consuming several elements at once, in a single operation on the queue. This is the same as reporting
+   * {@link ConsumingStatus#FINISHED_SUCCESSFULLY} for each element with
+   * {@link #recordProgress(String, String, ConsumingStatus, String)}, except that it is done in one go.
+   *
+   * @param elementConsumers ids of the elements to finish, mapped to the consumer that is processing the element
+   * @param result result of consuming the elements.
+   * @return ids of the elements that were finished. Elements that no longer belong to their consumer are left out.
+   */
+  Set<String> finish(Map<String, String> elementConsumers, String result);
+
   /**
    * Removes element from the queue by element id. If element was being consumed,
    * @param elementId id of the element to remove
@@ -19,6 +19,8 @@ import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.QueuedElement;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Defines collection used to track consumption of elements in a queue.
@@ -41,6 +43,16 @@ public interface ElementsTracking {
    */
   Element startConsuming(String consumerId);
 
+  /**
+   * Start consuming an element from the queue for each of the given consumers, in a single operation on the queue.
+   * Elements are handed out in the same order as by {@link #startConsuming(String)}, the i'th element to the i'th
+   * consumer. If the queue runs out of elements, fewer elements than consumers are returned.
+   *
+   * @param consumerIds Ids of the consumers.
+   * @return Elements to start consuming, at most one per consumer.
+   */
+  List<Element> startConsuming(List<String> consumerIds);
+
   /**
    * Stop consuming an element and add it back to the queue to allow it to be consumed again. The operation may
    * fail if there is no element in the queue matching the element id, or if the element is being consumed by a
@@ -62,6 +74,16 @@ public interface ElementsTracking {
    */
   boolean finishConsuming(String elementId, String consumerId);
 
+  /**
+   * Finish consuming the given elements in a single operation on the queue, removing them from the queue. Finishing
+   * an element fails if there is no element in the queue matching the element id, or if the element is being consumed
+   * by a consumer other than the one given for it.
+   *
+   * @param elementConsumers Ids of the elements to finish consuming, mapped to the id of their consumer.
+   * @return Ids of the elements that were finished.
+   */
+  Set<String> finishConsuming(Map<String, String> elementConsumers);
+
   /**
    * Record progress of an element in the queue. The operation may fail if there is no element in
    * the queue matching the element id, or if the element is being consumed by a consumer other than the one given.
@@ -19,6 +19,8 @@ import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.QueuedElement;
 import co.cask.coopr.common.queue.TrackingQueue;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
@@ -26,7 +28,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Tracks elements being consumed.
@@ -60,6 +64,15 @@ public class ElementsTrackingQueue implements TrackingQueue {
     return elementsTracking.startConsuming(consumerId);
   }
 
+  @Override
+  public List<Element> take(List<String> consumerIds) {
+    Preconditions.checkArgument(consumerIds != null, "ids of the consumers that take elements should not be null");
+    if (consumerIds.isEmpty()) {
+      return ImmutableList.of();
+    }
+    return elementsTracking.startConsuming(consumerIds);
+  }
+
   @Override
   public PossessionState recordProgress(String consumerId, String elementId, ConsumingStatus status, String result) {
     Preconditions.checkArgument(consumerId != null, "id of the consumer that reports progress should not be null");
@@ -102,6 +115,25 @@ public class ElementsTrackingQueue implements TrackingQueue {
     throw new IllegalArgumentException("Unknown consuming status reported: " + status);
   }
 
+  @Override
+  public Set<String> finish(Map<String, String> elementConsumers, String result) {
+    Preconditions.checkArgument(elementConsumers != null, "elements to finish should not be null");
+    if (elementConsumers.isEmpty()) {
+      return ImmutableSet.of();
+    }
+    Set<String> finished = elementsTracking.finishConsuming(elementConsumers);
+    for (Map.Entry<String, String> elementConsumer : elementConsumers.entrySet()) {
+      String elementId = elementConsumer.getKey();
+      if (finished.contains(elementId)) {
+        setConsumingResult(elementId, result);
+      } else {
+        LOG.warn("Attempted to finish consuming element that doesn't belong to the consumer, " +
+                   "elementId: " + elementId + ", reported by: " + elementConsumer.getValue());
+      }
+    }
+    return finished;
+  }
+
   @Override
   public boolean remove(String elementId) {
     Preconditions.checkArgument(elementId != null, "id of the element to remove should not be null");
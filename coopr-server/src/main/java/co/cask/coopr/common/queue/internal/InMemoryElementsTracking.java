@@ -20,12 +20,14 @@ import co.cask.coopr.common.queue.QueuedElement;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Set;
 
 /**
  * In-memory implementation of {@link ElementsTracking}.
@@ -54,6 +56,19 @@ public class InMemoryElementsTracking implements ElementsTracking {
     return element.element;
   }
 
+  @Override
+  public synchronized List<Element> startConsuming(List<String> consumerIds) {
+    List<Element> elements = Lists.newArrayList();
+    for (String consumerId : consumerIds) {
+      Element element = startConsuming(consumerId);
+      if (element == null) {
+        break;
+      }
+      elements.add(element);
+    }
+    return elements;
+  }
+
   @Override
   public synchronized boolean stopConsumingAndAddBackToQueue(String elementId, String consumerId) {
     ElementBeingConsumed element = inProgress.get(elementId);
@@ -79,6 +94,17 @@ public class InMemoryElementsTracking implements ElementsTracking {
     return true;
   }
 
+  @Override
+  public synchronized Set<String> finishConsuming(Map<String, String> elementConsumers) {
+    Set<String> finished = Sets.newHashSet();
+    for (Map.Entry<String, String> elementConsumer : elementConsumers.entrySet()) {
+      if (finishConsuming(elementConsumer.getKey(), elementConsumer.getValue())) {
+        finished.add(elementConsumer.getKey());
+      }
+    }
+    return finished;
+  }
+
   @Override
   public synchronized boolean recordProgress(String elementId, String consumerId) {
     ElementBeingConsumed element = inProgress.get(elementId);
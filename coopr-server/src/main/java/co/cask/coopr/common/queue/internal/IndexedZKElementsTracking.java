@@ -0,0 +1,474 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.queue.internal;
+
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.common.queue.QueuedElement;
+import co.cask.coopr.common.queue.internal.ZKElementsTracking.Entry;
+import co.cask.coopr.common.zookeeper.ZKClientExt;
+import co.cask.coopr.common.zookeeper.lib.SynchronizedZKMap;
+import co.cask.coopr.common.zookeeper.lib.ZKInterProcessReentrantLock;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import org.apache.twill.zookeeper.ZKClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+
+/**
+ * Implementation of {@link ElementsTracking} that stores elements in ZK exactly like {@link ZKElementsTracking} does,
+ * but keeps a local index of the elements so that it does not need to walk through the whole queue on every operation.
+ * <p/>
+ * Elements that are not being consumed are indexed by priority and elements that are being consumed are indexed by
+ * consumer. The index is updated incrementally from the changes of the underlying {@link SynchronizedZKMap}, including
+ * those made by other processes, which makes taking, finishing and recording progress of an element O(log n) in the
+ * size of the queue.
+ */
+public class IndexedZKElementsTracking implements ElementsTracking {
+  private static final Logger LOG = LoggerFactory.getLogger(IndexedZKElementsTracking.class);
+
+  private final ThreadLocal<ZKInterProcessReentrantLock> globalLock;
+  private final SynchronizedZKMap<Entry> queueElements;
+  private final QueueIndex index;
+
+  public IndexedZKElementsTracking(final ZKClient zkClient, final String basePath) {
+    String queuePath = basePath + "/queue";
+    Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, queuePath));
+    this.queueElements = new SynchronizedZKMap<Entry>(zkClient, queuePath + "/map",
+                                                      ZKElementsTracking.ENTRY_SERIALIZER);
+    this.index = new QueueIndex();
+    this.queueElements.addListener(index);
+
+    this.globalLock = new ThreadLocal<ZKInterProcessReentrantLock>() {
+      @Override
+      protected ZKInterProcessReentrantLock initialValue() {
+        return new ZKInterProcessReentrantLock(zkClient, basePath);
+      }
+    };
+  }
+
+  @Override
+  public boolean addToQueue(Element element) {
+    try {
+      globalLock.get().acquire();
+      try {
+        Entry entry = new Entry(element, getCurrentHighestPriority());
+        queueElements.put(entry.element.getId(), entry);
+        return true;
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during adding to queue", e);
+      return false;
+    }
+  }
+
+  @Override
+  public Element startConsuming(String consumerId) {
+    try {
+      globalLock.get().acquire();
+      try {
+        queueElements.refresh();
+        String elementId = index.getNotStartedWithHighestPriority();
+        if (elementId == null) {
+          return null;
+        }
+        Entry entry = queueElements.get(elementId);
+        entry.consumerId = consumerId;
+        entry.lastProgressReportTs = System.currentTimeMillis();
+        entry.priority = getCurrentHighestPriority();
+        queueElements.put(entry.element.getId(), entry);
+        return entry.element;
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during start consuming", e);
+      return null;
+    }
+  }
+
+  @Override
+  public List<Element> startConsuming(List<String> consumerIds) {
+    List<Element> elements = Lists.newArrayListWithCapacity(consumerIds.size());
+    try {
+      globalLock.get().acquire();
+      try {
+        queueElements.refresh();
+        for (String consumerId : consumerIds) {
+          String elementId = index.getNotStartedWithHighestPriority();
+          if (elementId == null) {
+            break;
+          }
+          Entry entry = queueElements.get(elementId);
+          entry.consumerId = consumerId;
+          entry.lastProgressReportTs = System.currentTimeMillis();
+          entry.priority = getCurrentHighestPriority();
+          queueElements.put(entry.element.getId(), entry);
+          elements.add(entry.element);
+        }
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      // elements handed out before the error are being consumed, so they must be returned
+      LOG.error("error during start consuming", e);
+    }
+    return elements;
+  }
+
+  @Override
+  public boolean stopConsumingAndAddBackToQueue(String elementId, String consumerId) {
+    try {
+      globalLock.get().acquire();
+      try {
+        Entry entry = getConsumedBy(elementId, consumerId);
+        if (entry == null) {
+          return false;
+        }
+        stopAndReschedule(entry);
+
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during stop & reschedule", e);
+      // it is OK to leave it now in "in-progress" list - we'll attempt to reschedule it by timeout
+    }
+    return true;
+  }
+
+  private void stopAndReschedule(Entry entry) throws Exception {
+    entry.consumerId = ZKElementsTracking.NO_CONSUMER_ASSIGNED;
+    entry.lastProgressReportTs = 0;
+    queueElements.put(entry.element.getId(), entry);
+  }
+
+  @Override
+  public boolean finishConsuming(String elementId, String consumerId) {
+    try {
+      globalLock.get().acquire();
+      try {
+        if (getConsumedBy(elementId, consumerId) == null) {
+          return false;
+        }
+        queueElements.remove(elementId);
+
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during marking finishConsuming", e);
+    }
+    return true;
+  }
+
+  @Override
+  public Set<String> finishConsuming(Map<String, String> elementConsumers) {
+    Set<String> finished = Sets.newHashSet();
+    try {
+      globalLock.get().acquire();
+      try {
+        queueElements.refresh();
+        for (Map.Entry<String, String> elementConsumer : elementConsumers.entrySet()) {
+          String elementId = elementConsumer.getKey();
+          if (index.isConsumedBy(elementId, elementConsumer.getValue())) {
+            queueElements.remove(elementId);
+            finished.add(elementId);
+          }
+        }
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during marking finishConsuming", e);
+    }
+    return finished;
+  }
+
+  @Override
+  public boolean recordProgress(String elementId, String consumerId) {
+    try {
+      globalLock.get().acquire();
+      try {
+        Entry entry = getConsumedBy(elementId, consumerId);
+        if (entry == null) {
+          return false;
+        }
+        entry.lastProgressReportTs = System.currentTimeMillis();
+        queueElements.put(entry.element.getId(), entry);
+
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during checking state", e);
+      // should be OK not do anything: we are just reporting a progress...
+    }
+    return true;
+  }
+
+  /**
+   * @return entry of the given element if it is being consumed by the given consumer, null otherwise
+   */
+  private Entry getConsumedBy(String elementId, String consumerId) {
+    queueElements.refresh();
+    if (!index.isConsumedBy(elementId, consumerId)) {
+      return null;
+    }
+    return queueElements.get(elementId);
+  }
+
+  @Override
+  public void walkThruElementsBeingConsumed(Walker walker) {
+    try {
+      globalLock.get().acquire();
+      try {
+        queueElements.refresh();
+        for (String elementId : index.getBeingConsumed()) {
+          Entry entry = queueElements.get(elementId);
+          boolean stopAndReschedule = walker.process(entry.element,
+                                                     entry.consumerId,
+                                                     entry.lastProgressReportTs);
+          if (stopAndReschedule) {
+            stopAndReschedule(entry);
+          }
+        }
+
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during walking", e);
+      // should be OK not do anything: we'll walk thru next time :)
+    }
+  }
+
+  @Override
+  public boolean remove(String elementId) {
+    try {
+      globalLock.get().acquire();
+      try {
+        queueElements.remove(elementId);
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during removing element", e);
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean removeAll() {
+    try {
+      globalLock.get().acquire();
+      try {
+        queueElements.clear();
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during cleanup of the queue", e);
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean toHighestPriority(String elementId) {
+    try {
+      globalLock.get().acquire();
+      try {
+        Entry entry = queueElements.get(elementId);
+        if (entry != null && ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
+          entry.priority = ZKElementsTracking.HIGHEST_PRIORITY;
+          queueElements.put(entry.element.getId(), entry);
+        }
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during promoting element to highest priority", e);
+      // should be OK not do anything: we'll walk thru next time :)
+    }
+
+    return true;
+  }
+
+  @Override
+  public List<QueuedElement> getQueued() {
+    List<QueuedElement> list = Lists.newArrayList();
+    try {
+      globalLock.get().acquire();
+      try {
+        queueElements.refresh();
+        // index returns elements ordered by priority
+        for (String elementId : index.getNotStarted()) {
+          list.add(queueElements.get(elementId));
+        }
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during getting queued elements", e);
+    }
+
+    return list;
+  }
+
+  @Override
+  public List<QueuedElement> getBeingConsumed() {
+    ImmutableList.Builder<QueuedElement> listBuilder = new ImmutableList.Builder<QueuedElement>();
+    try {
+      globalLock.get().acquire();
+      try {
+        queueElements.refresh();
+        for (String elementId : index.getBeingConsumed()) {
+          listBuilder.add(queueElements.get(elementId));
+        }
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during getting queued elements", e);
+    }
+
+    return listBuilder.build();
+  }
+
+  @Override
+  public int size() {
+    return queueElements.size();
+  }
+
+  /**
+   * @return the highest priority an element which is currently in the queue can have
+   */
+  private long getCurrentHighestPriority() {
+    // see ZKElementsTracking#getCurrentHighestPriority() for why current ts is used as priority
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Local index of the elements in the queue, kept up to date by listening to the changes of the queue map.
+   */
+  private static final class QueueIndex implements SynchronizedZKMap.Listener<Entry> {
+    // elements not being consumed, ordered by priority
+    private final NavigableSet<PriorityKey> notStarted = Sets.newTreeSet();
+    // elementId -> key of the element in notStarted
+    private final Map<String, PriorityKey> notStartedKeys = Maps.newHashMap();
+    // elementId -> consumerId and consumerId -> elementIds of the elements being consumed
+    private final Map<String, String> consumers = Maps.newHashMap();
+    private final SetMultimap<String, String> consumed = HashMultimap.create();
+
+    @Override
+    public synchronized void entryUpdated(String key, Entry entry) {
+      entryRemoved(key);
+      if (ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
+        // entries are mutable, hence we capture priority at the time of the change
+        PriorityKey priorityKey = new PriorityKey(key, entry.priority);
+        notStarted.add(priorityKey);
+        notStartedKeys.put(key, priorityKey);
+      } else {
+        consumers.put(key, entry.consumerId);
+        consumed.put(entry.consumerId, key);
+      }
+    }
+
+    @Override
+    public synchronized void entryRemoved(String key) {
+      PriorityKey priorityKey = notStartedKeys.remove(key);
+      if (priorityKey != null) {
+        notStarted.remove(priorityKey);
+      }
+      String consumerId = consumers.remove(key);
+      if (consumerId != null) {
+        consumed.remove(consumerId, key);
+      }
+    }
+
+    private synchronized String getNotStartedWithHighestPriority() {
+      return notStarted.isEmpty() ? null : notStarted.first().elementId;
+    }
+
+    private synchronized boolean isConsumedBy(String elementId, String consumerId) {
+      return consumed.containsEntry(consumerId, elementId);
+    }
+
+    private synchronized List<String> getNotStarted() {
+      List<String> elementIds = Lists.newArrayListWithCapacity(notStarted.size());
+      for (PriorityKey priorityKey : notStarted) {
+        elementIds.add(priorityKey.elementId);
+      }
+      return elementIds;
+    }
+
+    private synchronized List<String> getBeingConsumed() {
+      return ImmutableList.copyOf(consumers.keySet());
+    }
+  }
+
+  /**
+   * Position of an element in the priority index. Elements with the same priority are ordered by id.
+   */
+  private static final class PriorityKey implements Comparable<PriorityKey> {
+    private final String elementId;
+    private final long priority;
+
+    private PriorityKey(String elementId, long priority) {
+      this.elementId = elementId;
+      this.priority = priority;
+    }
+
+    @Override
+    public int compareTo(PriorityKey o) {
+      if (priority != o.priority) {
+        return priority > o.priority ? 1 : -1;
+      }
+      return elementId.compareTo(o.elementId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PriorityKey)) {
+        return false;
+      }
+      PriorityKey other = (PriorityKey) o;
+      return priority == other.priority && elementId.equals(other.elementId);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * elementId.hashCode() + (int) (priority ^ (priority >>> 32));
+    }
+  }
+}
@@ -23,6 +23,9 @@ import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.twill.zookeeper.ZKClient;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Tracking queue backed by zookeeper that does not initialize any state in zookeeper until some queue operation is
@@ -40,7 +43,7 @@ public class LazyZKTrackingQueue implements TrackingQueue {
 
   private synchronized TrackingQueue getQueue() {
     if (queue == null) {
-      queue = new ElementsTrackingQueue(new ZKElementsTracking(zkClient, zkQueuePath));
+      queue = new ElementsTrackingQueue(new IndexedZKElementsTracking(zkClient, zkQueuePath));
     }
     return queue;
   }
@@ -55,12 +58,22 @@ public class LazyZKTrackingQueue implements TrackingQueue {
     return getQueue().take(consumerId);
   }
 
+  @Override
+  public List<Element> take(List<String> consumerIds) {
+    return getQueue().take(consumerIds);
+  }
+
   @Override
   public TrackingQueue.PossessionState recordProgress(String consumerId, String elementId,
                                                       TrackingQueue.ConsumingStatus status, String result) {
     return getQueue().recordProgress(consumerId, elementId, status, result);
   }
 
+  @Override
+  public Set<String> finish(Map<String, String> elementConsumers, String result) {
+    return getQueue().finish(elementConsumers, result);
+  }
+
   @Override
   public boolean remove(String elementId) {
     return getQueue().remove(elementId);
@@ -23,6 +23,7 @@ import co.cask.coopr.common.zookeeper.lib.SynchronizedZKMap;
 import co.cask.coopr.common.zookeeper.lib.ZKInterProcessReentrantLock;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.gson.Gson;
 import org.apache.twill.zookeeper.ZKClient;
@@ -32,6 +33,7 @@ import org.slf4j.LoggerFactory;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 
@@ -47,9 +49,9 @@ public class ZKElementsTracking implements ElementsTracking {
   private static final Logger LOG = LoggerFactory.getLogger(ZKElementsTracking.class);
   // Moves to the top of the queue. Since we reset priority when we start consuming, it is safe to use 0L here
   // See {@link #getCurrentHighestPriority()} for more info.
-  private static final long HIGHEST_PRIORITY = 0L;
-  private static final String NO_CONSUMER_ASSIGNED = "";
-  private static final EntrySerializer ENTRY_SERIALIZER = new EntrySerializer();
+  static final long HIGHEST_PRIORITY = 0L;
+  static final String NO_CONSUMER_ASSIGNED = "";
+  static final EntrySerializer ENTRY_SERIALIZER = new EntrySerializer();
 
   private final ThreadLocal<ZKInterProcessReentrantLock> globalLock;
   private final Map<String, Entry> queueElements;
@@ -109,6 +111,33 @@ public class ZKElementsTracking implements ElementsTracking {
     }
   }
 
+  @Override
+  public List<Element> startConsuming(List<String> consumerIds) {
+    List<Element> elements = Lists.newArrayListWithCapacity(consumerIds.size());
+    try {
+      globalLock.get().acquire();
+      try {
+        for (String consumerId : consumerIds) {
+          Entry entry = getNotStartedWithHighestPriority();
+          if (entry == null) {
+            break;
+          }
+          entry.consumerId = consumerId;
+          entry.lastProgressReportTs = System.currentTimeMillis();
+          entry.priority = getCurrentHighestPriority();
+          queueElements.put(entry.element.getId(), entry);
+          elements.add(entry.element);
+        }
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      // elements handed out before the error are being consumed, so they must be returned
+      LOG.error("error during start consuming", e);
+    }
+    return elements;
+  }
+
   private Entry getNotStartedWithHighestPriority() throws Exception {
     Entry result = null;
     for (Entry entry : queueElements.values()) {
@@ -175,6 +204,29 @@ public class ZKElementsTracking implements ElementsTracking {
     return true;
   }
 
+  @Override
+  public Set<String> finishConsuming(Map<String, String> elementConsumers) {
+    Set<String> finished = Sets.newHashSet();
+    try {
+      globalLock.get().acquire();
+      try {
+        for (Map.Entry<String, String> elementConsumer : elementConsumers.entrySet()) {
+          String elementId = elementConsumer.getKey();
+          Entry entry = queueElements.get(elementId);
+          if (entry != null && elementConsumer.getValue().equals(entry.consumerId)) {
+            queueElements.remove(elementId);
+            finished.add(elementId);
+          }
+        }
+      } finally {
+        globalLock.get().release();
+      }
+    } catch (Exception e) {
+      LOG.error("error during marking finishConsuming", e);
+    }
+    return finished;
+  }
+
   @Override
   public boolean recordProgress(String elementId, String consumerId) {
     try {
@@ -381,7 +433,7 @@ public class ZKElementsTracking implements ElementsTracking {
     }
   }
 
-  private static final class EntrySerializer implements Serializer<Entry> {
+  static final class EntrySerializer implements Serializer<Entry> {
     private static final ThreadLocal<Gson> GSON = new ThreadLocal<Gson>() {
       @Override
       protected Gson initialValue() {
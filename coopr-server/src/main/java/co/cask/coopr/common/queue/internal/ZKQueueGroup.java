@@ -23,33 +23,56 @@ import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.queue.QueuedElement;
 import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.common.zookeeper.ZKClientExt;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKOperations;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Implementation of a {@link QueueGroup} that uses queues built on zookeeper. Whenever a queue name is referenced in a
  * method, the queue is cached and the physical zookeeper queue is created if it does not already exist. Watches
  * zookeeper to make sure queues added or deleted by another instance of the group are reflected in this group.
+ * Adds are signaled to other instances of the group by writing the names of the queues with new elements to the data
+ * of the group node, which every instance watches. At most one such write is in flight at a time, queues that get new
+ * elements while a write is in flight are written together once it completes.
  */
 public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
+  private static final Logger LOG = LoggerFactory.getLogger(ZKQueueGroup.class);
+  // queue names are znode names, so they never contain a slash
+  private static final Joiner QUEUE_NAME_JOINER = Joiner.on('/');
+  private static final Splitter QUEUE_NAME_SPLITTER = Splitter.on('/').omitEmptyStrings();
   private final ZKClient zkClient;
   private final QueueType queueType;
   private final LoadingCache<String, TrackingQueue> queueMap;
+  private final List<Listener> listeners;
+  // names of queues added to that still have to be written to the group node, guarded by itself
+  private final Set<String> unsignaledQueues;
+  // whether a write of added queue names to the group node is in flight, guarded by unsignaledQueues
+  private boolean signaling;
 
   /**
    * Create a zookeeper queue group of the given type, using the given zookeeper client. Physical queues in the group
@@ -69,11 +92,27 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
           return new LazyZKTrackingQueue(zkClient, getZKPathForQueue(queueName));
         }
       });
+    this.listeners = new CopyOnWriteArrayList<Listener>();
+    this.unsignaledQueues = Sets.newLinkedHashSet();
   }
 
   @Override
   public ListenableFuture<String> add(String queueName, Element element) {
-    return queueMap.getUnchecked(queueName).add(element);
+    ListenableFuture<String> result = queueMap.getUnchecked(queueName).add(element);
+    notifyAdded(queueName);
+    signalAdded(queueName);
+    return result;
+  }
+
+  @Override
+  public Cancellable addListener(final Listener listener) {
+    listeners.add(listener);
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        listeners.remove(listener);
+      }
+    };
   }
 
   /**
@@ -93,10 +132,27 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
     return queueMap.getUnchecked(queueName).take(consumerId);
   }
 
+  @Override
+  public List<Element> take(String queueName, List<String> consumerIds) {
+    return queueMap.getUnchecked(queueName).take(consumerIds);
+  }
+
   @Override
   public TrackingQueue.PossessionState recordProgress(String consumerId, String queueName, String elementId,
                                                       TrackingQueue.ConsumingStatus status, String result) {
-    return queueMap.getUnchecked(queueName).recordProgress(consumerId, elementId, status, result);
+    TrackingQueue.PossessionState state =
+      queueMap.getUnchecked(queueName).recordProgress(consumerId, elementId, status, result);
+    if (status == TrackingQueue.ConsumingStatus.FAILED && state == TrackingQueue.PossessionState.POSSESSES) {
+      // the element was put back in the queue, which is the same as adding it for consumers waiting for elements
+      notifyAdded(queueName);
+      signalAdded(queueName);
+    }
+    return state;
+  }
+
+  @Override
+  public Set<String> finish(String queueName, Map<String, String> elementConsumers, String result) {
+    return queueMap.getUnchecked(queueName).finish(elementConsumers, result);
   }
 
   @Override
@@ -148,6 +204,18 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
         refreshQueues(nodeChildren);
       }
     });
+    ZKOperations.watchData(zkClient, queueType.getPath(), new ZKOperations.DataCallback() {
+      @Override
+      public void updated(NodeData nodeData) {
+        byte[] data = nodeData.getData();
+        if (data == null) {
+          return;
+        }
+        for (String queueName : QUEUE_NAME_SPLITTER.split(new String(data, Charsets.UTF_8))) {
+          notifyAdded(queueName);
+        }
+      }
+    });
   }
 
   @Override
@@ -155,6 +223,53 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
     // no-op
   }
 
+  private void notifyAdded(String queueName) {
+    for (Listener listener : listeners) {
+      try {
+        listener.added(queueName);
+      } catch (Throwable t) {
+        LOG.error("Exception notifying listener of element added to queue {}.", queueName, t);
+      }
+    }
+  }
+
+  private void signalAdded(String queueName) {
+    synchronized (unsignaledQueues) {
+      unsignaledQueues.add(queueName);
+      if (signaling) {
+        return;
+      }
+      signaling = true;
+    }
+    writeSignal();
+  }
+
+  // writes the names of the queues added to since the last write to the group node, until no names are left
+  private void writeSignal() {
+    final String queueNames;
+    synchronized (unsignaledQueues) {
+      if (unsignaledQueues.isEmpty()) {
+        signaling = false;
+        return;
+      }
+      queueNames = QUEUE_NAME_JOINER.join(unsignaledQueues);
+      unsignaledQueues.clear();
+    }
+    Futures.addCallback(zkClient.setData(queueType.getPath(), queueNames.getBytes(Charsets.UTF_8)),
+                        new FutureCallback<Stat>() {
+      @Override
+      public void onSuccess(Stat result) {
+        writeSignal();
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.warn("Unable to signal elements added to queues {} to other instances.", queueNames, t);
+        writeSignal();
+      }
+    });
+  }
+
   private void refreshQueues(NodeChildren nodeChildren) {
     Set<String> queueNames = Sets.newHashSet(nodeChildren.getChildren());
     Set<String> existingQueues = queueMap.asMap().keySet();
@@ -20,23 +20,35 @@ import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.zookeeper.lib.ZKInterProcessReentrantLock;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
+import com.google.common.collect.Maps;
 import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.Inject;
 import org.apache.twill.zookeeper.NodeData;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.data.Stat;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * Uses Zookeeper for creating new unique ids.
+ * Uses Zookeeper for creating new unique ids. Counters in zookeeper are updated with a compare-and-set on the version
+ * of their znode, so no lock is needed to generate ids. Task ids, of which many are generated at once when planning
+ * a cluster job, are leased from their counter in blocks and handed out locally until the block runs out. Ids are
+ * unique across servers and increasing for each server, but ids handed out by different servers are not in order,
+ * and ids left in a block when the server stops are never used.
  */
 public final class IdService extends AbstractIdleService {
   private static final String IDS_BASEPATH = "/ids";
 
   private final long startId;
   private final long incrementBy;
+  private final int taskLeaseSize;
+  private final Map<Type, IdLease> leases;
   private ThreadLocal<ZKInterProcessReentrantLock> idLock;
 
   private final ZKClient zkClient;
@@ -61,13 +73,22 @@ public final class IdService extends AbstractIdleService {
     this.zkClient = zkClient;
     this.startId = conf.getInt(Constants.ID_START_NUM);
     this.incrementBy = conf.getInt(Constants.ID_INCREMENT_BY);
+    this.taskLeaseSize = conf.getInt(Constants.ID_TASK_LEASE_SIZE);
+    this.leases = Maps.newEnumMap(Type.class);
   }
 
   // for unit testing
   IdService(final ZKClient zkClient, int startId, int incrementBy) {
+    this(zkClient, startId, incrementBy, 1);
+  }
+
+  // for unit testing
+  IdService(final ZKClient zkClient, int startId, int incrementBy, int taskLeaseSize) {
     this.zkClient = zkClient;
     this.startId = startId;
     this.incrementBy = incrementBy;
+    this.taskLeaseSize = taskLeaseSize;
+    this.leases = Maps.newEnumMap(Type.class);
   }
 
   @Override
@@ -122,17 +143,54 @@ public final class IdService extends AbstractIdleService {
     return new TaskId(jobId, generateId(Type.TASK));
   }
 
-  // This generally should not be a noticeable amount of time compared to the time it takes to perform tasks
-  // TODO: try optimistic locking before actual locking to improve performance.
   private long generateId(Type type) {
-    idLock.get().acquire();
-    try {
+    int leaseSize = type == Type.TASK ? taskLeaseSize : 1;
+    if (leaseSize <= 1) {
+      return leaseIds(type, 1);
+    }
+    while (true) {
+      IdLease lease = getLease(type);
+      if (lease != null) {
+        long id = lease.next.getAndAdd(incrementBy);
+        if (id < lease.end) {
+          return id;
+        }
+      }
+      renewLease(type, lease, leaseSize);
+    }
+  }
+
+  private synchronized IdLease getLease(Type type) {
+    return leases.get(type);
+  }
+
+  // replace the given lease with a new one, unless another thread already did
+  private synchronized void renewLease(Type type, IdLease lease, int leaseSize) {
+    if (leases.get(type) == lease) {
+      leases.put(type, new IdLease(leaseIds(type, leaseSize), leaseSize * incrementBy));
+    }
+  }
+
+  /**
+   * Claims the given number of ids from the counter of the given type by moving the counter past them with a
+   * compare-and-set, retrying if another server changed the counter in the meantime.
+   *
+   * @return the first of the claimed ids
+   */
+  private long leaseIds(Type type, int numIds) {
+    while (true) {
       NodeData nodeData = Futures.getUnchecked(zkClient.getData(type.path));
       long counterVal = Longs.fromByteArray(nodeData.getData());
-      Futures.getUnchecked(zkClient.setData(type.path, Longs.toByteArray(counterVal + incrementBy)));
-      return counterVal;
-    } finally {
-      idLock.get().release();
+      byte[] newCounterVal = Longs.toByteArray(counterVal + numIds * incrementBy);
+      try {
+        Futures.getUnchecked(zkClient.setData(type.path, newCounterVal, nodeData.getStat().getVersion()));
+        return counterVal;
+      } catch (UncheckedExecutionException e) {
+        if (!(e.getCause() instanceof KeeperException.BadVersionException)) {
+          throw e;
+        }
+        // another server moved the counter first, try again from its new value
+      }
     }
   }
 
@@ -142,4 +200,18 @@ public final class IdService extends AbstractIdleService {
       Futures.getUnchecked(zkClient.create(type.path, Longs.toByteArray(startId), CreateMode.PERSISTENT, true));
     }
   }
+
+  /**
+   * Block of ids leased from a counter.
+   */
+  private static final class IdLease {
+    private final AtomicLong next;
+    // first id past the block
+    private final long end;
+
+    private IdLease(long start, long length) {
+      this.next = new AtomicLong(start);
+      this.end = start + length;
+    }
+  }
 }
@@ -0,0 +1,397 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.zookeeper.lib;
+
+import co.cask.coopr.common.zookeeper.ZKClientExt;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKClients;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of {@link java.util.Map} backed by Zookeeper that stores every entry in its own node and keeps a
+ * local view of the entries up to date with child and data watches.
+ * <p/>
+ * Unlike {@link SynchronizedZKMap}, other processes learn about a change to one entry from a watch on that entry
+ * instead of checking every entry, and reads are served from the local view without taking any lock. Writes are serialized across threads and processes.
+ * Reads are eventually consistent: changes made by other processes become visible once the corresponding watch fires,
+ * changes made through this instance are visible immediately. Callers that need to see every change made before some
+ * point, such as a queue that picks an entry to claim while holding a lock, call {@link #sync()} first, which only
+ * re-reads the entries that changed.
+ * <p/>
+ * Does not permit null keys or values.
+ *
+ * @param <T> Type of object to keep in map values.
+ */
+public class ConcurrentZKMap<T> implements Map<String, T> {
+  private static final Logger LOG = LoggerFactory.getLogger(ConcurrentZKMap.class);
+  private static final String ENTRIES_PATH = "/entries";
+  private static final String LOCK_PATH = "/lock";
+
+  private final ZKClient zkClient;
+  private final Serializer<T> serializer;
+  private final ZKInterProcessReentrantLock globalLock;
+  private final ConcurrentMap<String, VersionedValue<T>> currentView;
+  // keys that currently have a data watch set
+  private final Set<String> watchedEntries;
+
+  public ConcurrentZKMap(ZKClient zkClient, String namespace, Serializer<T> serializer) {
+    this(namespace == null ? zkClient : ZKClients.namespace(zkClient, namespace), serializer);
+  }
+
+  public ConcurrentZKMap(ZKClient zkClient, Serializer<T> serializer) {
+    this.zkClient = zkClient;
+    this.serializer = serializer;
+    this.globalLock = new ZKInterProcessReentrantLock(zkClient, LOCK_PATH);
+    this.currentView = Maps.newConcurrentMap();
+    this.watchedEntries = Sets.newSetFromMap(Maps.<String, Boolean>newConcurrentMap());
+    Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, ENTRIES_PATH));
+    // wait for the initial view to be loaded so that reads right after construction see existing entries
+    Futures.getUnchecked(watchEntries());
+  }
+
+  @Override
+  public int size() {
+    return currentView.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return currentView.isEmpty();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return currentView.containsKey(key);
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    return values().contains(value);
+  }
+
+  @Override
+  public T get(Object key) {
+    VersionedValue<T> versioned = currentView.get(key);
+    return versioned == null ? null : versioned.value;
+  }
+
+  // note: returned value is taken from the local view, hence may be stale
+  @Override
+  public synchronized T put(String key, T value) {
+    globalLock.acquire();
+    try {
+      String nodePath = getNodePath(key);
+      ZKClientExt.SetResult result = Futures.getUnchecked(
+        ZKClientExt.createOrSet(zkClient, nodePath, serializer.serialize(value), CreateMode.PERSISTENT));
+      Stat stat = result.getStat();
+      if (stat == null) {
+        // node was created. Since we hold the lock nobody else could have changed it since
+        stat = Futures.getUnchecked(zkClient.exists(nodePath));
+      }
+      VersionedValue<T> previous = currentView.put(key, new VersionedValue<T>(value, stat.getCzxid(), stat.getMzxid()));
+      return previous == null ? null : previous.value;
+    } finally {
+      globalLock.release();
+    }
+  }
+
+  // note: we may return null even though we removed non-null element if the local view is stale. Which is OK
+  @Override
+  public synchronized T remove(Object key) {
+    if (!(key instanceof String)) {
+      throw new IllegalArgumentException("Expected key of type java.lang.String but was " +
+                                           (key == null ? null : key.getClass()));
+    }
+
+    globalLock.acquire();
+    try {
+      Futures.getUnchecked(ZKClientExt.delete(zkClient, getNodePath((String) key), true));
+      VersionedValue<T> removed = currentView.remove(key);
+      return removed == null ? null : removed.value;
+    } finally {
+      globalLock.release();
+    }
+  }
+
+  @Override
+  public synchronized void putAll(Map<? extends String, ? extends T> m) {
+    for (Map.Entry<? extends String, ? extends T> entry : m.entrySet()) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    globalLock.acquire();
+    try {
+      NodeChildren nodeChildren = Futures.getUnchecked(zkClient.getChildren(ENTRIES_PATH));
+      List<ListenableFuture<String>> deleteFutures = Lists.newArrayList();
+      for (String node : nodeChildren.getChildren()) {
+        deleteFutures.add(ZKClientExt.delete(zkClient, getNodePath(node), true));
+      }
+      Futures.getUnchecked(Futures.allAsList(deleteFutures));
+      currentView.clear();
+    } finally {
+      globalLock.release();
+    }
+  }
+
+  /**
+   * Brings the local view up to date with all changes made to the map before the call. Lists the entries and checks the
+   * version of each of them in a single round of requests, and only reads the entries that are new or changed since
+   * they were last read.
+   */
+  public void sync() {
+    NodeChildren nodeChildren = Futures.getUnchecked(zkClient.getChildren(ENTRIES_PATH));
+    Set<String> keys = Sets.newHashSet(nodeChildren.getChildren());
+    Map<String, ListenableFuture<Stat>> stats = Maps.newHashMap();
+    for (String key : keys) {
+      stats.put(key, zkClient.exists(getNodePath(key)));
+    }
+    List<ListenableFuture<?>> loadFutures = Lists.newArrayList();
+    for (Map.Entry<String, ListenableFuture<Stat>> entry : stats.entrySet()) {
+      String key = entry.getKey();
+      Stat stat = Futures.getUnchecked(entry.getValue());
+      if (stat == null) {
+        // deleted since the entries were listed
+        continue;
+      }
+      VersionedValue<T> current = currentView.get(key);
+      if (current != null && current.mzxid >= stat.getMzxid()) {
+        continue;
+      }
+      // entries that are not watched yet get a watch, the others are only read
+      loadFutures.add(watchedEntries.add(key) ? watchEntry(key) : loadEntry(key));
+    }
+    removeUnlisted(keys, nodeChildren.getStat().getPzxid());
+    Futures.getUnchecked(Futures.allAsList(loadFutures));
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return ImmutableSet.copyOf(currentView.keySet());
+  }
+
+  @Override
+  public Collection<T> values() {
+    ImmutableList.Builder<T> builder = ImmutableList.builder();
+    for (VersionedValue<T> versioned : currentView.values()) {
+      builder.add(versioned.value);
+    }
+    return builder.build();
+  }
+
+  @Override
+  public Set<Entry<String, T>> entrySet() {
+    ImmutableMap.Builder<String, T> builder = ImmutableMap.builder();
+    for (Entry<String, VersionedValue<T>> entry : currentView.entrySet()) {
+      builder.put(entry.getKey(), entry.getValue().value);
+    }
+    return builder.build().entrySet();
+  }
+
+  /**
+   * Reads children of the entries node and sets a watch on it. Entries that appeared since the last read are loaded and
+   * watched, entries that disappeared are removed from the local view.
+   *
+   * @return future that completes when all new entries are loaded
+   */
+  private ListenableFuture<?> watchEntries() {
+    final SettableFuture<Object> loaded = SettableFuture.create();
+    Futures.addCallback(zkClient.getChildren(ENTRIES_PATH, new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getType() == Event.EventType.NodeChildrenChanged) {
+          watchEntries();
+        }
+      }
+    }), new FutureCallback<NodeChildren>() {
+      @Override
+      public void onSuccess(NodeChildren nodeChildren) {
+        Set<String> keys = Sets.newHashSet(nodeChildren.getChildren());
+        List<ListenableFuture<?>> loadFutures = Lists.newArrayList();
+        for (String key : keys) {
+          if (watchedEntries.add(key)) {
+            loadFutures.add(watchEntry(key));
+          }
+        }
+        removeUnlisted(keys, nodeChildren.getStat().getPzxid());
+        Futures.addCallback(Futures.successfulAsList(loadFutures), new FutureCallback<List<Object>>() {
+          @Override
+          public void onSuccess(List<Object> result) {
+            loaded.set(null);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            loaded.setException(t);
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.error("Failed to watch entries of zookeeper map.", t);
+        loaded.setException(t);
+      }
+    });
+    return loaded;
+  }
+
+  /**
+   * Reads the data of the given entry into the local view and sets a watch on it to pick up its future changes.
+   */
+  private ListenableFuture<NodeData> watchEntry(final String key) {
+    final SettableFuture<NodeData> loaded = SettableFuture.create();
+    // czxid of the node the watch is set on, so that deletion of it doesn't remove an entry that was re-created since
+    final AtomicLong watchedCzxid = new AtomicLong(-1L);
+    Futures.addCallback(ZKClientExt.getDataOrNull(zkClient, getNodePath(key), new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getType() == Event.EventType.NodeDataChanged) {
+          watchEntry(key);
+        } else if (event.getType() == Event.EventType.NodeDeleted) {
+          watchedEntries.remove(key);
+          VersionedValue<T> current = currentView.get(key);
+          if (current != null && current.czxid == watchedCzxid.get()) {
+            currentView.remove(key, current);
+          }
+        }
+      }
+    }), new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(NodeData nodeData) {
+        if (nodeData == null) {
+          // deleted before we got to read it, the children watch takes care of removing it from the local view
+          watchedEntries.remove(key);
+          loaded.set(null);
+          return;
+        }
+        Stat stat = nodeData.getStat();
+        watchedCzxid.set(stat.getCzxid());
+        update(key, new VersionedValue<T>(serializer.deserialize(nodeData.getData()),
+                                          stat.getCzxid(), stat.getMzxid()));
+        loaded.set(nodeData);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        watchedEntries.remove(key);
+        LOG.error("Failed to watch entry {} of zookeeper map.", key, t);
+        loaded.setException(t);
+      }
+    });
+    return loaded;
+  }
+
+  /**
+   * Reads the data of the given entry into the local view, without setting a watch on it.
+   */
+  private ListenableFuture<NodeData> loadEntry(final String key) {
+    ListenableFuture<NodeData> loaded = ZKClientExt.getDataOrNull(zkClient, getNodePath(key));
+    Futures.addCallback(loaded, new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(NodeData nodeData) {
+        if (nodeData != null) {
+          Stat stat = nodeData.getStat();
+          update(key, new VersionedValue<T>(serializer.deserialize(nodeData.getData()),
+                                            stat.getCzxid(), stat.getMzxid()));
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.error("Failed to read entry {} of zookeeper map.", key, t);
+      }
+    });
+    return loaded;
+  }
+
+  /**
+   * Removes entries that are not in the given listing of the entries from the local view. Entries created after the
+   * listing, at the given zxid, are kept.
+   */
+  private void removeUnlisted(Set<String> listedKeys, long listedZxid) {
+    for (Entry<String, VersionedValue<T>> entry : currentView.entrySet()) {
+      if (!listedKeys.contains(entry.getKey()) && entry.getValue().czxid <= listedZxid) {
+        currentView.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Puts the value read from zookeeper into the local view, unless the view already has a more recent one. The mzxid of
+   * a node increases with every change, including when the node is deleted and created again, so it orders values read
+   * from different incarnations of an entry as well.
+   */
+  private void update(String key, VersionedValue<T> versioned) {
+    while (true) {
+      VersionedValue<T> current = currentView.get(key);
+      if (current == null) {
+        if (currentView.putIfAbsent(key, versioned) == null) {
+          return;
+        }
+      } else if (current.mzxid > versioned.mzxid) {
+        return;
+      } else if (currentView.replace(key, current, versioned)) {
+        return;
+      }
+    }
+  }
+
+  private String getNodePath(String key) {
+    return ENTRIES_PATH + "/" + key;
+  }
+
+  /**
+   * Value in the local view together with the zxids of the node it was read from.
+   */
+  private static final class VersionedValue<T> {
+    private final T value;
+    private final long czxid;
+    private final long mzxid;
+
+    private VersionedValue(T value, long czxid, long mzxid) {
+      this.value = value;
+      this.czxid = czxid;
+      this.mzxid = mzxid;
+    }
+  }
+}
@@ -16,9 +16,12 @@
 package co.cask.coopr.common.zookeeper.lib;
 
 import co.cask.coopr.common.zookeeper.ZKClientExt;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.twill.zookeeper.NodeChildren;
@@ -27,9 +30,9 @@ import org.apache.twill.zookeeper.OperationFuture;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKClients;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,6 +42,12 @@ import java.util.Set;
  * by Zookeeper.
  * <p/>
  * Does not permit null keys or values.
+ * <p/>
+ * Changes to the entries, whether made through this instance or picked up from Zookeeper, can be observed with a
+ * {@link Listener}.
+ * <p/>
+ * Each entry is kept in its own node, named after the key of the entry. When the view is reloaded, only the nodes
+ * that were modified since the view last saw them are read, which the stats of the nodes tell.
  *
  * @param <T> Type of object to keep in map values.
  */
@@ -49,7 +58,10 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   private final Serializer<T> serializer;
 
   private final ZKInterProcessReentrantLock globalLock;
+  private final List<Listener<T>> listeners;
   private Map<String, T> currentView;
+  // mzxid of the node backing each entry of the in-memory view
+  private Map<String, Long> currentViewEntryVersions;
   private int currentViewVersion;
 
   public SynchronizedZKMap(ZKClient zkClient, String namespace, Serializer<T> serializer) {
@@ -60,8 +72,35 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
     this.zkClient = zkClient;
     this.serializer = serializer;
     this.currentView = Maps.newHashMap();
+    this.currentViewEntryVersions = Maps.newHashMap();
     this.currentViewVersion = -1;
     this.globalLock = new ZKInterProcessReentrantLock(zkClient, LOCK_PATH);
+    this.listeners = Lists.newArrayList();
+  }
+
+  /**
+   * Adds a listener to be notified of changes to the entries of the map. The listener is immediately notified of all
+   * entries currently in the in-memory view.
+   *
+   * @param listener Listener to add.
+   */
+  public synchronized void addListener(Listener<T> listener) {
+    listeners.add(listener);
+    for (Entry<String, T> entry : currentView.entrySet()) {
+      listener.entryUpdated(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Brings the in-memory view of the map, and with it all listeners, up to date with the state in Zookeeper.
+   */
+  public synchronized void refresh() {
+    globalLock.acquire();
+    try {
+      reloadCacheIfNeeded();
+    } finally {
+      globalLock.release();
+    }
   }
 
   @Override
@@ -163,7 +202,7 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
     globalLock.acquire();
     try {
       reloadCacheIfNeeded();
-      return currentView.keySet();
+      return ImmutableSet.copyOf(currentView.keySet());
     } finally {
       globalLock.release();
     }
@@ -174,7 +213,7 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
     globalLock.acquire();
     try {
       reloadCacheIfNeeded();
-      return currentView.values();
+      return ImmutableList.copyOf(currentView.values());
     } finally {
       globalLock.release();
     }
@@ -185,21 +224,28 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
     globalLock.acquire();
     try {
       reloadCacheIfNeeded();
-      return currentView.entrySet();
+      return ImmutableMap.copyOf(currentView).entrySet();
     } finally {
       globalLock.release();
     }
   }
 
   private T putInternal(String key, T value) {
-    Map<String, T> current = Maps.newHashMap(currentView);
-    T result = current.put(key, value);
-    currentView = ImmutableMap.<String, T>builder().putAll(current).build();
+    T result = currentView.put(key, value);
     String itemNodePath = getItemNodePath(key);
     // Note: we do delete and add new node with new data VS createOrSet() so that cversion of children change (we depend
     //       on it when checking if the current in-memory view is stale)
     Futures.getUnchecked(ZKClientExt.delete(zkClient, itemNodePath, true));
     Futures.getUnchecked(zkClient.create(itemNodePath, serializer.serialize(value), CreateMode.PERSISTENT, true));
+    Stat stat = updateViewVersion();
+    // no other process changes the entries while we hold the lock, so the node we just created is the last change to
+    // the children of the entries node, and its mzxid is the pzxid of the entries node
+    if (stat == null) {
+      currentViewEntryVersions.remove(key);
+    } else {
+      currentViewEntryVersions.put(key, stat.getPzxid());
+    }
+    notifyUpdated(key, value);
     return result;
   }
 
@@ -213,33 +259,53 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
       return null;
     }
 
-    Map<String, T> current = Maps.newHashMap(currentView);
-    T removed = current.remove(key);
-    currentView = ImmutableMap.<String, T>builder().putAll(current).build();
+    T removed = currentView.remove(key);
+    currentViewEntryVersions.remove(key);
     // note: we cannot only issue remove from zk if removed != null because even if removed == null this could mean
     //       the element was removed (and for other race-condition reasons)
     Futures.getUnchecked(ZKClientExt.delete(zkClient, getItemNodePath((String) key), true));
+    updateViewVersion();
+    notifyRemoved((String) key);
 
     return removed;
   }
 
   private void clearInternal() {
     if (currentView.size() > 0) {
-      currentView = Collections.emptyMap();
+      Set<String> removed = currentView.keySet();
+      currentView = Maps.newHashMap();
+      currentViewEntryVersions = Maps.newHashMap();
       NodeChildren nodeChildren = Futures.getUnchecked(zkClient.getChildren(ENTRIES_PATH));
       List<ListenableFuture<String>> deleteFutures = Lists.newArrayList();
       for (String node : nodeChildren.getChildren()) {
         deleteFutures.add(ZKClientExt.delete(zkClient, getNodePath(node), true));
       }
       Futures.getUnchecked(Futures.allAsList(deleteFutures));
+      updateViewVersion();
+      for (String key : removed) {
+        notifyRemoved(key);
+      }
     }
   }
 
+  // Since all changes are made while holding the global lock, the in-memory view is in sync with zookeeper right after
+  // we change it. Remembering the children version at this point saves the next operation from reloading everything.
+  private Stat updateViewVersion() {
+    Stat stat = Futures.getUnchecked(zkClient.exists(ENTRIES_PATH));
+    currentViewVersion = stat == null ? -1 : stat.getCversion();
+    return stat;
+  }
+
   private void reloadCacheIfNeeded() {
     NodeChildren nodeChildren = Futures.getUnchecked(ZKClientExt.getChildrenOrNull(zkClient, ENTRIES_PATH));
     if (nodeChildren == null) {
       if (currentView.size() > 0) {
-        currentView = Collections.emptyMap();
+        Set<String> removed = currentView.keySet();
+        currentView = Maps.newHashMap();
+        currentViewEntryVersions = Maps.newHashMap();
+        for (String key : removed) {
+          notifyRemoved(key);
+        }
       }
 
       return;
@@ -252,25 +318,69 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
       return;
     }
 
+    // the stats of the nodes tell which entries changed since we last saw them, only those are read
     List<String> nodes = nodeChildren.getChildren();
-    final Map<String, ListenableFuture<NodeData>> nodeAndDataFutures = Maps.newHashMap();
-    List<OperationFuture<NodeData>> dataFutures = Lists.newArrayList();
+    Map<String, OperationFuture<Stat>> nodeAndStatFutures = Maps.newHashMap();
     for (String node : nodes) {
-      OperationFuture<NodeData> dataFuture = zkClient.getData(getNodePath(node));
-      dataFutures.add(dataFuture);
-      nodeAndDataFutures.put(node, dataFuture);
+      nodeAndStatFutures.put(node, zkClient.exists(getNodePath(node)));
+    }
+
+    Futures.getUnchecked(Futures.successfulAsList(nodeAndStatFutures.values()));
+
+    Map<String, T> newView = Maps.newHashMap();
+    Map<String, Long> newEntryVersions = Maps.newHashMap();
+    Map<String, ListenableFuture<NodeData>> nodeAndDataFutures = Maps.newHashMap();
+    for (Entry<String, OperationFuture<Stat>> nodeAndStat : nodeAndStatFutures.entrySet()) {
+      String key = nodeAndStat.getKey();
+      Stat stat = Futures.getUnchecked(nodeAndStat.getValue());
+      if (stat == null) {
+        // node is gone
+        continue;
+      }
+      Long knownVersion = currentViewEntryVersions.get(key);
+      if (knownVersion != null && knownVersion == stat.getMzxid()) {
+        newView.put(key, currentView.get(key));
+        newEntryVersions.put(key, knownVersion);
+      } else {
+        nodeAndDataFutures.put(key, zkClient.getData(getNodePath(key)));
+      }
     }
 
-    Futures.getUnchecked(Futures.successfulAsList(dataFutures));
+    Futures.getUnchecked(Futures.successfulAsList(nodeAndDataFutures.values()));
 
-    ImmutableMap.Builder<String, T> builder = ImmutableMap.builder();
+    Map<String, T> updated = Maps.newHashMap();
     for (Entry<String, ListenableFuture<NodeData>> nodeAndData : nodeAndDataFutures.entrySet()) {
-      T value = serializer.deserialize(Futures.getUnchecked(nodeAndData.getValue()).getData());
-      builder.put(nodeAndData.getKey(), value);
+      String key = nodeAndData.getKey();
+      NodeData nodeData = Futures.getUnchecked(nodeAndData.getValue());
+      T value = serializer.deserialize(nodeData.getData());
+      newView.put(key, value);
+      newEntryVersions.put(key, nodeData.getStat().getMzxid());
+      updated.put(key, value);
     }
 
-    currentView = builder.build();
+    Set<String> removed = Sets.newHashSet(Sets.difference(currentView.keySet(), newView.keySet()));
+    currentView = newView;
+    currentViewEntryVersions = newEntryVersions;
     currentViewVersion = trueVersion;
+
+    for (String key : removed) {
+      notifyRemoved(key);
+    }
+    for (Entry<String, T> entry : updated.entrySet()) {
+      notifyUpdated(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void notifyUpdated(String key, T value) {
+    for (Listener<T> listener : listeners) {
+      listener.entryUpdated(key, value);
+    }
+  }
+
+  private void notifyRemoved(String key) {
+    for (Listener<T> listener : listeners) {
+      listener.entryRemoved(key);
+    }
   }
 
 
@@ -281,4 +391,27 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   private synchronized String getNodePath(String nodeName) {
     return ENTRIES_PATH + "/" + nodeName;
   }
+
+  /**
+   * Listener for changes to the entries of a {@link SynchronizedZKMap}. Listeners are called while holding the lock
+   * of the map, hence they should be fast and must not call back into the map.
+   *
+   * @param <T> Type of object kept in map values.
+   */
+  public interface Listener<T> {
+    /**
+     * Called when an entry is added to the map or its value is replaced.
+     *
+     * @param key Key of the entry.
+     * @param value New value of the entry.
+     */
+    void entryUpdated(String key, T value);
+
+    /**
+     * Called when an entry is removed from the map.
+     *
+     * @param key Key of the removed entry.
+     */
+    void entryRemoved(String key);
+  }
 }
@@ -36,11 +36,12 @@ public class ExternalHandlerServer extends HandlerServer {
 
   @Inject
   private ExternalHandlerServer(@Named(Constants.HandlersNames.EXTERNAL) Set<HttpHandler> handlers, Configuration conf,
+                                RequestChannels requestChannels,
                                 final CConfiguration cConf,
                                 final TokenValidator tokenValidator,
                                 final AccessTokenTransformer accessTokenTransformer,
                                 final DiscoveryServiceClient discoveryServiceClient) {
-    super(handlers, conf, Constants.EXTERNAL_PORT,
+    super(handlers, conf, Constants.EXTERNAL_PORT, requestChannels,
           cConf, tokenValidator, accessTokenTransformer, discoveryServiceClient);
   }
 
@@ -47,10 +47,12 @@ abstract class HandlerServer extends AbstractIdleService {
 
   private static final String DECODER_CHANNEL_HANDLER_NAME = "decoder";
   private static final String AUTHENTICATION_CHANNEL_HANDLER_NAME = "access-token-authenticator";
+  private static final String REQUEST_CHANNELS_HANDLER_NAME = "request-channels";
 
   private final NettyHttpService httpService;
 
   HandlerServer(Set<HttpHandler> handlers, Configuration conf, String portKey,
+                final RequestChannels requestChannels,
                 final CConfiguration cConf,
                 final TokenValidator tokenValidator,
                 final AccessTokenTransformer accessTokenTransformer,
@@ -72,21 +74,22 @@ abstract class HandlerServer extends AbstractIdleService {
     builder.setExecThreadPoolSize(numExecThreads);
     builder.setBossThreadPoolSize(1);
     builder.setWorkerThreadPoolSize(numWorkerThreads);
-    if (securityEnabled) {
-      builder.modifyChannelPipeline(new Function<ChannelPipeline, ChannelPipeline>() {
-        @Nullable
-        @Override
-        public ChannelPipeline apply(@Nullable ChannelPipeline input) {
-          if (input == null) {
-            input = Channels.pipeline();
-          }
+    builder.modifyChannelPipeline(new Function<ChannelPipeline, ChannelPipeline>() {
+      @Nullable
+      @Override
+      public ChannelPipeline apply(@Nullable ChannelPipeline input) {
+        if (input == null) {
+          input = Channels.pipeline();
+        }
+        input.addAfter(DECODER_CHANNEL_HANDLER_NAME, REQUEST_CHANNELS_HANDLER_NAME, requestChannels);
+        if (securityEnabled) {
           input.addAfter(DECODER_CHANNEL_HANDLER_NAME, AUTHENTICATION_CHANNEL_HANDLER_NAME,
                          new SecurityAuthenticationHttpHandler(realm, tokenValidator, cConf, accessTokenTransformer,
                                                                discoveryServiceClient));
-          return input;
         }
-      });
-    }
+        return input;
+      }
+    });
 
     addSSLConfig(builder, conf);
     this.httpService = builder.build();
@@ -39,11 +39,12 @@ public class InternalHandlerServer extends HandlerServer {
 
   @Inject
   private InternalHandlerServer(@Named(Constants.HandlersNames.INTERNAL) Set<HttpHandler> handlers, Configuration conf,
+                                RequestChannels requestChannels,
                                 final CConfiguration cConf,
                                 final TokenValidator tokenValidator,
                                 final AccessTokenTransformer accessTokenTransformer,
                                 final DiscoveryServiceClient discoveryServiceClient) {
-    super(handlers, conf, Constants.INTERNAL_PORT,
+    super(handlers, conf, Constants.INTERNAL_PORT, requestChannels,
           cConf, tokenValidator, accessTokenTransformer, discoveryServiceClient);
   }
 
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.http;
+
+import com.google.common.collect.MapMaker;
+import com.google.inject.Singleton;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Channel handler that keeps track of the channel each request came in on, so that handlers that respond to a request
+ * some time after it came in can find out whether the client is still there to receive the response. Requests are
+ * only tracked for as long as they are referenced elsewhere.
+ */
+@Singleton
+@ChannelHandler.Sharable
+public class RequestChannels extends SimpleChannelUpstreamHandler {
+  // compares requests by identity
+  private final Map<HttpRequest, Channel> channels = new MapMaker().weakKeys().makeMap();
+
+  @Override
+  public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+    if (e.getMessage() instanceof HttpRequest) {
+      channels.put((HttpRequest) e.getMessage(), e.getChannel());
+    }
+    super.messageReceived(ctx, e);
+  }
+
+  /**
+   * Get the future that is done when the channel the given request came in on is closed.
+   *
+   * @param request Request to get the close future of the channel for.
+   * @return Close future of the channel of the request, or null if the request did not go through this handler.
+   */
+  @Nullable
+  public ChannelFuture getCloseFuture(HttpRequest request) {
+    Channel channel = channels.get(request);
+    return channel == null ? null : channel.getCloseFuture();
+  }
+}
@@ -16,6 +16,7 @@
 package co.cask.coopr.http.handler;
 
 import co.cask.coopr.account.Account;
+import co.cask.coopr.cluster.ClusterService;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.QueueMetrics;
 import co.cask.coopr.scheduler.task.TaskQueueService;
@@ -79,14 +80,16 @@ public class AdminHandler extends AbstractAuthHandler {
 
   private final EntityStoreService entityStoreService;
   private final TaskQueueService taskQueueService;
+  private final ClusterService clusterService;
   private final Gson gson;
 
   @Inject
   private AdminHandler(TenantStore tenantStore, EntityStoreService entityStoreService,
-                       TaskQueueService taskQueueService, Gson gson) {
+                       TaskQueueService taskQueueService, ClusterService clusterService, Gson gson) {
     super(tenantStore);
     this.taskQueueService = taskQueueService;
     this.entityStoreService = entityStoreService;
+    this.clusterService = clusterService;
     this.gson = gson;
   }
 
@@ -1038,6 +1041,7 @@ public class AdminHandler extends AbstractAuthHandler {
 
     try {
       entityStoreService.getView(account).deleteClusterTemplate(clustertemplateId);
+      clusterService.invalidateResolvedTemplate(account, clustertemplateId);
       responder.sendStatus(HttpResponseStatus.OK);
     } catch (IOException e) {
       responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR,
@@ -1076,6 +1080,7 @@ public class AdminHandler extends AbstractAuthHandler {
 
     try {
       entityStoreService.getView(account).deleteClusterTemplate(clustertemplateId, version);
+      clusterService.invalidateResolvedTemplate(account, clustertemplateId);
       responder.sendStatus(HttpResponseStatus.OK);
     } catch (IOException e) {
       responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR,
@@ -1781,6 +1786,7 @@ public class AdminHandler extends AbstractAuthHandler {
 
       for (ClusterTemplate clusterTemplate : view.getAllClusterTemplates()) {
         view.deleteClusterTemplate(clusterTemplate.getName());
+        clusterService.invalidateResolvedTemplate(account, clusterTemplate.getName());
       }
 
       for (PartialTemplate partialTemplate : view.getAllPartialTemplates()) {
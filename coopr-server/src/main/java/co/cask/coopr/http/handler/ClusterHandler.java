@@ -41,10 +41,13 @@ import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.cluster.ClusterStoreView;
+import co.cask.coopr.store.cluster.ClusterSummaryFilter;
+import co.cask.coopr.store.cluster.ClusterSummaryPage;
 import co.cask.coopr.store.tenant.TenantStore;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
@@ -53,6 +56,7 @@ import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.QueryStringDecoder;
@@ -62,6 +66,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -103,7 +108,13 @@ public class ClusterHandler extends AbstractAuthHandler {
    * Get all clusters visible to the user. Clients can include a status filter as an http param. The key is 'status'
    * and the value is a comma separated list of statuses. Clusters returned must be in one of the statuses given. If
    * no status param is given, all clusters will be returned. Valid values to include in a status filter
-   * are any one of {@link co.cask.coopr.cluster.Cluster.Status}.
+   * are any one of {@link co.cask.coopr.cluster.Cluster.Status}. Clusters can also be filtered by the name of their
+   * template with the 'template' param, and by their owner with the 'owner' param.
+   *
+   * Clusters are returned from the most recently created one to the least recently created one. Clients can page
+   * through them with the 'limit' param, which is the max number of clusters to return. If there may be more
+   * clusters, the response has a {@link Constants#NEXT_CURSOR_HEADER} header, whose value is given as the 'cursor'
+   * param to get the next page.
    *
    * @param request Request for clusters.
    * @param responder Responder for sending the response.
@@ -115,12 +126,37 @@ public class ClusterHandler extends AbstractAuthHandler {
       return;
     }
 
+    Set<Cluster.Status> statusFilter;
     try {
-      Set<Cluster.Status> statusFilter = getStatusFilter(request);
-      List<ClusterSummary> summaries = clusterService.getClusterSummaries(account, statusFilter);
-      responder.sendJson(HttpResponseStatus.OK, summaries, new TypeToken<List<ClusterSummary>>() { }.getType(), gson);
+      statusFilter = getStatusFilter(request);
     } catch (IllegalArgumentException e) {
       responder.sendError(HttpResponseStatus.BAD_REQUEST, "Invalid status requested.");
+      return;
+    }
+
+    Map<String, List<String>> queryParams = new QueryStringDecoder(request.getUri()).getParameters();
+    ClusterSummaryFilter filter;
+    try {
+      String limitStr = getQueryParam(queryParams, "limit");
+      int limit = limitStr == null ? 0 : Integer.parseInt(limitStr);
+      filter = new ClusterSummaryFilter(statusFilter, getQueryParam(queryParams, "template"),
+                                        getQueryParam(queryParams, "owner"), getQueryParam(queryParams, "cursor"),
+                                        limit);
+    } catch (IllegalArgumentException e) {
+      responder.sendError(HttpResponseStatus.BAD_REQUEST, "Invalid limit or cursor requested.");
+      return;
+    }
+
+    try {
+      ClusterSummaryPage page = clusterService.getClusterSummaries(account, filter);
+      Type summariesType = new TypeToken<List<ClusterSummary>>() { }.getType();
+      if (page.getNextCursor() != null) {
+        byte[] content = gson.toJson(page.getSummaries(), summariesType).getBytes(Charsets.UTF_8);
+        responder.sendContent(HttpResponseStatus.OK, ChannelBuffers.wrappedBuffer(content), "application/json",
+                              ImmutableMultimap.of(Constants.NEXT_CURSOR_HEADER, page.getNextCursor()));
+      } else {
+        responder.sendJson(HttpResponseStatus.OK, page.getSummaries(), summariesType, gson);
+      }
     } catch (IOException e) {
       LOG.error("Exception getting all clusters for account {}.", account);
       responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Exception getting clusters.");
@@ -862,6 +898,11 @@ public class ClusterHandler extends AbstractAuthHandler {
     return jobJson;
   }
 
+  private String getQueryParam(Map<String, List<String>> queryParams, String name) {
+    List<String> values = queryParams.get(name);
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+
   private Set<Cluster.Status> getStatusFilter(HttpRequest request) {
     Set<Cluster.Status> filter = Sets.newHashSet();
     Map<String, List<String>> queryParams = new QueryStringDecoder(request.getUri()).getParameters();
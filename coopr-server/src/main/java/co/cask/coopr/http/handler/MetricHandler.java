@@ -17,6 +17,7 @@
 package co.cask.coopr.http.handler;
 
 import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.metrics.MetricService;
 import co.cask.coopr.metrics.TimeSeries;
@@ -52,15 +53,18 @@ public class MetricHandler extends AbstractAuthHandler {
 
   private final ClusterStore clusterStore;
   private final Gson gson;
+  private final boolean useNodeUsageRollup;
 
   /**
    * Initializes a new instance of a MetricHandler.
    */
   @Inject
-  private MetricHandler(TenantStore tenantStore, ClusterStoreService clusterStoreService, Gson gson) {
+  private MetricHandler(TenantStore tenantStore, ClusterStoreService clusterStoreService, Gson gson,
+                        Configuration conf) {
     super(tenantStore);
     this.clusterStore = clusterStoreService.getSystemView();
     this.gson = gson;
+    this.useNodeUsageRollup = conf.getBoolean(Constants.Metrics.USAGE_ROLLUP_ENABLED);
   }
 
   /**
@@ -134,7 +138,7 @@ public class MetricHandler extends AbstractAuthHandler {
                                                      filters.get("clustertemplate"), startTime,
                                                      endTime, periodicity, timeUnit);
     try {
-      TimeSeries result = new MetricService(clusterStore).getNodesUsage(filter);
+      TimeSeries result = new MetricService(clusterStore, useNodeUsageRollup).getNodesUsage(filter);
       responder.sendJson(HttpResponseStatus.OK, result, TimeSeries.class, gson);
     }  catch (IOException e) {
       responder.sendString(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Unable to read data from the database");
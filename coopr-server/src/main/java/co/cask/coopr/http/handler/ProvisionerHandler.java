@@ -31,21 +31,27 @@ import co.cask.coopr.store.tenant.TenantStore;
 import co.cask.http.ChunkResponder;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.lang.reflect.Type;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -208,7 +214,7 @@ public final class ProvisionerHandler extends AbstractAuthHandler {
     Account account = new Account(Constants.ADMIN_USER, tenantId);
 
     ResourceType resourceTypeObj = new ResourceType(PluginType.AUTOMATOR, automatortypeId, resourceType);
-    sendResourceInChunks(responder, account, resourceTypeObj, name, version);
+    sendResource(request, responder, account, resourceTypeObj, name, version);
   }
 
   /**
@@ -233,7 +239,7 @@ public final class ProvisionerHandler extends AbstractAuthHandler {
     Account account = new Account(Constants.ADMIN_USER, tenantId);
 
     ResourceType resourceTypeObj = new ResourceType(PluginType.PROVIDER, providertypeId, resourceType);
-    sendResourceInChunks(responder, account, resourceTypeObj, name, version);
+    sendResource(request, responder, account, resourceTypeObj, name, version);
   }
 
   /**
@@ -321,38 +327,166 @@ public final class ProvisionerHandler extends AbstractAuthHandler {
     return result;
   }
 
-  private void sendResourceInChunks(HttpResponder responder, Account account,
-                                    ResourceType resourceType, String name, String versionStr) {
+  /**
+   * Send the contents of a resource. Resources the plugin store keeps in local files are sent straight from the file
+   * without copying them through the heap, and a single byte range of them can be requested. Their entity tag is
+   * the tag the plugin store keeps for their contents rather than the version number, as a version number can be given
+   * to different contents if the latest version is deleted and uploaded again. Requests for contents the client already
+   * has get a 304. Files the store has no tag for, and other resources, are sent without an entity tag.
+   */
+  private void sendResource(HttpRequest request, HttpResponder responder, Account account,
+                            ResourceType resourceType, String name, String versionStr) {
+    int version;
     try {
-      int version = Integer.parseInt(versionStr);
-      InputStream inputStream =
-        resourceService.getResourceInputStream(account, resourceType, name, version);
-      if (inputStream == null) {
-        LOG.error("No input stream available, but metadata exists for version {} of resource {} for tenant {}.",
-                  version, name, account.getTenantId());
-        responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error getting resource.");
-      }
-      try {
-        ChunkResponder chunkResponder = responder.sendChunkStart(
-          HttpResponseStatus.OK, ImmutableMultimap.<String, String>of());
-        while (true) {
-          byte[] chunkBytes = new byte[Constants.PLUGIN_RESOURCE_CHUNK_SIZE];
-          int bytesRead = inputStream.read(chunkBytes, 0, Constants.PLUGIN_RESOURCE_CHUNK_SIZE);
-          if (bytesRead == -1) {
-            break;
-          }
-          chunkResponder.sendChunk(ChannelBuffers.wrappedBuffer(chunkBytes, 0, bytesRead));
-        }
-        chunkResponder.close();
-      } finally {
-        inputStream.close();
-      }
+      version = Integer.parseInt(versionStr);
     } catch (NumberFormatException e) {
       responder.sendError(HttpResponseStatus.BAD_REQUEST, "Invalid version " + versionStr);
+      return;
+    }
+    try {
+      File file = resourceService.getResourceFile(account, resourceType, name, version);
+      if (file == null) {
+        sendResourceInChunks(responder, account, resourceType, name, version);
+        return;
+      }
+      String contentTag = resourceService.getResourceETag(account, resourceType, name, version);
+      String etag = contentTag == null ? null : "\"" + contentTag + "\"";
+      if (etag != null && etagMatches(request.getHeader(HttpHeaders.Names.IF_NONE_MATCH), etag)) {
+        responder.sendStatus(HttpResponseStatus.NOT_MODIFIED,
+                             ImmutableMultimap.of(HttpHeaders.Names.ETAG, etag));
+      } else {
+        sendResourceFile(request, responder, file, etag);
+      }
     } catch (IOException e) {
+      LOG.error("Exception sending version {} of resource {} of type {} for tenant {}.",
+                version, name, resourceType, account.getTenantId(), e);
       responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error getting resource.");
     } catch (MissingEntityException e) {
       responder.sendError(HttpResponseStatus.NOT_FOUND, "Resource not found.");
     }
   }
+
+  private void sendResourceFile(HttpRequest request, HttpResponder responder, File file, String etag)
+    throws IOException {
+    long length = file.length();
+    // a range for a different entity tag is for contents the client does not have, so it gets the whole resource
+    String ifRange = request.getHeader(HttpHeaders.Names.IF_RANGE);
+    long[] range = ifRange == null || ifRange.equals(etag) ?
+      parseByteRange(request.getHeader(HttpHeaders.Names.RANGE), length) : null;
+    ImmutableMultimap.Builder<String, String> headers = ImmutableMultimap.builder();
+    if (etag != null) {
+      headers.put(HttpHeaders.Names.ETAG, etag);
+    }
+    headers.put(HttpHeaders.Names.ACCEPT_RANGES, HttpHeaders.Values.BYTES);
+
+    if (range == null) {
+      // written to the channel as a file region, so the contents never pass through the heap
+      responder.sendFile(file, headers.build());
+    } else if (range.length == 0) {
+      responder.sendStatus(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+                           ImmutableMultimap.of(HttpHeaders.Names.CONTENT_RANGE, "bytes */" + length));
+    } else {
+      // the range is memory mapped instead of read, so its contents do not pass through the heap either
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+      try {
+        MappedByteBuffer contents =
+          randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0] + 1);
+        responder.sendContent(HttpResponseStatus.PARTIAL_CONTENT, ChannelBuffers.wrappedBuffer(contents),
+                              "application/octet-stream",
+                              headers.put(HttpHeaders.Names.CONTENT_RANGE,
+                                          "bytes " + range[0] + "-" + range[1] + "/" + length).build());
+      } finally {
+        randomAccessFile.close();
+      }
+    }
+  }
+
+  private void sendResourceInChunks(HttpResponder responder, Account account, ResourceType resourceType,
+                                    String name, int version) throws IOException, MissingEntityException {
+    InputStream inputStream = resourceService.getResourceInputStream(account, resourceType, name, version);
+    if (inputStream == null) {
+      LOG.error("No input stream available, but metadata exists for version {} of resource {} for tenant {}.",
+                version, name, account.getTenantId());
+      responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error getting resource.");
+      return;
+    }
+    try {
+      ChunkResponder chunkResponder = responder.sendChunkStart(
+        HttpResponseStatus.OK, ImmutableMultimap.<String, String>of());
+      while (true) {
+        byte[] chunkBytes = new byte[Constants.PLUGIN_RESOURCE_CHUNK_SIZE];
+        int bytesRead = inputStream.read(chunkBytes, 0, Constants.PLUGIN_RESOURCE_CHUNK_SIZE);
+        if (bytesRead == -1) {
+          break;
+        }
+        chunkResponder.sendChunk(ChannelBuffers.wrappedBuffer(chunkBytes, 0, bytesRead));
+      }
+      chunkResponder.close();
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  // whether the If-None-Match header value matches the entity tag, using the weak comparison
+  private static boolean etagMatches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+      if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parse the value of a Range header holding a single byte range, as in 'bytes=0-499', 'bytes=500-' or 'bytes=-500'.
+   *
+   * @param range Value of the Range header, or null if there is none
+   * @param length Length of the resource in bytes
+   * @return Positions of the first and last byte of the range, an empty array if the range cannot be satisfied, or
+   *         null if there is no single valid byte range, in which case the whole resource is sent
+   */
+  private static long[] parseByteRange(String range, long length) {
+    String prefix = HttpHeaders.Values.BYTES + "=";
+    if (range == null || !range.startsWith(prefix) || range.indexOf(',') >= 0) {
+      return null;
+    }
+    String spec = range.substring(prefix.length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+    String firstStr = spec.substring(0, dash).trim();
+    String lastStr = spec.substring(dash + 1).trim();
+    long first;
+    long last;
+    try {
+      if (firstStr.isEmpty()) {
+        // suffix range, for the last bytes of the resource
+        long suffixLength = Long.parseLong(lastStr);
+        if (suffixLength < 0) {
+          return null;
+        }
+        first = Math.max(0, length - suffixLength);
+        last = suffixLength == 0 ? -1 : length - 1;
+      } else {
+        first = Long.parseLong(firstStr);
+        last = lastStr.isEmpty() ? length - 1 : Long.parseLong(lastStr);
+        if (first < 0 || last < first) {
+          return null;
+        }
+        last = Math.min(last, length - 1);
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if (first >= length || last < first) {
+      return new long[0];
+    }
+    // a mapped range is limited in size, the client can ask for the rest in another request
+    last = Math.min(last, first + Integer.MAX_VALUE - 1);
+    return new long[] { first, last };
+  }
 }
@@ -17,20 +17,32 @@ package co.cask.coopr.http.handler;
 
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.http.HttpHelper;
+import co.cask.coopr.http.RequestChannels;
 import co.cask.coopr.http.request.FinishTaskRequest;
 import co.cask.coopr.http.request.TakeTaskRequest;
+import co.cask.coopr.http.request.TakeTasksRequest;
 import co.cask.coopr.scheduler.task.MissingEntityException;
 import co.cask.coopr.scheduler.task.TaskQueueService;
 import co.cask.http.AbstractHttpHandler;
 import co.cask.http.HttpResponder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 
@@ -40,13 +52,17 @@ import javax.ws.rs.Path;
 @Path(Constants.API_BASE + "/tasks")
 public final class TaskHandler extends AbstractHttpHandler {
   private static final Logger LOG = LoggerFactory.getLogger(TaskHandler.class);
+  private static final Type FINISH_REQUESTS_TYPE = new TypeToken<List<FinishTaskRequest>>() { }.getType();
+  private static final Type TASK_IDS_TYPE = new TypeToken<Set<String>>() { }.getType();
 
   private final Gson gson;
   private final TaskQueueService taskQueueService;
+  private final RequestChannels requestChannels;
 
   @Inject
-  private TaskHandler(TaskQueueService taskQueueService, Gson gson) {
+  private TaskHandler(TaskQueueService taskQueueService, RequestChannels requestChannels, Gson gson) {
     this.taskQueueService = taskQueueService;
+    this.requestChannels = requestChannels;
     this.gson = gson;
   }
 
@@ -54,22 +70,60 @@ public final class TaskHandler extends AbstractHttpHandler {
    * Take a task from the queue to execute. Post body must contain a workerId key, which must also be passed back
    * when finishing a task. Tasks are returned as a json object with taskId, jobId, clusterId, taskName and nodeId
    * as key value pairs, and with a config key whose value is a json object with all the configuration settings.
+   * If there is no task to take, a 204 is returned. The post body may contain a maxWaitMs key, in which case the
+   * request waits up to that many milliseconds for a task to be queued before returning a 204. If the connection is
+   * closed while waiting, the take is given up, and a task that was taken for it is put back in the queue.
    *
    * @param request The request to take a task.
    * @param responder Responder to send the response.
    */
   @POST
   @Path("/take")
-  public void handleTakeTask(HttpRequest request, HttpResponder responder) {
+  public void handleTakeTask(HttpRequest request, final HttpResponder responder) {
     TakeTaskRequest takeRequest = HttpHelper.decodeRequestBody(request, responder, TakeTaskRequest.class, gson);
+    if (takeRequest == null) {
+      return;
+    }
 
     try {
-      String taskJson = taskQueueService.takeNextClusterTask(takeRequest);
-      if (taskJson == null) {
-        responder.sendStatus(HttpResponseStatus.NO_CONTENT);
+      if (takeRequest.getMaxWaitMs() > 0) {
+        final ListenableFuture<String> take = taskQueueService.waitForNextClusterTask(takeRequest);
+        final ChannelFuture closeFuture = requestChannels.getCloseFuture(request);
+        final ChannelFutureListener closeListener = new ChannelFutureListener() {
+          @Override
+          public void operationComplete(ChannelFuture future) {
+            take.cancel(false);
+          }
+        };
+        if (closeFuture != null) {
+          closeFuture.addListener(closeListener);
+        }
+        Futures.addCallback(take, new FutureCallback<String>() {
+          @Override
+          public void onSuccess(String taskJson) {
+            // the connection is usually kept open for the next take
+            if (closeFuture != null) {
+              closeFuture.removeListener(closeListener);
+            }
+            sendTask(responder, taskJson);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (t instanceof CancellationException) {
+              // there is no one left to respond to
+              return;
+            }
+            if (closeFuture != null) {
+              closeFuture.removeListener(closeListener);
+            }
+            LOG.error("Exception while taking task.", t);
+            responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error taking task.");
+          }
+        });
         return;
       }
-      responder.sendString(HttpResponseStatus.OK, taskJson);
+      sendTask(responder, taskQueueService.takeNextClusterTask(takeRequest));
     } catch (IOException e) {
       LOG.error("Exception while taking task.", e);
       responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error taking task.");
@@ -79,6 +133,42 @@ public final class TaskHandler extends AbstractHttpHandler {
     }
   }
 
+  /**
+   * Take tasks from the queue for several workers of a provisioner at once, one task per worker. Post body must contain
+   * provisionerId, tenantId and workerIds keys, where workerIds is a list of the workers to take tasks for. Tasks are
+   * returned as a json object with a key for each worker that got a task, whose value is the task as it would be
+   * returned by a take for the worker alone. If no worker got a task, a 204 is returned.
+   *
+   * @param request The request to take tasks.
+   * @param responder Responder to send the response.
+   */
+  @POST
+  @Path("/takeBatch")
+  public void handleTakeTasks(HttpRequest request, HttpResponder responder) {
+    TakeTasksRequest takeRequest = HttpHelper.decodeRequestBody(request, responder, TakeTasksRequest.class, gson);
+    if (takeRequest == null) {
+      return;
+    }
+
+    try {
+      sendTask(responder, taskQueueService.takeNextClusterTasks(takeRequest));
+    } catch (IOException e) {
+      LOG.error("Exception while taking tasks.", e);
+      responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error taking tasks.");
+    } catch (MissingEntityException e) {
+      responder.sendError(HttpResponseStatus.FORBIDDEN, "Provisioner " + takeRequest.getProvisionerId()
+        + " is not registered.");
+    }
+  }
+
+  private void sendTask(HttpResponder responder, String taskJson) {
+    if (taskJson == null) {
+      responder.sendStatus(HttpResponseStatus.NO_CONTENT);
+      return;
+    }
+    responder.sendString(HttpResponseStatus.OK, taskJson);
+  }
+
   /**
    * Finish a previously taken task by reporting a status code for execution of the task. Post body must contain
    * "workerId", "taskId", and "status" keys or a 400 is returned. A non-zero status indicates task failure.
@@ -117,4 +207,37 @@ public final class TaskHandler extends AbstractHttpHandler {
         + " is not registered.");
     }
   }
+
+  /**
+   * Finish several previously taken tasks at once. Post body must be a json array of objects that each have the keys
+   * of the post body of a single finish. Returns a json array with the ids of the tasks that were finished. Tasks whose
+   * worker id does not match the worker that took the task are left out, and do not keep the other tasks from being
+   * finished.
+   *
+   * @param request The request to finish tasks.
+   * @param responder Responder to send the response.
+   */
+  @POST
+  @Path("/finishBatch")
+  public void handleFinishTasks(HttpRequest request, HttpResponder responder) {
+    List<FinishTaskRequest> finishRequests =
+      HttpHelper.decodeRequestBody(request, responder, FINISH_REQUESTS_TYPE, gson);
+    if (finishRequests == null) {
+      return;
+    }
+
+    LOG.trace("Got task finishes {}", finishRequests);
+
+    try {
+      responder.sendJson(HttpResponseStatus.OK, taskQueueService.finishClusterTasks(finishRequests),
+                         TASK_IDS_TYPE, gson);
+    } catch (IllegalArgumentException e) {
+      responder.sendError(HttpResponseStatus.BAD_REQUEST, e.getMessage());
+    } catch (IOException e) {
+      LOG.error("Exception finishing tasks.", e);
+      responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error finishing tasks.");
+    } catch (MissingEntityException e) {
+      responder.sendError(HttpResponseStatus.FORBIDDEN, e.getMessage());
+    }
+  }
 }
@@ -4,20 +4,28 @@ import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 
 /**
- * Request sent by provisioners for taking a task to perform.
+ * Request sent by provisioners for taking a task to perform. The request may ask to wait for a task to be queued if
+ * there is none to take right away.
  */
 public class TakeTaskRequest {
   private final String workerId;
   private final String provisionerId;
   private final String tenantId;
+  private final long maxWaitMs;
 
   public TakeTaskRequest(String workerId, String provisionerId, String tenantId) {
+    this(workerId, provisionerId, tenantId, null);
+  }
+
+  public TakeTaskRequest(String workerId, String provisionerId, String tenantId, Long maxWaitMs) {
     Preconditions.checkArgument(workerId != null && !workerId.isEmpty(), "workerId must be specified.");
     Preconditions.checkArgument(provisionerId != null && !provisionerId.isEmpty(), "provisionerId must be specified.");
     Preconditions.checkArgument(tenantId != null && !tenantId.isEmpty(), "tenantId must be specified.");
+    Preconditions.checkArgument(maxWaitMs == null || maxWaitMs >= 0, "maxWaitMs must not be negative.");
     this.workerId = workerId;
     this.provisionerId = provisionerId;
     this.tenantId = tenantId;
+    this.maxWaitMs = maxWaitMs == null ? 0 : maxWaitMs;
   }
 
   public String getWorkerId() {
@@ -32,6 +40,15 @@ public class TakeTaskRequest {
     return tenantId;
   }
 
+  /**
+   * Get the number of milliseconds to wait for a task to be queued if there is no task to take right away.
+   *
+   * @return Milliseconds to wait for a task, 0 to not wait
+   */
+  public long getMaxWaitMs() {
+    return maxWaitMs;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -45,11 +62,12 @@ public class TakeTaskRequest {
 
     return Objects.equal(workerId, that.workerId) &&
       Objects.equal(provisionerId, that.provisionerId) &&
-      Objects.equal(tenantId, that.tenantId);
+      Objects.equal(tenantId, that.tenantId) &&
+      maxWaitMs == that.maxWaitMs;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(workerId, provisionerId, tenantId);
+    return Objects.hashCode(workerId, provisionerId, tenantId, maxWaitMs);
   }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.http.request;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Request sent by provisioners for taking tasks for several of their workers at once, one task per worker.
+ */
+public class TakeTasksRequest {
+  private final List<String> workerIds;
+  private final String provisionerId;
+  private final String tenantId;
+
+  public TakeTasksRequest(List<String> workerIds, String provisionerId, String tenantId) {
+    Preconditions.checkArgument(workerIds != null && !workerIds.isEmpty(), "workerIds must be specified.");
+    Preconditions.checkArgument(provisionerId != null && !provisionerId.isEmpty(), "provisionerId must be specified.");
+    Preconditions.checkArgument(tenantId != null && !tenantId.isEmpty(), "tenantId must be specified.");
+    for (String workerId : workerIds) {
+      Preconditions.checkArgument(workerId != null && !workerId.isEmpty(), "workerIds must not be empty.");
+    }
+    this.workerIds = ImmutableList.copyOf(workerIds);
+    this.provisionerId = provisionerId;
+    this.tenantId = tenantId;
+  }
+
+  /**
+   * Get the ids of the workers to take tasks for, in the order tasks should be handed out to them.
+   *
+   * @return Ids of the workers to take tasks for
+   */
+  public List<String> getWorkerIds() {
+    return workerIds;
+  }
+
+  public String getProvisionerId() {
+    return provisionerId;
+  }
+
+  public String getTenantId() {
+    return tenantId;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof TakeTasksRequest)) {
+      return false;
+    }
+
+    TakeTasksRequest that = (TakeTasksRequest) o;
+
+    return Objects.equal(workerIds, that.workerIds) &&
+      Objects.equal(provisionerId, that.provisionerId) &&
+      Objects.equal(tenantId, that.tenantId);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(workerIds, provisionerId, tenantId);
+  }
+}
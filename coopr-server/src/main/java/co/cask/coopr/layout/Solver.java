@@ -197,7 +197,7 @@ public class Solver {
       if (service == null) {
         throw new IllegalArgumentException("service " + serviceName + " does not exist");
       }
-      map.put(serviceName, entityStore.getService(serviceName));
+      map.put(serviceName, service);
     }
     return map;
   }
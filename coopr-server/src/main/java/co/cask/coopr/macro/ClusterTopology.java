@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index of the nodes of a cluster by the services on them, used to evaluate service macros without
+ * scanning all cluster nodes for every macro. Build it once for a snapshot of the cluster nodes, and use it to expand
+ * all macros for that snapshot. It must not be used once the nodes of the cluster change.
+ */
+public final class ClusterTopology {
+  private static final Comparator<Node> NODE_NUM_COMPARATOR = new Comparator<Node>() {
+    @Override
+    public int compare(Node node1, Node node2) {
+      Integer nodenum1 = node1.getProperties().getNodenum();
+      Integer nodenum2 = node2.getProperties().getNodenum();
+      return nodenum1.compareTo(nodenum2);
+    }
+  };
+
+  private final Set<Node> nodes;
+  // nodes with the service, in the iteration order of the cluster nodes
+  private final Map<String, List<Node>> serviceNodes;
+  // nodes with the service, sorted by node number
+  private final Map<String, List<Node>> sortedServiceNodes;
+  // service -> node number -> instance number of the service on the node
+  private final Map<String, Map<Integer, Integer>> instanceNums;
+
+  /**
+   * Index the given cluster nodes.
+   *
+   * @param nodes all nodes of the cluster.
+   */
+  public ClusterTopology(Set<Node> nodes) {
+    this.nodes = Preconditions.checkNotNull(nodes, "Nodes to expand macros for must be given.");
+
+    Map<String, List<Node>> nodesByService = Maps.newHashMap();
+    for (Node node : nodes) {
+      Set<String> nodeServices = Sets.newHashSet();
+      for (Service service : node.getServices()) {
+        if (!nodeServices.add(service.getName())) {
+          continue;
+        }
+        List<Node> serviceNodeList = nodesByService.get(service.getName());
+        if (serviceNodeList == null) {
+          serviceNodeList = Lists.newArrayList();
+          nodesByService.put(service.getName(), serviceNodeList);
+        }
+        serviceNodeList.add(node);
+      }
+    }
+
+    ImmutableMap.Builder<String, List<Node>> serviceNodesBuilder = ImmutableMap.builder();
+    ImmutableMap.Builder<String, List<Node>> sortedServiceNodesBuilder = ImmutableMap.builder();
+    ImmutableMap.Builder<String, Map<Integer, Integer>> instanceNumsBuilder = ImmutableMap.builder();
+    for (Map.Entry<String, List<Node>> entry : nodesByService.entrySet()) {
+      serviceNodesBuilder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+      // the sort is stable, nodes with the same node number keep their order
+      List<Node> sorted = Lists.newArrayList(entry.getValue());
+      Collections.sort(sorted, NODE_NUM_COMPARATOR);
+      sortedServiceNodesBuilder.put(entry.getKey(), ImmutableList.copyOf(sorted));
+      Map<Integer, Integer> serviceInstanceNums = Maps.newHashMap();
+      for (int i = 0; i < sorted.size(); i++) {
+        int nodenum = sorted.get(i).getProperties().getNodenum();
+        if (!serviceInstanceNums.containsKey(nodenum)) {
+          serviceInstanceNums.put(nodenum, i + 1);
+        }
+      }
+      instanceNumsBuilder.put(entry.getKey(), ImmutableMap.copyOf(serviceInstanceNums));
+    }
+    this.serviceNodes = serviceNodesBuilder.build();
+    this.sortedServiceNodes = sortedServiceNodesBuilder.build();
+    this.instanceNums = instanceNumsBuilder.build();
+  }
+
+  /**
+   * Get all nodes of the cluster.
+   *
+   * @return all nodes of the cluster.
+   */
+  public Set<Node> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Get the nodes that have the given service on them, in the iteration order of the cluster nodes.
+   *
+   * @param service name of the service.
+   * @return immutable list of nodes with the service, empty if no node has the service.
+   */
+  public List<Node> getServiceNodes(String service) {
+    List<Node> nodeList = serviceNodes.get(service);
+    return nodeList == null ? ImmutableList.<Node>of() : nodeList;
+  }
+
+  /**
+   * Get the nodes that have the given service on them, sorted by node number.
+   *
+   * @param service name of the service.
+   * @return immutable list of nodes with the service, empty if no node has the service.
+   */
+  public List<Node> getSortedServiceNodes(String service) {
+    List<Node> nodeList = sortedServiceNodes.get(service);
+    return nodeList == null ? ImmutableList.<Node>of() : nodeList;
+  }
+
+  /**
+   * Get the instance number of the service on the given node. For example, suppose there are 3 nodes with zookeeper
+   * with node numbers 3, 7, and 17. The instance num of the node with node number 3 is 1, the instance num of the
+   * node with node number 7 is 2, and the instance num of the node with node number 17 is 3. Nodes are looked up by
+   * their node number.
+   *
+   * @param service name of the service.
+   * @param node node to find the instance number for.
+   * @return instance number of the service on the node, or -1 if the node does not have the service.
+   */
+  public int getServiceInstanceNum(String service, Node node) {
+    Map<Integer, Integer> serviceInstanceNums = instanceNums.get(service);
+    if (serviceInstanceNums == null) {
+      return -1;
+    }
+    Integer instanceNum = serviceInstanceNums.get(node.getProperties().getNodenum());
+    return instanceNum == null ? -1 : instanceNum;
+  }
+}
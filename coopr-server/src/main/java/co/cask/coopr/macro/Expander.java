@@ -55,7 +55,7 @@ public final class Expander {
    */
   public static void validate(String textWithMacros) throws SyntaxException {
     try {
-      expand(textWithMacros, null, null, null);
+      expand(textWithMacros, null, (ClusterTopology) null, null);
     } catch (IncompleteClusterException e) {
       // can never happen because expansion is skipped
     }
@@ -73,9 +73,25 @@ public final class Expander {
    * @throws IncompleteClusterException if a macro cannot be expanded because the cluster lacks the information.
    */
   public static String expand(String textWithMacros, Cluster cluster, Set<Node> nodes, Node node)
+    throws SyntaxException, IncompleteClusterException {
+    return expand(textWithMacros, cluster, nodes == null ? null : new ClusterTopology(nodes), node);
+  }
+
+  /**
+   * Given a text that may contain macros, validate and expand all macros in the context of the given index of the
+   * cluster nodes, and on the specified node. If the index is null, macros are only validated.
+   * @param textWithMacros text that may contain macros.
+   * @param cluster cluster to evaluate macros for.
+   * @param topology index of the cluster nodes to evaluate macros for.
+   * @param node cluster node to evaluate macros for.
+   * @return text with any relevant macros expanded.
+   * @throws SyntaxException if a macro is not wellformed.
+   * @throws IncompleteClusterException if a macro cannot be expanded because the cluster lacks the information.
+   */
+  public static String expand(String textWithMacros, Cluster cluster, @Nullable ClusterTopology topology, Node node)
     throws SyntaxException, IncompleteClusterException {
     int pos = 0;
-    StringBuilder builder = nodes == null ? null : new StringBuilder();
+    StringBuilder builder = topology == null ? null : new StringBuilder();
     boolean expansionHappened = false;
     while (pos < textWithMacros.length()) {
       // find the first macro
@@ -93,7 +109,7 @@ public final class Expander {
           Expression expression = new Parser(macro).parse();
           // if cluster is given, expand macro
           if (builder != null) {
-            String expansion = expression.evaluate(cluster, nodes, node);
+            String expansion = expression.evaluate(cluster, topology, node);
             if (expansion != null) {
               builder.append(expansion);
               expansionHappened = true;
@@ -150,6 +166,25 @@ public final class Expander {
    */
   public static JsonElement expand(JsonElement json, @Nullable java.util.List<String> path, Cluster cluster,
                                    Set<Node> nodes, Node node) throws SyntaxException, IncompleteClusterException {
+    return expand(json, path, cluster, nodes == null ? null : new ClusterTopology(nodes), node);
+  }
+
+  /**
+   * Same as {@link #expand(JsonElement, java.util.List, Cluster, Set, Node)}, but with an index of the cluster nodes
+   * that can be shared by all expansions for the same cluster nodes.
+   *
+   * @param json A JSON tree
+   * @param path the path to expand under
+   * @param cluster the cluster to use for expanding macros.
+   * @param topology index of the cluster nodes to use for expanding macros.
+   * @param node the cluster node to use for expanding macros.
+   * @return a new JSON tree if any expansion took place, and the original JSON tree otherwise.
+   * @throws SyntaxException if a macro expression is ill-formed.
+   * @throws IncompleteClusterException if the cluster does not have the meta data to expand all macros.
+   */
+  public static JsonElement expand(JsonElement json, @Nullable java.util.List<String> path, Cluster cluster,
+                                   @Nullable ClusterTopology topology, Node node)
+    throws SyntaxException, IncompleteClusterException {
 
     // if path is given,
     if (path != null && !path.isEmpty()) {
@@ -158,7 +193,7 @@ public final class Expander {
         JsonObject object = json.getAsJsonObject();
         JsonElement json1 = object.get(first);
         if (json1 != null) {
-          JsonElement expanded = expand(json1, path.subList(1, path.size()), cluster, nodes, node);
+          JsonElement expanded = expand(json1, path.subList(1, path.size()), cluster, topology, node);
           if (expanded != json1) {
             // only construct new json object if actual expansion happened
             JsonObject object1 = new JsonObject();
@@ -177,7 +212,7 @@ public final class Expander {
       JsonPrimitive primitive = json.getAsJsonPrimitive();
       if (primitive.isString()) {
         String value = primitive.getAsString();
-        String expanded = expand(value, cluster, nodes, node);
+        String expanded = expand(value, cluster, topology, node);
         if (!expanded.equals(value)) {
           // only return a new json element if actual expansion happened
           return new JsonPrimitive(expanded);
@@ -190,7 +225,7 @@ public final class Expander {
       JsonArray array1 = new JsonArray();
       boolean expansionHappened = false;
       for (JsonElement element : array) {
-        JsonElement expanded = expand(element, path, cluster, nodes, node);
+        JsonElement expanded = expand(element, path, cluster, topology, node);
         if (expanded != element) {
           expansionHappened = true;
         }
@@ -207,11 +242,11 @@ public final class Expander {
       JsonObject object1 = new JsonObject();
       boolean expansionHappened = false;
       for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
-        JsonElement expanded = expand(entry.getValue(), path, cluster, nodes, node);
+        JsonElement expanded = expand(entry.getValue(), path, cluster, topology, node);
         if (expanded != entry.getValue()) {
           expansionHappened = true;
         }
-        object1.add(entry.getKey(), expand(entry.getValue(), path, cluster, nodes, node));
+        object1.add(entry.getKey(), expanded);
       }
       if (expansionHappened) {
         return object1;
@@ -0,0 +1,298 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A JSON tree with all its macros parsed ahead of time, so that it can be expanded for many nodes of a cluster without
+ * scanning and parsing the tree again for every node. Expansion gives the same result as
+ * {@link Expander#expand(JsonElement, java.util.List, Cluster, Set, Node)} on the whole tree: subtrees without macros
+ * are shared with the original tree, and strings whose macros all fail to expand are left as they are.
+ *
+ * Macros that do not depend on the node are evaluated only once per {@link Binding}, so typical usage is to compile
+ * the cluster config once, bind it to the cluster and its nodes once, and then expand it for each node of a job stage.
+ */
+public final class ExpansionPlan {
+  private final JsonElement source;
+  // null if the tree does not contain any macro
+  private final Hole root;
+
+  private ExpansionPlan(JsonElement source, Hole root) {
+    this.source = source;
+    this.root = root;
+  }
+
+  /**
+   * Parse all macros in the given JSON tree.
+   *
+   * @param json the JSON tree to compile.
+   * @return plan for expanding the tree.
+   * @throws SyntaxException if a macro expression is ill-formed.
+   */
+  public static ExpansionPlan compile(JsonElement json) throws SyntaxException {
+    return new ExpansionPlan(json, compileElement(json));
+  }
+
+  /**
+   * Get the JSON tree the plan was compiled from.
+   *
+   * @return the unexpanded JSON tree.
+   */
+  public JsonElement getSource() {
+    return source;
+  }
+
+  /**
+   * Whether the compiled JSON tree contains any macros.
+   *
+   * @return true if there is anything to expand, false if expansion always returns the source tree.
+   */
+  public boolean hasMacros() {
+    return root != null;
+  }
+
+  /**
+   * Bind the plan to a cluster and its nodes, to expand it for nodes of that cluster.
+   *
+   * @param cluster the cluster to use for expanding macros.
+   * @param nodes the cluster nodes to use for expanding macros.
+   * @return binding of the plan to the cluster.
+   */
+  public Binding bind(Cluster cluster, Set<Node> nodes) {
+    return bind(cluster, new ClusterTopology(nodes));
+  }
+
+  /**
+   * Bind the plan to a cluster and an index of its nodes, to expand it for nodes of that cluster.
+   *
+   * @param cluster the cluster to use for expanding macros.
+   * @param topology index of the cluster nodes to use for expanding macros.
+   * @return binding of the plan to the cluster.
+   */
+  public Binding bind(Cluster cluster, ClusterTopology topology) {
+    return new Binding(cluster, Preconditions.checkNotNull(topology, "Nodes to expand macros for must be given."));
+  }
+
+  /**
+   * A plan bound to a cluster and its nodes. Caches the expansions of macros that do not depend on the node. Not thread
+   * safe, and should not be used once the cluster or its nodes change.
+   */
+  public final class Binding {
+    private final Cluster cluster;
+    private final ClusterTopology topology;
+    private final Map<Expression, String> clusterExpansions;
+
+    private Binding(Cluster cluster, ClusterTopology topology) {
+      this.cluster = cluster;
+      this.topology = topology;
+      // keyed by identity, every macro occurrence in the tree has its own expression
+      this.clusterExpansions = Maps.newIdentityHashMap();
+    }
+
+    /**
+     * Expand all macros of the tree on the specified node.
+     *
+     * @param node the cluster node to use for expanding macros.
+     * @return a new JSON tree if any expansion took place, and the original JSON tree otherwise.
+     * @throws IncompleteClusterException if the cluster does not have the meta data to expand all macros.
+     */
+    public JsonElement expand(Node node) throws IncompleteClusterException {
+      return root == null ? source : root.expand(this, node);
+    }
+
+    private String evaluate(Expression expression, Node node) throws IncompleteClusterException {
+      if (expression.isNodeSpecific()) {
+        return expression.evaluate(cluster, topology, node);
+      }
+      // null is a valid expansion, hence check for the key
+      if (clusterExpansions.containsKey(expression)) {
+        return clusterExpansions.get(expression);
+      }
+      String expansion = expression.evaluate(cluster, topology, node);
+      clusterExpansions.put(expression, expansion);
+      return expansion;
+    }
+  }
+
+  /**
+   * Returns the hole for the given element, or null if the element does not contain any macro.
+   */
+  private static Hole compileElement(JsonElement json) throws SyntaxException {
+    if (json.isJsonPrimitive()) {
+      JsonPrimitive primitive = json.getAsJsonPrimitive();
+      return primitive.isString() ? compileString(primitive) : null;
+    }
+    if (json.isJsonArray()) {
+      JsonArray array = json.getAsJsonArray();
+      Hole[] children = new Hole[array.size()];
+      boolean hasMacros = false;
+      for (int i = 0; i < children.length; i++) {
+        children[i] = compileElement(array.get(i));
+        hasMacros |= children[i] != null;
+      }
+      return hasMacros ? new ArrayHole(array, children) : null;
+    }
+    if (json.isJsonObject()) {
+      JsonObject object = json.getAsJsonObject();
+      Map<String, Hole> children = Maps.newHashMap();
+      for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+        Hole child = compileElement(entry.getValue());
+        if (child != null) {
+          children.put(entry.getKey(), child);
+        }
+      }
+      return children.isEmpty() ? null : new ObjectHole(object, children);
+    }
+    return null;
+  }
+
+  /**
+   * Splits the string into literal text and macros the same way {@link Expander#expand(String, Cluster, Set, Node)}
+   * does. Returns null if the string does not contain any macro.
+   */
+  private static Hole compileString(JsonPrimitive primitive) throws SyntaxException {
+    String text = primitive.getAsString();
+    List<String> literals = Lists.newArrayList();
+    List<Expression> expressions = Lists.newArrayList();
+    int pos = 0;
+    while (pos < text.length()) {
+      int pos1 = Expander.findNextPercent(text, pos);
+      if (pos1 < 0) {
+        break;
+      }
+      int pos2 = Expander.findNextPercent(text, pos1 + 1);
+      if (pos2 < 0) {
+        break;
+      }
+      literals.add(text.substring(pos, pos1));
+      expressions.add(new Parser(text.substring(pos1 + 1, pos2)).parse());
+      pos = pos2 + 1;
+    }
+    if (expressions.isEmpty()) {
+      return null;
+    }
+    literals.add(text.substring(pos));
+    return new StringHole(primitive, ImmutableList.copyOf(literals), ImmutableList.copyOf(expressions));
+  }
+
+  /**
+   * Part of the tree that contains macros.
+   */
+  private interface Hole {
+    JsonElement expand(Binding binding, Node node) throws IncompleteClusterException;
+  }
+
+  /**
+   * A string with macros. Literal text i precedes expression i, the last literal follows the last expression.
+   */
+  private static final class StringHole implements Hole {
+    private final JsonPrimitive original;
+    private final List<String> literals;
+    private final List<Expression> expressions;
+
+    private StringHole(JsonPrimitive original, List<String> literals, List<Expression> expressions) {
+      this.original = original;
+      this.literals = literals;
+      this.expressions = expressions;
+    }
+
+    @Override
+    public JsonElement expand(Binding binding, Node node) throws IncompleteClusterException {
+      StringBuilder builder = new StringBuilder();
+      boolean expansionHappened = false;
+      for (int i = 0; i < expressions.size(); i++) {
+        builder.append(literals.get(i));
+        String expansion = binding.evaluate(expressions.get(i), node);
+        if (expansion != null) {
+          builder.append(expansion);
+          expansionHappened = true;
+        }
+      }
+      if (!expansionHappened) {
+        return original;
+      }
+      builder.append(literals.get(literals.size() - 1));
+      String expanded = builder.toString();
+      return expanded.equals(original.getAsString()) ? original : new JsonPrimitive(expanded);
+    }
+  }
+
+  /**
+   * An array with macros in some of its elements. Elements without macros have a null hole.
+   */
+  private static final class ArrayHole implements Hole {
+    private final JsonArray original;
+    private final Hole[] children;
+
+    private ArrayHole(JsonArray original, Hole[] children) {
+      this.original = original;
+      this.children = children;
+    }
+
+    @Override
+    public JsonElement expand(Binding binding, Node node) throws IncompleteClusterException {
+      JsonArray array = new JsonArray();
+      boolean expansionHappened = false;
+      for (int i = 0; i < children.length; i++) {
+        JsonElement element = original.get(i);
+        JsonElement expanded = children[i] == null ? element : children[i].expand(binding, node);
+        expansionHappened |= expanded != element;
+        array.add(expanded);
+      }
+      return expansionHappened ? array : original;
+    }
+  }
+
+  /**
+   * An object with macros in some of its values, keyed by the names of those values.
+   */
+  private static final class ObjectHole implements Hole {
+    private final JsonObject original;
+    private final Map<String, Hole> children;
+
+    private ObjectHole(JsonObject original, Map<String, Hole> children) {
+      this.original = original;
+      this.children = children;
+    }
+
+    @Override
+    public JsonElement expand(Binding binding, Node node) throws IncompleteClusterException {
+      JsonObject object = new JsonObject();
+      boolean expansionHappened = false;
+      for (Map.Entry<String, JsonElement> entry : original.entrySet()) {
+        Hole child = children.get(entry.getKey());
+        JsonElement expanded = child == null ? entry.getValue() : child.expand(binding, node);
+        expansionHappened |= expanded != entry.getValue();
+        object.add(entry.getKey(), expanded);
+      }
+      return expansionHappened ? object : original;
+    }
+  }
+}
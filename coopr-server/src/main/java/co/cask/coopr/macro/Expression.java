@@ -18,6 +18,7 @@ package co.cask.coopr.macro;
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.macro.eval.Evaluator;
+import co.cask.coopr.macro.eval.NodeSpecificEvaluator;
 import com.google.common.base.Objects;
 
 import java.util.List;
@@ -64,9 +65,24 @@ public class Expression {
    * @throws IncompleteClusterException if a node is missing the property that is required for the lookup type.
    */
   public String evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
+    return evaluate(cluster, new ClusterTopology(clusterNodes), node);
+  }
+
+  /**
+   * Evaluate the expression for a given cluster, with an index of its nodes that can be shared by all expressions
+   * evaluated for the same cluster nodes.
+   *
+   * @param cluster the cluster to evaluate for.
+   * @param topology index of the nodes of the cluster to evaluate for.
+   * @param node the node of the cluster to evaluate the expression for.
+   * @return the replacement string for the expression, or null if the service required for replacement is not in
+   *         the cluster.
+   * @throws IncompleteClusterException if a node is missing the property that is required for the lookup type.
+   */
+  public String evaluate(Cluster cluster, ClusterTopology topology, Node node) throws IncompleteClusterException {
     StringBuilder builder = new StringBuilder();
 
-    List<String> parts = evaluator.evaluate(cluster, clusterNodes, node);
+    List<String> parts = evaluator.evaluate(cluster, topology, node);
     if (parts == null) {
       return null;
     }
@@ -80,6 +96,15 @@ public class Expression {
     return builder.toString();
   }
 
+  /**
+   * Whether the expression may evaluate to a different value for each node of a cluster.
+   *
+   * @return true if evaluation depends on the node, false if it only depends on the cluster and its nodes.
+   */
+  boolean isNodeSpecific() {
+    return evaluator instanceof NodeSpecificEvaluator;
+  }
+
   /**
    * Apply the format string to a substitute string and append it to a string builder.
    *
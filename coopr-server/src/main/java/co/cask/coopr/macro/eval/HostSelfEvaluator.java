@@ -17,19 +17,20 @@ package co.cask.coopr.macro.eval;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.ClusterTopology;
 import co.cask.coopr.macro.IncompleteClusterException;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * Evaluates a macro that expands to the hostname of the specified node.
  */
-public class HostSelfEvaluator implements Evaluator {
+public class HostSelfEvaluator implements NodeSpecificEvaluator {
 
   @Override
-  public List<String> evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
+  public List<String> evaluate(Cluster cluster, ClusterTopology topology, Node node)
+    throws IncompleteClusterException {
     String hostname = node.getProperties().getHostname();
     if (hostname == null) {
       return null;
@@ -17,13 +17,12 @@ package co.cask.coopr.macro.eval;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.ClusterTopology;
 import co.cask.coopr.macro.IncompleteClusterException;
-import co.cask.coopr.spec.service.Service;
 import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * Evaluates a macro that expands to be a list of the ip addresses of nodes in the cluster that contain a given
@@ -40,24 +39,19 @@ public class IPServiceEvaluator extends ServiceEvaluator {
   }
 
   @Override
-  public List<String> evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
+  public List<String> evaluate(Cluster cluster, ClusterTopology topology, Node node)
+    throws IncompleteClusterException {
     List<String> output = Lists.newArrayList();
     if (instanceNum != null) {
-      Node instanceNode = getNthServiceNode(clusterNodes, instanceNum);
+      Node instanceNode = getNthServiceNode(topology, instanceNum);
       output.add(instanceNode.getProperties().getIPAddress(ipType));
     } else {
-      // go through all nodes, looking for nodes with the service on it.
-      for (Node clusterNode : clusterNodes) {
-        for (Service service : clusterNode.getServices()) {
-          // if the node has the service on it, add the relevant node property.
-          if (serviceName.equals(service.getName())) {
-            String ip = clusterNode.getProperties().getIPAddress(ipType);
-            if (ip == null) {
-              throw new IncompleteClusterException("node " + clusterNode.getId() + " has no ip for macro expansion.");
-            }
-            output.add(ip);
-          }
+      for (Node serviceNode : topology.getServiceNodes(serviceName)) {
+        String ip = serviceNode.getProperties().getIPAddress(ipType);
+        if (ip == null) {
+          throw new IncompleteClusterException("node " + serviceNode.getId() + " has no ip for macro expansion.");
         }
+        output.add(ip);
       }
     }
     return output.isEmpty() ? null : output;
@@ -0,0 +1,23 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro.eval;
+
+/**
+ * Marker for evaluators whose result depends on the node the macro is expanded for, and not only on the cluster and
+ * its nodes. Macros with other evaluators expand to the same value for every node of a cluster.
+ */
+public interface NodeSpecificEvaluator extends Evaluator {
+}
@@ -17,26 +17,27 @@ package co.cask.coopr.macro.eval;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.ClusterTopology;
 import co.cask.coopr.macro.IncompleteClusterException;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * Evaluates a macro that expands to be the instance number of the given node that contains the given service. For
  * example, if there are 3 zookeeper nodes in the cluster, %instance.self.service.zookeeper% will evaluate to 1
  * for the first node with zookeeper, 2 for the second node with zookeeper, and 3 for the last node with zookeeper.
  */
-public class ServiceInstanceEvaluator extends ServiceEvaluator {
+public class ServiceInstanceEvaluator extends ServiceEvaluator implements NodeSpecificEvaluator {
 
   public ServiceInstanceEvaluator(String serviceName) {
     super(serviceName);
   }
 
   @Override
-  public List<String> evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
-    int instanceNum = getServiceInstanceNum(node, sortServiceNodes(clusterNodes));
+  public List<String> evaluate(Cluster cluster, ClusterTopology topology, Node node)
+    throws IncompleteClusterException {
+    int instanceNum = topology.getServiceInstanceNum(serviceName, node);
     if (instanceNum < 0) {
       return null;
     }
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.cask.coopr.metrics;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the {@link Interval}s of a {@link TimeSeries}. The first interval starts at the start date, the following
+ * ones at every multiple of the period, so the interval of any point in time is computed without searching through
+ * the intervals. Intervals are created as values are added to them.
+ */
+final class IntervalBuilder {
+  private final long startDate;
+  // 0 if there is a single interval
+  private final long period;
+  private final long firstBoundary;
+  private final List<Interval> intervals;
+
+  /**
+   * Create a builder.
+   *
+   * @param startDate start of the first interval in milliseconds
+   * @param period length of an interval in milliseconds, or 0 for a single interval
+   */
+  IntervalBuilder(long startDate, long period) {
+    this.startDate = startDate;
+    this.period = period;
+    this.firstBoundary = period == 0 ? Long.MAX_VALUE : startDate - startDate % period + period;
+    this.intervals = Lists.newArrayList();
+  }
+
+  /**
+   * Returns the index of the interval that contains the given time, which must not be before the start date.
+   */
+  int indexOf(long time) {
+    if (time < firstBoundary) {
+      return 0;
+    }
+    return 1 + (int) ((time - firstBoundary) / period);
+  }
+
+  /**
+   * Returns the start of the interval with the given index in milliseconds.
+   */
+  long getIntervalStart(int index) {
+    if (index == 0) {
+      return startDate;
+    }
+    return period == 0 ? Long.MAX_VALUE : firstBoundary + (index - 1) * period;
+  }
+
+  /**
+   * Adds a value to the interval with the given index.
+   */
+  void increaseValue(int index, long value) {
+    while (intervals.size() <= index) {
+      intervals.add(new Interval(TimeUnit.MILLISECONDS.toSeconds(getIntervalStart(intervals.size()))));
+    }
+    intervals.get(index).increaseValue(value);
+  }
+
+  /**
+   * Returns the intervals up to the given end date, including intervals without any value.
+   */
+  List<Interval> build(long endDate) {
+    // make sure there is an interval for every period up to the end, even if there was no usage in it
+    increaseValue(endDate > startDate ? indexOf(endDate - 1) : 0, 0);
+    return intervals;
+  }
+}
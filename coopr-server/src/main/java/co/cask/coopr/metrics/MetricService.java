@@ -16,16 +16,13 @@
 
 package co.cask.coopr.metrics;
 
-import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.spec.ProvisionerAction;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterTaskFilter;
 import org.apache.commons.lang3.time.DateUtils;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Iterator;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -46,135 +43,113 @@ public class MetricService {
   private static final long YEAR = MONTH * 12;
 
   private final ClusterStore clusterStore;
+  private final boolean useRollup;
 
-  public MetricService(ClusterStore clusterStore) {
+  /**
+   * Create a metric service.
+   *
+   * @param clusterStore store to read tasks and the node usage rollup from
+   * @param useRollup whether the node usage rollup is maintained and can be used
+   */
+  public MetricService(ClusterStore clusterStore, boolean useRollup) {
     this.clusterStore = clusterStore;
+    this.useRollup = useRollup;
   }
 
   /**
    * Calculate statistics of nodes usage for given {@link ClusterTaskFilter}.
    * The start and end times are inclusive.
-   * Loads all tasks with CREATE or DELETE {@link ProvisionerAction}. Then, for each node, calculates node live time:
-   * finished time of CREATE task to finished time of DELETE task or finished time of CREATE task to current time.
-   * If required, then overlays {@code filter}'s start and end date.
+   * Reads all tasks with CREATE or DELETE {@link ProvisionerAction} in order of their finish time. Then, for each node,
+   * calculates node live time: finished time of CREATE task to finished time of DELETE task or finished time of
+   * CREATE task to current time. If required, then overlays {@code filter}'s start and end date.
+   * Only nodes that are not deleted yet are kept in memory while reading the tasks.
+   * If the node usage rollup is used, usage grouped by a periodicity is read from the rollup instead, unless the
+   * filter is for a single cluster or the start or end are not aligned to the rollup buckets.
    *
    * @param filter the filter
    * @return {@link TimeSeries} that presents node live time usage
    */
   public TimeSeries getNodesUsage(ClusterTaskFilter filter) throws IOException {
-    //TODO: implement this functionality without keeping all tasks in memory.
-    List<ClusterTask> tasks = clusterStore.getClusterTasks(filter);
+    if (useRollup && filter.getPeriodicity() != null && filter.getClusterId() == null) {
+      TimeSeries timeSeries = getNodesUsageFromRollup(filter, System.currentTimeMillis());
+      if (timeSeries != null) {
+        return timeSeries;
+      }
+    }
     Long start = filter.getStart();
     Long end = filter.getEnd();
-    TimeUnit timeUnit = filter.getTimeUnit();
-    if (tasks.isEmpty()) {
-      long startTime = start != null ? start : 0;
-      return new TimeSeries(startTime, end != null ? end : TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
-                            Arrays.asList(new Interval(startTime)));
-    }
-    List<ClusterTask> createTasks = getTasksByName(tasks, ProvisionerAction.CREATE);
-    List<ClusterTask> deleteTasks = getTasksByName(tasks, ProvisionerAction.DELETE);
-    long startDate = start != null ? TimeUnit.SECONDS.toMillis(start) : createTasks.isEmpty() ?
-      0 : createTasks.get(0).getStatusTime();
-    long endDate = end != null ? TimeUnit.SECONDS.toMillis(end) : deleteTasks.isEmpty() ?
-      System.currentTimeMillis() : deleteTasks.get(deleteTasks.size() - 1).getStatusTime();
     Periodicity periodicity = filter.getPeriodicity();
-    long period;
-    if (periodicity == null) {
-      period = endDate;
-    } else {
-      period = getTimeStamp(periodicity);
-    }
-    final List<Interval> intervals = getIntervalList(startDate, endDate, period);
-    for (ClusterTask createTask : createTasks) {
-      long deleteTaskTime = getDeleteTaskTime(deleteTasks, createTask);
-      long localStart = Math.max(createTask.getStatusTime(), startDate);
-      long localEnd = Math.min(deleteTaskTime, endDate);
-      int currentIndex = getNearestIndex(intervals, localStart);
-      Interval current = intervals.get(currentIndex);
-      long currentTimeInMillis = TimeUnit.SECONDS.toMillis(current.getTime());
-      while (currentTimeInMillis + period < localEnd) {
-        long increaseTime = localStart < currentTimeInMillis ? period : period + currentTimeInMillis - localStart;
-        current.increaseValue(timeUnit.convert(increaseTime, TimeUnit.MILLISECONDS));
-        current = intervals.get(++currentIndex);
-        currentTimeInMillis = TimeUnit.SECONDS.toMillis(current.getTime());
-      }
-      long increaseTime = localStart < currentTimeInMillis ? localEnd - currentTimeInMillis : localEnd - localStart;
-      if (increaseTime > 0) {
-        current.increaseValue(timeUnit.convert(increaseTime, TimeUnit.MILLISECONDS));
-      }
-    }
-    return new TimeSeries(TimeUnit.MILLISECONDS.toSeconds(startDate),
-                          TimeUnit.MILLISECONDS.toSeconds(endDate), intervals);
+    NodeUsageAggregator aggregator =
+      new NodeUsageAggregator(start != null ? TimeUnit.SECONDS.toMillis(start) : null,
+                              end != null ? TimeUnit.SECONDS.toMillis(end) : null,
+                              periodicity == null ? 0 : getTimeStamp(periodicity),
+                              filter.getTimeUnit(), System.currentTimeMillis());
+    clusterStore.scanClusterTasks(filter, aggregator);
+    return aggregator.getTimeSeries();
   }
 
-  private long getDeleteTaskTime(List<ClusterTask> deleteTasks, ClusterTask createTask) {
-    ClusterTask result = null;
-    for (ClusterTask deleteTask : deleteTasks) {
-      if (createTask.getClusterId().equals(deleteTask.getClusterId()) &&
-        createTask.getNodeId().equals(deleteTask.getNodeId())) {
-        if (result == null) {
-          result = deleteTask;
-        } else if (deleteTask.getStatusTime() < result.getStatusTime()) {
-          result = deleteTask;
-        }
-      }
-    }
-    if (result == null) {
-      return System.currentTimeMillis();
+  /**
+   * Calculate statistics of nodes usage from the rollup of node usage, reading one row per bucket instead of
+   * one row per task. Returns null if the rollup cannot give the same result as the tasks would.
+   */
+  private TimeSeries getNodesUsageFromRollup(ClusterTaskFilter filter, long now) throws IOException {
+    long period = getTimeStamp(filter.getPeriodicity());
+    Long start = filter.getStart() == null ? null : TimeUnit.SECONDS.toMillis(filter.getStart());
+    Long end = filter.getEnd() == null ? null : TimeUnit.SECONDS.toMillis(filter.getEnd());
+    // day buckets can be used if every interval is made of whole days
+    boolean wholeDays = period >= DateUtils.MILLIS_PER_DAY && (start == null || start % DateUtils.MILLIS_PER_DAY == 0);
+    long bucketLength = wholeDays ? DateUtils.MILLIS_PER_DAY : DateUtils.MILLIS_PER_HOUR;
+    if (start != null && start % bucketLength != 0) {
+      return null;
     }
-    return result.getStatusTime();
-  }
 
-  private List<ClusterTask> getTasksByName(List<ClusterTask> tasks, ProvisionerAction name) {
-    List<ClusterTask> result = new ArrayList<ClusterTask>();
-    for (ClusterTask task : tasks) {
-      if (task.getTaskName().equals(name)) {
-        result.add(task);
-      }
+    NodeUsageBucket total = clusterStore.getNodeUsageTotal(filter, bucketLength, Long.MAX_VALUE);
+    if (total.getFirstCreateTime() == null) {
+      // no nodes at all, which needs the special handling of an empty time series
+      return null;
+    }
+    // nothing is live before the first create, so starting there is the same as starting at the start of its bucket
+    long startDate = start != null ? start : total.getFirstCreateTime();
+    long endDate = end != null ? end : total.getLastDeleteTime() != null ? total.getLastDeleteTime() : now;
+    long usageEnd = Math.min(now, endDate);
+    long liveNodes = 0;
+    if (start != null) {
+      NodeUsageBucket before = clusterStore.getNodeUsageTotal(filter, bucketLength, start);
+      liveNodes = before.getCreates() - before.getDeletes();
     }
-    return result;
-  }
 
-  /**
-   * Retrieves nearest smaller {@link Interval} from {@code intervals} for {@code key}.
-   *
-   * @param intervals the list of {@link Interval}s
-   * @param key the key
-   * @return nearest smaller {@link Interval}
-   */
-  private int getNearestIndex(List<Interval> intervals, long key) {
-    int index = -1;
-    for (Interval value : intervals) {
-      if (TimeUnit.SECONDS.toMillis(value.getTime()) <= key) {
-        index++;
+    IntervalBuilder intervals = new IntervalBuilder(startDate, period);
+    TimeUnit timeUnit = filter.getTimeUnit();
+    long bucketStart = startDate - startDate % bucketLength;
+    Iterator<NodeUsageBucket> buckets =
+      clusterStore.getNodeUsageBuckets(filter, bucketLength, bucketStart, usageEnd).iterator();
+    NodeUsageBucket bucket = buckets.hasNext() ? buckets.next() : null;
+    for (; bucketStart < usageEnd; bucketStart += bucketLength) {
+      long duration = Math.min(bucketLength, usageEnd - bucketStart);
+      long usage;
+      if (bucket != null && bucket.getStart() == bucketStart) {
+        if (duration < bucketLength && !endsBefore(bucket, usageEnd)) {
+          // tasks after the end in the same bucket cannot be told apart from the ones before it
+          return null;
+        }
+        usage = bucket.getUsage(liveNodes, duration);
+        liveNodes += bucket.getCreates() - bucket.getDeletes();
+        bucket = buckets.hasNext() ? buckets.next() : null;
       } else {
-        break;
+        usage = liveNodes * duration;
+      }
+      if (usage > 0) {
+        intervals.increaseValue(intervals.indexOf(Math.max(bucketStart, startDate)),
+                                timeUnit.convert(usage, TimeUnit.MILLISECONDS));
       }
     }
-    return index;
+    return new TimeSeries(TimeUnit.MILLISECONDS.toSeconds(startDate), TimeUnit.MILLISECONDS.toSeconds(endDate),
+                          intervals.build(endDate));
   }
 
-  /**
-   * Creates {@link List} of {@code Interval}s.
-   *
-   * @param start start of date period
-   * @param end end of date period
-   * @param period date period length in milliseconds
-   * @return {@link List} of {@code Interval}s
-   */
-  private List<Interval> getIntervalList(long start, long end, long period) {
-    List<Interval> intervals = new ArrayList<Interval>();
-    long currentStart = start;
-    long nextStart = start - start%period + period;
-    nextStart = nextStart < end ? nextStart : end;
-    while (nextStart < end) {
-      intervals.add(new Interval(TimeUnit.MILLISECONDS.toSeconds(currentStart)));
-      currentStart = nextStart;
-      nextStart = currentStart + period < end ? currentStart + period : end;
-    }
-    intervals.add(new Interval(TimeUnit.MILLISECONDS.toSeconds(currentStart)));
-    return intervals;
+  private boolean endsBefore(NodeUsageBucket bucket, long time) {
+    return (bucket.getLastCreateTime() == null || bucket.getLastCreateTime() <= time) &&
+      (bucket.getLastDeleteTime() == null || bucket.getLastDeleteTime() <= time);
   }
 
   private long getTimeStamp(Periodicity periodicity) {
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.cask.coopr.metrics;
+
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.store.ItemVisitor;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates node usage from completed CREATE and DELETE tasks, visited in order of their status time. Only nodes that
+ * are created but not yet deleted are kept in memory. The live time of a node is added to the intervals as soon as
+ * its DELETE task is seen, nodes that are never deleted are added when the time series is built.
+ */
+class NodeUsageAggregator implements ItemVisitor<ClusterTask> {
+  private final Long start;
+  private final Long end;
+  private final TimeUnit timeUnit;
+  // 0 if all usage goes into a single interval
+  private final long period;
+  private final long now;
+  // create time of nodes that are not deleted yet, keyed by cluster id and node id
+  private final Map<String, Long> openNodes;
+
+  private boolean tasksSeen;
+  private Long startDate;
+  private IntervalBuilder intervals;
+  private Long lastDeleteTime;
+
+  /**
+   * Create an aggregator.
+   *
+   * @param start start of the time series in milliseconds, or null to start at the first CREATE task
+   * @param end end of the time series in milliseconds, or null to end at the last DELETE task
+   * @param period length of an interval in milliseconds, or 0 for a single interval
+   * @param timeUnit unit of the interval values
+   * @param now current time in milliseconds, used as the delete time of nodes that are not deleted
+   */
+  NodeUsageAggregator(Long start, Long end, long period, TimeUnit timeUnit, long now) {
+    this.start = start;
+    this.end = end;
+    this.period = period;
+    this.timeUnit = timeUnit;
+    this.now = now;
+    this.openNodes = Maps.newHashMap();
+    if (start != null) {
+      setStartDate(start);
+    }
+  }
+
+  @Override
+  public void visit(ClusterTask task) {
+    tasksSeen = true;
+    String nodeKey = task.getClusterId() + "/" + task.getNodeId();
+    long statusTime = task.getStatusTime();
+    if (task.getTaskName() == ProvisionerAction.CREATE) {
+      if (startDate == null) {
+        setStartDate(statusTime);
+      }
+      if (!openNodes.containsKey(nodeKey)) {
+        openNodes.put(nodeKey, statusTime);
+      }
+    } else if (task.getTaskName() == ProvisionerAction.DELETE) {
+      lastDeleteTime = statusTime;
+      Long createTime = openNodes.remove(nodeKey);
+      if (createTime != null) {
+        // without an end, every delete time is before the end, which is the time of the last delete
+        addUsage(createTime, end == null ? statusTime : Math.min(statusTime, end));
+      }
+    }
+  }
+
+  /**
+   * Build the time series from all tasks visited so far.
+   *
+   * @return {@link TimeSeries} that presents node live time usage
+   */
+  TimeSeries getTimeSeries() {
+    if (!tasksSeen) {
+      long startTime = start != null ? TimeUnit.MILLISECONDS.toSeconds(start) : 0;
+      return new TimeSeries(startTime,
+                            end != null ? TimeUnit.MILLISECONDS.toSeconds(end) :
+                              TimeUnit.MILLISECONDS.toSeconds(now),
+                            Arrays.asList(new Interval(startTime)));
+    }
+    if (startDate == null) {
+      setStartDate(0);
+    }
+    long endDate = end != null ? end : lastDeleteTime != null ? lastDeleteTime : now;
+    for (long createTime : openNodes.values()) {
+      addUsage(createTime, Math.min(now, endDate));
+    }
+    return new TimeSeries(TimeUnit.MILLISECONDS.toSeconds(startDate), TimeUnit.MILLISECONDS.toSeconds(endDate),
+                          intervals.build(endDate));
+  }
+
+  private void setStartDate(long startDate) {
+    this.startDate = startDate;
+    this.intervals = new IntervalBuilder(startDate, period);
+  }
+
+  /**
+   * Adds the time between the given create and delete time of a node to the intervals it overlaps with.
+   */
+  private void addUsage(long createTime, long deleteTime) {
+    long from = Math.max(createTime, startDate);
+    if (deleteTime <= from) {
+      return;
+    }
+    int index = intervals.indexOf(from);
+    while (true) {
+      long intervalEnd = intervals.getIntervalStart(index + 1);
+      long to = Math.min(deleteTime, intervalEnd);
+      intervals.increaseValue(index, timeUnit.convert(to - from, TimeUnit.MILLISECONDS));
+      if (deleteTime <= intervalEnd) {
+        return;
+      }
+      from = intervalEnd;
+      index++;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.cask.coopr.metrics;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.time.DateUtils;
+
+import java.util.List;
+
+/**
+ * Rollup of the CREATE and DELETE tasks that completed within a bucket of time. Instead of the time of every task,
+ * a bucket keeps the number of tasks and the sum of their offsets from the start of the bucket, which is enough to
+ * compute the node usage in the bucket from the number of nodes that were live at its start.
+ */
+public class NodeUsageBucket {
+  /**
+   * Lengths of the buckets that the rollup is kept for, in milliseconds.
+   */
+  public static final List<Long> LENGTHS = ImmutableList.of(DateUtils.MILLIS_PER_HOUR, DateUtils.MILLIS_PER_DAY);
+
+  private final long start;
+  private final long creates;
+  private final long createOffsets;
+  private final long deletes;
+  private final long deleteOffsets;
+  private final Long firstCreateTime;
+  private final Long lastCreateTime;
+  private final Long lastDeleteTime;
+
+  public NodeUsageBucket(long start, long creates, long createOffsets, long deletes, long deleteOffsets,
+                         Long firstCreateTime, Long lastCreateTime, Long lastDeleteTime) {
+    this.start = start;
+    this.creates = creates;
+    this.createOffsets = createOffsets;
+    this.deletes = deletes;
+    this.deleteOffsets = deleteOffsets;
+    this.firstCreateTime = firstCreateTime;
+    this.lastCreateTime = lastCreateTime;
+    this.lastDeleteTime = lastDeleteTime;
+  }
+
+  /**
+   * Get the start time of the bucket in milliseconds.
+   *
+   * @return Start time of the bucket.
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * Get the number of nodes created in the bucket.
+   *
+   * @return Number of nodes created in the bucket.
+   */
+  public long getCreates() {
+    return creates;
+  }
+
+  /**
+   * Get the sum of the create times of nodes created in the bucket, relative to the start of the bucket.
+   *
+   * @return Sum of create time offsets in milliseconds.
+   */
+  public long getCreateOffsets() {
+    return createOffsets;
+  }
+
+  /**
+   * Get the number of nodes deleted in the bucket.
+   *
+   * @return Number of nodes deleted in the bucket.
+   */
+  public long getDeletes() {
+    return deletes;
+  }
+
+  /**
+   * Get the sum of the delete times of nodes deleted in the bucket, relative to the start of the bucket.
+   *
+   * @return Sum of delete time offsets in milliseconds.
+   */
+  public long getDeleteOffsets() {
+    return deleteOffsets;
+  }
+
+  /**
+   * Get the time of the first CREATE task in the bucket.
+   *
+   * @return Time of the first CREATE task in milliseconds, or null if there is none.
+   */
+  public Long getFirstCreateTime() {
+    return firstCreateTime;
+  }
+
+  /**
+   * Get the time of the last CREATE task in the bucket.
+   *
+   * @return Time of the last CREATE task in milliseconds, or null if there is none.
+   */
+  public Long getLastCreateTime() {
+    return lastCreateTime;
+  }
+
+  /**
+   * Get the time of the last DELETE task in the bucket, including DELETE tasks of nodes that were not created.
+   *
+   * @return Time of the last DELETE task in milliseconds, or null if there is none.
+   */
+  public Long getLastDeleteTime() {
+    return lastDeleteTime;
+  }
+
+  /**
+   * Get the node usage from the start of the bucket up to the given time, which must not be before any task in the
+   * bucket.
+   *
+   * @param liveNodes Number of nodes live at the start of the bucket.
+   * @param duration Time since the start of the bucket in milliseconds.
+   * @return Node usage in milliseconds.
+   */
+  public long getUsage(long liveNodes, long duration) {
+    return (liveNodes + creates - deletes) * duration - createOffsets + deleteOffsets;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("start", start)
+      .add("creates", creates)
+      .add("createOffsets", createOffsets)
+      .add("deletes", deletes)
+      .add("deleteOffsets", deleteOffsets)
+      .add("firstCreateTime", firstCreateTime)
+      .add("lastCreateTime", lastCreateTime)
+      .add("lastDeleteTime", lastDeleteTime)
+      .toString();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.cask.coopr.metrics;
+
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.store.ItemVisitor;
+import co.cask.coopr.store.cluster.ClusterStore;
+import co.cask.coopr.store.cluster.ClusterStoreService;
+import co.cask.coopr.store.cluster.ClusterTaskFilter;
+import com.google.common.base.Throwables;
+import com.google.inject.Inject;
+import org.apache.commons.lang3.time.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the rollup of node usage from the completed CREATE and DELETE tasks in the cluster store. Progress is kept
+ * in the store as the status time up to which tasks have been recorded, so that a backfill that was interrupted
+ * resumes where it left off, and the backfill does nothing once it has gone through all tasks. Recording a task more
+ * than once has no effect, so tasks that complete while the rollup is built, and are recorded by both the backfill and
+ * the task service, are only counted once.
+ */
+public class NodeUsageRollupBackfill implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(NodeUsageRollupBackfill.class);
+  private static final ClusterTaskFilter ALL_TASKS =
+    new ClusterTaskFilter(null, null, null, null, null, null, null, null);
+  // backfill time written once all tasks have been recorded
+  static final long COMPLETE = Long.MAX_VALUE;
+  // number of tasks to record between writes of the progress
+  private static final int PROGRESS_INTERVAL = 1000;
+
+  private final ClusterStore clusterStore;
+
+  @Inject
+  private NodeUsageRollupBackfill(ClusterStoreService clusterStoreService) {
+    this(clusterStoreService.getSystemView());
+  }
+
+  // for unit tests
+  NodeUsageRollupBackfill(ClusterStore clusterStore) {
+    this.clusterStore = clusterStore;
+  }
+
+  @Override
+  public void run() {
+    try {
+      Long backfillTime = clusterStore.getNodeUsageBackfillTime();
+      if (backfillTime != null && backfillTime == COMPLETE) {
+        LOG.debug("Node usage rollup already backfilled, no need to backfill it.");
+        return;
+      }
+      final long from = backfillTime == null ? 0 : backfillTime;
+      LOG.info("Backfilling node usage rollup from cluster tasks completed since {}...", from);
+      final AtomicLong numTasks = new AtomicLong();
+      clusterStore.scanClusterTasks(ALL_TASKS, from, new ItemVisitor<ClusterTask>() {
+        @Override
+        public void visit(ClusterTask task) {
+          try {
+            clusterStore.writeNodeUsage(task);
+            if (numTasks.incrementAndGet() % PROGRESS_INTERVAL == 0) {
+              // tasks are ordered by a status time that may not keep milliseconds, so only the tasks completed at
+              // least a second earlier are known to be recorded
+              clusterStore.writeNodeUsageBackfillTime(
+                Math.max(from, task.getStatusTime() - DateUtils.MILLIS_PER_SECOND));
+            }
+          } catch (IOException e) {
+            throw Throwables.propagate(e);
+          }
+        }
+      });
+      clusterStore.writeNodeUsageBackfillTime(COMPLETE);
+      LOG.info("Backfilled node usage rollup from {} cluster tasks.", numTasks.get());
+    } catch (Throwable e) {
+      LOG.error("Got exception while backfilling node usage rollup: ", e);
+    }
+  }
+}
@@ -5,35 +5,57 @@ import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.provisioner.plugin.ResourceCollection;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.NoConnectionReuseStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Service that makes http calls with retries to provisioners for different provisioner operations, such as
- * deleting a tenant or putting tenant information.
+ * deleting a tenant or putting tenant information. Connections to provisioners are pooled and kept alive between
+ * calls. Retries back off exponentially, and calls to multiple provisioners are made in parallel, each limited by the
+ * time its attempts and backoffs can take.
  */
 public class HttpProvisionerRequestService implements ProvisionerRequestService {
   private static final Logger LOG  = LoggerFactory.getLogger(HttpProvisionerRequestService.class);
   private static final String BASE_TENANT_PATH = Constants.API_BASE + "/tenants/";
+  // backoff between retries stops growing after this many doublings
+  private static final int MAX_BACKOFF_DOUBLINGS = 4;
   private final int maxRetries;
   private final long msBetweenRetries;
+  private final long maxCallMs;
   private final CloseableHttpClient httpClient;
+  private final ExecutorService executor;
+  private final Random random;
   private final Gson gson;
 
   @Inject
@@ -41,11 +63,38 @@ public class HttpProvisionerRequestService implements ProvisionerRequestService
     this.maxRetries = conf.getInt(Constants.PROVISIONER_REQUEST_MAX_RETRIES);
     this.msBetweenRetries = conf.getLong(Constants.PROVISIONER_REQUEST_MS_BETWEEN_RETRIES);
     int socketTimeout = conf.getInt(Constants.PROVISIONER_REQUEST_SOCKET_TIMEOUT_MS);
+    int numThreads = conf.getInt(Constants.PROVISIONER_REQUEST_THREADS);
 
+    // every attempt of a call waits for a pooled connection, connects, and reads within the timeout, with backoffs
+    // between attempts
+    long callMs = 0;
+    for (int attempt = 0; attempt < maxRetries; attempt++) {
+      callMs += 3L * socketTimeout + getMaxBackoffMs(attempt);
+    }
+    this.maxCallMs = callMs;
+
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(numThreads);
+    connectionManager.setDefaultMaxPerRoute(numThreads);
+    connectionManager.setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(socketTimeout).build());
     this.httpClient = HttpClients.custom()
-      .setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE)
-      .setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(socketTimeout).build())
+      .setConnectionManager(connectionManager)
+      .setDefaultRequestConfig(RequestConfig.custom()
+                                 .setConnectTimeout(socketTimeout)
+                                 .setSocketTimeout(socketTimeout)
+                                 .setConnectionRequestTimeout(socketTimeout)
+                                 // provisioners may have closed kept alive connections, for example on restart
+                                 .setStaleConnectionCheckEnabled(true)
+                                 .build())
       .build();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      numThreads, numThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+      new ThreadFactoryBuilder().setNameFormat("provisioner-request-%d").setDaemon(true).build(),
+      // calls that do not fit in the pool are made by the caller
+      new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    this.executor = executor;
+    this.random = new Random();
     this.gson = gson;
   }
 
@@ -101,6 +150,50 @@ public class HttpProvisionerRequestService implements ProvisionerRequestService
     return makeRequestWithRetries(put);
   }
 
+  @Override
+  public Set<String> putTenant(Collection<Provisioner> provisioners, final String tenantId,
+                               final ResourceCollection resourceCollection) {
+    Map<String, Future<Boolean>> calls = Maps.newHashMap();
+    for (final Provisioner provisioner : provisioners) {
+      calls.put(provisioner.getId(), executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return putTenant(provisioner, tenantId, resourceCollection);
+        }
+      }));
+    }
+    return getFailedCalls(calls);
+  }
+
+  // waits for the calls to complete, and returns the ids of the provisioners that the calls failed for
+  private Set<String> getFailedCalls(Map<String, Future<Boolean>> calls) {
+    long deadline = System.currentTimeMillis() + maxCallMs;
+    Set<String> failed = Sets.newHashSet();
+    for (Map.Entry<String, Future<Boolean>> call : calls.entrySet()) {
+      String provisionerId = call.getKey();
+      Future<Boolean> future = call.getValue();
+      try {
+        if (!future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+          failed.add(provisionerId);
+        }
+      } catch (TimeoutException e) {
+        LOG.error("Request to provisioner {} did not complete within {} ms.", provisionerId, maxCallMs);
+        future.cancel(true);
+        failed.add(provisionerId);
+      } catch (ExecutionException e) {
+        LOG.error("Exception making request to provisioner {}.", provisionerId, e.getCause());
+        failed.add(provisionerId);
+      } catch (InterruptedException e) {
+        for (Future<Boolean> otherFuture : calls.values()) {
+          otherFuture.cancel(true);
+        }
+        Thread.currentThread().interrupt();
+        throw Throwables.propagate(e);
+      }
+    }
+    return failed;
+  }
+
   private boolean makeRequestWithRetries(HttpRequestBase request) {
     int numRetried = 0;
     while (numRetried < maxRetries) {
@@ -118,8 +211,11 @@ public class HttpProvisionerRequestService implements ProvisionerRequestService
         request.releaseConnection();
       }
       numRetried++;
+      if (numRetried >= maxRetries) {
+        break;
+      }
       try {
-        TimeUnit.MILLISECONDS.sleep(msBetweenRetries);
+        TimeUnit.MILLISECONDS.sleep(getBackoffMs(numRetried - 1));
       } catch (InterruptedException e) {
         LOG.error("Sleep between retries interrupted.", e);
         Throwables.propagate(e);
@@ -129,9 +225,22 @@ public class HttpProvisionerRequestService implements ProvisionerRequestService
     return false;
   }
 
+  // the delay doubles with every retry, with up to half of it added at random so that retries to provisioners that
+  // failed at the same time are spread out
+  private long getBackoffMs(int retry) {
+    long delay = msBetweenRetries << Math.min(retry, MAX_BACKOFF_DOUBLINGS);
+    return delay + (long) (random.nextDouble() * delay / 2);
+  }
+
+  private long getMaxBackoffMs(int retry) {
+    return (msBetweenRetries << Math.min(retry, MAX_BACKOFF_DOUBLINGS)) * 3 / 2;
+  }
+
   private int makeRequest(HttpRequestBase request) throws IOException {
     CloseableHttpResponse response = httpClient.execute(request);
     try {
+      // the response must be read completely for the connection to be reused
+      EntityUtils.consume(response.getEntity());
       return response.getStatusLine().getStatusCode();
     } finally {
       response.close();
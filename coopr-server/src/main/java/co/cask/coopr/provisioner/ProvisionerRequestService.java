@@ -2,6 +2,9 @@ package co.cask.coopr.provisioner;
 
 import co.cask.coopr.provisioner.plugin.ResourceCollection;
 
+import java.util.Collection;
+import java.util.Set;
+
 /**
  * Service for making requests to provisioners.
  */
@@ -27,6 +30,18 @@ public interface ProvisionerRequestService {
    */
   boolean putTenant(Provisioner provisioner, String tenantId, ResourceCollection resourceCollection);
 
+  /**
+   * Make requests to the given provisioners to set the tenant information, such as number of workers and plugin
+   * resources they should be using. Requests to different provisioners are made in parallel, and this returns once
+   * all of them have completed or timed out.
+   *
+   * @param provisioners Provisioners to send the request to.
+   * @param tenantId Id of the tenant on the provisioners to write to.
+   * @param resourceCollection Metadata for all resources that can be used by the tenant workers for the provisioners.
+   * @return Ids of the provisioners the request was not successful for.
+   */
+  Set<String> putTenant(Collection<Provisioner> provisioners, String tenantId, ResourceCollection resourceCollection);
+
   /**
    * Make a request to the provisioner to set the number of workers for the given tenant.
    *
@@ -1,7 +1,6 @@
 package co.cask.coopr.provisioner;
 
 import co.cask.coopr.account.Account;
-import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.Element;
@@ -16,7 +15,7 @@ import co.cask.coopr.scheduler.task.MissingEntityException;
 import co.cask.coopr.spec.Tenant;
 import co.cask.coopr.spec.TenantSpecification;
 import co.cask.coopr.store.cluster.ClusterStoreService;
-import co.cask.coopr.store.cluster.ClusterStoreView;
+import co.cask.coopr.store.cluster.TenantClusterUsage;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.provisioner.ProvisionerStore;
 import co.cask.coopr.store.tenant.TenantStore;
@@ -196,18 +195,14 @@ public class TenantProvisionerService {
    * @return true if the tenant quotas would be satisfied, false if they would be exceeded.
    */
   public boolean satisfiesTenantQuotas(Tenant tenant, int additionalClusters, int additionalNodes) throws IOException {
-    ClusterStoreView view = clusterStoreService.getView(new Account(Constants.ADMIN_USER, tenant.getId()));
-    List<Cluster> nonTerminatedClusters = view.getNonTerminatedClusters();
+    TenantClusterUsage usage = clusterStoreService.getSystemView().getTenantClusterUsage(tenant.getId());
 
-    int numClusters = additionalClusters + nonTerminatedClusters.size();
+    int numClusters = additionalClusters + usage.getNumClusters();
     if (numClusters > tenant.getSpecification().getMaxClusters()) {
       return false;
     }
 
-    int numNodes = additionalNodes;
-    for (Cluster cluster : nonTerminatedClusters) {
-      numNodes += cluster.getNodeIDs().size();
-    }
+    int numNodes = additionalNodes + usage.getNumNodes();
     if (numNodes > tenant.getSpecification().getMaxNodes()) {
       return false;
     }
@@ -379,14 +374,7 @@ public class TenantProvisionerService {
   }
 
   private void syncProvisionerResources(String tenantId, ResourceCollection resourceCollection) throws IOException {
-    for (Provisioner provisioner : provisionerStore.getTenantProvisioners(tenantId)) {
-      if (!provisionerRequestService.putTenant(provisioner, tenantId, resourceCollection)) {
-        LOG.error("Could not write resource metadata for tenant {} to provisioner {}. " +
-                    "The provisioner appears broken, deleting it and rebalancing its tenant workers",
-                  tenantId, provisioner.getId());
-        deleteProvisioner(provisioner);
-      }
-    }
+    putTenant(provisionerStore.getTenantProvisioners(tenantId), tenantId, resourceCollection);
   }
 
   /**
@@ -430,24 +418,32 @@ public class TenantProvisionerService {
   // TODO: abstract out to support different types of balancing policies
   // Currently a greedy approach, just remove from first available.
   private void removeWorkers(String tenantId, int numToRemove, ResourceCollection resources) throws IOException {
-    // go through each provisioner, removing workers for the tenant until we've removed enough.
-    for (Provisioner provisioner : provisionerStore.getTenantProvisioners(tenantId)) {
-      int numRemoved = provisioner.tryRemoveTenantAssignments(tenantId, numToRemove);
-      if (numRemoved > 0) {
-        provisionerStore.writeProvisioner(provisioner);
-        LOG.debug("Requesting provisioner {} to set workers to {} for tenant {} (removing {})",
-                  provisioner.getId(), provisioner.getAssignedWorkers(tenantId), tenantId, numRemoved);
-        if (provisionerRequestService.putTenant(provisioner, tenantId, resources)) {
+    // go through each provisioner, removing workers for the tenant until we've removed enough, then tell all changed
+    // provisioners at once. Workers that could not be removed from a broken provisioner are removed from the
+    // remaining provisioners in another round.
+    while (numToRemove > 0) {
+      Map<String, Integer> removed = Maps.newHashMap();
+      List<Provisioner> changed = Lists.newArrayList();
+      for (Provisioner provisioner : provisionerStore.getTenantProvisioners(tenantId)) {
+        if (numToRemove <= 0) {
+          break;
+        }
+        int numRemoved = provisioner.tryRemoveTenantAssignments(tenantId, numToRemove);
+        if (numRemoved > 0) {
+          provisionerStore.writeProvisioner(provisioner);
+          LOG.debug("Requesting provisioner {} to set workers to {} for tenant {} (removing {})",
+                    provisioner.getId(), provisioner.getAssignedWorkers(tenantId), tenantId, numRemoved);
+          removed.put(provisioner.getId(), numRemoved);
+          changed.add(provisioner);
           numToRemove -= numRemoved;
-        } else {
-          // request failed with retries. something is wrong with the provisioner, delete it and rebalance its workers
-          // TODO: what if this fails?
-          LOG.error("Could not set workers for tenant {} to provisioner {}. " +
-                      "The provisioner appears broken, deleting it and rebalancing its tenant workers",
-                    tenantId, provisioner.getId());
-          deleteProvisioner(provisioner);
         }
       }
+      if (changed.isEmpty()) {
+        return;
+      }
+      for (Provisioner provisioner : putTenant(changed, tenantId, resources)) {
+        numToRemove += removed.get(provisioner.getId());
+      }
     }
   }
 
@@ -455,29 +451,32 @@ public class TenantProvisionerService {
   // Currently a greedy approach, just add to first available.
   private void addWorkers(String tenantId, int numToAdd, ResourceCollection resources)
     throws CapacityException, IOException {
-    for (Provisioner provisioner : provisionerStore.getProvisionersWithFreeCapacity()) {
-      if (numToAdd <= 0) {
-        break;
-      }
-      int numAdded = provisioner.tryAddTenantAssignments(tenantId, numToAdd);
-      if (numAdded > 0) {
-        provisionerStore.writeProvisioner(provisioner);
-        LOG.debug("Requesting provisioner {} to set workers to {} for tenant {} (adding {})",
-                  provisioner.getId(), provisioner.getAssignedWorkers(tenantId), tenantId, numAdded);
-        if (provisionerRequestService.putTenant(provisioner, tenantId, resources)) {
+    // go through each provisioner with free capacity, adding workers for the tenant until we've added enough, then
+    // tell all changed provisioners at once. Workers that could not be added to a broken provisioner are added to the
+    // remaining provisioners in another round.
+    while (numToAdd > 0) {
+      Map<String, Integer> added = Maps.newHashMap();
+      List<Provisioner> changed = Lists.newArrayList();
+      for (Provisioner provisioner : provisionerStore.getProvisionersWithFreeCapacity()) {
+        if (numToAdd <= 0) {
+          break;
+        }
+        int numAdded = provisioner.tryAddTenantAssignments(tenantId, numToAdd);
+        if (numAdded > 0) {
+          provisionerStore.writeProvisioner(provisioner);
+          LOG.debug("Requesting provisioner {} to set workers to {} for tenant {} (adding {})",
+                    provisioner.getId(), provisioner.getAssignedWorkers(tenantId), tenantId, numAdded);
+          added.put(provisioner.getId(), numAdded);
+          changed.add(provisioner);
           numToAdd -= numAdded;
-        } else {
-          // request failed with retries. something is wrong with the provisioner, delete it and rebalance its workers.
-          // Rebalancing will be queued, but will not be triggered until after this method finishes due to the
-          // lock that is held.
-          // TODO: what if this fails due to db failure or something of that sort?
-          // should be ok as long as the tenant balance task is in the queue and retried.
-          LOG.error("Could not set workers for tenant {} to provisioner {}. " +
-                      "The provisioner appears broken, deleting it and rebalancing its tenant workers",
-                    tenantId, provisioner.getId());
-          deleteProvisioner(provisioner);
         }
       }
+      if (changed.isEmpty()) {
+        break;
+      }
+      for (Provisioner provisioner : putTenant(changed, tenantId, resources)) {
+        numToAdd += added.get(provisioner.getId());
+      }
     }
     if (numToAdd > 0) {
       throw new CapacityException("Unable to add all " + numToAdd + " workers to tenant "
@@ -485,6 +484,35 @@ public class TenantProvisionerService {
     }
   }
 
+  /**
+   * Write the tenant to the given provisioners in parallel. Provisioners that could not be written to even with
+   * retries appear broken, so they are deleted and their workers rebalanced. Rebalancing will be queued, but will not
+   * be triggered until the tenant lock is released.
+   *
+   * @param provisioners Provisioners to write the tenant to
+   * @param tenantId Id of the tenant to write
+   * @param resources Plugin resources the tenant workers should use
+   * @return Provisioners that could not be written to and were deleted
+   * @throws IOException if there was an exception deleting a broken provisioner
+   */
+  private List<Provisioner> putTenant(Collection<Provisioner> provisioners, String tenantId,
+                                      ResourceCollection resources) throws IOException {
+    // TODO: what if deleting fails due to db failure or something of that sort?
+    // should be ok as long as the tenant balance task is in the queue and retried.
+    Set<String> failedIds = provisionerRequestService.putTenant(provisioners, tenantId, resources);
+    List<Provisioner> failed = Lists.newArrayList();
+    for (Provisioner provisioner : provisioners) {
+      if (failedIds.contains(provisioner.getId())) {
+        LOG.error("Could not write tenant {} to provisioner {}. " +
+                    "The provisioner appears broken, deleting it and rebalancing its tenant workers",
+                  tenantId, provisioner.getId());
+        deleteProvisioner(provisioner);
+        failed.add(provisioner);
+      }
+    }
+    return failed;
+  }
+
   /**
    * Create a new Provisioner object where the tenant ids have been replaced with tenant names for external
    * consumption.
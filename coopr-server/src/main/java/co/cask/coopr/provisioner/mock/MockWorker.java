@@ -18,9 +18,13 @@ package co.cask.coopr.provisioner.mock;
 import co.cask.coopr.spec.ProvisionerAction;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.io.CharStreams;
 import com.google.common.util.concurrent.AbstractScheduledService;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -35,12 +39,16 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Mock worker that periodically takes a task and finishes it without performing any actual work.
+ * Mock worker that periodically takes a task and finishes it without performing any actual work. A worker can also
+ * stand in for a pool of workers that take and finish their tasks together, with one request to take tasks for the
+ * whole pool and one request to finish them.
  */
 public class MockWorker extends AbstractScheduledService {
   private static final Gson GSON = new Gson();
@@ -52,28 +60,70 @@ public class MockWorker extends AbstractScheduledService {
   private final CloseableHttpClient httpClient;
   private final HttpPost finishRequest;
   private final HttpPost takeRequest;
-  private final long taskMs;
+  private final HttpPost finishBatchRequest;
+  private final HttpPost takeBatchRequest;
+  private final long minTaskMs;
+  private final long maxTaskMs;
   private final long msBetweenTasks;
   private final int failureRate;
   private final ScheduledExecutorService executorService;
   private final HttpContext httpContext;
+  private volatile long takeWaitMs;
+  private volatile int batchSize = 1;
 
   public MockWorker(String provisionerId, String workerId, String tenantId, String serverUrl,
                     ScheduledExecutorService executorService, long taskMs, long msBetweenTasks,
                     int failureRate, CloseableHttpClient httpClient) {
+    this(provisionerId, workerId, tenantId, serverUrl, executorService, taskMs, taskMs, msBetweenTasks,
+         failureRate, httpClient);
+  }
+
+  /**
+   * Create a worker that takes a random amount of time between the given minimum and maximum to perform a task.
+   */
+  public MockWorker(String provisionerId, String workerId, String tenantId, String serverUrl,
+                    ScheduledExecutorService executorService, long minTaskMs, long maxTaskMs, long msBetweenTasks,
+                    int failureRate, CloseableHttpClient httpClient) {
     this.provisionerId = provisionerId;
     this.workerId = workerId;
     this.tenantId = tenantId;
     this.executorService = executorService;
-    this.taskMs = taskMs;
+    this.minTaskMs = minTaskMs;
+    this.maxTaskMs = maxTaskMs;
     this.msBetweenTasks = msBetweenTasks;
     this.failureRate = failureRate;
     this.finishRequest = new HttpPost(String.format(serverUrl + "/tasks/finish"));
     this.takeRequest = new HttpPost(serverUrl + "/tasks/take");
+    this.finishBatchRequest = new HttpPost(serverUrl + "/tasks/finishBatch");
+    this.takeBatchRequest = new HttpPost(serverUrl + "/tasks/takeBatch");
     this.httpClient = httpClient;
     this.httpContext = HttpClientContext.create();
   }
 
+  /**
+   * Have the worker ask the server to wait up to the given number of milliseconds for a task to be queued when there
+   * is no task to take, instead of asking again after the time between tasks. Should be set before the worker is
+   * started.
+   *
+   * @param takeWaitMs Milliseconds to wait for a task, 0 to not wait
+   */
+  public void setTakeWaitMs(long takeWaitMs) {
+    this.takeWaitMs = takeWaitMs;
+  }
+
+  /**
+   * Have the worker stand in for a pool of the given number of workers, which take their tasks with one request and
+   * finish them with one request. The tasks of the pool are performed at the same time, so the pool waits for its
+   * longest task before finishing all of them. Workers of the pool have the id of this worker followed by a dash and
+   * their number in the pool. Should be set before the worker is started.
+   *
+   * @param batchSize Number of workers in the pool, 1 to take and finish tasks one by one
+   */
+  public void setBatchSize(int batchSize) {
+    Preconditions.checkArgument(batchSize > 0, "batch size must be positive.");
+    this.batchSize = batchSize;
+  }
+
   /**
    * Get the id of the worker.
    *
@@ -109,16 +159,52 @@ public class MockWorker extends AbstractScheduledService {
 
   @Override
   protected void runOneIteration() throws Exception {
+    if (batchSize > 1) {
+      runBatch();
+      return;
+    }
     JsonObject task = takeTask();
     if (task != null) {
       String taskId = task.get("taskId").getAsString();
       ProvisionerAction action = ProvisionerAction.valueOf(task.get("taskName").getAsString());
       LOG.info("got task {}", taskId);
-      TimeUnit.MILLISECONDS.sleep(taskMs);
+      TimeUnit.MILLISECONDS.sleep(randomTaskMs());
       finishTask(taskId, action);
     }
   }
 
+  private void runBatch() throws Exception {
+    List<String> poolWorkerIds = Lists.newArrayListWithCapacity(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      poolWorkerIds.add(provisionerId + "." + workerId + "-" + i);
+    }
+    JsonObject tasks = takeTasks(poolWorkerIds);
+    if (tasks == null) {
+      return;
+    }
+
+    JsonArray finishBodies = new JsonArray();
+    long longestTaskMs = 0;
+    for (Map.Entry<String, JsonElement> entry : tasks.entrySet()) {
+      JsonObject task = entry.getValue().getAsJsonObject();
+      String taskId = task.get("taskId").getAsString();
+      ProvisionerAction action = ProvisionerAction.valueOf(task.get("taskName").getAsString());
+      LOG.info("got task {} for worker {}", taskId, entry.getKey());
+      longestTaskMs = Math.max(longestTaskMs, randomTaskMs());
+      finishBodies.add(finishBody(entry.getKey(), taskId, action));
+    }
+    TimeUnit.MILLISECONDS.sleep(longestTaskMs);
+    finishTasks(finishBodies);
+  }
+
+  private long randomTaskMs() {
+    long taskMs = minTaskMs;
+    if (maxTaskMs > minTaskMs) {
+      taskMs += (long) (RANDOM.nextDouble() * (maxTaskMs - minTaskMs));
+    }
+    return taskMs;
+  }
+
   @Override
   protected Scheduler scheduler() {
     return Scheduler.newFixedRateSchedule(0, msBetweenTasks, TimeUnit.MILLISECONDS);
@@ -130,6 +216,9 @@ public class MockWorker extends AbstractScheduledService {
       body.addProperty("provisionerId", provisionerId);
       body.addProperty("workerId", provisionerId + "." + workerId);
       body.addProperty("tenantId", tenantId);
+      if (takeWaitMs > 0) {
+        body.addProperty("maxWaitMs", takeWaitMs);
+      }
       takeRequest.setEntity(new StringEntity(body.toString()));
 
       Reader reader = null;
@@ -161,18 +250,66 @@ public class MockWorker extends AbstractScheduledService {
     }
   }
 
-  private void finishTask(String taskId, ProvisionerAction action) throws IOException {
-    LOG.debug("finishing task {}, which is a {} action.", taskId, action);
+  private JsonObject takeTasks(List<String> poolWorkerIds) {
     try {
-      JsonObject body;
-      // generate random num from 0-99
-      int num = RANDOM.nextInt(100);
-      if (failureRate > num) {
-        body = failureBody(taskId);
-      } else {
-        body = successBody(taskId, action);
+      JsonObject body = new JsonObject();
+      body.addProperty("provisionerId", provisionerId);
+      body.add("workerIds", GSON.toJsonTree(poolWorkerIds));
+      body.addProperty("tenantId", tenantId);
+      takeBatchRequest.setEntity(new StringEntity(body.toString()));
+
+      Reader reader = null;
+      CloseableHttpResponse response = httpClient.execute(takeBatchRequest, httpContext);
+      try {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode / 100 != 2) {
+          LOG.error("Error taking tasks. Got status code {} with message:\n{}",
+                    statusCode, getResponseString(response));
+          return null;
+        } else if (statusCode != 200) {
+          return null;
+        }
+        reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
+        return GSON.fromJson(reader, JsonObject.class);
+      } finally {
+        if (reader != null) {
+          reader.close();
+        }
+        response.close();
       }
+    } catch (Exception e) {
+      LOG.error("Exception making batch take request.", e);
+      return null;
+    } finally {
+      takeBatchRequest.reset();
+    }
+  }
 
+  private void finishTasks(JsonArray finishBodies) throws IOException {
+    LOG.debug("finishing {} tasks.", finishBodies.size());
+    try {
+      finishBatchRequest.setEntity(new StringEntity(GSON.toJson(finishBodies)));
+      CloseableHttpResponse response = httpClient.execute(finishBatchRequest, httpContext);
+      try {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode / 100 != 2) {
+          LOG.error("Error finishing tasks. Got status code {} with message:\n{}",
+                    statusCode, getResponseString(response));
+        }
+      } finally {
+        response.close();
+      }
+    } catch (Exception e) {
+      LOG.error("Exception making batch finish request.", e);
+    } finally {
+      finishBatchRequest.reset();
+    }
+  }
+
+  private void finishTask(String taskId, ProvisionerAction action) throws IOException {
+    LOG.debug("finishing task {}, which is a {} action.", taskId, action);
+    try {
+      JsonObject body = finishBody(provisionerId + "." + workerId, taskId, action);
       finishRequest.setEntity(new StringEntity(GSON.toJson(body)));
       CloseableHttpResponse response = httpClient.execute(finishRequest, httpContext);
       try {
@@ -191,10 +328,19 @@ public class MockWorker extends AbstractScheduledService {
     }
   }
 
-  private JsonObject failureBody(String taskId) {
+  private JsonObject finishBody(String finishingWorkerId, String taskId, ProvisionerAction action) {
+    // generate random num from 0-99
+    int num = RANDOM.nextInt(100);
+    if (failureRate > num) {
+      return failureBody(finishingWorkerId, taskId);
+    }
+    return successBody(finishingWorkerId, taskId, action);
+  }
+
+  private JsonObject failureBody(String finishingWorkerId, String taskId) {
     JsonObject body = new JsonObject();
     body.addProperty("provisionerId", provisionerId);
-    body.addProperty("workerId", provisionerId + "." + workerId);
+    body.addProperty("workerId", finishingWorkerId);
     body.addProperty("taskId", taskId);
     body.addProperty("tenantId", tenantId);
     body.addProperty("status", "1");
@@ -203,10 +349,10 @@ public class MockWorker extends AbstractScheduledService {
     return body;
   }
 
-  private JsonObject successBody(String taskId, ProvisionerAction action) {
+  private JsonObject successBody(String finishingWorkerId, String taskId, ProvisionerAction action) {
     JsonObject body = new JsonObject();
     body.addProperty("provisionerId", provisionerId);
-    body.addProperty("workerId", provisionerId + "." + workerId);
+    body.addProperty("workerId", finishingWorkerId);
     body.addProperty("taskId", taskId);
     body.addProperty("tenantId", tenantId);
     body.addProperty("status", "0");
@@ -26,6 +26,7 @@ import co.cask.coopr.spec.plugin.ProviderType;
 import co.cask.coopr.spec.plugin.ResourceTypeSpecification;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.entity.EntityStoreView;
+import co.cask.coopr.store.provisioner.FilePluginStore;
 import co.cask.coopr.store.provisioner.PluginMetaStoreService;
 import co.cask.coopr.store.provisioner.PluginResourceTypeView;
 import co.cask.coopr.store.provisioner.PluginStore;
@@ -41,6 +42,7 @@ import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -163,7 +165,9 @@ public class ResourceService extends AbstractIdleService {
   }
 
   /**
-   * Bootstrap an account's resources by copying what the superadmin has into the account.
+   * Bootstrap an account's resources by copying what the superadmin has into the account. With a plugin store that
+   * keeps contents by reference, such as the {@link co.cask.coopr.store.provisioner.ContentAddressedPluginStore},
+   * only metadata and references are written.
    *
    * @param account Account to bootstrap
    */
@@ -182,45 +186,47 @@ public class ResourceService extends AbstractIdleService {
     }
   }
 
+  // only adds a reference to the contents if the plugin store keeps contents by reference
   private void copySuperadminResource(Account account, ResourceType type, ResourceMeta meta) throws IOException {
     String name = meta.getName();
     int version = meta.getVersion();
     ZKInterProcessReentrantLock lock = getResourceLock(account, type, name);
     lock.acquire();
-    InputStream inStream = null;
-    OutputStream outStream = null;
     try {
-      inStream = pluginStore.getResourceInputStream(Account.SUPERADMIN, type, name, version);
-      outStream = pluginStore.getResourceOutputStream(account, type, name, version);
-      if (inStream == null) {
-        LOG.error("Could not get input stream for version {} of resource {} of type {} for account {}.",
-                  version, name, type, account);
-        throw new IOException("Unable to get plugin data.");
+      if (pluginStore instanceof FilePluginStore) {
+        ((FilePluginStore) pluginStore).copyResource(Account.SUPERADMIN, account, type, name, version);
+      } else {
+        streamSuperadminResource(account, type, name, version);
       }
-      ByteStreams.copy(inStream, outStream);
       PluginResourceTypeView metaView = metaStoreService.getResourceTypeView(account, type);
       if (!metaView.exists(name, version)) {
         metaView.add(meta);
       }
     } finally {
-      if (outStream != null) {
-        try {
-          outStream.close();
-        } catch (IOException e) {
-          LOG.error("Exception closing output stream while copying superadmin resource.", e);
-        }
-      }
-      if (inStream != null) {
-        try {
-          inStream.close();
-        } catch (IOException e) {
-          LOG.error("Exception closing input stream while copying superadmin resource.", e);
-        }
-      }
       lock.release();
     }
   }
 
+  private void streamSuperadminResource(Account account, ResourceType type, String name, int version)
+    throws IOException {
+    InputStream inStream = pluginStore.getResourceInputStream(Account.SUPERADMIN, type, name, version);
+    if (inStream == null) {
+      LOG.error("Could not get input stream for version {} of resource {} of type {} for account {}.",
+                version, name, type, account);
+      throw new IOException("Unable to get plugin data.");
+    }
+    try {
+      OutputStream outStream = pluginStore.getResourceOutputStream(account, type, name, version);
+      try {
+        ByteStreams.copy(inStream, outStream);
+      } finally {
+        outStream.close();
+      }
+    } finally {
+      inStream.close();
+    }
+  }
+
   /**
    * Get an input stream for reading the plugin resource.
    *
@@ -244,6 +250,53 @@ public class ResourceService extends AbstractIdleService {
     return pluginStore.getResourceInputStream(account, resourceType, meta.getName(), meta.getVersion());
   }
 
+  /**
+   * Get the local file the plugin resource is kept in, for sending the resource without copying it through memory.
+   *
+   * @param account Account the resource belongs to
+   * @param resourceType Type of resource
+   * @param name Name of resource to get the file for
+   * @param version Version of resource to get the file for
+   * @return Local file containing the plugin resource, or null if the plugin store does not keep it in a local file
+   * @throws MissingEntityException if there is no such resource version
+   * @throws IOException if there was an error getting the file for the resource
+   */
+  public File getResourceFile(Account account, ResourceType resourceType, String name, int version)
+    throws MissingEntityException, IOException {
+    // no lock needed since each resource uploaded gets its own id.
+    ResourceMeta meta = metaStoreService.getResourceTypeView(account, resourceType).get(name, version);
+    if (meta == null) {
+      throw new MissingEntityException("Resource not found.");
+    }
+    if (!(pluginStore instanceof FilePluginStore)) {
+      return null;
+    }
+    return ((FilePluginStore) pluginStore).getResourceFile(account, resourceType, meta.getName(), meta.getVersion());
+  }
+
+  /**
+   * Get the tag identifying the contents of the plugin resource, for clients to tell whether their copy is current.
+   *
+   * @param account Account the resource belongs to
+   * @param resourceType Type of resource
+   * @param name Name of resource to get the tag for
+   * @param version Version of resource to get the tag for
+   * @return Tag identifying the resource contents, or null if the plugin store has none for the resource
+   * @throws MissingEntityException if there is no such resource version
+   * @throws IOException if there was an error getting the tag for the resource
+   */
+  public String getResourceETag(Account account, ResourceType resourceType, String name, int version)
+    throws MissingEntityException, IOException {
+    ResourceMeta meta = metaStoreService.getResourceTypeView(account, resourceType).get(name, version);
+    if (meta == null) {
+      throw new MissingEntityException("Resource not found.");
+    }
+    if (!(pluginStore instanceof FilePluginStore)) {
+      return null;
+    }
+    return ((FilePluginStore) pluginStore).getResourceETag(account, resourceType, meta.getName(), meta.getVersion());
+  }
+
   /**
    * Atomically stage the specified resource version for the given account and recall the previous staged version.
    * A staged version will get pushed to provisioners during a sync, and will stay staged unless explicitly recalled.
@@ -39,6 +39,7 @@ import co.cask.coopr.provisioner.guice.ProvisionerModule;
 import co.cask.coopr.provisioner.plugin.ResourceService;
 import co.cask.coopr.scheduler.Scheduler;
 import co.cask.coopr.scheduler.guice.SchedulerModule;
+import co.cask.coopr.scheduler.task.TaskQueueService;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.credential.CredentialStore;
 import co.cask.coopr.store.entity.EntityStoreService;
@@ -92,6 +93,7 @@ public final class ServerMain extends DaemonMain {
   private UserStore userStore;
   private CredentialStore credentialStore;
   private QueueService queueService;
+  private TaskQueueService taskQueueService;
   // Authentication
   private boolean securityEnabled;
   private ExternalAuthenticationServer externalAuthenticationServer;
@@ -186,6 +188,8 @@ public final class ServerMain extends DaemonMain {
       credentialStore.startAndWait();
       queueService = injector.getInstance(QueueService.class);
       queueService.startAndWait();
+      taskQueueService = injector.getInstance(TaskQueueService.class);
+      taskQueueService.startAndWait();
       if (securityEnabled) {
         externalAuthenticationServer = injector.getInstance(ExternalAuthenticationServer.class);
         externalAuthenticationServer.startAndWait();
@@ -239,7 +243,7 @@ public final class ServerMain extends DaemonMain {
       }
     }
 
-    stopAll(internalHandlerServer, externalHandlerServer, queueService,
+    stopAll(internalHandlerServer, externalHandlerServer, taskQueueService, queueService,
             userStore, resourceService, provisionerStore, tenantStore,
             clusterStoreService, entityStoreService, idService, zkClientService, inMemoryZKServer,
             externalAuthenticationServer);
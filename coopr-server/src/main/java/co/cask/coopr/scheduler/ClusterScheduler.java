@@ -17,6 +17,8 @@ package co.cask.coopr.scheduler;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.GroupElement;
 import co.cask.coopr.common.queue.QueueGroup;
@@ -34,6 +36,7 @@ import co.cask.coopr.spec.ProvisionerAction;
 import co.cask.coopr.spec.service.Service;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import co.cask.coopr.store.cluster.ClusterStoreWriteBatch;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -52,7 +55,8 @@ import java.util.Set;
  * Schedule clusters to be provisioned. Polls a queue that contains elements specifying what cluster action needs to
  * be performed on what cluster. The scheduler determines a plan for how to perform the cluster action and stores
  * all plan information into a cluster job, then writes to a queue to tell the {@link JobScheduler} to start
- * scheduling tasks to perform the cluster action.
+ * scheduling tasks to perform the cluster action. Depending on the configured execution mode, the job either runs its
+ * tasks stage by stage, or runs each task as soon as the tasks it depends on are done.
  */
 public class ClusterScheduler implements Runnable {
 
@@ -63,6 +67,7 @@ public class ClusterScheduler implements Runnable {
   private final TaskService taskService;
   private final IdService idService;
   private final QueueGroup clusterQueues;
+  private final Configuration conf;
 
   private final Actions actions = Actions.getInstance();
 
@@ -71,12 +76,14 @@ public class ClusterScheduler implements Runnable {
                            ClusterStoreService clusterStoreService,
                            TaskService taskService,
                            IdService idService,
-                           QueueService queueService) {
+                           QueueService queueService,
+                           Configuration conf) {
     this.id = id;
     this.clusterStore = clusterStoreService.getSystemView();
     this.taskService = taskService;
     this.idService = idService;
     this.clusterQueues = queueService.getQueueGroup(QueueType.CLUSTER);
+    this.conf = conf;
   }
 
   @Override
@@ -117,11 +124,24 @@ public class ClusterScheduler implements Runnable {
                                                                    jobPlanner.getServiceMap(),
                                                                    clusterAction, jobPlanner.getNodeMap());
 
-          // Make sure multiple actions on a same node do not happen simultaneously.
-          clusterTasks = JobPlanner.deDupNodePerStage(clusterTasks);
-
-          for (Set<ClusterTask> stageTasks : clusterTasks) {
-            job.addStage(Sets.newHashSet(Iterables.transform(stageTasks, CLUSTER_TASK_STRING_FUNCTION)));
+          ClusterJob.ExecutionMode executionMode =
+            ClusterJob.ExecutionMode.valueOf(conf.get(Constants.JOB_EXECUTION_MODE).toUpperCase());
+          job.setExecutionMode(executionMode);
+          if (executionMode == ClusterJob.ExecutionMode.DATAFLOW) {
+            // All tasks go in a single stage. The job scheduler starts each of them once the tasks it depends on are
+            // complete, and makes sure multiple actions on a same node do not happen simultaneously.
+            Map<String, Set<String>> taskDependencies = jobPlanner.getTaskDependencies(clusterTasks);
+            for (Map.Entry<String, Set<String>> entry : taskDependencies.entrySet()) {
+              job.setTaskDependencies(entry.getKey(), entry.getValue());
+            }
+            job.addStage(Sets.newHashSet(taskDependencies.keySet()));
+          } else {
+            // Make sure multiple actions on a same node do not happen simultaneously.
+            clusterTasks = JobPlanner.deDupNodePerStage(clusterTasks);
+
+            for (Set<ClusterTask> stageTasks : clusterTasks) {
+              job.addStage(Sets.newHashSet(Iterables.transform(stageTasks, CLUSTER_TASK_STRING_FUNCTION)));
+            }
           }
           taskService.startJob(job, cluster);
 
@@ -160,6 +180,7 @@ public class ClusterScheduler implements Runnable {
                                             Map<String, Node> nodeMap)
     throws Exception {
     List<Set<ClusterTask>> runnableTasks = Lists.newArrayListWithExpectedSize(tasks.size());
+    ClusterStoreWriteBatch taskWrites = clusterStore.startWriteBatch();
     for (Set<TaskNode> taskNodes : tasks) {
       // Create tasks for a stage
       Set<ClusterTask> stageTasks = Sets.newHashSet();
@@ -178,13 +199,14 @@ public class ClusterScheduler implements Runnable {
         TaskId taskId = idService.getNewTaskId(JobId.fromString(job.getJobId()));
         ClusterTask task = new ClusterTask(action, taskId, taskNode.getHostId(), taskNode.getService(), clusterAction,
                                            cluster.getClusterTemplate().getName(), cluster.getAccount());
-        clusterStore.writeClusterTask(task);
+        taskWrites.writeClusterTask(task);
         stageTasks.add(task);
       }
       if (!stageTasks.isEmpty()) {
         runnableTasks.add(stageTasks);
       }
     }
+    taskWrites.flush();
     return runnableTasks;
   }
 
@@ -36,6 +36,7 @@ public class JobPlanner {
   private final Map<String, Service> serviceMap;
   private final Map<String, Node> nodeMap;
   private final ServiceDependencyResolver dependencyResolver;
+  private TaskDag taskDag;
 
   public JobPlanner(ClusterJob job, Set<Node> clusterNodes) {
     this.clusterAction = job.getClusterAction();
@@ -76,7 +77,7 @@ public class JobPlanner {
    * @return Plan of tasks to be executed in order to perform a cluster operation.
    */
   public List<Set<TaskNode>> linearizeDependentTasks() {
-    TaskDag taskDag = createTaskDag();
+    taskDag = createTaskDag();
 
     long start = System.currentTimeMillis();
     List<Set<TaskNode>> linearizedTasks = taskDag.linearize();
@@ -86,6 +87,52 @@ public class JobPlanner {
     return linearizedTasks;
   }
 
+  /**
+   * Get the ids of the tasks that each of the given tasks directly depends on, according to the plan created by
+   * {@link #linearizeDependentTasks()}. Planned tasks that are not among the given tasks, such as service actions that
+   * a service does not define, are passed through, so that the tasks after them still depend on the tasks before them.
+   *
+   * @param clusterTasks Tasks created for the plan.
+   * @return Mapping of task id to the ids of the tasks it depends on.
+   */
+  public Map<String, Set<String>> getTaskDependencies(List<Set<ClusterTask>> clusterTasks) {
+    if (taskDag == null) {
+      throw new IllegalStateException("Tasks have not been planned yet");
+    }
+    Map<TaskNode, String> taskIds = Maps.newHashMap();
+    for (Set<ClusterTask> stage : clusterTasks) {
+      for (ClusterTask task : stage) {
+        taskIds.put(new TaskNode(task.getNodeId(), task.getTaskName().name(), task.getService()), task.getTaskId());
+      }
+    }
+
+    Map<TaskNode, Set<String>> resolved = Maps.newHashMap();
+    Map<String, Set<String>> taskDependencies = Maps.newHashMap();
+    for (Map.Entry<TaskNode, String> entry : taskIds.entrySet()) {
+      taskDependencies.put(entry.getValue(), getTaskDependencies(entry.getKey(), taskIds, resolved));
+    }
+    return taskDependencies;
+  }
+
+  private Set<String> getTaskDependencies(TaskNode taskNode, Map<TaskNode, String> taskIds,
+                                          Map<TaskNode, Set<String>> resolved) {
+    Set<String> dependencies = resolved.get(taskNode);
+    if (dependencies != null) {
+      return dependencies;
+    }
+    dependencies = Sets.newHashSet();
+    for (TaskNode dependency : taskDag.getDependencies(taskNode)) {
+      String taskId = taskIds.get(dependency);
+      if (taskId != null) {
+        dependencies.add(taskId);
+      } else {
+        dependencies.addAll(getTaskDependencies(dependency, taskIds, resolved));
+      }
+    }
+    resolved.put(taskNode, dependencies);
+    return dependencies;
+  }
+
   /**
    * Creates a DAG (directed acyclic graph) of tasks to execute in order to perform the cluster job.
    *
@@ -93,7 +140,7 @@ public class JobPlanner {
    */
   TaskDag createTaskDag() {
     long start = System.currentTimeMillis();
-    TaskDag taskDag = new TaskDag();
+    TaskDag dag = new TaskDag();
     List<ProvisionerAction> actionOrder = actions.getActionOrder().get(clusterAction);
 
     for (Node node : nodeMap.values()) {
@@ -105,12 +152,12 @@ public class JobPlanner {
           continue;
         }
 
-        addDependencies(taskDag, actionOrder, service, node);
+        addDependencies(dag, actionOrder, service, node);
       }
     }
     long dur = System.currentTimeMillis() - start;
     LOG.debug("took {} ms to create action plan.", dur);
-    return taskDag;
+    return dag;
   }
 
   private void addDependencies(TaskDag taskDag, List<ProvisionerAction> actionOrder, Service service, Node node) {
@@ -137,7 +184,7 @@ public class JobPlanner {
       for (ActionOnService dependentServiceAction :
         dependencyResolver.getDirectDependentActions(service.getName(), task)) {
 
-        String dependentServiceName = dependentServiceAction.getService();
+        final String dependentServiceName = dependentServiceAction.getService();
         // if the dependent service is not in the list to plan, and the action is an install time action, we can
         // skip this dependency. For example, suppose service A install depends on service B install. Service B is
         // already on the cluster and we're adding service A. We don't need to install service B again since it's
@@ -145,13 +192,23 @@ public class JobPlanner {
         if (!shouldPlanService(dependentServiceName) && task.isInstallTimeAction()) {
           continue;
         }
-        ProvisionerAction dependentAction = dependentServiceAction.getAction();
-        // each node that the dependent service exist on must perform the from action before we perform the
-        // to action for the service on this node.
-        for (Node fromNode : serviceNodeMap.get(dependentServiceName)) {
-          taskDag.addDependency(new TaskNode(fromNode.getId(), dependentAction.name(), dependentServiceName),
-                                new TaskNode(node.getId(), task.name(), service.getName()));
+        // nothing to wait for if the dependent service is not on any node
+        if (!serviceNodeMap.containsKey(dependentServiceName)) {
+          continue;
         }
+        final ProvisionerAction dependentAction = dependentServiceAction.getAction();
+        // each node that the dependent service exist on must perform the from action before we perform the
+        // to action for the service on this node. All tasks that depend on the same action of the same service share
+        // a barrier, instead of each having an edge from every node of the service.
+        taskDag.addBarrierDependency(
+          dependentServiceName + "/" + dependentAction.name(),
+          Iterables.transform(serviceNodeMap.get(dependentServiceName), new Function<Node, TaskNode>() {
+            @Override
+            public TaskNode apply(Node fromNode) {
+              return new TaskNode(fromNode.getId(), dependentAction.name(), dependentServiceName);
+            }
+          }),
+          new TaskNode(node.getId(), task.name(), service.getName()));
       }
     }
   }
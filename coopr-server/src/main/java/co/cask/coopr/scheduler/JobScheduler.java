@@ -27,22 +27,27 @@ import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.common.zookeeper.LockService;
 import co.cask.coopr.common.zookeeper.lib.ZKInterProcessReentrantLock;
-import co.cask.coopr.macro.Expander;
+import co.cask.coopr.macro.ExpansionPlan;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.SchedulableTask;
 import co.cask.coopr.scheduler.task.TaskConfig;
-import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.scheduler.task.TaskService;
 import co.cask.coopr.spec.service.Service;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import co.cask.coopr.store.cluster.ClusterStoreWriteBatch;
 import com.google.common.base.Function;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.inject.Inject;
@@ -54,6 +59,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Schedules a cluster job. Polls a queue containing job ids to coordinate. Each time it gets a job id from the queue,
@@ -62,10 +75,17 @@ import java.util.Set;
  * If some task was failed, the appropriate retry and rollback actions are taken for the task. If the job itself fails,
  * unneeded tasks are dropped and cluster and job state is managed. If all tasks for the job have completed, status
  * is updated across the job and cluster.
+ * <p/>
+ * Jobs in {@link ClusterJob.ExecutionMode#DATAFLOW} mode have all their tasks in a single stage. Each task of such a
+ * job is submitted as soon as all the tasks it depends on are complete and no other task is in progress on its node.
+ * <p/>
+ * Jobs of different clusters are scheduled in parallel on a pool of threads, with the threads shared fairly between
+ * the job queues of different tenants.
  */
 public class JobScheduler implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(JobScheduler.class);
   private static final String consumerId = "jobscheduler";
+  private static final long IDLE_THREAD_TIMEOUT_SECS = 60;
 
   private final ClusterStore clusterStore;
   private final LockService lockService;
@@ -74,6 +94,9 @@ public class JobScheduler implements Runnable {
   private final Gson gson;
   private final QueueGroup jobQueues;
   private final QueueGroup provisionerQueues;
+  private final int numThreads;
+  private final int maxWaiting;
+  private final ExecutorService executorService;
 
   @Inject
   private JobScheduler(ClusterStoreService clusterStoreService,
@@ -89,130 +112,326 @@ public class JobScheduler implements Runnable {
     this.gson = gson;
     this.jobQueues = queueService.getQueueGroup(QueueType.JOB);
     this.provisionerQueues = queueService.getQueueGroup(QueueType.PROVISIONER);
+    this.numThreads = conf.getInt(Constants.JOB_SCHEDULER_NUM_THREADS);
+    // enough jobs to keep all threads busy while jobs of busy clusters or queues wait
+    this.maxWaiting = numThreads * 4;
+    // threads are only busy during runs, let them go in between so that nothing is left running once the scheduler
+    // stops running this
+    ThreadPoolExecutor threadPool = new ThreadPoolExecutor(numThreads, numThreads,
+                                                           IDLE_THREAD_TIMEOUT_SECS, TimeUnit.SECONDS,
+                                                           new LinkedBlockingQueue<Runnable>(),
+                                                           new ThreadFactoryBuilder()
+                                                             .setNameFormat("job-scheduler-%d")
+                                                             .setDaemon(true)
+                                                             .build());
+    threadPool.allowCoreThreadTimeOut(true);
+    this.executorService = threadPool;
   }
 
   @Override
   public void run() {
     try {
-      Iterator<GroupElement> jobIter = jobQueues.takeIterator(consumerId);
-      while (jobIter.hasNext()) {
-        GroupElement gElement = jobIter.next();
-        String queueName = gElement.getQueueName();
-        Element element = gElement.getElement();
-        String jobIdStr = element.getValue();
+      new JobRun(jobQueues.takeIterator(consumerId)).run();
+    } catch (Throwable e) {
+      LOG.error("Got exception: ", e);
+    }
+  }
 
-        LOG.debug("Got job {} to schedule", jobIdStr);
-        JobId jobId = JobId.fromString(jobIdStr);
-        ZKInterProcessReentrantLock lock = lockService.getJobLock(queueName, jobId.getClusterId());
-        try {
-          lock.acquire();
-          ClusterJob job = clusterStore.getClusterJob(jobId);
-          Cluster cluster = clusterStore.getCluster(job.getClusterId());
-          // this can happen if 2 tasks complete around the same time and the first one places the job in the queue,
-          // sees 0 in progress tasks, and sets the cluster status. The job is still in the queue as another element
-          // from the 2nd task and gets here.  In that case, no need to go further.
-          if (cluster.getStatus() != Cluster.Status.PENDING) {
-            continue;
-          }
-          if (job.getJobStatus() == ClusterJob.Status.PAUSED) {
-            continue;
+  private void schedule(GroupElement gElement) throws Exception {
+    String queueName = gElement.getQueueName();
+    Element element = gElement.getElement();
+    String jobIdStr = element.getValue();
+
+    LOG.debug("Got job {} to schedule", jobIdStr);
+    JobId jobId = JobId.fromString(jobIdStr);
+    ZKInterProcessReentrantLock lock = lockService.getJobLock(queueName, jobId.getClusterId());
+    try {
+      lock.acquire();
+      ClusterJob job = clusterStore.getClusterJob(jobId);
+      Cluster cluster = clusterStore.getCluster(job.getClusterId());
+      // this can happen if 2 tasks complete around the same time and the first one places the job in the queue,
+      // sees 0 in progress tasks, and sets the cluster status. The job is still in the queue as another element
+      // from the 2nd task and gets here.  In that case, no need to go further.
+      if (cluster.getStatus() != Cluster.Status.PENDING) {
+        return;
+      }
+      if (job.getJobStatus() == ClusterJob.Status.PAUSED) {
+        return;
+      }
+      LOG.trace("Scheduling job {}", job);
+      Set<String> currentStage = job.getCurrentStage();
+      boolean dataflow = job.getExecutionMode() == ClusterJob.ExecutionMode.DATAFLOW;
+
+      // Check how many tasks are completed/not-submitted
+      boolean jobFailed = job.getJobStatus() == ClusterJob.Status.FAILED;
+      int completedTasks = 0;
+      int inProgressTasks = 0;
+      Set<String> tasksToVerify = currentStage;
+      if (dataflow) {
+        // the single stage of a dataflow job holds all its tasks, so only verify the ones whose status can change
+        tasksToVerify = getDataflowTasksToVerify(job);
+        completedTasks = currentStage.size() - getNumIncompleteTasks(job);
+      }
+      Set<String> busyNodes = Sets.newHashSet();
+      Set<ClusterTask> notSubmittedTasks = Sets.newHashSet();
+      Set<ClusterTask> retryTasks = Sets.newHashSet();
+      LOG.debug("Verifying task statuses for stage {} for job {}", job.getCurrentStageNumber(), jobIdStr);
+      Map<String, ClusterTask> stageTasks = clusterStore.getClusterTasks(tasksToVerify);
+      for (String taskId : tasksToVerify) {
+        ClusterTask task = stageTasks.get(taskId);
+        job.setTaskStatus(task.getTaskId(), task.getStatus());
+        LOG.debug("Status of task {} is {}", taskId, task.getStatus());
+        if (task.getStatus() == ClusterTask.Status.COMPLETE) {
+          ++completedTasks;
+        } else if (task.getStatus() == ClusterTask.Status.NOT_SUBMITTED) {
+          notSubmittedTasks.add(task);
+        } else if (task.getStatus() == ClusterTask.Status.FAILED) {
+          // If max retries has not reached, retry task. Else, fail job.
+          if (task.getNumAttempts() < maxTaskRetries) {
+            retryTasks.add(task);
+          } else {
+            jobFailed = true;
           }
-          LOG.trace("Scheduling job {}", job);
-          Set<String> currentStage = job.getCurrentStage();
-
-          // Check how many tasks are completed/not-submitted
-          boolean jobFailed = job.getJobStatus() == ClusterJob.Status.FAILED;
-          int completedTasks = 0;
-          int inProgressTasks = 0;
-          Set<ClusterTask> notSubmittedTasks = Sets.newHashSet();
-          Set<ClusterTask> retryTasks = Sets.newHashSet();
-          // TODO: avoid looking up every single task every time, or at least do a batch lookup
-          LOG.debug("Verifying task statuses for stage {} for job {}", job.getCurrentStageNumber(), jobIdStr);
-          for (String taskId : currentStage) {
-            ClusterTask task = clusterStore.getClusterTask(TaskId.fromString(taskId));
-            job.setTaskStatus(task.getTaskId(), task.getStatus());
-            LOG.debug("Status of task {} is {}", taskId, task.getStatus());
-            if (task.getStatus() == ClusterTask.Status.COMPLETE) {
-              ++completedTasks;
-            } else if (task.getStatus() == ClusterTask.Status.NOT_SUBMITTED) {
-              notSubmittedTasks.add(task);
-            } else if (task.getStatus() == ClusterTask.Status.FAILED) {
-              // If max retries has not reached, retry task. Else, fail job.
-              if (task.getNumAttempts() < maxTaskRetries) {
-                retryTasks.add(task);
-              } else {
-                jobFailed = true;
-              }
-            } else if (task.getStatus() == ClusterTask.Status.IN_PROGRESS) {
-              ++inProgressTasks;
-            }
+        } else if (task.getStatus() == ClusterTask.Status.IN_PROGRESS) {
+          ++inProgressTasks;
+          busyNodes.add(task.getNodeId());
+        }
+      }
+
+      // If the job has not failed continue with scheduling other tasks.
+      if (!jobFailed) {
+
+        Set<Node> clusterNodes = clusterStore.getClusterNodes(job.getClusterId());
+        Map<String, Node> nodeMap = Maps.newHashMap();
+        for (Node node : clusterNodes) {
+          nodeMap.put(node.getId(), node);
+        }
+
+        // Handle retry tasks if any
+        if (!retryTasks.isEmpty()) {
+          for (ClusterTask task : retryTasks) {
+            notSubmittedTasks.add(scheduleRetry(job, task));
           }
+        }
+
+        // In dataflow mode, only submit the tasks whose dependencies are all complete
+        if (dataflow) {
+          notSubmittedTasks = getReadyTasks(job, notSubmittedTasks, busyNodes);
+        }
+
+        // Submit any tasks not yet submitted
+        if (!notSubmittedTasks.isEmpty()) {
+          submitTasks(notSubmittedTasks, cluster, nodeMap, clusterNodes, job, queueName);
+        }
 
-          // If the job has not failed continue with scheduling other tasks.
-          if (!jobFailed) {
-
-            Set<Node> clusterNodes = clusterStore.getClusterNodes(job.getClusterId());
-            Map<String, Node> nodeMap = Maps.newHashMap();
-            for (Node node : clusterNodes) {
-              nodeMap.put(node.getId(), node);
-            }
-
-            // Handle retry tasks if any
-            if (!retryTasks.isEmpty()) {
-              for (ClusterTask task : retryTasks) {
-                notSubmittedTasks.add(scheduleRetry(job, task));
-              }
-            }
-
-            // Submit any tasks not yet submitted
-            if (!notSubmittedTasks.isEmpty()) {
-              submitTasks(notSubmittedTasks, cluster, nodeMap, clusterNodes, job, queueName);
-            }
-
-            // Note: before moving cluster out of pending state, make sure that all in progress tasks are done.
-            // If all tasks are completed then move to next stage
-            if (completedTasks == currentStage.size()) {
-              if (job.hasNextStage()) {
-                LOG.debug("Advancing to next stage {} for job {}", job.getCurrentStageNumber(), job.getJobId());
-                job.advanceStage();
-                jobQueues.add(queueName, new Element(jobIdStr));
-              } else {
-                taskService.completeJob(job, cluster);
-              }
-            }
-            clusterStore.writeClusterJob(job);
-          } else if (inProgressTasks == 0) {
-            // special case: if all tasks were create tasks and all of them failed before they created anything,
-            // set the cluster state to 'terminated' instead of letting it go to 'incomplete'.
-            if (job.getClusterAction() == ClusterAction.CLUSTER_CREATE && allCreateTasksFailed(job)) {
-              String message = job.getStatusMessage();
-              // job could have been aborted before any tasks were taken. Keep abort message if that was the case.
-              if (message == null || message.isEmpty()) {
-                message = "Unable to create nodes, please check your provider settings";
-              }
-              taskService.failJobAndTerminateCluster(job, cluster, message);
-            } else {
-              // Job failed and no in progress tasks remaining, update cluster status
-              taskService.failJobAndSetClusterStatus(job, cluster);
-            }
+        // Note: before moving cluster out of pending state, make sure that all in progress tasks are done.
+        // If all tasks are completed then move to next stage
+        if (completedTasks == currentStage.size()) {
+          if (job.hasNextStage()) {
+            LOG.debug("Advancing to next stage {} for job {}", job.getCurrentStageNumber(), job.getJobId());
+            job.advanceStage();
+            jobQueues.add(queueName, new Element(jobIdStr));
           } else {
-            // Job failed but tasks are still in progress, wait for them to finish before setting cluster status
-            taskService.failJob(job);
+            taskService.completeJob(job, cluster);
           }
-        } finally {
-          lock.release();
-          jobQueues.recordProgress(consumerId, queueName, element.getId(),
-                                  TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, "");
         }
+        clusterStore.writeClusterJob(job);
+      } else if (inProgressTasks == 0) {
+        // special case: if all tasks were create tasks and all of them failed before they created anything,
+        // set the cluster state to 'terminated' instead of letting it go to 'incomplete'.
+        if (job.getClusterAction() == ClusterAction.CLUSTER_CREATE && allCreateTasksFailed(job)) {
+          String message = job.getStatusMessage();
+          // job could have been aborted before any tasks were taken. Keep abort message if that was the case.
+          if (message == null || message.isEmpty()) {
+            message = "Unable to create nodes, please check your provider settings";
+          }
+          taskService.failJobAndTerminateCluster(job, cluster, message);
+        } else {
+          // Job failed and no in progress tasks remaining, update cluster status
+          taskService.failJobAndSetClusterStatus(job, cluster);
+        }
+      } else {
+        // Job failed but tasks are still in progress, wait for them to finish before setting cluster status
+        taskService.failJob(job);
+      }
+    } finally {
+      lock.release();
+      jobQueues.recordProgress(consumerId, queueName, element.getId(),
+                              TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, "");
+    }
+  }
+
+  /**
+   * One pass through the job queues, scheduling the jobs taken from the queues on the executor. Jobs of the same
+   * cluster are never scheduled at the same time, as they would only wait on each other's lock. To keep tenants from
+   * starving each other, a queue gets no more than an equal share of the threads while other queues have jobs running
+   * or waiting. Jobs that cannot be started yet wait in memory, up to a limit after which no more jobs are taken from
+   * the queues until some job is done.
+   */
+  private final class JobRun {
+    private final Iterator<GroupElement> jobIter;
+    private final CompletionService<GroupElement> completionService;
+    private final List<GroupElement> waiting;
+    private final Multiset<String> runningPerQueue;
+    private final Set<String> runningClusters;
+    private int running;
+
+    private JobRun(Iterator<GroupElement> jobIter) {
+      this.jobIter = jobIter;
+      this.completionService = new ExecutorCompletionService<GroupElement>(executorService);
+      this.waiting = Lists.newLinkedList();
+      this.runningPerQueue = HashMultiset.create();
+      this.runningClusters = Sets.newHashSet();
+      this.running = 0;
+    }
+
+    private void run() throws InterruptedException, ExecutionException {
+      while (true) {
+        GroupElement next = running < numThreads ? next() : null;
+        if (next != null) {
+          start(next);
+          continue;
+        }
+        // if nothing is running, any waiting job could have been started, so there is nothing left to do
+        if (running == 0) {
+          return;
+        }
+        finish(completionService.take().get());
+      }
+    }
+
+    // get the next job that can be started, or null if there is none
+    private GroupElement next() {
+      Iterator<GroupElement> waitingIter = waiting.iterator();
+      while (waitingIter.hasNext()) {
+        GroupElement gElement = waitingIter.next();
+        if (canStart(gElement)) {
+          waitingIter.remove();
+          return gElement;
+        }
+      }
+      while (waiting.size() < maxWaiting && jobIter.hasNext()) {
+        GroupElement gElement = jobIter.next();
+        if (canStart(gElement)) {
+          return gElement;
+        }
+        waiting.add(gElement);
+      }
+      return null;
+    }
+
+    private boolean canStart(GroupElement gElement) {
+      if (runningClusters.contains(getClusterKey(gElement))) {
+        return false;
+      }
+      Set<String> activeQueues = Sets.newHashSet(runningPerQueue.elementSet());
+      for (GroupElement waitingElement : waiting) {
+        activeQueues.add(waitingElement.getQueueName());
+      }
+      activeQueues.add(gElement.getQueueName());
+      int queueShare = Math.max(1, numThreads / activeQueues.size());
+      return runningPerQueue.count(gElement.getQueueName()) < queueShare;
+    }
+
+    private void start(final GroupElement gElement) {
+      running++;
+      runningPerQueue.add(gElement.getQueueName());
+      runningClusters.add(getClusterKey(gElement));
+      completionService.submit(new Callable<GroupElement>() {
+        @Override
+        public GroupElement call() {
+          try {
+            schedule(gElement);
+          } catch (Throwable e) {
+            LOG.error("Got exception scheduling job {}: ", gElement.getElement().getValue(), e);
+          }
+          return gElement;
+        }
+      });
+    }
+
+    private void finish(GroupElement gElement) {
+      running--;
+      runningPerQueue.remove(gElement.getQueueName());
+      runningClusters.remove(getClusterKey(gElement));
+    }
+
+    private String getClusterKey(GroupElement gElement) {
+      String jobIdStr = gElement.getElement().getValue();
+      try {
+        return gElement.getQueueName() + "/" + JobId.fromString(jobIdStr).getClusterId();
+      } catch (IllegalArgumentException e) {
+        // not a valid job id, which scheduling the job will fail on
+        return gElement.getQueueName() + "/" + jobIdStr;
+      }
+    }
+  }
+
+  // Tasks of a dataflow job whose status may have changed since the job was last scheduled: tasks that are submitted
+  // or failed, and tasks that have not been submitted but none of whose dependencies are waiting to be submitted.
+  private Set<String> getDataflowTasksToVerify(ClusterJob job) {
+    Map<String, ClusterTask.Status> taskStatus = job.getTaskStatus();
+    Set<String> tasksToVerify = Sets.newHashSet();
+    for (String taskId : job.getCurrentStage()) {
+      ClusterTask.Status status = taskStatus.get(taskId);
+      if (status == ClusterTask.Status.COMPLETE) {
+        continue;
+      }
+      if (status == ClusterTask.Status.NOT_SUBMITTED) {
+        boolean waiting = false;
+        for (String dependency : job.getTaskDependencies(taskId)) {
+          if (taskStatus.get(dependency) == ClusterTask.Status.NOT_SUBMITTED) {
+            waiting = true;
+            break;
+          }
+        }
+        if (waiting) {
+          continue;
+        }
+      }
+      tasksToVerify.add(taskId);
+    }
+    return tasksToVerify;
+  }
+
+  private int getNumIncompleteTasks(ClusterJob job) {
+    int numIncomplete = 0;
+    for (String taskId : job.getCurrentStage()) {
+      if (job.getTaskStatus().get(taskId) != ClusterTask.Status.COMPLETE) {
+        ++numIncomplete;
+      }
+    }
+    return numIncomplete;
+  }
+
+  // Tasks of a dataflow job that can be submitted now: all the tasks they depend on are complete, and there is no
+  // other task in progress on their node. Only one task per node is picked, so that multiple actions on a same node
+  // do not happen simultaneously.
+  private Set<ClusterTask> getReadyTasks(ClusterJob job, Set<ClusterTask> notSubmittedTasks, Set<String> busyNodes) {
+    Set<ClusterTask> readyTasks = Sets.newHashSet();
+    for (ClusterTask task : notSubmittedTasks) {
+      if (busyNodes.contains(task.getNodeId())) {
+        continue;
+      }
+      boolean ready = true;
+      for (String dependency : job.getTaskDependencies(task.getTaskId())) {
+        if (job.getTaskStatus().get(dependency) != ClusterTask.Status.COMPLETE) {
+          ready = false;
+          break;
+        }
+      }
+      if (ready) {
+        readyTasks.add(task);
+        busyNodes.add(task.getNodeId());
       }
-    } catch (Throwable e) {
-      LOG.error("Got exception: ", e);
     }
+    return readyTasks;
   }
 
   // check that every task that ran failed, and that every failure was a cluster create, and that every failure
   // failed in a way where no resources were actually created (for ex, if provider settings are wrong).
   private boolean allCreateTasksFailed(ClusterJob job) throws IOException {
+    Set<String> failedTaskIds = Sets.newHashSet();
     for (Map.Entry<String, ClusterTask.Status> entry : job.getTaskStatus().entrySet()) {
       String taskId = entry.getKey();
       ClusterTask.Status taskStatus = entry.getValue();
@@ -221,12 +440,14 @@ public class JobScheduler implements Runnable {
         return false;
       }
       if (taskStatus == ClusterTask.Status.FAILED) {
-        // looks up every failed task... not so great.  But it should be roughly equal to the # of nodes in the cluster.
-        ClusterTask task = clusterStore.getClusterTask(TaskId.fromString(taskId));
-        // check it is a create task
-        if (!task.failedBeforeCreate()) {
-          return false;
-        }
+        failedTaskIds.add(taskId);
+      }
+    }
+    // failed tasks should be roughly equal to the # of nodes in the cluster, so look them up all at once
+    for (ClusterTask task : clusterStore.getClusterTasks(failedTaskIds).values()) {
+      // check it is a create task
+      if (!task.failedBeforeCreate()) {
+        return false;
       }
     }
     // if we get here, we only have failed, dropped, or not submitted tasks, and all the failed tasks failed before
@@ -237,16 +458,20 @@ public class JobScheduler implements Runnable {
   private void submitTasks(Set<ClusterTask> notSubmittedTasks, Cluster cluster, Map<String, Node> nodeMap,
                            Set<Node> clusterNodes, ClusterJob job, String queueName) throws Exception {
     JsonObject unexpandedClusterConfig = cluster.getConfig();
+    // macros are parsed and cluster wide macros are evaluated only once for all tasks of the stage
+    ExpansionPlan.Binding expansion = null;
 
     for (final ClusterTask task : notSubmittedTasks) {
       Node taskNode = nodeMap.get(task.getNodeId());
       JsonObject clusterConfig = unexpandedClusterConfig;
 
-      // TODO: do this only once and save it
       if (!task.getTaskName().isHardwareAction()) {
         try {
+          if (expansion == null) {
+            expansion = ExpansionPlan.compile(unexpandedClusterConfig).bind(cluster, clusterNodes);
+          }
           // expansion does not modify the original input, but creates a new object
-          clusterConfig = Expander.expand(clusterConfig, null, cluster, clusterNodes, taskNode).getAsJsonObject();
+          clusterConfig = expansion.expand(taskNode).getAsJsonObject();
         } catch (Throwable e) {
           LOG.error("Exception while expanding macros for task {}", task.getTaskId(), e);
           taskService.failTask(task, -1);
@@ -291,8 +516,24 @@ public class JobScheduler implements Runnable {
     }
 
     // store all retry tasks
+    ClusterStoreWriteBatch taskWrites = clusterStore.startWriteBatch();
     for (ClusterTask t : retryTasks) {
-      clusterStore.writeClusterTask(t);
+      taskWrites.writeClusterTask(t);
+    }
+    taskWrites.flush();
+
+    if (job.getExecutionMode() == ClusterJob.ExecutionMode.DATAFLOW) {
+      // Retry tasks run one after the other on the node, starting once the tasks the failed task depends on are
+      // complete. The failed task itself is the last retry task, so the tasks that depend on it keep waiting for it.
+      Set<String> dependencies = job.getTaskDependencies(task.getTaskId());
+      for (ClusterTask retryTask : retryTasks) {
+        job.getCurrentStage().add(retryTask.getTaskId());
+        job.setTaskStatus(retryTask.getTaskId(), ClusterTask.Status.NOT_SUBMITTED);
+        job.setTaskDependencies(retryTask.getTaskId(), dependencies);
+        dependencies = ImmutableSet.of(retryTask.getTaskId());
+      }
+      LOG.trace("Retry job {} for task {}", job, task);
+      return retryTasks.get(0);
     }
 
     // Remove self from current stage
@@ -17,17 +17,25 @@ package co.cask.coopr.scheduler;
 
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.queue.QueueService;
+import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.zookeeper.ElectionHandler;
 import co.cask.coopr.common.zookeeper.LeaderElection;
+import co.cask.coopr.metrics.NodeUsageRollupBackfill;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.common.Threads;
 import org.apache.twill.zookeeper.ZKClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -39,6 +47,9 @@ import java.util.concurrent.TimeUnit;
  * Runs the different schedulers for solving cluster layouts and planning and coordinating cluster jobs. Leader election
  * is run so that only a single server in a server cluster will be running these schedulers at any given time,
  * where a server cluster is defined as all servers using the same zookeeper quorum.
+ * <p/>
+ * Schedulers that consume a queue group run as soon as an element is added to one of their queues, and are also run
+ * periodically in case a signal was missed.
  */
 public class Scheduler extends AbstractIdleService {
   private static final Logger LOG = LoggerFactory.getLogger(Scheduler.class);
@@ -47,14 +58,20 @@ public class Scheduler extends AbstractIdleService {
   private final int schedulerRunInterval;
   private final int clusterCleanupRunInterval;
   private final int provisionerCleanupRunInterval;
+  private final int tenantUsageReconcileRunInterval;
   private final JobScheduler jobScheduler;
   private final ClusterScheduler clusterScheduler;
   private final SolverScheduler solverScheduler;
   private final CallbackScheduler callbackScheduler;
+  private final QueueService queueService;
   private final ClusterCleanup clusterCleanup;
   private final WorkerBalanceScheduler workerBalanceScheduler;
   private final TenantProvisionerCleanup tenantProvisionerCleanup;
+  private final TenantClusterUsageReconcile tenantClusterUsageReconcile;
+  private final NodeUsageRollupBackfill nodeUsageRollupBackfill;
+  private final boolean nodeUsageRollupEnabled;
   private final Set<ScheduledFuture<?>> scheduledFutures;
+  private final List<Cancellable> queueListeners;
   private final LeaderElection leaderElection;
 
   @Inject
@@ -65,11 +82,15 @@ public class Scheduler extends AbstractIdleService {
                     CallbackScheduler callbackScheduler,
                     WorkerBalanceScheduler workerBalanceScheduler,
                     TenantProvisionerCleanup tenantProvisionerCleanup,
+                    TenantClusterUsageReconcile tenantClusterUsageReconcile,
                     ClusterCleanup clusterCleanup,
+                    NodeUsageRollupBackfill nodeUsageRollupBackfill,
+                    QueueService queueService,
                     ZKClient zkClient) {
     this.schedulerRunInterval = conf.getInt(Constants.SCHEDULER_INTERVAL_SECS);
     this.clusterCleanupRunInterval = conf.getInt(Constants.CLUSTER_CLEANUP_SECS);
     this.provisionerCleanupRunInterval = conf.getInt(Constants.PROVISIONER_TIMEOUT_CHECK_INTERVAL_SECS);
+    this.tenantUsageReconcileRunInterval = conf.getInt(Constants.TENANT_USAGE_RECONCILE_SECS);
     this.executorService = Executors.newScheduledThreadPool(5,
                                                             new ThreadFactoryBuilder()
                                                               .setNameFormat("scheduler-%d")
@@ -80,8 +101,13 @@ public class Scheduler extends AbstractIdleService {
     this.callbackScheduler = callbackScheduler;
     this.workerBalanceScheduler = workerBalanceScheduler;
     this.clusterCleanup = clusterCleanup;
+    this.queueService = queueService;
     this.scheduledFutures = Sets.newHashSet();
+    this.queueListeners = Lists.newArrayList();
     this.tenantProvisionerCleanup = tenantProvisionerCleanup;
+    this.tenantClusterUsageReconcile = tenantClusterUsageReconcile;
+    this.nodeUsageRollupBackfill = nodeUsageRollupBackfill;
+    this.nodeUsageRollupEnabled = conf.getBoolean(Constants.Metrics.USAGE_ROLLUP_ENABLED);
 
     this.leaderElection = new LeaderElection(zkClient, "/server-election", new ElectionHandler() {
       private final ExecutorService executor = Executors.newSingleThreadExecutor(
@@ -125,26 +151,21 @@ public class Scheduler extends AbstractIdleService {
   }
 
   private void schedule() {
-
-    LOG.info("Scheduling cluster scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(clusterScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
-
-    LOG.info("Scheduling job scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(jobScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
-
-    LOG.info("Scheduling solver scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(solverScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
-
-    LOG.info("Scheduling callback scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(callbackScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
+    Map<QueueType, TriggeredScheduler> queueSchedulers = ImmutableMap.of(
+      QueueType.CLUSTER, new TriggeredScheduler("cluster", clusterScheduler, executorService),
+      QueueType.JOB, new TriggeredScheduler("job", jobScheduler, executorService),
+      QueueType.SOLVER, new TriggeredScheduler("solver", solverScheduler, executorService),
+      QueueType.CALLBACK, new TriggeredScheduler("callback", callbackScheduler, executorService)
     );
+    for (Map.Entry<QueueType, TriggeredScheduler> entry : queueSchedulers.entrySet()) {
+      TriggeredScheduler scheduler = entry.getValue();
+      LOG.info("Scheduling {} queue scheduler on every add and every {} secs...",
+               entry.getKey().name().toLowerCase(), schedulerRunInterval);
+      queueListeners.add(queueService.getQueueGroup(entry.getKey()).addListener(scheduler));
+      scheduledFutures.add(
+        executorService.scheduleAtFixedRate(scheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
+      );
+    }
 
     LOG.info("Scheduling worker balancer every {} secs...", schedulerRunInterval);
     scheduledFutures.add(
@@ -163,9 +184,25 @@ public class Scheduler extends AbstractIdleService {
       executorService.scheduleAtFixedRate(tenantProvisionerCleanup, provisionerCleanupRunInterval,
                                           provisionerCleanupRunInterval, TimeUnit.SECONDS)
     );
+
+    LOG.info("Scheduling tenant cluster usage rebuild every {} secs...", tenantUsageReconcileRunInterval);
+    // rebuild right away, in case the counters are missing clusters written by an older server
+    scheduledFutures.add(
+      executorService.scheduleAtFixedRate(tenantClusterUsageReconcile, 0,
+                                          tenantUsageReconcileRunInterval, TimeUnit.SECONDS)
+    );
+
+    if (nodeUsageRollupEnabled) {
+      LOG.info("Scheduling node usage rollup backfill...");
+      scheduledFutures.add(executorService.schedule(nodeUsageRollupBackfill, 0, TimeUnit.SECONDS));
+    }
   }
 
   private void unschedule() {
+    for (Cancellable queueListener : queueListeners) {
+      queueListener.cancel();
+    }
+    queueListeners.clear();
     for (ScheduledFuture<?> future : scheduledFutures) {
       try {
         future.cancel(false);
@@ -33,6 +33,7 @@ import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskService;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import co.cask.coopr.store.cluster.ClusterStoreWriteBatch;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -209,10 +210,12 @@ public class SolverScheduler implements Runnable {
 
       // TODO: stuff like this should be wrapped in a transaction
       Set<String> changedNodeIds = Sets.newHashSet();
+      ClusterStoreWriteBatch nodeWrites = clusterStore.startWriteBatch();
       for (Node node : changedNodes) {
-        clusterStore.writeNode(node);
+        nodeWrites.writeNode(node);
         changedNodeIds.add(node.getId());
       }
+      nodeWrites.flush();
       clusterStore.writeCluster(cluster);
 
       // Create new Job for creating cluster.
@@ -265,9 +268,11 @@ public class SolverScheduler implements Runnable {
       // TODO: stats update should happen in TaskService.
       serverStats.getSuccessfulClusterStats().incrementStat(ClusterAction.SOLVE_LAYOUT);
 
+      ClusterStoreWriteBatch nodeWrites = clusterStore.startWriteBatch();
       for (Node node : clusterNodes.values()) {
-        clusterStore.writeNode(node);
+        nodeWrites.writeNode(node);
       }
+      nodeWrites.flush();
 
       // Create new Job for creating cluster.
       JobId clusterJobId = idService.getNewJobId(cluster.getId());
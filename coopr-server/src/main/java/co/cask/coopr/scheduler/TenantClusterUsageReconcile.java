@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.store.cluster.ClusterStore;
+import co.cask.coopr.store.cluster.ClusterStoreService;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the counters of clusters and nodes of every tenant from the clusters in the cluster store. The counters are
+ * updated whenever a cluster is written, so this only fixes counters that have drifted, and builds the counters of
+ * clusters that were written before the counters were kept.
+ */
+public class TenantClusterUsageReconcile implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(TenantClusterUsageReconcile.class);
+
+  private final ClusterStore clusterStore;
+
+  @Inject
+  private TenantClusterUsageReconcile(ClusterStoreService clusterStoreService) {
+    this.clusterStore = clusterStoreService.getSystemView();
+  }
+
+  @Override
+  public void run() {
+    try {
+      long start = System.currentTimeMillis();
+      clusterStore.rebuildTenantClusterUsage();
+      LOG.info("Rebuilt tenant cluster usage in {} ms.", System.currentTimeMillis() - start);
+    } catch (Throwable e) {
+      LOG.error("Got exception while rebuilding tenant cluster usage: ", e);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.common.queue.QueueGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a scheduler on an executor whenever it is triggered, either periodically by running this runnable or right
+ * away when an element is added to a queue the scheduler consumes. Runs of the scheduler never overlap. Triggers that
+ * come in while the scheduler is running cause a single extra run once the current one is done, so that elements added
+ * during a run are picked up without queueing a run for every element.
+ */
+final class TriggeredScheduler implements Runnable, QueueGroup.Listener {
+  private static final Logger LOG = LoggerFactory.getLogger(TriggeredScheduler.class);
+
+  private final String name;
+  private final Runnable scheduler;
+  private final Executor executor;
+  // number of triggers not yet handled by a run. The scheduler is running or about to run whenever this is positive.
+  private final AtomicInteger pendingTriggers;
+  private final Runnable runs;
+
+  TriggeredScheduler(String name, Runnable scheduler, Executor executor) {
+    this.name = name;
+    this.scheduler = scheduler;
+    this.executor = executor;
+    this.pendingTriggers = new AtomicInteger(0);
+    this.runs = new Runnable() {
+      @Override
+      public void run() {
+        runUntilNoTriggers();
+      }
+    };
+  }
+
+  /**
+   * Trigger a run of the scheduler.
+   */
+  @Override
+  public void run() {
+    trigger();
+  }
+
+  @Override
+  public void added(String queueName) {
+    LOG.trace("Element added to queue {}, triggering {} scheduler.", queueName, name);
+    trigger();
+  }
+
+  private void trigger() {
+    if (pendingTriggers.getAndIncrement() > 0) {
+      // the scheduler is running or about to run, and will run again for this trigger
+      return;
+    }
+    try {
+      executor.execute(runs);
+    } catch (RejectedExecutionException e) {
+      // executor is shutting down
+      LOG.debug("Not running {} scheduler, executor is not accepting tasks.", name);
+      pendingTriggers.set(0);
+    }
+  }
+
+  private void runUntilNoTriggers() {
+    int handledTriggers;
+    do {
+      handledTriggers = pendingTriggers.get();
+      try {
+        scheduler.run();
+      } catch (Throwable t) {
+        LOG.error("Exception running {} scheduler.", name, t);
+      }
+    } while (pendingTriggers.addAndGet(-handledTriggers) > 0);
+  }
+}
@@ -16,35 +16,53 @@
 package co.cask.coopr.scheduler.dag;
 
 import com.google.common.base.Objects;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.TreeMultimap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 /**
  * A DAG (directed acyclic graph) to linearize a set of dependent tasks.
+ * <p/>
+ * Besides tasks, the DAG can contain barriers, which are not tasks themselves but are used when many tasks depend on
+ * the same group of tasks. Instead of an edge from every task in the group to every dependent task, there is an edge
+ * from every task in the group to the barrier, and an edge from the barrier to every dependent task. This keeps the
+ * number of edges linear in the number of tasks. Nodes are stored by int id, with the edges kept as lists of ids.
  */
 public class TaskDag {
   private static final Logger LOG = LoggerFactory.getLogger(TaskDag.class);
 
-  // Nodes in the DAG
-  private final Set<TaskNode> nodes;
-  // Edges of the DAG
-  private final SetMultimap<TaskNode, TaskNode> edges;
+  // Ids of the tasks in the DAG
+  private final Map<TaskNode, Integer> taskIds;
+  // Ids of the barriers in the DAG
+  private final Map<String, Integer> barrierIds;
+  // Task of each id, or null if the id is of a barrier
+  private final List<TaskNode> nodes;
+  // Edges of the DAG, from each id to the ids that depend on it
+  private final List<IdList> successors;
+  // Edges of the DAG in reverse, from each id to the ids it depends on
+  private final List<IdList> predecessors;
+  // Edges already in the DAG, to not add the same edge twice
+  private final Set<Long> edges;
 
   public TaskDag() {
-    this.nodes = Sets.newHashSet();
-    this.edges = HashMultimap.create(100, 3);
+    this.taskIds = Maps.newHashMap();
+    this.barrierIds = Maps.newHashMap();
+    this.nodes = Lists.newArrayList();
+    this.successors = Lists.newArrayList();
+    this.predecessors = Lists.newArrayList();
+    this.edges = Sets.newHashSet();
   }
 
   /**
@@ -54,9 +72,28 @@ public class TaskDag {
    * @param toNode task that depends on the fromNode.
    */
   public void addDependency(TaskNode fromNode, TaskNode toNode) {
-    nodes.add(fromNode);
-    nodes.add(toNode);
-    edges.put(fromNode, toNode);
+    addEdge(getTaskId(fromNode), getTaskId(toNode));
+  }
+
+  /**
+   * Defines a dependency of task toNode on every task in fromNodes, through the barrier with the given name. The tasks
+   * the barrier depends on are set when the barrier is first used; fromNodes is ignored for a barrier that is already
+   * in the DAG.
+   *
+   * @param barrier name of the barrier.
+   * @param fromNodes tasks that the toNode depends on.
+   * @param toNode task that depends on the fromNodes.
+   */
+  public void addBarrierDependency(String barrier, Iterable<TaskNode> fromNodes, TaskNode toNode) {
+    Integer barrierId = barrierIds.get(barrier);
+    if (barrierId == null) {
+      barrierId = newId(null);
+      barrierIds.put(barrier, barrierId);
+      for (TaskNode fromNode : fromNodes) {
+        addEdge(getTaskId(fromNode), barrierId);
+      }
+    }
+    addEdge(barrierId, getTaskId(toNode));
   }
 
   /**
@@ -65,64 +102,130 @@ public class TaskDag {
    * @param node task to add to the DAG.
    */
   public void addTaskNode(TaskNode node) {
-    nodes.add(node);
+    getTaskId(node);
+  }
+
+  /**
+   * Get the tasks that the given task directly depends on, either through an edge or through a barrier.
+   *
+   * @param node task to get the dependencies of.
+   * @return tasks that must be executed before the given task, or an empty set if there are none.
+   */
+  public Set<TaskNode> getDependencies(TaskNode node) {
+    Set<TaskNode> dependencies = Sets.newHashSet();
+    Integer id = taskIds.get(node);
+    if (id == null) {
+      return dependencies;
+    }
+    IdList predecessorIds = predecessors.get(id);
+    for (int i = 0; i < predecessorIds.size; i++) {
+      int predecessorId = predecessorIds.ids[i];
+      TaskNode predecessor = nodes.get(predecessorId);
+      if (predecessor != null) {
+        dependencies.add(predecessor);
+      } else {
+        // barriers only depend on tasks
+        IdList barrierPredecessorIds = predecessors.get(predecessorId);
+        for (int j = 0; j < barrierPredecessorIds.size; j++) {
+          dependencies.add(nodes.get(barrierPredecessorIds.ids[j]));
+        }
+      }
+    }
+    return dependencies;
   }
 
   /**
    * Linearize the DAG into a list of stages, where each stage is a set of tasks that can be executed in parallel, and
    * where each task in a stage can only be executed once all the tasks in the previous stage have successfully
-   * completed.
+   * completed. Each task is put in the earliest stage after all the tasks it depends on.
    *
    * @return a list of set of actions that can be performed in order satisfying the dependencies.
    * The actions in each set can be run in parallel.
    */
   public List<Set<TaskNode>> linearize() {
-    LOG.trace("Initial graph - {}", edges);
-
-    List<Set<TaskNode>> linearizedNodes = Lists.newArrayList();
-    ArrayListMultimap<TaskNode, TaskNode> copyEdges = ArrayListMultimap.create(edges);
-
-    // nodes that have no edges are sources.  The initial set is actual nodes - edges.values(), but removal of
-    // edges.values() happens right away in the loop so just setting it to nodes right here.
-    Set<TaskNode> sources = Sets.newHashSet(nodes);
-    Set<TaskNode> sinkNodes = Sets.newHashSet();
-    do {
-      sources.addAll(copyEdges.keySet());
-      sources.removeAll(copyEdges.values());
-
-      LOG.trace("SinkNodes - {}", sinkNodes);
-      LOG.trace("Sources - {}", sources);
-      if (sources.isEmpty()) {
-        throw new IllegalStateException("No source nodes found, DAG not serializable");
-      }
+    LOG.trace("Initial graph - {}", this);
+    int numNodes = nodes.size();
 
-      Set<TaskNode> stageNodes = Sets.newHashSet(Iterables.concat(sinkNodes, sources));
-      LOG.trace("Stage Nodes - {}", stageNodes);
-      linearizedNodes.add(stageNodes);
-
-      // Determine sink nodes if any
-      sinkNodes.clear();
-      Set<TaskNode> toNodes = Sets.newHashSet();
-      for (TaskNode fromNode : sources) {
-        toNodes.addAll(copyEdges.removeAll(fromNode));
+    // Kahn's algorithm, keeping track of the earliest stage of every node. A barrier does not take up a stage of its
+    // own, so the tasks that depend on a barrier can be in the same stage as the barrier.
+    int[] numDependencies = new int[numNodes];
+    int[] stages = new int[numNodes];
+    int[] sorted = new int[numNodes];
+    int numSorted = 0;
+    for (int id = 0; id < numNodes; id++) {
+      numDependencies[id] = predecessors.get(id).size;
+      if (numDependencies[id] == 0) {
+        sorted[numSorted++] = id;
+      }
+    }
+    int numStages = 0;
+    for (int i = 0; i < numSorted; i++) {
+      int id = sorted[i];
+      boolean isTask = nodes.get(id) != null;
+      int successorStage = isTask ? stages[id] + 1 : stages[id];
+      if (isTask) {
+        numStages = Math.max(numStages, successorStage);
       }
+      IdList successorIds = successors.get(id);
+      for (int j = 0; j < successorIds.size; j++) {
+        int successorId = successorIds.ids[j];
+        stages[successorId] = Math.max(stages[successorId], successorStage);
+        if (--numDependencies[successorId] == 0) {
+          sorted[numSorted++] = successorId;
+        }
+      }
+    }
+    // an empty DAG cannot be linearized either, as there is nothing to start from
+    if (numSorted < numNodes || taskIds.isEmpty()) {
+      throw new IllegalStateException("No source nodes found, DAG not serializable");
+    }
 
-      // If the node is not a source, or a destination of any other source then they are sink nodes.
-      toNodes.removeAll(copyEdges.keySet());
-      toNodes.removeAll(copyEdges.values());
-      if (!toNodes.isEmpty()) {
-        sinkNodes.addAll(toNodes);
+    List<Set<TaskNode>> linearizedNodes = Lists.newArrayListWithCapacity(numStages);
+    for (int i = 0; i < numStages; i++) {
+      linearizedNodes.add(Sets.<TaskNode>newHashSet());
+    }
+    for (int id = 0; id < numNodes; id++) {
+      TaskNode node = nodes.get(id);
+      if (node != null) {
+        linearizedNodes.get(stages[id]).add(node);
       }
-      sources.clear();
-    } while (!copyEdges.isEmpty());
+    }
+    return linearizedNodes;
+  }
 
-    // Add final nodes
-    LOG.trace("Final nodes - {}", sinkNodes);
-    if (!sinkNodes.isEmpty()) {
-      linearizedNodes.add(sinkNodes);
+  private int getTaskId(TaskNode node) {
+    Integer id = taskIds.get(node);
+    if (id == null) {
+      id = newId(node);
+      taskIds.put(node, id);
     }
+    return id;
+  }
 
-    return linearizedNodes;
+  private int newId(TaskNode node) {
+    nodes.add(node);
+    successors.add(new IdList());
+    predecessors.add(new IdList());
+    return nodes.size() - 1;
+  }
+
+  private void addEdge(int fromId, int toId) {
+    if (edges.add(((long) fromId << 32) | toId)) {
+      successors.get(fromId).add(toId);
+      predecessors.get(toId).add(fromId);
+    }
+  }
+
+  // Edges between tasks, with the edges through barriers replaced by edges from every task before the barrier to
+  // every task after it. Two DAGs with the same tasks and the same task edges are equal, whatever their barriers.
+  private SetMultimap<TaskNode, TaskNode> getTaskEdges() {
+    SetMultimap<TaskNode, TaskNode> taskEdges = HashMultimap.create();
+    for (TaskNode node : taskIds.keySet()) {
+      for (TaskNode dependency : getDependencies(node)) {
+        taskEdges.put(dependency, node);
+      }
+    }
+    return taskEdges;
   }
 
   @Override
@@ -135,12 +238,13 @@ public class TaskDag {
     }
 
     TaskDag other = (TaskDag) o;
-    return Objects.equal(nodes, other.nodes) && Objects.equal(edges, other.edges);
+    return Objects.equal(taskIds.keySet(), other.taskIds.keySet()) &&
+      Objects.equal(getTaskEdges(), other.getTaskEdges());
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(nodes, edges);
+    return Objects.hashCode(taskIds.keySet(), getTaskEdges());
   }
 
   @Override
@@ -148,9 +252,9 @@ public class TaskDag {
     StringBuilder output = new StringBuilder();
     Comparator<TaskNode> comparator = new TaskNodeComparator();
     TreeSet<TaskNode> nodes = Sets.newTreeSet(comparator);
-    nodes.addAll(this.nodes);
+    nodes.addAll(taskIds.keySet());
     SetMultimap<TaskNode, TaskNode> edges = TreeMultimap.create(comparator, comparator);
-    edges.putAll(this.edges);
+    edges.putAll(getTaskEdges());
     output.append("services:\n");
     for (TaskNode node : nodes) {
       output.append(node);
@@ -184,4 +288,19 @@ public class TaskDag {
       return taskNode.getHostId().compareTo(taskNode2.getHostId());
     }
   }
+
+  /**
+   * Growable list of ids.
+   */
+  private static final class IdList {
+    private int[] ids = new int[2];
+    private int size;
+
+    private void add(int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package co.cask.coopr.scheduler.guice;
 
+import co.cask.coopr.cluster.ClusterService;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.scheduler.ClusterCleanup;
@@ -10,6 +11,7 @@ import co.cask.coopr.scheduler.Scheduler;
 import co.cask.coopr.scheduler.SolverScheduler;
 import co.cask.coopr.scheduler.WorkerBalanceScheduler;
 import co.cask.coopr.scheduler.callback.ClusterCallback;
+import co.cask.coopr.scheduler.task.TaskQueueService;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
@@ -52,5 +54,9 @@ public class SchedulerModule extends AbstractModule {
     bind(WorkerBalanceScheduler.class).in(Scopes.SINGLETON);
     bind(ClusterCleanup.class).in(Scopes.SINGLETON);
     bind(TenantProvisionerCleanup.class).in(Scopes.SINGLETON);
+    // shared by all handlers, as it keeps the takes that wait for tasks
+    bind(TaskQueueService.class).in(Scopes.SINGLETON);
+    // shared by all handlers and schedulers, as it keeps the resolved cluster templates
+    bind(ClusterService.class).in(Scopes.SINGLETON);
   }
 }
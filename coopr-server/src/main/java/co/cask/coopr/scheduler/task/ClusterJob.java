@@ -27,7 +27,8 @@ import java.util.Set;
 
 /**
  * A job contains information related to what needs to be done to perform and coordinate a cluster operation. It keeps
- * track of node level tasks that must be executed, and the stages in which tasks must be executed.
+ * track of node level tasks that must be executed, and the stages in which tasks must be executed. Jobs in
+ * {@link ExecutionMode#DATAFLOW} mode also keep track of the tasks each task depends on.
  */
 public class ClusterJob {
 
@@ -41,6 +42,21 @@ public class ClusterJob {
     FAILED,
     PAUSED
   }
+
+  /**
+   * How the tasks of the job are executed.
+   */
+  public enum ExecutionMode {
+    /**
+     * Tasks are executed stage by stage, with each stage started once every task in the previous stage is complete.
+     */
+    STAGED,
+    /**
+     * All tasks are in a single stage, and each task is started as soon as all the tasks it depends on are complete
+     * and no other task is running on its node.
+     */
+    DATAFLOW
+  }
   private final String jobId;
   private final String clusterId;
   private final ClusterAction clusterAction;
@@ -51,6 +67,9 @@ public class ClusterJob {
   private final Map<String, ClusterTask.Status> taskStatus;
   private Status jobStatus;
   private String statusMessage;
+  // null for jobs written before there were execution modes, which are staged
+  private ExecutionMode executionMode;
+  private Map<String, Set<String>> taskDependencies;
 
   /**
    * Create a cluster job with the given job id that represent the given action to perform on a cluster across all
@@ -83,6 +102,8 @@ public class ClusterJob {
     this.plannedServices = plannedServices;
     this.plannedNodes = plannedNodes;
     taskStatus = Maps.newHashMap();
+    this.executionMode = ExecutionMode.STAGED;
+    this.taskDependencies = Maps.newHashMap();
   }
 
 
@@ -171,6 +192,9 @@ public class ClusterJob {
   public void clearTasks() {
     stagedTasks.clear();
     taskStatus.clear();
+    if (taskDependencies != null) {
+      taskDependencies.clear();
+    }
   }
 
   /**
@@ -228,6 +252,48 @@ public class ClusterJob {
     return taskStatus;
   }
 
+  /**
+   * Get how the tasks of the job are executed.
+   *
+   * @return Execution mode of the job.
+   */
+  public ExecutionMode getExecutionMode() {
+    return executionMode == null ? ExecutionMode.STAGED : executionMode;
+  }
+
+  /**
+   * Set how the tasks of the job are executed. Should be set before any stages are added.
+   *
+   * @param executionMode Execution mode of the job.
+   */
+  public void setExecutionMode(ExecutionMode executionMode) {
+    this.executionMode = executionMode;
+  }
+
+  /**
+   * Set the ids of the tasks that a specific task depends on. Only used in {@link ExecutionMode#DATAFLOW} mode.
+   *
+   * @param taskId Id of the task whose dependencies must be set.
+   * @param dependencies Ids of the tasks that must be complete before the task can be started.
+   */
+  public void setTaskDependencies(String taskId, Set<String> dependencies) {
+    if (taskDependencies == null) {
+      taskDependencies = Maps.newHashMap();
+    }
+    taskDependencies.put(taskId, dependencies);
+  }
+
+  /**
+   * Get the ids of the tasks that a specific task depends on.
+   *
+   * @param taskId Id of the task whose dependencies to get.
+   * @return Ids of the tasks that must be complete before the task can be started, or an empty set if there are none.
+   */
+  public Set<String> getTaskDependencies(String taskId) {
+    Set<String> dependencies = taskDependencies == null ? null : taskDependencies.get(taskId);
+    return dependencies == null ? ImmutableSet.<String>of() : dependencies;
+  }
+
   /**
    * Set the status of the entire job.
    *
@@ -275,6 +341,8 @@ public class ClusterJob {
       .add("taskStatus", taskStatus)
       .add("jobStatus", jobStatus)
       .add("statusMessage", statusMessage)
+      .add("executionMode", executionMode)
+      .add("taskDependencies", taskDependencies)
       .toString();
   }
 
@@ -290,11 +358,14 @@ public class ClusterJob {
       Objects.equal(currentStageNumber, other.currentStageNumber) &&
       Objects.equal(taskStatus, other.taskStatus) &&
       Objects.equal(jobStatus, other.jobStatus) &&
-      Objects.equal(statusMessage, statusMessage);
+      Objects.equal(statusMessage, statusMessage) &&
+      Objects.equal(getExecutionMode(), other.getExecutionMode()) &&
+      Objects.equal(taskDependencies, other.taskDependencies);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(jobId, clusterId, stagedTasks, currentStageNumber, taskStatus, jobStatus, statusMessage);
+    return Objects.hashCode(jobId, clusterId, stagedTasks, currentStageNumber, taskStatus, jobStatus, statusMessage,
+                            getExecutionMode(), taskDependencies);
   }
 }
@@ -21,6 +21,7 @@ import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.utils.StringUtils;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import co.cask.coopr.store.cluster.ClusterStoreWriteBatch;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +47,7 @@ public class NodeService {
   }
 
   /**
-   * Start an action on a node. Updates the node in the persistent store.
+   * Start an action on a node. Writes the action to the persistent store, without the rest of the node.
    *
    * @param node Node the action will take place on.
    * @param taskId Id of the task associated with the action.
@@ -55,30 +56,60 @@ public class NodeService {
    * @throws IOException
    */
   public void startAction(Node node, String taskId, String service, String action) throws IOException {
+    ClusterStoreWriteBatch writes = clusterStore.startWriteBatch();
+    startAction(node, taskId, service, action, writes);
+    writes.flush();
+  }
+
+  /**
+   * Start an action on a node. Adds the action to the given write batch instead of writing it to the store.
+   *
+   * @param node Node the action will take place on.
+   * @param taskId Id of the task associated with the action.
+   * @param service Service the action is for or empty if its not a service action.
+   * @param action Action to execute on the node.
+   * @param writes Write batch to add the action to.
+   */
+  public void startAction(Node node, String taskId, String service, String action, ClusterStoreWriteBatch writes) {
     if (node.getActions().size() >= maxActions) {
       Node.Action removed = node.removeFirstAction();
       LOG.debug("Removing action {} from node {} since num actions is more than {}",
                 removed, node.getId(), maxActions);
+      writes.deleteNodeAction(node, removed);
     }
-    node.addAction(new Node.Action(taskId, service, action));
-    clusterStore.writeNode(node);
+    Node.Action nodeAction = new Node.Action(taskId, service, action);
+    node.addAction(nodeAction);
+    writes.writeNodeAction(node, nodeAction);
   }
 
   /**
-   * Complete an action on a node. Updates the node in the persistent store.
+   * Complete an action on a node. Writes the action to the persistent store, without the rest of the node.
    *
    * @param node Node the completed action took place on.
    * @throws IOException
    */
   public void completeAction(Node node) throws IOException {
+    ClusterStoreWriteBatch writes = clusterStore.startWriteBatch();
+    completeAction(node, writes);
+    writes.flush();
+  }
+
+  /**
+   * Complete an action on a node. Adds the action to the given write batch instead of writing it to the store.
+   *
+   * @param node Node the completed action took place on.
+   * @param writes Write batch to add the action to.
+   */
+  public void completeAction(Node node, ClusterStoreWriteBatch writes) {
     Node.Action action = validateAndGetAction(node);
     action.setStatus(Node.Status.COMPLETE);
     action.setStatusTime(System.currentTimeMillis());
-    clusterStore.writeNode(node);
+    writes.writeNodeAction(node, action);
   }
 
   /**
-   * Fail an action on a node with optional logs on what went wrong. Updates the node in the persistent store.
+   * Fail an action on a node with optional logs on what went wrong. Writes the action to the persistent store,
+   * without the rest of the node.
    *
    * @param node Node the action failed on.
    * @param stdout Stdout of failed action.
@@ -86,12 +117,27 @@ public class NodeService {
    * @throws IOException
    */
   public void failAction(Node node, String stdout, String stderr) throws IOException {
+    ClusterStoreWriteBatch writes = clusterStore.startWriteBatch();
+    failAction(node, stdout, stderr, writes);
+    writes.flush();
+  }
+
+  /**
+   * Fail an action on a node with optional logs on what went wrong. Adds the action to the given write batch
+   * instead of writing it to the store.
+   *
+   * @param node Node the action failed on.
+   * @param stdout Stdout of failed action.
+   * @param stderr Stderr of failed action.
+   * @param writes Write batch to add the action to.
+   */
+  public void failAction(Node node, String stdout, String stderr, ClusterStoreWriteBatch writes) {
     Node.Action action = validateAndGetAction(node);
     action.setStatus(Node.Status.FAILED);
     action.setStatusTime(System.currentTimeMillis());
     action.setStdout(truncateLog(stdout, maxLogLength));
     action.setStderr(truncateLog(stderr, maxLogLength));
-    clusterStore.writeNode(node);
+    writes.writeNodeAction(node, action);
   }
 
   private Node.Action validateAndGetAction(Node node) {
@@ -34,7 +34,7 @@ import java.util.Map;
 public class TaskConfig {
   private final NodeProperties nodeProperties;
   private final Provider provider;
-  // list of other nodes in the cluster
+  // list of other nodes in the cluster, empty for node actions
   private final Map<String, NodeProperties> nodes;
   // service action to perform
   private final TaskServiceAction taskServiceAction;
@@ -51,7 +51,8 @@ public class TaskConfig {
    *                May be null for tasks that are on the node itself but not on a service.
    * @param clusterConfig Cluster config with expanded macros.
    * @param action Action to perform.
-   * @param clusterNodes Collection of all nodes in the cluster.
+   * @param clusterNodes Collection of all nodes in the cluster. Only included in the config of service actions, as
+   *                     node actions only need the properties of the node they take place on.
    * @return Task config created from the given input.
    */
   public static TaskConfig from(Cluster cluster, Node node, Service service, JsonObject clusterConfig,
@@ -61,7 +62,7 @@ public class TaskConfig {
     TaskServiceAction taskServiceAction = service == null ? null :
       new TaskServiceAction(service.getName(), service.getProvisionerActions().get(action));
     ImmutableMap.Builder builder = ImmutableMap.<String, NodeProperties>builder();
-    if (clusterNodes != null) {
+    if (service != null && clusterNodes != null) {
       for (Node clusterNode : clusterNodes) {
         builder.put(clusterNode.getId(), clusterNode.getProperties());
       }
@@ -91,7 +92,8 @@ public class TaskConfig {
   }
 
   /**
-   * Get the mapping of node id to node properties for all nodes in the cluster.
+   * Get the mapping of node id to node properties for all nodes in the cluster. Empty for node actions like create,
+   * confirm, bootstrap and delete, which are not performed on a service.
    *
    * @return Mapping of node id to node properties for all nodes in the cluster.
    */
@@ -26,32 +26,60 @@ import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.http.request.FinishTaskRequest;
 import co.cask.coopr.http.request.TakeTaskRequest;
+import co.cask.coopr.http.request.TakeTasksRequest;
 import co.cask.coopr.management.ServerStats;
 import co.cask.coopr.provisioner.TenantProvisionerService;
 import co.cask.coopr.spec.Tenant;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import co.cask.coopr.store.cluster.ClusterStoreWriteBatch;
 import co.cask.coopr.store.credential.CredentialStore;
 import co.cask.coopr.store.tenant.TenantStore;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Manages handing out tasks from task queue, and recording status after the task is done.
+ * <p/>
+ * Takes that ask to wait for a task are parked per tenant until a task is added to the tenant's queue or until their
+ * wait is over, so that idle workers do not go through the queue over and over again. All parked takes are handled by
+ * a single thread, as taking from the queues is serialized anyway. A parked take can be given up by cancelling its
+ * future. Takes that are still parked when the service stops are ended without a task.
  */
-public class TaskQueueService {
+public class TaskQueueService extends AbstractIdleService {
   private static final Logger LOG = LoggerFactory.getLogger(TaskQueueService.class);
+  private static final Type WORKER_TASKS_TYPE = new TypeToken<Map<String, SchedulableTask>>() { }.getType();
 
   private final ClusterStore clusterStore;
   private final TenantStore tenantStore;
@@ -64,6 +92,12 @@ public class TaskQueueService {
   private final QueueGroup jobQueues;
   private final Gson gson;
   private final LoadingCache<String, QueueMetrics> queueMetricsCache;
+  private final long maxTakeWaitMs;
+  private final int pendingTakeCheckSecs;
+  private final ScheduledExecutorService pendingTakeExecutor;
+  // tenant -> takes waiting for a task in the order they were parked. Only used from the pending take executor.
+  private final Map<String, Queue<PendingTake>> pendingTakes;
+  private final Cancellable queueListenerCancellable;
 
   @Inject
   private TaskQueueService(QueueService queueService,
@@ -98,6 +132,56 @@ public class TaskQueueService {
           return new QueueMetrics(numQueued, numInProgress);
         }
       });
+    this.maxTakeWaitMs = TimeUnit.SECONDS.toMillis(conf.getLong(Constants.TASK_TAKE_MAX_WAIT_SECS));
+    this.pendingTakeCheckSecs = conf.getInt(Constants.SCHEDULER_INTERVAL_SECS);
+    this.pendingTakeExecutor =
+      Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("pending-task-take"));
+    this.pendingTakes = Maps.newHashMap();
+    this.queueListenerCancellable = taskQueues.addListener(new QueueGroup.Listener() {
+      @Override
+      public void added(final String queueName) {
+        pendingTakeExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            takePendingTasks(queueName);
+          }
+        });
+      }
+    });
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    // adds are signaled by the queue group, but a signal can cover only part of the adds that happen close together on
+    // other servers, so parked takes also look for tasks every scheduler run interval.
+    pendingTakeExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        for (String tenantId : Lists.newArrayList(pendingTakes.keySet())) {
+          takePendingTasks(tenantId);
+        }
+      }
+    }, pendingTakeCheckSecs, pendingTakeCheckSecs, TimeUnit.SECONDS);
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    queueListenerCancellable.cancel();
+    // end the parked takes on the pending take thread, after any take that is still being parked
+    pendingTakeExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        for (Queue<PendingTake> tenantTakes : pendingTakes.values()) {
+          for (PendingTake pendingTake : tenantTakes) {
+            pendingTake.timeout.cancel(false);
+            pendingTake.future.set(null);
+          }
+        }
+        pendingTakes.clear();
+      }
+    }).get();
+    // only the cancelled timeouts are left
+    pendingTakeExecutor.shutdownNow();
   }
 
   /**
@@ -195,6 +279,182 @@ public class TaskQueueService {
     return taskJson;
   }
 
+  /**
+   * Takes the next tasks from the task queue for several workers of a provisioner at once, one task per worker. Tasks
+   * are handed out and skipped the same way as in {@link #takeNextClusterTask(TakeTaskRequest)}, but the queue, the
+   * jobs and credentials of the tasks, and the nodes the tasks are for are each read and written once per batch
+   * instead of once per task.
+   *
+   * @param takeRequest Request to take tasks.
+   * @return JSON object with the task JSON of each worker that got a task, keyed by worker id, or null if no task was
+   *         taken.
+   * @throws MissingEntityException if there is no provisioner for the provisioner id in the request.
+   * @throws IOException if there was an error persisting task information.
+   */
+  public String takeNextClusterTasks(TakeTasksRequest takeRequest) throws IOException, MissingEntityException {
+    String tenantId = takeRequest.getTenantId();
+    String provisionerId = takeRequest.getProvisionerId();
+
+    if (tenantProvisionerService.getProvisioner(provisionerId) == null) {
+      throw new MissingEntityException("provisioner " + provisionerId + " not found.");
+    }
+
+    // worker id -> task given to the worker
+    Map<String, SchedulableTask> tasks = Maps.newLinkedHashMap();
+    List<ClusterTask> takenTasks = Lists.newArrayList();
+    // tasks of a batch usually belong to a handful of jobs, so jobs and credentials are only looked up once
+    Map<String, ClusterJob> clusterJobs = Maps.newHashMap();
+    Map<String, Map<String, Object>> sensitiveFields = Maps.newHashMap();
+
+    List<String> workerIds = takeRequest.getWorkerIds();
+    while (!workerIds.isEmpty()) {
+      List<String> consumerIds = Lists.newArrayListWithCapacity(workerIds.size());
+      for (String workerId : workerIds) {
+        consumerIds.add(provisionerId + "." + workerId);
+      }
+      List<Element> elements = taskQueues.take(tenantId, consumerIds);
+      if (elements.isEmpty()) {
+        break;
+      }
+
+      List<String> taskIds = Lists.newArrayListWithCapacity(elements.size());
+      for (Element element : elements) {
+        taskIds.add(element.getId());
+      }
+      Map<String, ClusterTask> clusterTasks = clusterStore.getClusterTasks(taskIds);
+
+      // workers whose task was skipped try again with the next tasks in the queue
+      List<String> skippedWorkerIds = Lists.newArrayList();
+      for (int i = 0; i < elements.size(); i++) {
+        Element task = elements.get(i);
+        String workerId = workerIds.get(i);
+        String consumerId = consumerIds.get(i);
+        ClusterTask clusterTask = clusterTasks.get(task.getId());
+        if (clusterTask == null) {
+          LOG.error("Got empty task JSON for {}, skipping it.", task.getId());
+          taskQueues.recordProgress(consumerId, tenantId, task.getId(),
+                                    TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                    "Skipped due to empty task JSON.");
+          skippedWorkerIds.add(workerId);
+          continue;
+        }
+
+        String jobId = clusterTask.getJobId();
+        if (!clusterJobs.containsKey(jobId)) {
+          clusterJobs.put(jobId, clusterStore.getClusterJob(JobId.fromString(jobId)));
+        }
+        ClusterJob clusterJob = clusterJobs.get(jobId);
+        if (clusterJob == null || clusterJob.getJobStatus() == ClusterJob.Status.FAILED) {
+          // we don't want to give out tasks for failed jobs.  Remove from the queue and move on.
+          taskQueues.recordProgress(consumerId, tenantId, clusterTask.getTaskId(),
+                                    TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                    "Skipped due to job failure.");
+          taskService.dropTask(clusterTask);
+          jobQueues.add(tenantId, new Element(jobId));
+          skippedWorkerIds.add(workerId);
+          continue;
+        }
+
+        SchedulableTask taskObject = gson.fromJson(task.getValue(), SchedulableTask.class);
+        // fetch any sensitive fields and add them to the provider
+        String clusterId = clusterJob.getClusterId();
+        if (!sensitiveFields.containsKey(clusterId)) {
+          sensitiveFields.put(clusterId, credentialStore.get(tenantId, clusterId));
+        }
+        taskObject.getConfig().getProvider().addFields(sensitiveFields.get(clusterId));
+        tasks.put(workerId, taskObject);
+        takenTasks.add(clusterTask);
+      }
+
+      if (skippedWorkerIds.isEmpty()) {
+        break;
+      }
+      skippedWorkerIds.addAll(workerIds.subList(elements.size(), workerIds.size()));
+      workerIds = skippedWorkerIds;
+    }
+
+    if (tasks.isEmpty()) {
+      return null;
+    }
+
+    startNodeActions(takenTasks);
+    LOG.trace("tasks {} given to workers {}", takenTasks, tasks.keySet());
+    serverStats.setQueueLength(getTotalQueueSize());
+    return gson.toJson(tasks, WORKER_TASKS_TYPE);
+  }
+
+  /**
+   * Takes the next task from the task queue like {@link #takeNextClusterTask(TakeTaskRequest)}, but if there is no task
+   * to take, waits for a task to be added to the queue of the tenant for up to the max wait of the request. The max
+   * wait is capped by the server setting for the longest wait. Does not block, the task is taken on another thread.
+   * Cancelling the returned future gives up the take, for example when the worker is no longer there to receive the
+   * task. A task that was taken for a take that is given up at the same time is put back in the queue.
+   *
+   * @param takeRequest Request to take a task.
+   * @return Future for the task JSON to be handed over to the provisioner, which is null if no task was queued in time.
+   * @throws MissingEntityException if there is no provisioner for the provisioner id in the request.
+   * @throws IOException if there was an error looking up the provisioner.
+   */
+  public ListenableFuture<String> waitForNextClusterTask(TakeTaskRequest takeRequest)
+    throws IOException, MissingEntityException {
+    if (tenantProvisionerService.getProvisioner(takeRequest.getProvisionerId()) == null) {
+      throw new MissingEntityException("provisioner " + takeRequest.getProvisionerId() + " not found.");
+    }
+
+    final PendingTake pendingTake = new PendingTake(takeRequest);
+    final String tenantId = takeRequest.getTenantId();
+    pendingTake.future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        if (pendingTake.future.isCancelled()) {
+          pendingTakeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              removePendingTake(pendingTake);
+              if (pendingTake.timeout != null) {
+                pendingTake.timeout.cancel(false);
+              }
+            }
+          });
+        }
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    pendingTakeExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (pendingTake.future.isCancelled()) {
+          return;
+        }
+        Queue<PendingTake> tenantTakes = pendingTakes.get(tenantId);
+        if (tenantTakes == null) {
+          tenantTakes = Lists.newLinkedList();
+          pendingTakes.put(tenantId, tenantTakes);
+        }
+        // a worker only takes one task at a time, an earlier take by the same worker was given up by the worker
+        Iterator<PendingTake> takeIter = tenantTakes.iterator();
+        while (takeIter.hasNext()) {
+          PendingTake earlierTake = takeIter.next();
+          if (earlierTake.isSameWorker(pendingTake)) {
+            takeIter.remove();
+            earlierTake.timeout.cancel(false);
+            earlierTake.future.set(null);
+          }
+        }
+        tenantTakes.add(pendingTake);
+        pendingTake.timeout = pendingTakeExecutor.schedule(new Runnable() {
+          @Override
+          public void run() {
+            removePendingTake(pendingTake);
+            pendingTake.future.set(null);
+          }
+        }, Math.min(pendingTake.request.getMaxWaitMs(), maxTakeWaitMs), TimeUnit.MILLISECONDS);
+        // there may already be a task, that was added before the take was parked
+        takePendingTasks(tenantId);
+      }
+    });
+    return pendingTake.future;
+  }
+
   /**
    * Records the status of a finished task from provisioner.
    * Only the worker who currently owns the task can update the status.
@@ -241,6 +501,86 @@ public class TaskQueueService {
     jobQueues.add(queueName, new Element(clusterTask.getJobId()));
   }
 
+  /**
+   * Records the status of several finished tasks at once. Each task is finished as in
+   * {@link #finishClusterTask(FinishTaskRequest)}, but the queue, the tasks and the nodes the tasks are for are each
+   * read and written once per batch instead of once per task. Tasks whose worker is not the current owner of the task
+   * are not finished, but do not keep the other tasks from being finished.
+   *
+   * @param finishRequests Requests to finish tasks.
+   * @return Ids of the tasks that were finished.
+   * @throws MissingEntityException if there is no provisioner for a provisioner id in the requests.
+   * @throws IOException if there was an error persisting task information.
+   */
+  public Set<String> finishClusterTasks(List<FinishTaskRequest> finishRequests)
+    throws MissingEntityException, IOException {
+    Set<String> provisionerIds = Sets.newHashSet();
+    // tenant -> task id -> id of the consumer finishing the task
+    Map<String, Map<String, String>> taskConsumers = Maps.newHashMap();
+    Map<String, FinishTaskRequest> requests = Maps.newHashMap();
+    for (FinishTaskRequest finishRequest : finishRequests) {
+      String provisionerId = finishRequest.getProvisionerId();
+      if (provisionerIds.add(provisionerId) && tenantProvisionerService.getProvisioner(provisionerId) == null) {
+        throw new MissingEntityException("provisioner " + provisionerId + " not found.");
+      }
+      Map<String, String> tenantTaskConsumers = taskConsumers.get(finishRequest.getTenantId());
+      if (tenantTaskConsumers == null) {
+        tenantTaskConsumers = Maps.newHashMap();
+        taskConsumers.put(finishRequest.getTenantId(), tenantTaskConsumers);
+      }
+      tenantTaskConsumers.put(finishRequest.getTaskId(), provisionerId + "." + finishRequest.getWorkerId());
+      requests.put(finishRequest.getTaskId(), finishRequest);
+    }
+
+    Set<String> finished = Sets.newHashSet();
+    for (Map.Entry<String, Map<String, String>> entry : taskConsumers.entrySet()) {
+      finished.addAll(taskQueues.finish(entry.getKey(), entry.getValue(), ""));
+    }
+    if (finished.isEmpty()) {
+      return finished;
+    }
+
+    // Queue update was successful, now update the task objects
+    Map<String, ClusterTask> clusterTasks = clusterStore.getClusterTasks(finished);
+    Map<String, Node> nodes = clusterStore.getNodes(getNodeIds(clusterTasks.values()));
+    ClusterStoreWriteBatch writes = clusterStore.startWriteBatch();
+    // job id -> tenant of the job
+    Map<String, String> jobTenants = Maps.newLinkedHashMap();
+    List<ClusterTask> completedTasks = Lists.newArrayList();
+    for (String taskId : finished) {
+      ClusterTask clusterTask = clusterTasks.get(taskId);
+      FinishTaskRequest finishRequest = requests.get(taskId);
+      if (clusterTask == null) {
+        LOG.error("Cannot find finished task {}, skipping it.", taskId);
+        continue;
+      }
+
+      int status = finishRequest.getStatus();
+      if (status == 0) {
+        LOG.debug("Successful finish of the task reported. Task {} by worker {}", taskId, finishRequest.getWorkerId());
+        taskService.completeTask(clusterTask, status, writes);
+        completedTasks.add(clusterTask);
+      } else {
+        LOG.debug("Failure to finish task reported. Task {} by worker {}", taskId, finishRequest.getWorkerId());
+        taskService.failTask(clusterTask, status, writes);
+      }
+
+      if (clusterTask.getNodeId() != null) {
+        finishNodeAction(clusterTask, finishRequest, nodes.get(clusterTask.getNodeId()), writes);
+      }
+      jobTenants.put(clusterTask.getJobId(), finishRequest.getTenantId());
+    }
+    writes.flush();
+    taskService.writeNodeUsage(completedTasks);
+    serverStats.setQueueLength(getTotalQueueSize());
+
+    // Schedule the jobs for processing
+    for (Map.Entry<String, String> jobTenant : jobTenants.entrySet()) {
+      jobQueues.add(jobTenant.getValue(), new Element(jobTenant.getKey()));
+    }
+    return finished;
+  }
+
   void startNodeAction(ClusterTask clusterTask) throws IOException {
     // Update node properties if task is associated with a nodeId.
     // There are cases when we don't associate a nodeId with a task so that the node properties don't get overridden
@@ -265,29 +605,135 @@ public class TaskQueueService {
     // Eg. deleting a box during a rollback operation since we reuse nodeIds.
     if (clusterTask.getNodeId() != null) {
       Node node = clusterStore.getNode(clusterTask.getNodeId());
+      ClusterStoreWriteBatch writes = clusterStore.startWriteBatch();
+      finishNodeAction(clusterTask, finish, node, writes);
+      writes.flush();
+    }
+  }
+
+  private void finishNodeAction(ClusterTask clusterTask, FinishTaskRequest finish, Node node,
+                                ClusterStoreWriteBatch writes) {
+    if (node == null) {
+      LOG.error("Cannot find node {} for task {} to update the properties",
+                clusterTask.getNodeId(), clusterTask.getTaskId());
+      return;
+    }
+
+    // Update provisioner results stored with the node and passed on to future tasks
+    boolean nodeChanged = changesResults(node, finish.getResult());
+    node.addResults(finish.getResult());
+
+    // Update node action. The node itself is only written if more than its actions changed, as actions are written
+    // on their own.
+    if (clusterTask.getStatus() == ClusterTask.Status.COMPLETE) {
+      Map<String, String> ipAddresses = finish.getIpaddresses();
+      if (ipAddresses != null && !ipAddresses.equals(node.getProperties().getIPAddresses())) {
+        node.getProperties().setIpaddresses(ipAddresses);
+        nodeChanged = true;
+      }
+      String hostname = finish.getHostname();
+      if (hostname != null && !hostname.isEmpty() && !hostname.equals(node.getProperties().getHostname())) {
+        node.getProperties().setHostname(hostname);
+        nodeChanged = true;
+      }
+      nodeService.completeAction(node, writes);
+    } else {
+      nodeService.failAction(node, finish.getStdout(), finish.getStderr(), writes);
+    }
+    if (nodeChanged) {
+      writes.writeNode(node);
+    }
+
+    LOG.trace("Updated Node = {}", node);
+  }
+
+  private boolean changesResults(Node node, JsonObject results) {
+    for (Map.Entry<String, JsonElement> entry : results.entrySet()) {
+      if (!entry.getValue().equals(node.getProvisionerResults().get(entry.getKey()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // start the node actions of the given tasks, reading and writing all the nodes at once
+  private void startNodeActions(Collection<ClusterTask> clusterTasks) throws IOException {
+    Map<String, Node> nodes = clusterStore.getNodes(getNodeIds(clusterTasks));
+    ClusterStoreWriteBatch nodeWrites = clusterStore.startWriteBatch();
+    for (ClusterTask clusterTask : clusterTasks) {
+      // see startNodeAction for why a task may not have a node
+      if (clusterTask.getNodeId() == null) {
+        continue;
+      }
+      Node node = nodes.get(clusterTask.getNodeId());
       if (node == null) {
         LOG.error("Cannot find node {} for task {} to update the properties",
                   clusterTask.getNodeId(), clusterTask.getTaskId());
       } else {
-        // Update provisioner results stored with the node and passed on to future tasks
-        node.addResults(finish.getResult());
-
-        // Update node action
-        if (clusterTask.getStatus() == ClusterTask.Status.COMPLETE) {
-          Map<String, String> ipAddresses = finish.getIpaddresses();
-          if (ipAddresses != null) {
-            node.getProperties().setIpaddresses(ipAddresses);
-          }
-          String hostname = finish.getHostname();
-          if (hostname != null && !hostname.isEmpty()) {
-            node.getProperties().setHostname(hostname);
-          }
-          nodeService.completeAction(node);
-        } else {
-          nodeService.failAction(node, finish.getStdout(), finish.getStderr());
-        }
+        nodeService.startAction(node, clusterTask.getTaskId(), clusterTask.getService(),
+                                clusterTask.getTaskName().name(), nodeWrites);
+      }
+    }
+    nodeWrites.flush();
+  }
 
-        LOG.trace("Updated Node = {}", node);
+  private Set<String> getNodeIds(Collection<ClusterTask> clusterTasks) {
+    Set<String> nodeIds = Sets.newHashSet();
+    for (ClusterTask clusterTask : clusterTasks) {
+      if (clusterTask.getNodeId() != null) {
+        nodeIds.add(clusterTask.getNodeId());
+      }
+    }
+    return nodeIds;
+  }
+
+  // hand out tasks from the queue of the tenant to the takes waiting for them, until either runs out
+  private void takePendingTasks(String tenantId) {
+    Queue<PendingTake> tenantTakes = pendingTakes.get(tenantId);
+    while (tenantTakes != null && !tenantTakes.isEmpty()) {
+      PendingTake pendingTake = tenantTakes.peek();
+      if (pendingTake.future.isCancelled()) {
+        removePendingTake(pendingTake);
+        pendingTake.timeout.cancel(false);
+        continue;
+      }
+      String taskJson;
+      try {
+        taskJson = takeNextClusterTask(pendingTake.request);
+      } catch (Exception e) {
+        LOG.error("Exception while taking task for waiting worker {}.", pendingTake.request.getWorkerId(), e);
+        removePendingTake(pendingTake);
+        pendingTake.timeout.cancel(false);
+        pendingTake.future.setException(e);
+        continue;
+      }
+      if (taskJson == null) {
+        return;
+      }
+      removePendingTake(pendingTake);
+      pendingTake.timeout.cancel(false);
+      if (!pendingTake.future.set(taskJson)) {
+        // the take was given up while the task was being taken
+        giveBackTask(pendingTake.request, taskJson);
+      }
+    }
+  }
+
+  private void giveBackTask(TakeTaskRequest takeRequest, String taskJson) {
+    String taskId = gson.fromJson(taskJson, SchedulableTask.class).getTaskId();
+    String consumerId = takeRequest.getProvisionerId() + "." + takeRequest.getWorkerId();
+    LOG.debug("Putting task {} back in the queue, worker {} gave up waiting for it.", taskId, consumerId);
+    taskQueues.recordProgress(consumerId, takeRequest.getTenantId(), taskId, TrackingQueue.ConsumingStatus.FAILED,
+                              "Worker gave up waiting for the task.");
+  }
+
+  private void removePendingTake(PendingTake pendingTake) {
+    String tenantId = pendingTake.request.getTenantId();
+    Queue<PendingTake> tenantTakes = pendingTakes.get(tenantId);
+    if (tenantTakes != null) {
+      tenantTakes.remove(pendingTake);
+      if (tenantTakes.isEmpty()) {
+        pendingTakes.remove(tenantId);
       }
     }
   }
@@ -301,4 +747,22 @@ public class TaskQueueService {
     return totalSize;
   }
 
+  /**
+   * A take that waits for a task to be added to the queue of its tenant.
+   */
+  private static final class PendingTake {
+    private final TakeTaskRequest request;
+    private final SettableFuture<String> future;
+    private ScheduledFuture<?> timeout;
+
+    private PendingTake(TakeTaskRequest request) {
+      this.request = request;
+      this.future = SettableFuture.create();
+    }
+
+    private boolean isSameWorker(PendingTake other) {
+      return request.getProvisionerId().equals(other.request.getProvisionerId()) &&
+        request.getWorkerId().equals(other.request.getWorkerId());
+    }
+  }
 }
@@ -16,6 +16,8 @@
 package co.cask.coopr.scheduler.task;
 
 import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.QueueGroup;
 import co.cask.coopr.common.queue.QueueService;
@@ -28,6 +30,7 @@ import co.cask.coopr.scheduler.callback.CallbackData;
 import co.cask.coopr.spec.ProvisionerAction;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import co.cask.coopr.store.cluster.ClusterStoreWriteBatch;
 import co.cask.coopr.store.credential.CredentialStore;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -37,6 +40,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -52,6 +56,7 @@ public class TaskService {
   private final IdService idService;
   private final Gson gson;
   private final QueueGroup callbackQueues;
+  private final boolean nodeUsageRollupEnabled;
 
   @Inject
   private TaskService(ClusterStoreService clusterStoreService,
@@ -59,8 +64,10 @@ public class TaskService {
                       ServerStats serverStats,
                       QueueService queueService,
                       IdService idService,
-                      Gson gson) {
+                      Gson gson,
+                      Configuration conf) {
     this.clusterStore = clusterStoreService.getSystemView();
+    this.nodeUsageRollupEnabled = conf.getBoolean(Constants.Metrics.USAGE_ROLLUP_ENABLED);
     this.credentialStore = credentialStore;
     this.serverStats = serverStats;
     this.idService = idService;
@@ -292,6 +299,24 @@ public class TaskService {
     serverStats.getFailedProvisionerStats().incrementStat(clusterTask.getTaskName());
   }
 
+  /**
+   * Fail a task like {@link #failTask(ClusterTask, int)}, but add the task to the given write batch instead of
+   * writing it to the store.
+   *
+   * @param clusterTask Task to fail.
+   * @param status Status code of the failed task.
+   * @param writes Write batch to add the task to.
+   */
+  public void failTask(ClusterTask clusterTask, int status, ClusterStoreWriteBatch writes) {
+    clusterTask.setStatus(ClusterTask.Status.FAILED);
+    clusterTask.setStatusCode(status);
+    clusterTask.setStatusTime(System.currentTimeMillis());
+    writes.writeClusterTask(clusterTask);
+
+    // Update stats
+    serverStats.getFailedProvisionerStats().incrementStat(clusterTask.getTaskName());
+  }
+
   /**
    * Complete a task by setting the status of the task to {@link ClusterTask.Status#COMPLETE} and the status time to
    * the current timestamp and the status code to the given code.
@@ -305,11 +330,56 @@ public class TaskService {
     clusterTask.setStatusCode(status);
     clusterTask.setStatusTime(System.currentTimeMillis());
     clusterStore.writeClusterTask(clusterTask);
+    writeNodeUsage(clusterTask);
 
     // update stats
     serverStats.getSuccessfulProvisionerStats().incrementStat(clusterTask.getTaskName());
   }
 
+  /**
+   * Complete a task like {@link #completeTask(ClusterTask, int)}, but add the task to the given write batch instead of
+   * writing it to the store. The node usage rollup is not updated, as the task is not written yet. Once the batch is
+   * flushed, {@link #writeNodeUsage(Collection)} must be called with the completed tasks.
+   *
+   * @param clusterTask Task to complete.
+   * @param status Status code of the completed task.
+   * @param writes Write batch to add the task to.
+   * @throws IOException
+   */
+  public void completeTask(ClusterTask clusterTask, int status, ClusterStoreWriteBatch writes) throws IOException {
+    clusterTask.setStatus(ClusterTask.Status.COMPLETE);
+    clusterTask.setStatusCode(status);
+    clusterTask.setStatusTime(System.currentTimeMillis());
+    writes.writeClusterTask(clusterTask);
+
+    // update stats
+    serverStats.getSuccessfulProvisionerStats().incrementStat(clusterTask.getTaskName());
+  }
+
+  /**
+   * Update the node usage rollup, if enabled, with tasks that were completed with
+   * {@link #completeTask(ClusterTask, int, ClusterStoreWriteBatch)} and whose write batch has been flushed.
+   *
+   * @param completedTasks Completed tasks that have been written.
+   */
+  public void writeNodeUsage(Collection<ClusterTask> completedTasks) {
+    for (ClusterTask clusterTask : completedTasks) {
+      writeNodeUsage(clusterTask);
+    }
+  }
+
+  // the rollup is only used for metrics, so failing to update it must not fail the task
+  private void writeNodeUsage(ClusterTask clusterTask) {
+    if (!nodeUsageRollupEnabled) {
+      return;
+    }
+    try {
+      clusterStore.writeNodeUsage(clusterTask);
+    } catch (IOException e) {
+      LOG.error("Could not record task {} in the node usage rollup.", clusterTask.getTaskId(), e);
+    }
+  }
+
   private void wipeSensitiveFields(Cluster cluster) throws IOException {
     String tenantId = cluster.getAccount().getTenantId();
     String clusterId = cluster.getId();
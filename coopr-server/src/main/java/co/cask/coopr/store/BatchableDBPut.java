@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A {@link DBPut} of a single row whose update and insert statements are the same for every row of its kind, and only
+ * differ in their parameters. This allows a {@link DBPutBatch} to send many puts of the same kind to the database as
+ * JDBC batches.
+ */
+public abstract class BatchableDBPut extends DBPut {
+
+  /**
+   * Get the statement that updates the row, identified by its key.
+   */
+  protected abstract String getUpdateSql();
+
+  /**
+   * Set the parameters of the statement returned by {@link #getUpdateSql()}.
+   */
+  protected abstract void setUpdateParameters(PreparedStatement statement) throws SQLException;
+
+  /**
+   * Get the statement that inserts the row.
+   */
+  protected abstract String getInsertSql();
+
+  /**
+   * Set the parameters of the statement returned by {@link #getInsertSql()}.
+   */
+  protected abstract void setInsertParameters(PreparedStatement statement) throws SQLException;
+
+  /**
+   * Get the columns set by the update statement. All of them must also be set by the insert statement.
+   */
+  protected abstract List<String> getUpdateColumns();
+
+  /**
+   * Get the key of the row written by this put. Puts that write the same row must return equal keys.
+   */
+  protected abstract Object getRowKey();
+
+  /**
+   * Get the statement that inserts the row, or updates it if it already exists, for MySQL compatible databases.
+   * Its parameters are the same as the ones of the insert statement.
+   */
+  protected String getMySQLUpsertSql() {
+    StringBuilder sql = new StringBuilder(getInsertSql()).append(" ON DUPLICATE KEY UPDATE ");
+    String separator = "";
+    for (String column : getUpdateColumns()) {
+      sql.append(separator).append(column).append("=VALUES(").append(column).append(")");
+      separator = ", ";
+    }
+    return sql.toString();
+  }
+
+  @Override
+  protected PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(getUpdateSql());
+    setUpdateParameters(statement);
+    return statement;
+  }
+
+  @Override
+  protected PreparedStatement createInsertStatement(Connection conn) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(getInsertSql());
+    setInsertParameters(statement);
+    return statement;
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link BlobCodec} that stores objects in a compact binary form of their json, optionally compressed with deflate.
+ * Objects are turned into json trees with the same gson type adapters that the {@link JsonBlobCodec} uses, so both
+ * codecs decode to the same objects. The binary form writes every distinct string once and refers back to it after
+ * that, which removes the field names and values repeated throughout big objects like cluster jobs and nodes.
+ * <p/>
+ * Blobs start with a one byte format marker, {@link #FORMAT_BINARY} or {@link #FORMAT_DEFLATED_BINARY}. Neither can
+ * be the first byte of json, which is how blobs written by the {@link JsonBlobCodec} are told apart.
+ */
+public class BinaryBlobCodec implements BlobCodec {
+  public static final byte FORMAT_BINARY = 1;
+  public static final byte FORMAT_DEFLATED_BINARY = 2;
+
+  private static final int TYPE_NULL = 0;
+  private static final int TYPE_TRUE = 1;
+  private static final int TYPE_FALSE = 2;
+  private static final int TYPE_LONG = 3;
+  private static final int TYPE_DOUBLE = 4;
+  // a number that is neither a long nor a double, written as its string
+  private static final int TYPE_NUMBER = 5;
+  private static final int TYPE_STRING = 6;
+  private static final int TYPE_ARRAY = 7;
+  private static final int TYPE_OBJECT = 8;
+
+  private final Gson gson;
+  private final boolean deflate;
+
+  /**
+   * Create a codec.
+   *
+   * @param gson Gson to turn objects into json trees and back
+   * @param deflate Whether to compress the blobs it encodes. Blobs are decoded whether they are compressed or not.
+   */
+  public BinaryBlobCodec(Gson gson, boolean deflate) {
+    this.gson = gson;
+    this.deflate = deflate;
+  }
+
+  /**
+   * Returns whether the given first byte of a blob marks a blob written by this codec.
+   *
+   * @param marker First byte of the blob
+   * @return True if the blob was written by this codec, false if not
+   */
+  public static boolean isBinaryFormat(int marker) {
+    return marker == FORMAT_BINARY || marker == FORMAT_DEFLATED_BINARY;
+  }
+
+  @Override
+  public <T> byte[] encode(T object, Type type) {
+    JsonElement json = gson.toJsonTree(object, type);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      if (deflate) {
+        bytes.write(FORMAT_DEFLATED_BINARY);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+          DeflaterOutputStream deflaterOut = new DeflaterOutputStream(bytes, deflater);
+          new Encoder(deflaterOut).write(json);
+          deflaterOut.finish();
+        } finally {
+          deflater.end();
+        }
+      } else {
+        bytes.write(FORMAT_BINARY);
+        new Encoder(bytes).write(json);
+      }
+    } catch (IOException e) {
+      // can't happen when writing to memory
+      throw Throwables.propagate(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  @Override
+  public <T> T decode(InputStream in, Type type) throws IOException {
+    int marker = in.read();
+    if (!isBinaryFormat(marker)) {
+      throw new IOException("Blob does not start with a binary format marker but with " + marker);
+    }
+    InputStream body = marker == FORMAT_DEFLATED_BINARY ? new InflaterInputStream(in) : in;
+    JsonElement json = new Decoder(body).read();
+    try {
+      return gson.fromJson(json, type);
+    } catch (JsonParseException e) {
+      throw new IOException("Unable to decode binary blob", e);
+    }
+  }
+
+  /**
+   * Writes json trees, keeping track of the strings written so far.
+   */
+  private static final class Encoder {
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = Maps.newHashMap();
+
+    private Encoder(OutputStream out) {
+      this.out = new DataOutputStream(out);
+    }
+
+    private void write(JsonElement json) throws IOException {
+      if (json == null || json.isJsonNull()) {
+        out.write(TYPE_NULL);
+      } else if (json.isJsonObject()) {
+        JsonObject object = json.getAsJsonObject();
+        List<Map.Entry<String, JsonElement>> entries = Lists.newArrayList(object.entrySet());
+        out.write(TYPE_OBJECT);
+        writeVarInt(entries.size());
+        for (Map.Entry<String, JsonElement> entry : entries) {
+          writeString(entry.getKey());
+          write(entry.getValue());
+        }
+      } else if (json.isJsonArray()) {
+        JsonArray array = json.getAsJsonArray();
+        out.write(TYPE_ARRAY);
+        writeVarInt(array.size());
+        for (JsonElement element : array) {
+          write(element);
+        }
+      } else {
+        writePrimitive(json.getAsJsonPrimitive());
+      }
+    }
+
+    private void writePrimitive(JsonPrimitive primitive) throws IOException {
+      if (primitive.isBoolean()) {
+        out.write(primitive.getAsBoolean() ? TYPE_TRUE : TYPE_FALSE);
+      } else if (primitive.isString()) {
+        out.write(TYPE_STRING);
+        writeString(primitive.getAsString());
+      } else {
+        Number number = primitive.getAsNumber();
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+          out.write(TYPE_LONG);
+          writeVarLong(number.longValue());
+        } else if (number instanceof Double || number instanceof Float) {
+          out.write(TYPE_DOUBLE);
+          out.writeDouble(number.doubleValue());
+        } else {
+          out.write(TYPE_NUMBER);
+          writeString(number.toString());
+        }
+      }
+    }
+
+    // a string is written once, and as its index in the order of first appearance after that
+    private void writeString(String string) throws IOException {
+      Integer index = strings.get(string);
+      if (index != null) {
+        writeVarInt(index << 1 | 1);
+        return;
+      }
+      strings.put(string, strings.size());
+      byte[] bytes = string.getBytes(Charsets.UTF_8);
+      writeVarInt(bytes.length << 1);
+      out.write(bytes);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+      // zig-zag encoding, so that small negative numbers are short too
+      writeUnsignedVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarInt(int value) throws IOException {
+      writeUnsignedVarLong(value);
+    }
+
+    private void writeUnsignedVarLong(long value) throws IOException {
+      while ((value & ~0x7FL) != 0) {
+        out.write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.write((int) value);
+    }
+  }
+
+  /**
+   * Reads json trees written by the {@link Encoder}.
+   */
+  private static final class Decoder {
+    private final DataInputStream in;
+    private final List<String> strings = Lists.newArrayList();
+
+    private Decoder(InputStream in) {
+      this.in = new DataInputStream(in);
+    }
+
+    private JsonElement read() throws IOException {
+      int type = in.read();
+      switch (type) {
+        case TYPE_NULL:
+          return JsonNull.INSTANCE;
+        case TYPE_TRUE:
+          return new JsonPrimitive(true);
+        case TYPE_FALSE:
+          return new JsonPrimitive(false);
+        case TYPE_LONG:
+          return new JsonPrimitive(readVarLong());
+        case TYPE_DOUBLE:
+          return new JsonPrimitive(in.readDouble());
+        case TYPE_NUMBER:
+          String number = readString();
+          return new JsonPrimitive(number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0 ?
+                                     new BigInteger(number) : new BigDecimal(number));
+        case TYPE_STRING:
+          return new JsonPrimitive(readString());
+        case TYPE_ARRAY:
+          int arraySize = readVarInt();
+          JsonArray array = new JsonArray();
+          for (int i = 0; i < arraySize; i++) {
+            array.add(read());
+          }
+          return array;
+        case TYPE_OBJECT:
+          int objectSize = readVarInt();
+          JsonObject object = new JsonObject();
+          for (int i = 0; i < objectSize; i++) {
+            String key = readString();
+            object.add(key, read());
+          }
+          return object;
+        case -1:
+          throw new EOFException("Unexpected end of binary blob");
+        default:
+          throw new IOException("Unknown value type " + type + " in binary blob");
+      }
+    }
+
+    private String readString() throws IOException {
+      int header = readVarInt();
+      if ((header & 1) == 1) {
+        int index = header >>> 1;
+        if (index >= strings.size()) {
+          throw new IOException("Invalid string reference " + index + " in binary blob");
+        }
+        return strings.get(index);
+      }
+      byte[] bytes = new byte[header >>> 1];
+      in.readFully(bytes);
+      String string = new String(bytes, Charsets.UTF_8);
+      strings.add(string);
+      return string;
+    }
+
+    private long readVarLong() throws IOException {
+      long zigZag = readUnsignedVarLong();
+      return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    private int readVarInt() throws IOException {
+      long value = readUnsignedVarLong();
+      if (value > Integer.MAX_VALUE) {
+        throw new IOException("Invalid size " + value + " in binary blob");
+      }
+      return (int) value;
+    }
+
+    private long readUnsignedVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = in.read();
+        if (b < 0) {
+          throw new EOFException("Unexpected end of binary blob");
+        }
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("Malformed variable length number in binary blob");
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Encodes objects into the bytes of the blobs that hold them in the database, and decodes them back.
+ */
+public interface BlobCodec {
+
+  /**
+   * Encode the given object.
+   *
+   * @param object Object to encode.
+   * @param type Type of the object to encode.
+   * @param <T> Type of the object to encode.
+   * @return Object as bytes.
+   */
+  <T> byte[] encode(T object, Type type);
+
+  /**
+   * Decode an object from the given stream, which is positioned at the start of the blob.
+   *
+   * @param in Stream to read the blob from.
+   * @param type Type of the object to decode.
+   * @param <T> Type of the object to decode.
+   * @return Decoded object.
+   * @throws IOException if the blob could not be read or is not in the format of this codec.
+   */
+  <T> T decode(InputStream in, Type type) throws IOException;
+}
@@ -34,6 +34,7 @@ public class DBConnectionPool {
   private static final Logger LOG  = LoggerFactory.getLogger(DBConnectionPool.class);
   private final DataSource datasource;
   private final boolean isEmbeddedDerbyDB;
+  private final boolean isMySQLDB;
 
   @Inject
   private DBConnectionPool(Configuration conf) throws SQLException {
@@ -97,6 +98,7 @@ public class DBConnectionPool {
     this.datasource = new DataSource();
     datasource.setPoolProperties(poolProperties);
     this.isEmbeddedDerbyDB = driverClass.equals(Constants.EMBEDDED_DERBY_DRIVER);
+    this.isMySQLDB = connectionString.startsWith("jdbc:mysql:") || connectionString.startsWith("jdbc:mariadb:");
   }
 
   /**
@@ -108,6 +110,16 @@ public class DBConnectionPool {
     return isEmbeddedDerbyDB;
   }
 
+  /**
+   * Returns whether or not the connection pool is connected to a MySQL compatible db, which supports
+   * INSERT ... ON DUPLICATE KEY UPDATE statements.
+   *
+   * @return true if connected to a MySQL compatible db, false if not.
+   */
+  public boolean isMySQLDB() {
+    return isMySQLDB;
+  }
+
   /**
    * Get a {@link Connection} from the pool with auto commit on.
    *
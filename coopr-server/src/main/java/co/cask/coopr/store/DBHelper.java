@@ -60,6 +60,28 @@ public final class DBHelper {
     }
   }
 
+  /**
+   * Returns whether or not a statement failed because it violated a constraint, such as inserting a row whose primary
+   * key is already taken.
+   *
+   * @param e Exception thrown by the statement.
+   * @return Whether or not the statement violated a constraint.
+   */
+  public static boolean isConstraintViolation(SQLException e) {
+    return e.getSQLState() != null && e.getSQLState().startsWith("23");
+  }
+
+  /**
+   * Returns whether or not a statement failed because its transaction was rolled back by the database, such as on a
+   * deadlock or a lock timeout, so that the transaction can be tried again.
+   *
+   * @param e Exception thrown by the statement.
+   * @return Whether or not the transaction was rolled back by the database.
+   */
+  public static boolean isTransactionRollback(SQLException e) {
+    return e.getSQLState() != null && e.getSQLState().startsWith("40");
+  }
+
   /**
    * Create an index on given columns in a table for an embedded derby table.
    *
@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts that are accumulated and then executed together in a single transaction. Puts of the same kind that are
+ * {@link BatchableDBPut}s are sent to the database as JDBC batches: as one batch of upserts if the database supports
+ * them, otherwise as a batch of updates followed by a batch of inserts for the rows that did not exist yet. Other puts
+ * are executed one by one. If the same row is put more than once, only the last put of it is executed.
+ * Not thread safe.
+ */
+public class DBPutBatch {
+  private static final Logger LOG  = LoggerFactory.getLogger(DBPutBatch.class);
+  // max number of statements to send to the database in a single batch
+  private static final int MAX_BATCH_SIZE = 500;
+
+  private final Map<Object, DBPut> puts = Maps.newLinkedHashMap();
+
+  /**
+   * Add a put to the batch.
+   *
+   * @param put Put to add
+   */
+  public void add(DBPut put) {
+    // puts that cannot be batched never replace each other
+    Object key = put instanceof BatchableDBPut ? ((BatchableDBPut) put).getRowKey() : new Object();
+    // re-adding moves the put to the end, so that it is executed in the order of the last write
+    puts.remove(key);
+    puts.put(key, put);
+  }
+
+  /**
+   * Get the number of puts in the batch.
+   *
+   * @return Number of puts in the batch
+   */
+  public int size() {
+    return puts.size();
+  }
+
+  /**
+   * Execute all puts in the batch in a single transaction, and clear the batch. If there is an error, the transaction
+   * is rolled back and the batch is left as it was.
+   *
+   * @param dbConnectionPool Connection pool to get the connection from
+   * @throws SQLException if there was a problem executing the puts
+   */
+  public void execute(DBConnectionPool dbConnectionPool) throws SQLException {
+    if (puts.isEmpty()) {
+      return;
+    }
+    Connection conn = dbConnectionPool.getConnection(false);
+    try {
+      try {
+        execute(conn, dbConnectionPool.isMySQLDB());
+        conn.commit();
+      } catch (SQLException e) {
+        LOG.error("Exception executing batch of {} puts, will attempt to rollback.", puts.size(), e);
+        try {
+          conn.rollback();
+        } catch (SQLException e1) {
+          LOG.error("Exception rolling back failed batch of puts", e1);
+        }
+        throw e;
+      }
+    } finally {
+      conn.close();
+    }
+    puts.clear();
+  }
+
+  private void execute(Connection conn, boolean useUpsert) throws SQLException {
+    // group batchable puts by their statements, keeping the order in which each kind was first seen
+    Map<String, List<BatchableDBPut>> batches = Maps.newLinkedHashMap();
+    for (DBPut put : puts.values()) {
+      if (put instanceof BatchableDBPut) {
+        BatchableDBPut batchablePut = (BatchableDBPut) put;
+        List<BatchableDBPut> batch = batches.get(batchablePut.getInsertSql());
+        if (batch == null) {
+          batch = Lists.newArrayList();
+          batches.put(batchablePut.getInsertSql(), batch);
+        }
+        batch.add(batchablePut);
+      } else {
+        put.executePut(conn);
+      }
+    }
+    for (List<BatchableDBPut> batch : batches.values()) {
+      for (List<BatchableDBPut> partition : Lists.partition(batch, MAX_BATCH_SIZE)) {
+        if (useUpsert) {
+          executeUpserts(conn, partition);
+        } else {
+          executeUpdatesAndInserts(conn, partition);
+        }
+      }
+    }
+  }
+
+  private void executeUpserts(Connection conn, List<BatchableDBPut> batch) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(batch.get(0).getMySQLUpsertSql());
+    try {
+      for (BatchableDBPut put : batch) {
+        put.setInsertParameters(statement);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    } finally {
+      statement.close();
+    }
+  }
+
+  private void executeUpdatesAndInserts(Connection conn, List<BatchableDBPut> batch) throws SQLException {
+    List<BatchableDBPut> inserts = Lists.newArrayList();
+    PreparedStatement updateStatement = conn.prepareStatement(batch.get(0).getUpdateSql());
+    try {
+      for (BatchableDBPut put : batch) {
+        put.setUpdateParameters(updateStatement);
+        updateStatement.addBatch();
+      }
+      int[] rowsUpdated = updateStatement.executeBatch();
+      for (int i = 0; i < rowsUpdated.length; i++) {
+        if (rowsUpdated[i] == 0) {
+          inserts.add(batch.get(i));
+        } else if (rowsUpdated[i] == Statement.SUCCESS_NO_INFO) {
+          // driver does not tell whether the row exists, fall back to a single put
+          batch.get(i).executePut(conn);
+        }
+      }
+    } finally {
+      updateStatement.close();
+    }
+    if (inserts.isEmpty()) {
+      return;
+    }
+
+    PreparedStatement insertStatement = conn.prepareStatement(inserts.get(0).getInsertSql());
+    try {
+      for (BatchableDBPut put : inserts) {
+        put.setInsertParameters(insertStatement);
+        insertStatement.addBatch();
+      }
+      insertStatement.executeBatch();
+    } finally {
+      insertStatement.close();
+    }
+  }
+}
@@ -15,7 +15,8 @@
  */
 package co.cask.coopr.store;
 
-import com.google.common.base.Charsets;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -25,8 +26,9 @@ import com.google.common.io.Closeables;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
 
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.sql.Blob;
 import java.sql.PreparedStatement;
@@ -39,11 +41,39 @@ import java.util.Set;
  * Executes prepared statements against databases while taking care of serialization/deserialization of blobs.
  */
 public final class DBQueryExecutor {
-  private final Gson gson;
+  private final BlobCodec jsonCodec;
+  private final BlobCodec binaryCodec;
+  private final BlobCodec writeCodec;
+  private final NodeServiceRegistry nodeServiceRegistry;
 
   @Inject
-  private DBQueryExecutor(Gson gson) {
-    this.gson = gson;
+  private DBQueryExecutor(Gson gson, Configuration conf) {
+    this.jsonCodec = new JsonBlobCodec(gson);
+    String format = conf.get(Constants.DB_BLOB_FORMAT);
+    if ("json".equals(format)) {
+      this.binaryCodec = new BinaryBlobCodec(gson, false);
+      this.writeCodec = jsonCodec;
+    } else if ("binary".equals(format)) {
+      this.binaryCodec = new BinaryBlobCodec(gson, false);
+      this.writeCodec = binaryCodec;
+    } else if ("deflate".equals(format)) {
+      this.binaryCodec = new BinaryBlobCodec(gson, true);
+      this.writeCodec = binaryCodec;
+    } else {
+      throw new IllegalArgumentException("Invalid value " + format + " for " + Constants.DB_BLOB_FORMAT +
+                                           ", must be json, binary or deflate.");
+    }
+    this.nodeServiceRegistry =
+      new NodeServiceRegistry(gson, this, conf.getBoolean(Constants.NODE_SERVICE_REFS_ENABLED));
+  }
+
+  /**
+   * Get the registry of service definitions to use to read and write nodes.
+   *
+   * @return Registry of service definitions of nodes.
+   */
+  public NodeServiceRegistry getNodeServiceRegistry() {
+    return nodeServiceRegistry;
   }
 
   /**
@@ -162,6 +192,32 @@ public final class DBQueryExecutor {
     }
   }
 
+  /**
+   * Queries the store for items and passes them to the visitor one at a time, deserializing each item only when it is
+   * visited, so that no more than one item is held in memory. Statement passed in must be closed by the caller.
+   *
+   * @param statement PreparedStatement of the query, ready for execution.
+   * @param clazz Class of the items being queried.
+   * @param visitor Visitor to pass items to, in the order they are returned by the query.
+   * @param <T> Type of the items being queried.
+   * @return Number of items visited.
+   * @throws SQLException
+   */
+  public <T> int scanQuery(PreparedStatement statement, Class<T> clazz, ItemVisitor<T> visitor) throws SQLException {
+    ResultSet rs = statement.executeQuery();
+    try {
+      int numResults = 0;
+      while (rs.next()) {
+        Blob blob = rs.getBlob(1);
+        visitor.visit(deserializeBlob(blob, clazz));
+        numResults++;
+      }
+      return numResults;
+    } finally {
+      rs.close();
+    }
+  }
+
   /**
    * Queries the store for a single item, deserializing the item and returning it or null if the item does not exist.
    * Statement passed in must be closed by the caller.
@@ -245,7 +301,8 @@ public final class DBQueryExecutor {
   }
 
   /**
-   * Deserialize a blob into an object. Assumes blob was serialized json.
+   * Deserialize a blob into an object. The format of the blob is determined by its first byte, so blobs written
+   * as json and blobs written in the binary format can both be read regardless of the configured format.
    *
    * @param blob Blob to deserialize.
    * @param clazz Class of the object to deserialize the blob into.
@@ -257,18 +314,23 @@ public final class DBQueryExecutor {
     if (blob == null) {
       return null;
     }
-    Reader reader = new InputStreamReader(blob.getBinaryStream(), Charsets.UTF_8);
-    T object;
+    InputStream in = new BufferedInputStream(blob.getBinaryStream());
     try {
-      object = gson.fromJson(reader, clazz);
+      in.mark(1);
+      int marker = in.read();
+      in.reset();
+      BlobCodec codec = BinaryBlobCodec.isBinaryFormat(marker) ? binaryCodec : jsonCodec;
+      return codec.decode(in, clazz);
+    } catch (IOException e) {
+      throw new SQLException("Unable to deserialize blob into " + clazz.getName(), e);
     } finally {
-      Closeables.closeQuietly(reader);
+      Closeables.closeQuietly(in);
     }
-    return object;
   }
 
   /**
-   * Serialize the given object into json, then into bytes of that json.
+   * Serialize the given object into bytes, in the blob format that is configured with
+   * {@link Constants#DB_BLOB_FORMAT}.
    *
    * @param object Object to serialize.
    * @param type Type of the object to serialize.
@@ -276,6 +338,6 @@ public final class DBQueryExecutor {
    * @return Object as bytes.
    */
   public <T> byte[] toBytes(T object, Type type) {
-    return gson.toJson(object, type).getBytes(Charsets.UTF_8);
+    return writeCodec.encode(object, type);
   }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+/**
+ * Visitor of items read one at a time from a store, for processing more items than should be held in memory at once.
+ *
+ * @param <T> Type of item visited.
+ */
+public interface ItemVisitor<T> {
+
+  /**
+   * Visit the next item.
+   *
+   * @param item Item to visit.
+   */
+  void visit(T item);
+}
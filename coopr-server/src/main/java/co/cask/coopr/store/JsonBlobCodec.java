@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+
+/**
+ * {@link BlobCodec} that stores objects as their json. This is the format all blobs were written in before other
+ * codecs were added, so its blobs have no format marker.
+ */
+public class JsonBlobCodec implements BlobCodec {
+  private final Gson gson;
+
+  public JsonBlobCodec(Gson gson) {
+    this.gson = gson;
+  }
+
+  @Override
+  public <T> byte[] encode(T object, Type type) {
+    return gson.toJson(object, type).getBytes(Charsets.UTF_8);
+  }
+
+  @Override
+  public <T> T decode(InputStream in, Type type) throws IOException {
+    try {
+      return gson.fromJson(new InputStreamReader(in, Charsets.UTF_8), type);
+    } catch (JsonParseException e) {
+      throw new IOException("Unable to decode json blob", e);
+    }
+  }
+}
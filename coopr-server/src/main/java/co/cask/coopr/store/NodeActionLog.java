@@ -0,0 +1,329 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.cask.coopr.store;
+
+import co.cask.coopr.cluster.Node;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ForwardingList;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper methods for the log of actions performed on nodes. Actions are kept in their own table, one small row per
+ * action, instead of inside the serialized node, so that starting or finishing an action writes the same amount of
+ * data no matter how many services, provisioner results and past actions the node has. Nodes are written without
+ * their actions, and get them back from the log once their actions are needed. Nodes written before the log existed
+ * still contain their actions, which are combined with the logged ones until the node is written again. Actions read
+ * from the log are marked as logged, so that writing a node only logs the actions that may not be logged yet.
+ */
+public final class NodeActionLog {
+  // max number of node ids to look up in a single query
+  private static final int MAX_NODES_PER_LOOKUP = 500;
+  private static final Comparator<Node.Action> SUBMIT_TIME_COMPARATOR = new Comparator<Node.Action>() {
+    @Override
+    public int compare(Node.Action action1, Node.Action action2) {
+      long time1 = action1.getSubmitTime();
+      long time2 = action2.getSubmitTime();
+      return time1 < time2 ? -1 : (time1 == time2 ? 0 : 1);
+    }
+  };
+
+  private NodeActionLog() {
+  }
+
+  /**
+   * Add the logged actions of the given nodes to the nodes, ordered by the time they were submitted. The actions are
+   * not read until the actions of one of the nodes are needed, at which point the actions of all the given nodes are
+   * read together, so reading nodes whose actions are not used does not query the log.
+   *
+   * @param dbConnectionPool Pool of connections to use to read the actions once they are needed.
+   * @param dbQueryExecutor Executor to use to deserialize the actions.
+   * @param nodes Nodes to add the logged actions to.
+   */
+  public static void addLoggedActions(DBConnectionPool dbConnectionPool, DBQueryExecutor dbQueryExecutor,
+                                      Collection<Node> nodes) {
+    LoggedActionsReader reader = new LoggedActionsReader(dbConnectionPool, dbQueryExecutor);
+    for (Node node : nodes) {
+      LoggedActionList actions = new LoggedActionList(node.getActions(), reader);
+      reader.lists.put(node.getId(), actions);
+      node.setActionList(actions);
+    }
+  }
+
+  /**
+   * Get the actions of the given node that were not read from the log. These are the actions of a node written before
+   * the log existed, which are only in the serialized node, and actions added to the node that may not have been
+   * logged yet. The logged actions of a node are not read to get them, unless the node was written before the log
+   * existed.
+   *
+   * @param node Node to get the actions of.
+   * @return Actions of the node that were not read from the log.
+   */
+  public static List<Node.Action> getUnloggedActions(Node node) {
+    List<Node.Action> actions = node.getActionList();
+    if (actions instanceof LoggedActionList && !((LoggedActionList) actions).isRead()
+      && ((LoggedActionList) actions).nodeActions.isEmpty()) {
+      // the actions are unchanged since the node was read, as changing them reads them first
+      return ImmutableList.of();
+    }
+    List<Node.Action> unlogged = Lists.newArrayList();
+    for (Node.Action action : actions) {
+      if (!action.isLogged()) {
+        unlogged.add(action);
+      }
+    }
+    return unlogged;
+  }
+
+  /**
+   * Get a copy of the given node without its actions, to write to the store instead of the node itself.
+   *
+   * @param node Node to copy.
+   * @return Copy of the node without actions.
+   */
+  public static Node withoutActions(Node node) {
+    return new Node(node.getId(), node.getClusterId(), node.getServices(), node.getProperties(),
+                    null, node.getProvisionerResults());
+  }
+
+  /**
+   * Get a put that adds the given action of a node to the log, or replaces it if it is already logged.
+   *
+   * @param dbQueryExecutor Executor to use to serialize the action.
+   * @param nodeId Id of the node the action is performed on.
+   * @param action Action to log.
+   * @return Put of the action.
+   */
+  public static BatchableDBPut getActionPut(DBQueryExecutor dbQueryExecutor, String nodeId, Node.Action action) {
+    return new NodeActionDBPut(nodeId, action, dbQueryExecutor.toBytes(action, Node.Action.class));
+  }
+
+  /**
+   * Delete the given actions of a node from the log.
+   *
+   * @param conn Connection to use to delete the actions.
+   * @param nodeId Id of the node the actions were performed on.
+   * @param actions Actions to delete.
+   * @throws SQLException if there was a problem deleting the actions.
+   */
+  public static void deleteActions(Connection conn, String nodeId, Collection<Node.Action> actions)
+    throws SQLException {
+    PreparedStatement statement =
+      conn.prepareStatement("DELETE FROM node_actions WHERE node_id=? AND task_id=? AND submit_time=?");
+    try {
+      for (Node.Action action : actions) {
+        statement.setString(1, nodeId);
+        statement.setString(2, action.getTaskId());
+        statement.setLong(3, action.getSubmitTime());
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * Delete all logged actions of a node.
+   *
+   * @param conn Connection to use to delete the actions.
+   * @param nodeId Id of the node whose actions should be deleted.
+   * @throws SQLException if there was a problem deleting the actions.
+   */
+  public static void deleteAllActions(Connection conn, String nodeId) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement("DELETE FROM node_actions WHERE node_id=?");
+    try {
+      statement.setString(1, nodeId);
+      statement.executeUpdate();
+    } finally {
+      statement.close();
+    }
+  }
+
+  private static ListMultimap<String, Node.Action> readLoggedActions(Connection conn, DBQueryExecutor dbQueryExecutor,
+                                                                     Collection<String> nodeIds) throws SQLException {
+    ListMultimap<String, Node.Action> loggedActions = ArrayListMultimap.create();
+    for (List<String> ids : Iterables.partition(nodeIds, MAX_NODES_PER_LOOKUP)) {
+      PreparedStatement statement = conn.prepareStatement(
+        "SELECT node_id, action FROM node_actions WHERE node_id IN " + DBHelper.createInString(ids.size()) +
+        " ORDER BY submit_time, task_id");
+      try {
+        int index = 1;
+        for (String nodeId : ids) {
+          statement.setString(index++, nodeId);
+        }
+        ResultSet rs = statement.executeQuery();
+        try {
+          while (rs.next()) {
+            Node.Action action = dbQueryExecutor.deserializeBlob(rs.getBlob(2), Node.Action.class);
+            action.setLogged(true);
+            loggedActions.put(rs.getString(1), action);
+          }
+        } finally {
+          rs.close();
+        }
+      } finally {
+        statement.close();
+      }
+    }
+    return loggedActions;
+  }
+
+  // logged actions replace actions of the node with the same task and submit time, as they are more recent
+  private static List<Node.Action> combine(List<Node.Action> nodeActions, List<Node.Action> loggedActions) {
+    Map<List<Object>, Node.Action> actions = Maps.newLinkedHashMap();
+    for (Node.Action action : Iterables.concat(nodeActions, loggedActions)) {
+      actions.put(ImmutableList.<Object>of(action.getTaskId(), action.getSubmitTime()), action);
+    }
+    List<Node.Action> combined = Lists.newArrayList(actions.values());
+    Collections.sort(combined, SUBMIT_TIME_COMPARATOR);
+    return combined;
+  }
+
+  /**
+   * Reads the logged actions of nodes that were read together, all in one go, once the actions of one of them are
+   * needed.
+   */
+  private static final class LoggedActionsReader {
+    private final DBConnectionPool dbConnectionPool;
+    private final DBQueryExecutor dbQueryExecutor;
+    private final ListMultimap<String, LoggedActionList> lists = ArrayListMultimap.create();
+
+    private LoggedActionsReader(DBConnectionPool dbConnectionPool, DBQueryExecutor dbQueryExecutor) {
+      this.dbConnectionPool = dbConnectionPool;
+      this.dbQueryExecutor = dbQueryExecutor;
+    }
+
+    private synchronized void read() {
+      if (lists.isEmpty()) {
+        return;
+      }
+      try {
+        Connection conn = dbConnectionPool.getConnection();
+        try {
+          ListMultimap<String, Node.Action> loggedActions = readLoggedActions(conn, dbQueryExecutor, lists.keySet());
+          for (Map.Entry<String, LoggedActionList> entry : lists.entries()) {
+            LoggedActionList list = entry.getValue();
+            list.actions = combine(list.nodeActions, loggedActions.get(entry.getKey()));
+          }
+        } finally {
+          conn.close();
+        }
+      } catch (SQLException e) {
+        throw Throwables.propagate(e);
+      }
+      // the lists no longer need the reader, so nodes read together do not keep each other around
+      lists.clear();
+    }
+  }
+
+  /**
+   * Actions of a node, which are the actions serialized with the node combined with the actions of the node that are
+   * read from the log once the list is first used.
+   */
+  private static final class LoggedActionList extends ForwardingList<Node.Action> {
+    private final List<Node.Action> nodeActions;
+    private final LoggedActionsReader reader;
+    private volatile List<Node.Action> actions;
+
+    private LoggedActionList(List<Node.Action> nodeActions, LoggedActionsReader reader) {
+      this.nodeActions = nodeActions;
+      this.reader = reader;
+    }
+
+    private boolean isRead() {
+      return actions != null;
+    }
+
+    @Override
+    protected List<Node.Action> delegate() {
+      if (actions == null) {
+        reader.read();
+      }
+      return actions;
+    }
+  }
+
+  /**
+   * Put of a single logged action, identified by the node, the task and the time the action was submitted, as a task
+   * that is retried performs another action on the same node.
+   */
+  private static class NodeActionDBPut extends BatchableDBPut {
+    private static final List<String> UPDATE_COLUMNS = ImmutableList.of("action");
+    private final String nodeId;
+    private final String taskId;
+    private final long submitTime;
+    private final byte[] actionBytes;
+
+    private NodeActionDBPut(String nodeId, Node.Action action, byte[] actionBytes) {
+      this.nodeId = nodeId;
+      this.taskId = action.getTaskId();
+      this.submitTime = action.getSubmitTime();
+      this.actionBytes = actionBytes;
+    }
+
+    @Override
+    protected String getUpdateSql() {
+      return "UPDATE node_actions SET action=? WHERE node_id=? AND task_id=? AND submit_time=?";
+    }
+
+    @Override
+    protected void setUpdateParameters(PreparedStatement statement) throws SQLException {
+      statement.setBytes(1, actionBytes);
+      statement.setString(2, nodeId);
+      statement.setString(3, taskId);
+      statement.setLong(4, submitTime);
+    }
+
+    @Override
+    protected String getInsertSql() {
+      return "INSERT INTO node_actions (node_id, task_id, submit_time, action) VALUES (?, ?, ?, ?)";
+    }
+
+    @Override
+    protected void setInsertParameters(PreparedStatement statement) throws SQLException {
+      statement.setString(1, nodeId);
+      statement.setString(2, taskId);
+      statement.setLong(3, submitTime);
+      statement.setBytes(4, actionBytes);
+    }
+
+    @Override
+    protected List<String> getUpdateColumns() {
+      return UPDATE_COLUMNS;
+    }
+
+    @Override
+    protected Object getRowKey() {
+      return ImmutableList.of("node_actions", nodeId, taskId, submitTime);
+    }
+  }
+}
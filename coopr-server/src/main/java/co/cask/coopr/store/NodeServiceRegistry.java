@@ -0,0 +1,342 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.lang.reflect.Type;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of the definitions of services placed on nodes. Every node of a cluster carries full copies of its
+ * services, which usually makes up most of the serialized node. When writing service references is enabled, nodes
+ * are written with a reference to each of their services instead, made up of the name and version of the service
+ * and the digest of its definition. Definitions are kept once in their own table by their digest, and are resolved
+ * when nodes are read. As the contents of a definition never change for a given digest, resolved definitions are
+ * interned, so that the nodes of a cluster share a single immutable instance of each service. Nodes written with full
+ * copies of their services can always be read, regardless of the setting.
+ */
+public class NodeServiceRegistry {
+  // max number of definitions to look up in a single query
+  private static final int MAX_SERVICES_PER_LOOKUP = 500;
+  private static final int MAX_CACHED_SERVICES = 10000;
+  private static final Type REFS_TYPE = new TypeToken<List<ServiceRef>>() { }.getType();
+  private final Gson gson;
+  private final DBQueryExecutor dbQueryExecutor;
+  private final boolean writeRefs;
+  // definitions that are known to be stored, by digest
+  private final Cache<String, Service> services;
+  // digests of service instances, compared by identity, so that digests of interned instances are only computed once
+  private final Cache<Service, String> digests;
+
+  NodeServiceRegistry(Gson gson, DBQueryExecutor dbQueryExecutor, boolean writeRefs) {
+    this.gson = gson;
+    this.dbQueryExecutor = dbQueryExecutor;
+    this.writeRefs = writeRefs;
+    this.services = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_SERVICES).build();
+    this.digests = CacheBuilder.newBuilder().weakKeys().build();
+  }
+
+  /**
+   * Queries the store for nodes, resolving the service references of any node written with references. The first
+   * column of the query must be the serialized node. Statement passed in must be closed by the caller.
+   *
+   * @param conn Connection to use to look up service definitions that are not interned yet.
+   * @param statement PreparedStatement of the query, ready for execution.
+   * @return Immutable list of nodes that were queried for.
+   * @throws SQLException if there was a problem reading the nodes or if the definition of a service is missing.
+   */
+  public ImmutableList<Node> getQueryNodes(Connection conn, PreparedStatement statement) throws SQLException {
+    List<JsonObject> nodesJson = dbQueryExecutor.getQueryList(statement, JsonObject.class);
+    List<Node> nodes = Lists.newArrayListWithCapacity(nodesJson.size());
+    Map<Node, List<ServiceRef>> refsByNode = Maps.newHashMap();
+    Map<String, Service> resolved = Maps.newHashMap();
+    Set<String> unresolved = Sets.newHashSet();
+    for (JsonObject nodeJson : nodesJson) {
+      JsonElement refsJson = nodeJson.remove("serviceRefs");
+      if (refsJson == null) {
+        nodes.add(gson.fromJson(nodeJson, Node.class));
+        continue;
+      }
+      nodeJson.add("services", new JsonArray());
+      Node node = gson.fromJson(nodeJson, Node.class);
+      List<ServiceRef> refs = gson.fromJson(refsJson, REFS_TYPE);
+      for (ServiceRef ref : refs) {
+        Service service = services.getIfPresent(ref.digest);
+        if (service == null) {
+          unresolved.add(ref.digest);
+        } else {
+          resolved.put(ref.digest, service);
+        }
+      }
+      refsByNode.put(node, refs);
+      nodes.add(node);
+    }
+    resolved.putAll(readDefinitions(conn, unresolved));
+    for (Map.Entry<Node, List<ServiceRef>> entry : refsByNode.entrySet()) {
+      Node node = entry.getKey();
+      for (ServiceRef ref : entry.getValue()) {
+        Service service = resolved.get(ref.digest);
+        if (service == null) {
+          throw new SQLException("Definition " + ref.digest + " of service " + ref.name + " version " +
+                                   ref.version + " on node " + node.getId() + " is missing");
+        }
+        node.addService(service);
+      }
+    }
+    return ImmutableList.copyOf(nodes);
+  }
+
+  /**
+   * Serialize a node to write to the nodes table. When writing service references is enabled, the node is written
+   * with references to its services, and the definitions of its services that may not be stored yet are added to the
+   * given map, to be written along with the node using {@link #getDefinitionPut(String, Service)}, and registered as
+   * stored with {@link #addStoredDefinitions(Map)} once they are written.
+   *
+   * @param node Node to serialize.
+   * @param unstoredDefinitions Map to add definitions that may not be stored yet to, by digest.
+   * @return Serialized node.
+   */
+  public byte[] toBytes(Node node, Map<String, Service> unstoredDefinitions) {
+    if (!writeRefs) {
+      return dbQueryExecutor.toBytes(node, Node.class);
+    }
+    JsonObject nodeJson = gson.toJsonTree(node, Node.class).getAsJsonObject();
+    nodeJson.remove("services");
+    List<ServiceRef> refs = Lists.newArrayList();
+    for (Service service : node.getServices()) {
+      String digest = getDigest(service);
+      if (services.getIfPresent(digest) == null) {
+        unstoredDefinitions.put(digest, service);
+      }
+      refs.add(new ServiceRef(service.getName(), service.getVersion(), digest));
+    }
+    nodeJson.add("serviceRefs", gson.toJsonTree(refs, REFS_TYPE));
+    return dbQueryExecutor.toBytes(nodeJson, JsonObject.class);
+  }
+
+  /**
+   * Add the puts that write a node, and the definitions of its services that may not be stored yet, to a batch. The
+   * definitions are added to the given map, unless they are already in it because they are written by an earlier put
+   * of the batch, and must be registered as stored with {@link #addStoredDefinitions(Map)} once the batch is executed.
+   *
+   * @param batch Batch to add the puts to.
+   * @param node Node to write.
+   * @param unstoredDefinitions Definitions written by the batch, by digest.
+   */
+  public void addNodePuts(DBPutBatch batch, Node node, Map<String, Service> unstoredDefinitions) {
+    Map<String, Service> nodeDefinitions = Maps.newHashMap();
+    batch.add(new NodeDBPut(node, toBytes(node, nodeDefinitions)));
+    for (Map.Entry<String, Service> definition : nodeDefinitions.entrySet()) {
+      if (!unstoredDefinitions.containsKey(definition.getKey())) {
+        unstoredDefinitions.put(definition.getKey(), definition.getValue());
+        batch.add(getDefinitionPut(definition.getKey(), definition.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Get a put that stores the definition of a service by its digest. Definitions are never changed once they are
+   * stored, so the put may be executed any number of times.
+   *
+   * @param digest Digest of the definition.
+   * @param service Service to store the definition of.
+   * @return Put of the definition.
+   */
+  public BatchableDBPut getDefinitionPut(String digest, Service service) {
+    return new DefinitionDBPut(digest, dbQueryExecutor.toBytes(service, Service.class));
+  }
+
+  /**
+   * Register definitions that have been written, so that they are not written again by later writes of nodes, and are
+   * interned for later reads.
+   *
+   * @param storedDefinitions Definitions that have been written, by digest.
+   */
+  public void addStoredDefinitions(Map<String, Service> storedDefinitions) {
+    services.putAll(storedDefinitions);
+  }
+
+  // reads the given definitions from the store, interning them
+  private Map<String, Service> readDefinitions(Connection conn, Collection<String> definitionDigests)
+    throws SQLException {
+    Map<String, Service> resolved = Maps.newHashMap();
+    for (List<String> digestBatch : Iterables.partition(definitionDigests, MAX_SERVICES_PER_LOOKUP)) {
+      PreparedStatement statement = conn.prepareStatement(
+        "SELECT digest, service FROM node_services WHERE digest IN " + DBHelper.createInString(digestBatch.size()));
+      try {
+        int index = 1;
+        for (String digest : digestBatch) {
+          statement.setString(index++, digest);
+        }
+        ResultSet rs = statement.executeQuery();
+        try {
+          while (rs.next()) {
+            String digest = rs.getString(1);
+            Service service = dbQueryExecutor.deserializeBlob(rs.getBlob(2), Service.class);
+            digests.put(service, digest);
+            resolved.put(digest, service);
+          }
+        } finally {
+          rs.close();
+        }
+      } finally {
+        statement.close();
+      }
+    }
+    services.putAll(resolved);
+    return resolved;
+  }
+
+  private String getDigest(Service service) {
+    String digest = digests.getIfPresent(service);
+    if (digest == null) {
+      digest = Hashing.sha256().hashString(gson.toJson(service, Service.class), Charsets.UTF_8).toString();
+      digests.put(service, digest);
+    }
+    return digest;
+  }
+
+  /**
+   * Reference to the definition of a service, as written in nodes. The name and version are only informational, as
+   * the definition is looked up by its digest.
+   */
+  private static class ServiceRef {
+    private final String name;
+    private final int version;
+    private final String digest;
+
+    private ServiceRef(String name, int version, String digest) {
+      this.name = name;
+      this.version = version;
+      this.digest = digest;
+    }
+  }
+
+  /**
+   * Put of the definition of a service, identified by its digest.
+   */
+  private static class NodeDBPut extends BatchableDBPut {
+    private static final List<String> UPDATE_COLUMNS = ImmutableList.of("node");
+    private final String nodeId;
+    private final long clusterId;
+    private final byte[] nodeBytes;
+
+    private NodeDBPut(Node node, byte[] nodeBytes) {
+      this.nodeId = node.getId();
+      this.clusterId = Long.parseLong(node.getClusterId());
+      this.nodeBytes = nodeBytes;
+    }
+
+    @Override
+    protected String getUpdateSql() {
+      return "UPDATE nodes SET node=? WHERE id=?";
+    }
+
+    @Override
+    protected void setUpdateParameters(PreparedStatement statement) throws SQLException {
+      statement.setBytes(1, nodeBytes);
+      statement.setString(2, nodeId);
+    }
+
+    @Override
+    protected String getInsertSql() {
+      return "INSERT INTO nodes (id, cluster_id, node) VALUES (?, ?, ?)";
+    }
+
+    @Override
+    protected void setInsertParameters(PreparedStatement statement) throws SQLException {
+      statement.setString(1, nodeId);
+      statement.setLong(2, clusterId);
+      statement.setBytes(3, nodeBytes);
+    }
+
+    @Override
+    protected List<String> getUpdateColumns() {
+      return UPDATE_COLUMNS;
+    }
+
+    @Override
+    protected Object getRowKey() {
+      return ImmutableList.of("nodes", nodeId);
+    }
+  }
+
+  private static class DefinitionDBPut extends BatchableDBPut {
+    private static final List<String> UPDATE_COLUMNS = ImmutableList.of("service");
+    private final String digest;
+    private final byte[] serviceBytes;
+
+    private DefinitionDBPut(String digest, byte[] serviceBytes) {
+      this.digest = digest;
+      this.serviceBytes = serviceBytes;
+    }
+
+    @Override
+    protected String getUpdateSql() {
+      return "UPDATE node_services SET service=? WHERE digest=?";
+    }
+
+    @Override
+    protected void setUpdateParameters(PreparedStatement statement) throws SQLException {
+      statement.setBytes(1, serviceBytes);
+      statement.setString(2, digest);
+    }
+
+    @Override
+    protected String getInsertSql() {
+      return "INSERT INTO node_services (digest, service) VALUES (?, ?)";
+    }
+
+    @Override
+    protected void setInsertParameters(PreparedStatement statement) throws SQLException {
+      statement.setString(1, digest);
+      statement.setBytes(2, serviceBytes);
+    }
+
+    @Override
+    protected List<String> getUpdateColumns() {
+      return UPDATE_COLUMNS;
+    }
+
+    @Override
+    protected Object getRowKey() {
+      return ImmutableList.of("node_services", digest);
+    }
+  }
+}
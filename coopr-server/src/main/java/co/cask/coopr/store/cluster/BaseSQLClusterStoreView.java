@@ -16,22 +16,29 @@
 package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.ClusterJobProgress;
 import co.cask.coopr.cluster.ClusterSummary;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.scheduler.ClusterAction;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.spec.BaseEntity;
+import co.cask.coopr.spec.template.ClusterTemplate;
 import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.DBHelper;
 import co.cask.coopr.store.DBPut;
 import co.cask.coopr.store.DBQueryExecutor;
-import com.google.common.collect.ImmutableList;
+import co.cask.coopr.store.NodeActionLog;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
 import java.io.IOException;
+import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Set;
 
@@ -40,6 +47,8 @@ import java.util.Set;
  * TODO: find a way to consolidate common code in subclasses.
  */
 public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
+  // sql state class of errors like duplicate keys
+  private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
   private final DBConnectionPool dbConnectionPool;
   private final DBQueryExecutor dbQueryExecutor;
 
@@ -57,7 +66,7 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
   abstract boolean allowedToWrite(Cluster cluster);
 
   abstract PreparedStatement getSetClusterStatement(
-    Connection conn, long id, Cluster cluster, byte[] clusterBytes) throws SQLException;
+    Connection conn, long id, Cluster cluster, byte[] clusterBytes, byte[] summaryBytes) throws SQLException;
 
   abstract PreparedStatement getClusterExistsStatement(Connection conn, long id) throws SQLException;
 
@@ -65,10 +74,11 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
 
   abstract PreparedStatement getSelectClusterJobsStatement(Connection conn, long id) throws SQLException;
 
-  abstract PreparedStatement getSelectAllClusterJobsStatement(Connection conn) throws SQLException;
+  // condition on the clusters C that limits them to the ones visible to the view, starting with AND
+  abstract String getVisibleClustersCondition();
 
-  abstract PreparedStatement getSelectAllClusterJobsStatement(
-    Connection conn, Set<Cluster.Status> states) throws SQLException;
+  // sets the parameters of the condition on visible clusters from the given index, and returns the next index
+  abstract int setVisibleClustersParameters(PreparedStatement statement, int startIndex) throws SQLException;
 
   abstract PreparedStatement getSelectClusterNodesStatement(Connection conn, long id) throws SQLException;
 
@@ -93,34 +103,22 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
 
   @Override
   public List<ClusterSummary> getAllClusterSummaries() throws IOException {
-    try {
-      Connection conn = dbConnectionPool.getConnection();
-      try {
-        PreparedStatement statement = getSelectAllClusterJobsStatement(conn);
-        try {
-          return getSummaries(statement);
-        } finally {
-          statement.close();
-        }
-      } finally {
-        conn.close();
-      }
-    } catch (SQLException e) {
-      throw new IOException("Exception getting all clusters");
-    }
+    return getClusterSummaries(ClusterSummaryFilter.ALL).getSummaries();
   }
 
   @Override
   public List<ClusterSummary> getAllClusterSummaries(Set<Cluster.Status> states) throws IOException {
-    if (states == null || states.isEmpty()) {
-      return getAllClusterSummaries();
-    }
+    return getClusterSummaries(new ClusterSummaryFilter(states, null, null, null, 0)).getSummaries();
+  }
+
+  @Override
+  public ClusterSummaryPage getClusterSummaries(ClusterSummaryFilter filter) throws IOException {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement = getSelectAllClusterJobsStatement(conn, states);
+        PreparedStatement statement = getSelectClusterSummariesStatement(conn, filter);
         try {
-          return getSummaries(statement);
+          return getSummaries(conn, statement, filter.getLimit());
         } finally {
           statement.close();
         }
@@ -128,7 +126,7 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
         conn.close();
       }
     } catch (SQLException e) {
-      throw new IOException("Exception getting all clusters");
+      throw new IOException("Exception getting cluster summaries with filter " + filter, e);
     }
   }
 
@@ -198,11 +196,24 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
     }
     long clusterNum = Long.parseLong(cluster.getId());
     try {
-      Connection conn = dbConnectionPool.getConnection();
+      Connection conn = dbConnectionPool.getConnection(false);
       try {
+        // the tenant usage counters change by the difference between what the cluster counted before and after
+        CountedCluster before = lockCountedCluster(conn, clusterNum);
         byte[] clusterBytes = dbQueryExecutor.toBytes(cluster, Cluster.class);
-        DBPut clusterPut = new ClusterDBPut(clusterNum, cluster, clusterBytes);
+        byte[] summaryBytes = dbQueryExecutor.toBytes(new ClusterSummaryDetails(cluster), ClusterSummaryDetails.class);
+        DBPut clusterPut = new ClusterDBPut(clusterNum, cluster, clusterBytes, summaryBytes);
         clusterPut.executePut(conn);
+        if (before != null) {
+          addTenantClusterUsage(conn, before.tenantId, -before.numClusters, -before.numNodes);
+        }
+        if (cluster.getStatus() != Cluster.Status.TERMINATED) {
+          addTenantClusterUsage(conn, cluster.getAccount().getTenantId(), 1, cluster.getNodeIDs().size());
+        }
+        conn.commit();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
       } finally {
         conn.close();
       }
@@ -215,14 +226,22 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
   public void deleteCluster(String clusterId) throws IOException {
     long clusterNum = Long.parseLong(clusterId);
     try {
-      Connection conn = dbConnectionPool.getConnection();
+      Connection conn = dbConnectionPool.getConnection(false);
       try {
+        CountedCluster before = lockCountedCluster(conn, clusterNum);
         PreparedStatement statement = getDeleteClusterStatement(conn, clusterNum);
         try {
-          statement.executeUpdate();
+          // the view may not be allowed to delete the cluster, in which case nothing is deleted
+          if (statement.executeUpdate() > 0 && before != null) {
+            addTenantClusterUsage(conn, before.tenantId, -before.numClusters, -before.numNodes);
+          }
         } finally {
           statement.close();
         }
+        conn.commit();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
       } finally {
         conn.close();
       }
@@ -259,11 +278,14 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
       long clusterNum = Long.parseLong(clusterId);
       try {
         PreparedStatement statement = getSelectClusterNodesStatement(conn, clusterNum);
+        Set<Node> nodes;
         try {
-          return dbQueryExecutor.getQuerySet(statement, Node.class);
+          nodes = ImmutableSet.copyOf(dbQueryExecutor.getNodeServiceRegistry().getQueryNodes(conn, statement));
         } finally {
           statement.close();
         }
+        NodeActionLog.addLoggedActions(dbConnectionPool, dbQueryExecutor, nodes);
+        return nodes;
       } finally {
         conn.close();
       }
@@ -273,10 +295,10 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
   }
 
   private PreparedStatement getInsertClusterStatement(
-    Connection conn, long id, Cluster cluster, byte[] clusterBytes) throws SQLException {
+    Connection conn, long id, Cluster cluster, byte[] clusterBytes, byte[] summaryBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "INSERT INTO  clusters (cluster, owner_id, tenant_id, status, expire_time," +
-        " create_time, name, id, latest_job_num) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+      "INSERT INTO  clusters (cluster, owner_id, tenant_id, status, expire_time, create_time, name, id," +
+        " latest_job_num, num_nodes, template_name, summary) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
     statement.setBytes(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
@@ -288,21 +310,237 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
     String latestJobStr = cluster.getLatestJobId();
     long latestJobNum = latestJobStr == null ? 0 : JobId.fromString(latestJobStr).getJobNum();
     statement.setLong(9, latestJobNum);
+    statement.setInt(10, cluster.getNodeIDs().size());
+    statement.setString(11, getTemplateName(cluster));
+    statement.setBytes(12, summaryBytes);
     return statement;
   }
 
-  private List<ClusterSummary> getSummaries(PreparedStatement statement) throws SQLException {
+  /**
+   * Get the name of the template of a cluster, as kept in the template name column used to filter cluster summaries.
+   *
+   * @param cluster Cluster to get the template name of
+   * @return Name of the template of the cluster, or null if it has no template
+   */
+  static String getTemplateName(Cluster cluster) {
+    return cluster.getClusterTemplate() == null ? null : cluster.getClusterTemplate().getName();
+  }
+
+  // summaries are read from columns and the small summary blob, so the cluster and job blobs are not deserialized
+  private PreparedStatement getSelectClusterSummariesStatement(Connection conn, ClusterSummaryFilter filter)
+    throws SQLException {
+    StringBuilder sql = new StringBuilder()
+      .append("SELECT C.id, C.name, C.owner_id, C.status, C.num_nodes, C.summary,")
+      .append(" J.action, J.status, J.num_tasks, J.num_completed_tasks, C.create_time")
+      .append(" FROM clusters C, jobs J WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id")
+      .append(getVisibleClustersCondition());
+    if (!filter.getStates().isEmpty()) {
+      sql.append(" AND C.status IN ").append(DBHelper.createInString(filter.getStates().size()));
+    }
+    if (filter.getClusterTemplate() != null) {
+      sql.append(" AND C.template_name=?");
+    }
+    if (filter.getOwnerId() != null) {
+      sql.append(" AND C.owner_id=?");
+    }
+    if (filter.getCursor() != null) {
+      // keyset pagination, so pages deep in the list are as cheap as the first one
+      sql.append(" AND (C.create_time < ? OR (C.create_time = ? AND C.id < ?))");
+    }
+    sql.append(" ORDER BY C.create_time DESC, C.id DESC");
+
+    PreparedStatement statement = conn.prepareStatement(sql.toString());
+    int index = setVisibleClustersParameters(statement, 1);
+    if (!filter.getStates().isEmpty()) {
+      setInClause(statement, filter.getStates(), index);
+      index += filter.getStates().size();
+    }
+    if (filter.getClusterTemplate() != null) {
+      statement.setString(index++, filter.getClusterTemplate());
+    }
+    if (filter.getOwnerId() != null) {
+      statement.setString(index++, filter.getOwnerId());
+    }
+    if (filter.getCursor() != null) {
+      Timestamp cursorCreateTime = new Timestamp(filter.getCursorCreateTime());
+      statement.setTimestamp(index++, cursorCreateTime);
+      statement.setTimestamp(index++, cursorCreateTime);
+      statement.setLong(index, filter.getCursorClusterNum());
+    }
+    if (filter.getLimit() > 0) {
+      statement.setMaxRows(filter.getLimit());
+    }
+    return statement;
+  }
+
+  /**
+   * Add to the counters of clusters and nodes of a tenant, which must be done in the same transaction as the cluster
+   * writes that change them.
+   *
+   * @param conn Connection of the transaction
+   * @param tenantId Id of the tenant whose counters to add to
+   * @param numClusters Number of clusters to add, negative to subtract
+   * @param numNodes Number of nodes to add, negative to subtract
+   * @throws SQLException if there was a problem updating the counters
+   */
+  static void addTenantClusterUsage(Connection conn, String tenantId,
+                                    int numClusters, int numNodes) throws SQLException {
+    if (numClusters == 0 && numNodes == 0) {
+      return;
+    }
+    if (updateTenantClusterUsage(conn, tenantId, numClusters, numNodes) > 0) {
+      return;
+    }
+    PreparedStatement statement = conn.prepareStatement(
+      "INSERT INTO tenant_cluster_usage (tenant_id, clusters, nodes) VALUES (?, ?, ?)");
+    try {
+      statement.setString(1, tenantId);
+      statement.setInt(2, numClusters);
+      statement.setInt(3, numNodes);
+      statement.executeUpdate();
+    } catch (SQLException e) {
+      // another transaction inserted the counters of the tenant first
+      if (e.getSQLState() == null || !e.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION)) {
+        throw e;
+      }
+      updateTenantClusterUsage(conn, tenantId, numClusters, numNodes);
+    } finally {
+      statement.close();
+    }
+  }
+
+  private static int updateTenantClusterUsage(Connection conn, String tenantId,
+                                              int numClusters, int numNodes) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(
+      "UPDATE tenant_cluster_usage SET clusters=clusters+?, nodes=nodes+? WHERE tenant_id=?");
+    try {
+      statement.setInt(1, numClusters);
+      statement.setInt(2, numNodes);
+      statement.setString(3, tenantId);
+      return statement.executeUpdate();
+    } finally {
+      statement.close();
+    }
+  }
+
+  // locks the row of the cluster until the end of the transaction, and returns what it counts towards the usage of
+  // its tenant, or null if the cluster does not exist.
+  private CountedCluster lockCountedCluster(Connection conn, long id) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(
+      "SELECT tenant_id, status, num_nodes FROM clusters WHERE id=? FOR UPDATE");
+    try {
+      statement.setLong(1, id);
+      ResultSet rs = statement.executeQuery();
+      try {
+        if (!rs.next()) {
+          return null;
+        }
+        if (Cluster.Status.TERMINATED.name().equals(rs.getString(2))) {
+          return new CountedCluster(rs.getString(1), 0, 0);
+        }
+        return new CountedCluster(rs.getString(1), 1, rs.getInt(3));
+      } finally {
+        rs.close();
+      }
+    } finally {
+      statement.close();
+    }
+  }
+
+  private ClusterSummaryPage getSummaries(Connection conn, PreparedStatement statement,
+                                         int limit) throws SQLException {
     ResultSet rs = statement.executeQuery();
     try {
       List<ClusterSummary> summaries = Lists.newArrayList();
-      while (rs.next()) {
+      int actualLimit = limit < 1 ? Integer.MAX_VALUE : limit;
+      String nextCursor = null;
+      while (summaries.size() < actualLimit && rs.next()) {
+        if (summaries.size() == limit - 1) {
+          // a full page may be followed by more clusters, which are the ones after the last cluster of this page.
+          // the creation time is taken as kept in the column, which may be less precise than the one in the summary
+          Timestamp createTime = rs.getTimestamp(11);
+          nextCursor = ClusterSummaryFilter.createCursor(createTime == null ? 0 : createTime.getTime(), rs.getLong(1));
+        }
+        Blob summaryBlob = rs.getBlob(6);
+        String action = rs.getString(7);
+        if (summaryBlob == null || action == null) {
+          // written before summaries were kept in columns
+          summaries.add(getSummaryFromBlobs(conn, rs.getLong(1)));
+          continue;
+        }
+        ClusterSummaryDetails details = dbQueryExecutor.deserializeBlob(summaryBlob, ClusterSummaryDetails.class);
+        ClusterJobProgress progress = new ClusterJobProgress(
+          ClusterAction.valueOf(action), ClusterJob.Status.valueOf(rs.getString(8)), rs.getInt(9), rs.getInt(10));
+        summaries.add(new ClusterSummary(details.id, rs.getString(2), details.description,
+                                         rs.getString(3), details.createTime, details.expireTime, rs.getInt(5),
+                                         Cluster.Status.valueOf(rs.getString(4)), details.provider,
+                                         details.clusterTemplate, details.services, progress));
+      }
+      return new ClusterSummaryPage(summaries, nextCursor);
+    } finally {
+      rs.close();
+    }
+  }
+
+  private ClusterSummary getSummaryFromBlobs(Connection conn, long clusterNum) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(
+      "SELECT C.cluster, J.job FROM clusters C, jobs J " +
+        "WHERE C.id=? AND C.latest_job_num=J.job_num AND C.id=J.cluster_id");
+    try {
+      statement.setLong(1, clusterNum);
+      ResultSet rs = statement.executeQuery();
+      try {
+        if (!rs.next()) {
+          throw new SQLException("Cluster " + clusterNum + " or its latest job no longer exists");
+        }
         Cluster cluster = dbQueryExecutor.deserializeBlob(rs.getBlob(1), Cluster.class);
         ClusterJob clusterJob = dbQueryExecutor.deserializeBlob(rs.getBlob(2), ClusterJob.class);
-        summaries.add(new ClusterSummary(cluster, clusterJob));
+        return new ClusterSummary(cluster, clusterJob);
+      } finally {
+        rs.close();
       }
-      return ImmutableList.copyOf(summaries);
     } finally {
-      rs.close();
+      statement.close();
+    }
+  }
+
+  /**
+   * What a cluster counts towards the usage of its tenant.
+   */
+  private static final class CountedCluster {
+    private final String tenantId;
+    private final int numClusters;
+    private final int numNodes;
+
+    private CountedCluster(String tenantId, int numClusters, int numNodes) {
+      this.tenantId = tenantId;
+      this.numClusters = numClusters;
+      this.numNodes = numNodes;
+    }
+  }
+
+  /**
+   * Parts of the summary of a cluster that are not kept in their own columns. The id and times are kept here as well,
+   * as the id column drops the formatting of the id, and some databases drop the milliseconds of timestamp columns.
+   */
+  private static final class ClusterSummaryDetails {
+    private final String id;
+    private final String description;
+    private final long createTime;
+    private final long expireTime;
+    private final BaseEntity provider;
+    private final BaseEntity clusterTemplate;
+    private final Set<String> services;
+
+    private ClusterSummaryDetails(Cluster cluster) {
+      this.id = cluster.getId();
+      this.description = cluster.getDescription();
+      this.createTime = cluster.getCreateTime();
+      this.expireTime = cluster.getExpireTime();
+      this.provider = cluster.getProvider() == null ? null : BaseEntity.from(cluster.getProvider());
+      ClusterTemplate template = cluster.getClusterTemplate();
+      this.clusterTemplate = template == null ? null : BaseEntity.from(template);
+      this.services = cluster.getServices();
     }
   }
 
@@ -310,21 +548,23 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
     private final long clusterId;
     private final Cluster cluster;
     private final byte[] clusterBytes;
+    private final byte[] summaryBytes;
 
-    private ClusterDBPut(long clusterId, Cluster cluster, byte[] clusterBytes) {
+    private ClusterDBPut(long clusterId, Cluster cluster, byte[] clusterBytes, byte[] summaryBytes) {
       this.clusterId = clusterId;
       this.cluster = cluster;
       this.clusterBytes = clusterBytes;
+      this.summaryBytes = summaryBytes;
     }
 
     @Override
     public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
-      return getSetClusterStatement(conn, clusterId, cluster, clusterBytes);
+      return getSetClusterStatement(conn, clusterId, cluster, clusterBytes, summaryBytes);
     }
 
     @Override
     public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
-      return getInsertClusterStatement(conn, clusterId, cluster, clusterBytes);
+      return getInsertClusterStatement(conn, clusterId, cluster, clusterBytes, summaryBytes);
     }
   }
 
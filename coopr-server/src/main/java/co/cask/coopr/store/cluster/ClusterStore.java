@@ -2,13 +2,17 @@ package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.metrics.NodeUsageBucket;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.store.ItemVisitor;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -46,6 +50,14 @@ public interface ClusterStore extends ClusterStoreView {
    */
   ClusterTask getClusterTask(TaskId taskId) throws IOException;
 
+  /**
+   * Get several cluster tasks by their ids with as few lookups as possible.
+   * @param taskIds Ids of the cluster tasks to get.
+   * @return Map of task id to cluster task for all of the given ids that exist. Ids that don't exist are left out.
+   * @throws IOException if there was a problem getting the cluster tasks.
+   */
+  Map<String, ClusterTask> getClusterTasks(Collection<String> taskIds) throws IOException;
+
   /**
    * Retrieves tasks according to the {@code query} filters.
    *
@@ -55,6 +67,81 @@ public interface ClusterStore extends ClusterStoreView {
    */
   List<ClusterTask> getClusterTasks(ClusterTaskFilter filter) throws IOException;
 
+  /**
+   * Passes completed CREATE and DELETE tasks that match the {@code filter} to the visitor one at a time, in order of
+   * their status time, without loading all of them into memory.
+   *
+   * @param filter the object wrapper around filters
+   * @param visitor visitor to pass the tasks to
+   * @throws IOException if there was a problem reading the cluster tasks.
+   */
+  void scanClusterTasks(ClusterTaskFilter filter, ItemVisitor<ClusterTask> visitor) throws IOException;
+
+  /**
+   * Passes completed CREATE and DELETE tasks that match the {@code filter} and have a status time at or after the
+   * given time to the visitor one at a time, in order of their status time, without loading all of them into memory.
+   *
+   * @param filter the object wrapper around filters
+   * @param from status time in milliseconds of the first tasks to pass to the visitor
+   * @param visitor visitor to pass the tasks to
+   * @throws IOException if there was a problem reading the cluster tasks.
+   */
+  void scanClusterTasks(ClusterTaskFilter filter, long from, ItemVisitor<ClusterTask> visitor) throws IOException;
+
+  /**
+   * Records a completed CREATE or DELETE task in the rollup of node usage, for every bucket length in
+   * {@link NodeUsageBucket#LENGTHS}. A CREATE task of a node that is already live and a DELETE task of a node that is
+   * not live do not change the usage, so recording the same task more than once has no effect.
+   *
+   * @param clusterTask the completed task
+   * @throws IOException if there was a problem writing the rollup.
+   */
+  void writeNodeUsage(ClusterTask clusterTask) throws IOException;
+
+  /**
+   * Get the node usage buckets of the given length that start within the given time range, summed over all tenants,
+   * users and cluster templates that match the filter. The cluster id of the filter is not supported.
+   *
+   * @param filter the object wrapper around filters
+   * @param bucketLength length of the buckets in milliseconds
+   * @param from start of the time range in milliseconds, inclusive
+   * @param to end of the time range in milliseconds, exclusive
+   * @return buckets ordered by their start time. Buckets without any task are left out.
+   * @throws IOException if there was a problem reading the rollup.
+   */
+  List<NodeUsageBucket> getNodeUsageBuckets(ClusterTaskFilter filter, long bucketLength,
+                                            long from, long to) throws IOException;
+
+  /**
+   * Get the node usage buckets of the given length that start before the given time, summed into one bucket over
+   * all tenants, users and cluster templates that match the filter. The cluster id of the filter is not supported.
+   *
+   * @param filter the object wrapper around filters
+   * @param bucketLength length of the buckets in milliseconds
+   * @param before end of the time range in milliseconds, exclusive
+   * @return sum of the buckets, starting at 0
+   * @throws IOException if there was a problem reading the rollup.
+   */
+  NodeUsageBucket getNodeUsageTotal(ClusterTaskFilter filter, long bucketLength, long before) throws IOException;
+
+  /**
+   * Get the status time up to which completed tasks have been recorded in the rollup of node usage by the backfill of
+   * the rollup.
+   *
+   * @return status time in milliseconds, or null if the backfill has not recorded any task yet.
+   * @throws IOException if there was a problem reading the backfill progress.
+   */
+  Long getNodeUsageBackfillTime() throws IOException;
+
+  /**
+   * Write the status time up to which completed tasks have been recorded in the rollup of node usage by the backfill
+   * of the rollup.
+   *
+   * @param statusTime status time in milliseconds
+   * @throws IOException if there was a problem writing the backfill progress.
+   */
+  void writeNodeUsageBackfillTime(long statusTime) throws IOException;
+
   /**
    * Write a cluster task to the store using its id.
    * @param clusterTask The cluster task to write.
@@ -78,12 +165,29 @@ public interface ClusterStore extends ClusterStoreView {
   Node getNode(String nodeId) throws IOException;
 
   /**
-   * Write the given node to the store.
+   * Get several nodes by their ids with as few lookups as possible.
+   * @param nodeIds Ids of the nodes to get.
+   * @return Map of node id to node for all of the given ids that exist. Ids that don't exist are left out.
+   * @throws IOException if there was a problem getting the nodes.
+   */
+  Map<String, Node> getNodes(Collection<String> nodeIds) throws IOException;
+
+  /**
+   * Write the given node to the store. Actions performed on the node are kept apart from it, so that they can be
+   * written on their own through a {@link ClusterStoreWriteBatch}, and are added back to it when it is read.
    * @param node The node to write.
    * @throws IOException if there was a problem writing the node.
    */
   void writeNode(Node node) throws IOException;
 
+  /**
+   * Start a batch of job, task and node writes that are written to the store together, in a single transaction, when
+   * the batch is flushed. Writing many objects through a batch takes far fewer round trips to the store than writing
+   * them one by one.
+   * @return A new, empty write batch.
+   */
+  ClusterStoreWriteBatch startWriteBatch();
+
   /**
    * Delete the node with the given id.
    * @param nodeId Id of the node to delete.
@@ -106,4 +210,20 @@ public interface ClusterStore extends ClusterStoreView {
    * @throws IOException
    */
   Set<Cluster> getExpiringClusters(long timestamp) throws IOException;
+
+  /**
+   * Get the number of clusters of a tenant that are not terminated and the number of nodes in them. These are kept
+   * in counters that are updated in the same transaction as the clusters, so getting them does not read any cluster.
+   * @param tenantId Id of the tenant to get the usage of.
+   * @return Usage of the tenant.
+   * @throws IOException if there was a problem getting the usage.
+   */
+  TenantClusterUsage getTenantClusterUsage(String tenantId) throws IOException;
+
+  /**
+   * Rebuild the counters of clusters and nodes of every tenant from the clusters in the store, in case they have
+   * drifted from the clusters or were never built, as for clusters written before the counters existed.
+   * @throws IOException if there was a problem rebuilding the counters.
+   */
+  void rebuildTenantClusterUsage() throws IOException;
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.cluster;
+
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+
+import java.io.IOException;
+
+/**
+ * Jobs, tasks, nodes and node actions to write to the {@link ClusterStore} together. Nothing is written until the
+ * batch is flushed, at which point everything in the batch is written in a single transaction, except for deletes of
+ * node actions, which may be done separately afterwards. Writing the same object more than once before a flush only
+ * writes its last state. Not thread safe.
+ */
+public interface ClusterStoreWriteBatch {
+  /**
+   * Add a cluster job to the batch.
+   * @param clusterJob The cluster job to write.
+   */
+  void writeClusterJob(ClusterJob clusterJob);
+
+  /**
+   * Add a cluster task to the batch.
+   * @param clusterTask The cluster task to write.
+   */
+  void writeClusterTask(ClusterTask clusterTask);
+
+  /**
+   * Add a node to the batch. Actions of the node that were read from the store are not written again, so changes to
+   * them must be added with {@link #writeNodeAction(Node, Node.Action)}.
+   * @param node The node to write.
+   */
+  void writeNode(Node node);
+
+  /**
+   * Add an action performed on a node to the batch, without writing the rest of the node. The amount of data
+   * written does not depend on the size of the node.
+   * @param node The node the action is performed on.
+   * @param action The action to write.
+   */
+  void writeNodeAction(Node node, Node.Action action);
+
+  /**
+   * Add the deletion of an action that is no longer kept in the history of a node to the batch. The action must
+   * already be removed from the node.
+   * @param node The node the action was performed on.
+   * @param action The action to delete.
+   */
+  void deleteNodeAction(Node node, Node.Action action);
+
+  /**
+   * Get the number of writes in the batch that have not been flushed yet.
+   * @return Number of writes in the batch.
+   */
+  int size();
+
+  /**
+   * Write everything in the batch to the store in a single transaction, and clear the batch. If there is a problem,
+   * nothing in the batch is written and the batch is left as it was.
+   * @throws IOException if there was a problem writing the batch.
+   */
+  void flush() throws IOException;
+}
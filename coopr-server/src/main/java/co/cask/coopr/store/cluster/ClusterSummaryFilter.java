@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.cluster;
+
+import co.cask.coopr.cluster.Cluster;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+
+/**
+ * Class specifying filters and a page to use when querying for cluster summaries. Summaries are ordered from the most
+ * recently created cluster to the least recently created one, and a page starts after the cluster given as cursor.
+ * Cursors hold the creation time and id of the last cluster of the previous page, so a page can be read without
+ * looking up the cluster of the cursor, which may have been deleted since.
+ */
+public class ClusterSummaryFilter {
+  public static final ClusterSummaryFilter ALL = new ClusterSummaryFilter(null, null, null, null, 0);
+  private static final String CURSOR_SEPARATOR = "-";
+  private final Set<Cluster.Status> states;
+  private final String clusterTemplate;
+  private final String ownerId;
+  private final String cursor;
+  private final long cursorCreateTime;
+  private final long cursorClusterNum;
+  private final int limit;
+
+  public ClusterSummaryFilter(Set<Cluster.Status> states, String clusterTemplate, String ownerId,
+                              String cursor, int limit) {
+    this.states = states == null ? ImmutableSet.<Cluster.Status>of() : ImmutableSet.copyOf(states);
+    this.clusterTemplate = clusterTemplate;
+    this.ownerId = ownerId;
+    this.cursor = cursor;
+    if (cursor == null) {
+      this.cursorCreateTime = 0;
+      this.cursorClusterNum = 0;
+    } else {
+      int separatorIndex = cursor.indexOf(CURSOR_SEPARATOR);
+      this.cursorCreateTime = parseCursorPart(cursor, cursor.substring(0, Math.max(separatorIndex, 0)));
+      this.cursorClusterNum = parseCursorPart(cursor, cursor.substring(separatorIndex + 1));
+    }
+    this.limit = limit;
+  }
+
+  /**
+   * Retrieves the states of this filter. Returned clusters must be in one of the states.
+   * This field is ignored if it is empty.
+   *
+   * @return states
+   */
+  public Set<Cluster.Status> getStates() {
+    return states;
+  }
+
+  /**
+   * Retrieves the cluster template name of this filter.
+   * This field is ignored if its value is {@code null}.
+   *
+   * @return cluster template name
+   */
+  public String getClusterTemplate() {
+    return clusterTemplate;
+  }
+
+  /**
+   * Retrieves the owner id of this filter.
+   * This field is ignored if its value is {@code null}.
+   *
+   * @return owner id
+   */
+  public String getOwnerId() {
+    return ownerId;
+  }
+
+  /**
+   * Retrieves the cursor of the page, which is the next cursor of the previous page.
+   * This field is ignored if its value is {@code null}.
+   *
+   * @return cursor
+   */
+  public String getCursor() {
+    return cursor;
+  }
+
+  /**
+   * Retrieves the creation time, as kept in the store, of the cluster the page starts after.
+   * This field is ignored if the cursor is {@code null}.
+   *
+   * @return creation time of the cursor
+   */
+  public long getCursorCreateTime() {
+    return cursorCreateTime;
+  }
+
+  /**
+   * Retrieves the id of the cluster the page starts after.
+   * This field is ignored if the cursor is {@code null}.
+   *
+   * @return cluster id of the cursor
+   */
+  public long getCursorClusterNum() {
+    return cursorClusterNum;
+  }
+
+  /**
+   * Retrieves the max number of summaries to return.
+   * This field is ignored if its value is less than 1.
+   *
+   * @return limit
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Create the cursor of the page that starts after the given cluster.
+   *
+   * @param createTime creation time of the cluster, as kept in the store
+   * @param clusterNum id of the cluster
+   * @return cursor of the page after the cluster
+   */
+  static String createCursor(long createTime, long clusterNum) {
+    return createTime + CURSOR_SEPARATOR + clusterNum;
+  }
+
+  private static long parseCursorPart(String cursor, String part) {
+    try {
+      long value = Long.parseLong(part);
+      if (value >= 0) {
+        return value;
+      }
+    } catch (NumberFormatException e) {
+      // fall through to the invalid cursor error
+    }
+    throw new IllegalArgumentException("Invalid cursor " + cursor);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("states", states)
+      .add("clusterTemplate", clusterTemplate)
+      .add("ownerId", ownerId)
+      .add("cursor", cursor)
+      .add("limit", limit)
+      .toString();
+  }
+}
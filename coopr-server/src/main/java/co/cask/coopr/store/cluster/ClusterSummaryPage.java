@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.cluster;
+
+import co.cask.coopr.cluster.ClusterSummary;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * A page of cluster summaries, along with the cursor to give in a {@link ClusterSummaryFilter} to get the next page.
+ */
+public class ClusterSummaryPage {
+  private final List<ClusterSummary> summaries;
+  private final String nextCursor;
+
+  public ClusterSummaryPage(List<ClusterSummary> summaries, String nextCursor) {
+    this.summaries = ImmutableList.copyOf(summaries);
+    this.nextCursor = nextCursor;
+  }
+
+  /**
+   * Retrieves the summaries of the page.
+   *
+   * @return immutable list of summaries
+   */
+  public List<ClusterSummary> getSummaries() {
+    return summaries;
+  }
+
+  /**
+   * Retrieves the cursor of the next page. Cursors are opaque, and are only meant to be given back to get the next
+   * page. This field is {@code null} if the page is the last one.
+   *
+   * @return cursor of the next page
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ClusterSummaryPage)) {
+      return false;
+    }
+
+    ClusterSummaryPage that = (ClusterSummaryPage) o;
+
+    return Objects.equal(summaries, that.summaries) &&
+      Objects.equal(nextCursor, that.nextCursor);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(summaries, nextCursor);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("summaries", summaries)
+      .add("nextCursor", nextCursor)
+      .toString();
+  }
+}
@@ -55,6 +55,18 @@ public interface ReadOnlyClusterStoreView {
    */
   List<ClusterSummary> getAllClusterSummaries(Set<Cluster.Status> states) throws IOException;
 
+  /**
+   * Get a page of summaries of the clusters in the store that match the given filter, starting after the cluster
+   * given as cursor in the filter, and containing at most the number of summaries given as limit. Summaries are
+   * ordered from the most recently created cluster to the least recently created one. A page with as many summaries
+   * as the limit has the cursor of the next page.
+   *
+   * @param filter Filter and page of the summaries to get.
+   * @return Page of summaries of clusters that match the filter.
+   * @throws IOException if there was a problem getting the cluster summaries.
+   */
+  ClusterSummaryPage getClusterSummaries(ClusterSummaryFilter filter) throws IOException;
+
   /**
    * Get an immutable list of all clusters in the store that are not in the terminated state.
    *
@@ -10,7 +10,6 @@ import com.google.common.base.Preconditions;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.Set;
 
 /**
  * The cluster store as viewed by a tenant admin. A tenant admin can read, write, and delete any cluster
@@ -59,17 +58,21 @@ public class SQLAdminClusterStoreView extends BaseSQLClusterStoreView {
 
   @Override
   protected PreparedStatement getSetClusterStatement(
-    Connection conn, long id, Cluster cluster, byte[] clusterBytes) throws SQLException {
+    Connection conn, long id, Cluster cluster, byte[] clusterBytes, byte[] summaryBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=? WHERE id=? AND tenant_id=?");
+      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, num_nodes=?," +
+        " template_name=?, summary=? WHERE id=? AND tenant_id=?");
     statement.setBytes(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
     statement.setString(4, cluster.getStatus().name());
     statement.setTimestamp(5, DBHelper.getTimestamp(cluster.getExpireTime()));
+    statement.setInt(6, cluster.getNodeIDs().size());
+    statement.setString(7, getTemplateName(cluster));
+    statement.setBytes(8, summaryBytes);
     // where clause
-    statement.setLong(6, id);
-    statement.setString(7, tenantId);
+    statement.setLong(9, id);
+    statement.setString(10, tenantId);
     return statement;
   }
 
@@ -101,22 +104,14 @@ public class SQLAdminClusterStoreView extends BaseSQLClusterStoreView {
   }
 
   @Override
-  PreparedStatement getSelectAllClusterJobsStatement(Connection conn) throws SQLException {
-    PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE " +
-        "C.latest_job_num=J.job_num AND C.id=J.cluster_id AND C.tenant_id=? ORDER BY C.create_time DESC");
-    statement.setString(1, tenantId);
-    return statement;
+  String getVisibleClustersCondition() {
+    return " AND C.tenant_id=?";
   }
 
   @Override
-  PreparedStatement getSelectAllClusterJobsStatement(Connection conn, Set<Cluster.Status> states) throws SQLException {
-    PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
-        "AND C.tenant_id=? AND C.status IN " + DBHelper.createInString(states.size()) + " ORDER BY C.create_time DESC");
-    statement.setString(1, tenantId);
-    setInClause(statement, states, 2);
-    return statement;
+  int setVisibleClustersParameters(PreparedStatement statement, int startIndex) throws SQLException {
+    statement.setString(startIndex, tenantId);
+    return startIndex + 1;
   }
 
   @Override
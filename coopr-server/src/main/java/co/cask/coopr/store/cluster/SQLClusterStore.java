@@ -1,25 +1,43 @@
 package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.ClusterJobProgress;
 import co.cask.coopr.cluster.ClusterSummary;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.metrics.NodeUsageBucket;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.spec.service.Service;
+import co.cask.coopr.store.BatchableDBPut;
 import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.DBHelper;
 import co.cask.coopr.store.DBPut;
+import co.cask.coopr.store.DBPutBatch;
 import co.cask.coopr.store.DBQueryExecutor;
+import co.cask.coopr.store.ItemVisitor;
+import co.cask.coopr.store.NodeActionLog;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -27,6 +45,20 @@ import java.util.Set;
  */
 public class SQLClusterStore implements ClusterStore {
   private static final Logger LOG  = LoggerFactory.getLogger(SQLClusterStore.class);
+  // max number of task ids to look up in a single query
+  private static final int MAX_TASKS_PER_LOOKUP = 500;
+  // max number of node ids to look up in a single query
+  private static final int MAX_NODES_PER_LOOKUP = 500;
+  // number of rows to fetch at a time when scanning through tasks. MySQL drivers ignore it and read all rows of the
+  // result up front, unless results are streamed, which they only do for a fetch size of Integer.MIN_VALUE
+  private static final int TASK_SCAN_FETCH_SIZE = 1000;
+  private static final int MYSQL_STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+  // max number of times to try writing node usage when the database rolls back the transaction, such as on a deadlock
+  private static final int MAX_NODE_USAGE_WRITE_ATTEMPTS = 3;
+  // id of the only row of the node usage backfill table
+  private static final int NODE_USAGE_BACKFILL_ID = 0;
+  private static final String NODE_USAGE_KEY_CONDITION =
+    "WHERE tenant_id=? AND user_id=? AND cluster_template_name=? AND bucket_length=? AND bucket_start=?";
   private final DBQueryExecutor dbQueryExecutor;
   private final DBConnectionPool dbConnectionPool;
   private final ClusterStoreView systemView;
@@ -123,27 +155,65 @@ public class SQLClusterStore implements ClusterStore {
   }
 
   @Override
-  public List<ClusterTask> getClusterTasks(ClusterTaskFilter filter) throws IOException {
+  public Map<String, ClusterTask> getClusterTasks(Collection<String> taskIds) throws IOException {
+    // tasks are looked up per job, which lets the query use the primary key. All tasks of a job stage belong to the
+    // same job, so a stage normally needs a single query.
+    Map<String, List<Long>> taskNumsByJob = Maps.newHashMap();
+    Map<String, JobId> jobIds = Maps.newHashMap();
+    for (String taskIdStr : taskIds) {
+      TaskId taskId = TaskId.fromString(taskIdStr);
+      String jobIdStr = taskId.getJobId().getId();
+      List<Long> taskNums = taskNumsByJob.get(jobIdStr);
+      if (taskNums == null) {
+        taskNums = Lists.newArrayList();
+        taskNumsByJob.put(jobIdStr, taskNums);
+        jobIds.put(jobIdStr, taskId.getJobId());
+      }
+      taskNums.add(taskId.getTaskNum());
+    }
+
+    Map<String, ClusterTask> tasks = Maps.newHashMap();
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        StringBuilder builder = new StringBuilder("SELECT task FROM tasks WHERE status = ? AND type IN (?,?)")
-          .append(addFilter("tenant_id = ", filter.getTenantId()))
-          .append(addFilter("user_id = ", filter.getUserId()))
-          .append(addFilter("cluster_id = ", filter.getClusterId()))
-          .append(addFilter("cluster_template_name = ", filter.getClusterTemplate()))
-          .append(" ORDER BY status_time ASC");
+        for (Map.Entry<String, List<Long>> jobTasks : taskNumsByJob.entrySet()) {
+          JobId jobId = jobIds.get(jobTasks.getKey());
+          for (List<Long> taskNums : Lists.partition(jobTasks.getValue(), MAX_TASKS_PER_LOOKUP)) {
+            PreparedStatement statement = conn.prepareStatement(
+              "SELECT task FROM tasks WHERE cluster_id=? AND job_num=? AND task_num IN " +
+                DBHelper.createInString(taskNums.size()));
+            try {
+              statement.setLong(1, Long.parseLong(jobId.getClusterId()));
+              statement.setLong(2, jobId.getJobNum());
+              int index = 3;
+              for (Long taskNum : taskNums) {
+                statement.setLong(index++, taskNum);
+              }
+              for (ClusterTask task : dbQueryExecutor.getQueryList(statement, ClusterTask.class)) {
+                tasks.put(task.getTaskId(), task);
+              }
+            } finally {
+              statement.close();
+            }
+          }
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting cluster tasks {}", taskIds, e);
+      throw new IOException("Exception getting cluster tasks " + taskIds, e);
+    }
+    return tasks;
+  }
 
-        PreparedStatement statement =
-          conn.prepareStatement(builder.toString());
+  @Override
+  public List<ClusterTask> getClusterTasks(ClusterTaskFilter filter) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = getFilteredTasksStatement(conn, filter, 0);
         try {
-          int index = initializeFilter(statement, ClusterTask.Status.COMPLETE.name(), 1);
-          index = initializeFilter(statement, ProvisionerAction.CREATE.name(), index);
-          index = initializeFilter(statement, ProvisionerAction.DELETE.name(), index);
-          index = initializeFilter(statement, filter.getTenantId(), index);
-          index = initializeFilter(statement, filter.getUserId(), index);
-          index = initializeFilter(statement, filter.getClusterId(), index);
-          initializeFilter(statement, filter.getClusterTemplate(), index);
           return dbQueryExecutor.getQueryList(statement, ClusterTask.class);
         } finally {
           statement.close();
@@ -157,6 +227,402 @@ public class SQLClusterStore implements ClusterStore {
     }
   }
 
+  @Override
+  public void scanClusterTasks(ClusterTaskFilter filter, ItemVisitor<ClusterTask> visitor) throws IOException {
+    scanClusterTasks(filter, 0, visitor);
+  }
+
+  @Override
+  public void scanClusterTasks(ClusterTaskFilter filter, final long from,
+                               final ItemVisitor<ClusterTask> visitor) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = getFilteredTasksStatement(conn, filter, from);
+        try {
+          // the statement is forward only and read only, as required to stream results from MySQL
+          statement.setFetchSize(dbConnectionPool.isMySQLDB() ? MYSQL_STREAMING_FETCH_SIZE : TASK_SCAN_FETCH_SIZE);
+          // the status time column may not keep milliseconds, so the exact status time of the task is checked as well
+          dbQueryExecutor.scanQuery(statement, ClusterTask.class, new ItemVisitor<ClusterTask>() {
+            @Override
+            public void visit(ClusterTask task) {
+              if (task.getStatusTime() >= from) {
+                visitor.visit(task);
+              }
+            }
+          });
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception scanning cluster tasks by filters {}", filter, e);
+      throw new IOException("Exception scanning cluster tasks by filters " + filter, e);
+    }
+  }
+
+  @Override
+  public void writeNodeUsage(ClusterTask clusterTask) throws IOException {
+    ProvisionerAction action = clusterTask.getTaskName();
+    if (clusterTask.getStatus() != ClusterTask.Status.COMPLETE ||
+      (action != ProvisionerAction.CREATE && action != ProvisionerAction.DELETE)) {
+      return;
+    }
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Connection conn = dbConnectionPool.getConnection(false);
+        try {
+          try {
+            writeNodeUsage(conn, clusterTask, action);
+            conn.commit();
+            return;
+          } catch (SQLException e) {
+            try {
+              conn.rollback();
+            } catch (SQLException e1) {
+              LOG.error("Exception rolling back failed node usage write", e1);
+            }
+            throw e;
+          }
+        } finally {
+          conn.close();
+        }
+      } catch (SQLException e) {
+        if (attempt < MAX_NODE_USAGE_WRITE_ATTEMPTS && DBHelper.isTransactionRollback(e)) {
+          LOG.debug("Transaction writing node usage of task {} was rolled back, trying again.",
+                    clusterTask.getTaskId(), e);
+          continue;
+        }
+        LOG.error("Exception writing node usage of task {}", clusterTask.getTaskId(), e);
+        throw new IOException("Exception writing node usage of task " + clusterTask.getTaskId(), e);
+      }
+    }
+  }
+
+  private void writeNodeUsage(Connection conn, ClusterTask clusterTask,
+                              ProvisionerAction action) throws SQLException {
+    if (action == ProvisionerAction.CREATE) {
+      if (openNodeUsage(conn, clusterTask)) {
+        for (long bucketLength : NodeUsageBucket.LENGTHS) {
+          updateNodeUsageBucket(conn, clusterTask, bucketLength, 1, 0);
+          updateNodeUsageTime(conn, clusterTask, bucketLength, "first_create_time", ">");
+          updateNodeUsageTime(conn, clusterTask, bucketLength, "last_create_time", "<");
+        }
+      }
+    } else {
+      // the time of a delete counts even if the node was not live, as it may end the usage time series
+      int deletes = closeNodeUsage(conn, clusterTask) ? 1 : 0;
+      for (long bucketLength : NodeUsageBucket.LENGTHS) {
+        updateNodeUsageBucket(conn, clusterTask, bucketLength, 0, deletes);
+        updateNodeUsageTime(conn, clusterTask, bucketLength, "last_delete_time", "<");
+      }
+    }
+  }
+
+  @Override
+  public List<NodeUsageBucket> getNodeUsageBuckets(ClusterTaskFilter filter, long bucketLength,
+                                                   long from, long to) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = getNodeUsageStatement(conn, filter, "bucket_start, ", bucketLength, from, to,
+                                                            " GROUP BY bucket_start ORDER BY bucket_start ASC");
+        try {
+          ResultSet rs = statement.executeQuery();
+          try {
+            List<NodeUsageBucket> buckets = Lists.newArrayList();
+            while (rs.next()) {
+              buckets.add(getNodeUsageBucket(rs, rs.getLong(1), 2));
+            }
+            return buckets;
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting node usage buckets by filters {}", filter, e);
+      throw new IOException("Exception getting node usage buckets by filters " + filter, e);
+    }
+  }
+
+  @Override
+  public NodeUsageBucket getNodeUsageTotal(ClusterTaskFilter filter, long bucketLength,
+                                           long before) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = getNodeUsageStatement(conn, filter, "", bucketLength, 0, before, "");
+        try {
+          ResultSet rs = statement.executeQuery();
+          try {
+            // aggregates without group by always return a single row
+            rs.next();
+            return getNodeUsageBucket(rs, 0, 1);
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting node usage total by filters {}", filter, e);
+      throw new IOException("Exception getting node usage total by filters " + filter, e);
+    }
+  }
+
+  @Override
+  public Long getNodeUsageBackfillTime() throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = conn.prepareStatement("SELECT status_time FROM node_usage_backfill WHERE id=?");
+        try {
+          statement.setInt(1, NODE_USAGE_BACKFILL_ID);
+          ResultSet rs = statement.executeQuery();
+          try {
+            return rs.next() ? rs.getLong(1) : null;
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting node usage backfill time", e);
+      throw new IOException("Exception getting node usage backfill time", e);
+    }
+  }
+
+  @Override
+  public void writeNodeUsageBackfillTime(long statusTime) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        new NodeUsageBackfillDBPut(statusTime).executePut(conn);
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception writing node usage backfill time {}", statusTime, e);
+      throw new IOException("Exception writing node usage backfill time " + statusTime, e);
+    }
+  }
+
+  // returns whether the node was not live at the time of the task, in which case it is live afterwards. Nodes are
+  // remembered after they are deleted, so that recording a task again never opens a node a second time.
+  private boolean openNodeUsage(Connection conn, ClusterTask clusterTask) throws SQLException {
+    // node that was deleted before it was created again
+    PreparedStatement statement = conn.prepareStatement(
+      "UPDATE node_usage_live SET create_time=?, delete_time=NULL " +
+        "WHERE cluster_id=? AND node_id=? AND delete_time<?");
+    try {
+      statement.setLong(1, clusterTask.getStatusTime());
+      statement.setLong(2, Long.parseLong(clusterTask.getClusterId()));
+      statement.setString(3, clusterTask.getNodeId());
+      statement.setLong(4, clusterTask.getStatusTime());
+      if (statement.executeUpdate() > 0) {
+        return true;
+      }
+    } finally {
+      statement.close();
+    }
+    // node that was never created, unless the insert conflicts with another record of the node
+    statement = conn.prepareStatement(
+      "INSERT INTO node_usage_live (cluster_id, node_id, create_time, delete_time) VALUES (?,?,?,NULL)");
+    try {
+      statement.setLong(1, Long.parseLong(clusterTask.getClusterId()));
+      statement.setString(2, clusterTask.getNodeId());
+      statement.setLong(3, clusterTask.getStatusTime());
+      statement.executeUpdate();
+      return true;
+    } catch (SQLException e) {
+      if (DBHelper.isConstraintViolation(e)) {
+        return false;
+      }
+      throw e;
+    } finally {
+      statement.close();
+    }
+  }
+
+  // returns whether the node was live at the time of the task, in which case it is not live afterwards.
+  private boolean closeNodeUsage(Connection conn, ClusterTask clusterTask) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(
+      "UPDATE node_usage_live SET delete_time=? " +
+        "WHERE cluster_id=? AND node_id=? AND delete_time IS NULL AND create_time<=?");
+    try {
+      statement.setLong(1, clusterTask.getStatusTime());
+      statement.setLong(2, Long.parseLong(clusterTask.getClusterId()));
+      statement.setString(3, clusterTask.getNodeId());
+      statement.setLong(4, clusterTask.getStatusTime());
+      return statement.executeUpdate() > 0;
+    } finally {
+      statement.close();
+    }
+  }
+
+  private void updateNodeUsageBucket(Connection conn, ClusterTask clusterTask, long bucketLength,
+                                     int creates, int deletes) throws SQLException {
+    if (addToNodeUsageBucket(conn, clusterTask, bucketLength, creates, deletes)) {
+      return;
+    }
+    long offset = clusterTask.getStatusTime() % bucketLength;
+    PreparedStatement statement = conn.prepareStatement(
+      "INSERT INTO node_usage (tenant_id, user_id, cluster_template_name, bucket_length, bucket_start, " +
+        "creates, create_offsets, deletes, delete_offsets) VALUES (?,?,?,?,?,?,?,?,?)");
+    try {
+      setNodeUsageKey(statement, 1, clusterTask, bucketLength);
+      statement.setInt(6, creates);
+      statement.setLong(7, creates * offset);
+      statement.setInt(8, deletes);
+      statement.setLong(9, deletes * offset);
+      statement.executeUpdate();
+    } catch (SQLException e) {
+      // bucket was inserted by a concurrent write since we tried to update it
+      if (!DBHelper.isConstraintViolation(e) || !addToNodeUsageBucket(conn, clusterTask, bucketLength,
+                                                                        creates, deletes)) {
+        throw e;
+      }
+    } finally {
+      statement.close();
+    }
+  }
+
+  // returns whether the bucket exists, in which case the task is added to it.
+  private boolean addToNodeUsageBucket(Connection conn, ClusterTask clusterTask, long bucketLength,
+                                       int creates, int deletes) throws SQLException {
+    long offset = clusterTask.getStatusTime() % bucketLength;
+    PreparedStatement statement = conn.prepareStatement(
+      "UPDATE node_usage SET creates=creates+?, create_offsets=create_offsets+?, " +
+        "deletes=deletes+?, delete_offsets=delete_offsets+? " + NODE_USAGE_KEY_CONDITION);
+    try {
+      statement.setInt(1, creates);
+      statement.setLong(2, creates * offset);
+      statement.setInt(3, deletes);
+      statement.setLong(4, deletes * offset);
+      setNodeUsageKey(statement, 5, clusterTask, bucketLength);
+      return statement.executeUpdate() > 0;
+    } finally {
+      statement.close();
+    }
+  }
+
+  // sets the time column to the time of the task if the comparison of the current value with it holds.
+  private void updateNodeUsageTime(Connection conn, ClusterTask clusterTask, long bucketLength,
+                                   String column, String comparison) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(
+      "UPDATE node_usage SET " + column + "=? " + NODE_USAGE_KEY_CONDITION +
+        " AND (" + column + " IS NULL OR " + column + comparison + "?)");
+    try {
+      statement.setLong(1, clusterTask.getStatusTime());
+      int index = setNodeUsageKey(statement, 2, clusterTask, bucketLength);
+      statement.setLong(index, clusterTask.getStatusTime());
+      statement.executeUpdate();
+    } finally {
+      statement.close();
+    }
+  }
+
+  private int setNodeUsageKey(PreparedStatement statement, int index, ClusterTask clusterTask,
+                              long bucketLength) throws SQLException {
+    String template = clusterTask.getClusterTemplateName();
+    statement.setString(index++, clusterTask.getAccount().getTenantId());
+    statement.setString(index++, clusterTask.getAccount().getUserId());
+    statement.setString(index++, template == null ? "" : template);
+    statement.setLong(index++, bucketLength);
+    statement.setLong(index++, clusterTask.getStatusTime() - clusterTask.getStatusTime() % bucketLength);
+    return index;
+  }
+
+  private PreparedStatement getNodeUsageStatement(Connection conn, ClusterTaskFilter filter, String groupColumns,
+                                                  long bucketLength, long from, long to,
+                                                  String suffix) throws SQLException {
+    StringBuilder builder = new StringBuilder("SELECT ")
+      .append(groupColumns)
+      .append("SUM(creates), SUM(create_offsets), SUM(deletes), SUM(delete_offsets), ")
+      .append("MIN(first_create_time), MAX(last_create_time), MAX(last_delete_time) FROM node_usage ")
+      .append("WHERE bucket_length = ? AND bucket_start >= ? AND bucket_start < ?")
+      .append(addFilter("tenant_id = ", filter.getTenantId()))
+      .append(addFilter("user_id = ", filter.getUserId()))
+      .append(addFilter("cluster_template_name = ", filter.getClusterTemplate()))
+      .append(suffix);
+
+    PreparedStatement statement = conn.prepareStatement(builder.toString());
+    try {
+      statement.setLong(1, bucketLength);
+      statement.setLong(2, from);
+      statement.setLong(3, to);
+      int index = initializeFilter(statement, filter.getTenantId(), 4);
+      index = initializeFilter(statement, filter.getUserId(), index);
+      initializeFilter(statement, filter.getClusterTemplate(), index);
+      return statement;
+    } catch (SQLException e) {
+      statement.close();
+      throw e;
+    }
+  }
+
+  private NodeUsageBucket getNodeUsageBucket(ResultSet rs, long start, int index) throws SQLException {
+    long creates = rs.getLong(index);
+    long createOffsets = rs.getLong(index + 1);
+    long deletes = rs.getLong(index + 2);
+    long deleteOffsets = rs.getLong(index + 3);
+    return new NodeUsageBucket(start, creates, createOffsets, deletes, deleteOffsets,
+                               getNullableLong(rs, index + 4), getNullableLong(rs, index + 5),
+                               getNullableLong(rs, index + 6));
+  }
+
+  private Long getNullableLong(ResultSet rs, int index) throws SQLException {
+    long value = rs.getLong(index);
+    return rs.wasNull() ? null : value;
+  }
+
+  // completed CREATE and DELETE tasks matching the filter, ordered by status time.
+  // tasks with a status time of at least a second before the given time, if the time is after 0
+  private PreparedStatement getFilteredTasksStatement(Connection conn, ClusterTaskFilter filter,
+                                                      long from) throws SQLException {
+    Timestamp fromTimestamp = DBHelper.getTimestamp(from - DateUtils.MILLIS_PER_SECOND);
+    StringBuilder builder = new StringBuilder("SELECT task FROM tasks WHERE status = ? AND type IN (?,?)")
+      .append(addFilter("tenant_id = ", filter.getTenantId()))
+      .append(addFilter("user_id = ", filter.getUserId()))
+      .append(addFilter("cluster_id = ", filter.getClusterId()))
+      .append(addFilter("cluster_template_name = ", filter.getClusterTemplate()))
+      .append(addFilter("status_time >= ", fromTimestamp))
+      .append(" ORDER BY status_time ASC");
+
+    PreparedStatement statement = conn.prepareStatement(builder.toString(), ResultSet.TYPE_FORWARD_ONLY,
+                                                        ResultSet.CONCUR_READ_ONLY);
+    try {
+      int index = initializeFilter(statement, ClusterTask.Status.COMPLETE.name(), 1);
+      index = initializeFilter(statement, ProvisionerAction.CREATE.name(), index);
+      index = initializeFilter(statement, ProvisionerAction.DELETE.name(), index);
+      index = initializeFilter(statement, filter.getTenantId(), index);
+      index = initializeFilter(statement, filter.getUserId(), index);
+      index = initializeFilter(statement, filter.getClusterId(), index);
+      index = initializeFilter(statement, filter.getClusterTemplate(), index);
+      if (fromTimestamp != null) {
+        statement.setTimestamp(index, fromTimestamp);
+      }
+      return statement;
+    } catch (SQLException e) {
+      statement.close();
+      throw e;
+    }
+  }
+
   private String addFilter(String key, Object value) {
     if (value == null) {
       return "";
@@ -220,11 +686,17 @@ public class SQLClusterStore implements ClusterStore {
       try {
         PreparedStatement statement = conn.prepareStatement("SELECT node FROM nodes WHERE id=? ");
         statement.setString(1, nodeId);
+        List<Node> nodes;
         try {
-          return dbQueryExecutor.getQueryItem(statement, Node.class);
+          nodes = dbQueryExecutor.getNodeServiceRegistry().getQueryNodes(conn, statement);
         } finally {
           statement.close();
         }
+        if (nodes.isEmpty()) {
+          return null;
+        }
+        NodeActionLog.addLoggedActions(dbConnectionPool, dbQueryExecutor, nodes);
+        return nodes.get(0);
       } finally {
         conn.close();
       }
@@ -234,19 +706,47 @@ public class SQLClusterStore implements ClusterStore {
   }
 
   @Override
-  public void writeNode(Node node) throws IOException {
+  public Map<String, Node> getNodes(Collection<String> nodeIds) throws IOException {
+    Map<String, Node> nodes = Maps.newHashMap();
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        byte[] nodeBytes = dbQueryExecutor.toBytes(node, Node.class);
-        DBPut nodePut = new NodeDBPut(node, nodeBytes);
-        nodePut.executePut(conn);
+        for (List<String> ids : Iterables.partition(nodeIds, MAX_NODES_PER_LOOKUP)) {
+          PreparedStatement statement = conn.prepareStatement(
+            "SELECT node FROM nodes WHERE id IN " + DBHelper.createInString(ids.size()));
+          try {
+            int index = 1;
+            for (String nodeId : ids) {
+              statement.setString(index++, nodeId);
+            }
+            for (Node node : dbQueryExecutor.getNodeServiceRegistry().getQueryNodes(conn, statement)) {
+              nodes.put(node.getId(), node);
+            }
+          } finally {
+            statement.close();
+          }
+        }
+        NodeActionLog.addLoggedActions(dbConnectionPool, dbQueryExecutor, nodes.values());
       } finally {
         conn.close();
       }
     } catch (SQLException e) {
-      throw new IOException(e);
+      LOG.error("Exception getting nodes {}", nodeIds, e);
+      throw new IOException("Exception getting nodes " + nodeIds, e);
     }
+    return nodes;
+  }
+
+  @Override
+  public void writeNode(Node node) throws IOException {
+    ClusterStoreWriteBatch writes = startWriteBatch();
+    writes.writeNode(node);
+    writes.flush();
+  }
+
+  @Override
+  public ClusterStoreWriteBatch startWriteBatch() {
+    return new SQLClusterStoreWriteBatch();
   }
 
   @Override
@@ -261,6 +761,7 @@ public class SQLClusterStore implements ClusterStore {
         } finally {
           statement.close();
         }
+        NodeActionLog.deleteAllActions(conn, nodeId);
       } finally {
         conn.close();
       }
@@ -314,6 +815,115 @@ public class SQLClusterStore implements ClusterStore {
     }
   }
 
+  @Override
+  public TenantClusterUsage getTenantClusterUsage(String tenantId) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement =
+          conn.prepareStatement("SELECT clusters, nodes FROM tenant_cluster_usage WHERE tenant_id=?");
+        statement.setString(1, tenantId);
+        try {
+          ResultSet rs = statement.executeQuery();
+          try {
+            return rs.next() ? new TenantClusterUsage(rs.getInt(1), rs.getInt(2)) : new TenantClusterUsage(0, 0);
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      throw new IOException("Exception getting cluster usage of tenant " + tenantId, e);
+    }
+  }
+
+  @Override
+  public void rebuildTenantClusterUsage() throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection(false);
+      try {
+        int isolation = conn.getTransactionIsolation();
+        // keeps clusters from being written while they are counted, so that no change to the counters is lost
+        conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        try {
+          Map<String, int[]> usages = countNonTerminatedClusters(conn);
+          PreparedStatement delete = conn.prepareStatement("DELETE FROM tenant_cluster_usage");
+          try {
+            delete.executeUpdate();
+          } finally {
+            delete.close();
+          }
+          PreparedStatement insert =
+            conn.prepareStatement("INSERT INTO tenant_cluster_usage (tenant_id, clusters, nodes) VALUES (?, ?, ?)");
+          try {
+            for (Map.Entry<String, int[]> entry : usages.entrySet()) {
+              insert.setString(1, entry.getKey());
+              insert.setInt(2, entry.getValue()[0]);
+              insert.setInt(3, entry.getValue()[1]);
+              insert.addBatch();
+            }
+            insert.executeBatch();
+          } finally {
+            insert.close();
+          }
+          conn.commit();
+        } catch (SQLException e) {
+          conn.rollback();
+          throw e;
+        } finally {
+          conn.setTransactionIsolation(isolation);
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception rebuilding tenant cluster usage", e);
+      throw new IOException("Exception rebuilding tenant cluster usage", e);
+    }
+  }
+
+  // returns the number of clusters and nodes of every tenant that has clusters that are not terminated, and sets the
+  // number of nodes of those clusters in case they were written before the number was kept.
+  private Map<String, int[]> countNonTerminatedClusters(Connection conn) throws SQLException {
+    Map<String, int[]> usages = Maps.newHashMap();
+    PreparedStatement select = conn.prepareStatement("SELECT cluster FROM clusters WHERE status<>?");
+    try {
+      PreparedStatement updateNumNodes = conn.prepareStatement("UPDATE clusters SET num_nodes=? WHERE id=?");
+      try {
+        select.setString(1, Cluster.Status.TERMINATED.name());
+        ResultSet rs = select.executeQuery();
+        try {
+          while (rs.next()) {
+            Cluster cluster = dbQueryExecutor.deserializeBlob(rs.getBlob(1), Cluster.class);
+            int numNodes = cluster.getNodeIDs().size();
+            updateNumNodes.setInt(1, numNodes);
+            updateNumNodes.setLong(2, Long.parseLong(cluster.getId()));
+            updateNumNodes.addBatch();
+            int[] usage = usages.get(cluster.getAccount().getTenantId());
+            if (usage == null) {
+              usage = new int[2];
+              usages.put(cluster.getAccount().getTenantId(), usage);
+            }
+            usage[0]++;
+            usage[1] += numNodes;
+          }
+        } finally {
+          rs.close();
+        }
+        updateNumNodes.executeBatch();
+      } finally {
+        updateNumNodes.close();
+      }
+    } finally {
+      select.close();
+    }
+    return usages;
+  }
+
   @Override
   public List<Cluster> getAllClusters() throws IOException {
     return systemView.getAllClusters();
@@ -329,6 +939,11 @@ public class SQLClusterStore implements ClusterStore {
     return systemView.getAllClusterSummaries(states);
   }
 
+  @Override
+  public ClusterSummaryPage getClusterSummaries(ClusterSummaryFilter filter) throws IOException {
+    return systemView.getClusterSummaries(filter);
+  }
+
   @Override
   public List<Cluster> getNonTerminatedClusters() throws IOException {
     return systemView.getNonTerminatedClusters();
@@ -364,120 +979,265 @@ public class SQLClusterStore implements ClusterStore {
     return systemView.getClusterNodes(clusterId);
   }
 
-  private class ClusterJobDBPut extends DBPut {
-    private final ClusterJob clusterJob;
+  private static class ClusterJobDBPut extends BatchableDBPut {
+    private static final List<String> UPDATE_COLUMNS = ImmutableList.of(
+      "job", "status", "action", "num_tasks", "num_completed_tasks");
     private final byte[] jobBytes;
-    private final JobId jobId;
+    private final long jobNum;
     private final long clusterId;
+    private final String status;
+    // progress of the job is kept in columns so that cluster summaries can be read without the job
+    private final String action;
+    private final int numTasks;
+    private final int numCompletedTasks;
 
     private ClusterJobDBPut(ClusterJob clusterJob, byte[] jobBytes, JobId jobId, long clusterId) {
-      this.clusterJob = clusterJob;
       this.jobBytes = jobBytes;
-      this.jobId = jobId;
+      this.jobNum = jobId.getJobNum();
       this.clusterId = clusterId;
+      this.status = clusterJob.getJobStatus().name();
+      ClusterJobProgress progress = new ClusterJobProgress(clusterJob);
+      this.action = progress.getAction().name();
+      this.numTasks = progress.getStepstotal();
+      this.numCompletedTasks = progress.getStepscompleted();
     }
 
     @Override
-    public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
-      PreparedStatement updateStatement =
-        conn.prepareStatement("UPDATE jobs SET job=?, status=? WHERE job_num=? AND cluster_id=?");
-      updateStatement.setBytes(1, jobBytes);
-      updateStatement.setString(2, clusterJob.getJobStatus().name());
-      updateStatement.setLong(3, jobId.getJobNum());
-      updateStatement.setLong(4, clusterId);
-      return updateStatement;
+    protected String getUpdateSql() {
+      return "UPDATE jobs SET job=?, status=?, action=?, num_tasks=?, num_completed_tasks=?" +
+        " WHERE job_num=? AND cluster_id=?";
     }
 
     @Override
-    public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
-      PreparedStatement statement = conn.prepareStatement(
-        "INSERT INTO jobs (job_num, cluster_id, status, create_time, job) VALUES (?, ?, ?, ?, ?)");
-      statement.setLong(1, jobId.getJobNum());
+    protected void setUpdateParameters(PreparedStatement statement) throws SQLException {
+      statement.setBytes(1, jobBytes);
+      statement.setString(2, status);
+      statement.setString(3, action);
+      statement.setInt(4, numTasks);
+      statement.setInt(5, numCompletedTasks);
+      statement.setLong(6, jobNum);
+      statement.setLong(7, clusterId);
+    }
+
+    @Override
+    protected String getInsertSql() {
+      return "INSERT INTO jobs (job_num, cluster_id, status, create_time, job, action, num_tasks," +
+        " num_completed_tasks) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    @Override
+    protected void setInsertParameters(PreparedStatement statement) throws SQLException {
+      statement.setLong(1, jobNum);
       statement.setLong(2, clusterId);
-      statement.setString(3, clusterJob.getJobStatus().name());
+      statement.setString(3, status);
       statement.setTimestamp(4, DBHelper.getTimestamp(System.currentTimeMillis()));
       statement.setBytes(5, jobBytes);
-      return statement;
+      statement.setString(6, action);
+      statement.setInt(7, numTasks);
+      statement.setInt(8, numCompletedTasks);
+    }
+
+    @Override
+    protected List<String> getUpdateColumns() {
+      return UPDATE_COLUMNS;
+    }
+
+    @Override
+    protected Object getRowKey() {
+      return ImmutableList.of("jobs", clusterId, jobNum);
     }
   }
 
-  private class ClusterTaskDBPut extends DBPut {
-    private final ClusterTask clusterTask;
+  private static class ClusterTaskDBPut extends BatchableDBPut {
+    private static final List<String> UPDATE_COLUMNS = ImmutableList.of(
+      "task", "status", "submit_time", "status_time", "type", "cluster_template_name", "user_id", "tenant_id");
     private final byte[] taskBytes;
-    private final TaskId taskId;
+    private final long taskNum;
+    private final long jobNum;
     private final long clusterId;
+    private final String status;
+    private final long submitTime;
+    private final long statusTime;
+    private final String type;
+    private final String clusterTemplateName;
+    private final String userId;
+    private final String tenantId;
 
     private ClusterTaskDBPut(ClusterTask clusterTask, byte[] taskBytes, TaskId taskId, long clusterId) {
-      this.clusterTask = clusterTask;
       this.taskBytes = taskBytes;
-      this.taskId = taskId;
+      this.taskNum = taskId.getTaskNum();
+      this.jobNum = taskId.getJobNum();
       this.clusterId = clusterId;
+      this.status = clusterTask.getStatus().name();
+      this.submitTime = clusterTask.getSubmitTime();
+      this.statusTime = clusterTask.getStatusTime();
+      this.type = clusterTask.getTaskName().name();
+      this.clusterTemplateName = clusterTask.getClusterTemplateName();
+      this.userId = clusterTask.getAccount().getUserId();
+      this.tenantId = clusterTask.getAccount().getTenantId();
     }
 
     @Override
-    public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
-      PreparedStatement statement = conn.prepareStatement(
-        "UPDATE tasks SET task=?, status=?, submit_time=?, status_time=?, type=?, " +
-          "cluster_template_name=?, user_id=?, tenant_id=?" +
-          " WHERE task_num=? AND job_num=? AND cluster_id=?");
-      statement.setBytes(1, dbQueryExecutor.toBytes(clusterTask, ClusterTask.class));
-      statement.setString(2, clusterTask.getStatus().name());
-      statement.setTimestamp(3, DBHelper.getTimestamp(clusterTask.getSubmitTime()));
-      statement.setTimestamp(4, DBHelper.getTimestamp(clusterTask.getStatusTime()));
-      statement.setString(5, clusterTask.getTaskName().name());
-      statement.setString(6, clusterTask.getClusterTemplateName());
-      statement.setString(7, clusterTask.getAccount().getUserId());
-      statement.setString(8, clusterTask.getAccount().getTenantId());
-      statement.setLong(9, taskId.getTaskNum());
-      statement.setLong(10, taskId.getJobNum());
+    protected String getUpdateSql() {
+      return "UPDATE tasks SET task=?, status=?, submit_time=?, status_time=?, type=?, " +
+        "cluster_template_name=?, user_id=?, tenant_id=?" +
+        " WHERE task_num=? AND job_num=? AND cluster_id=?";
+    }
+
+    @Override
+    protected void setUpdateParameters(PreparedStatement statement) throws SQLException {
+      statement.setBytes(1, taskBytes);
+      statement.setString(2, status);
+      statement.setTimestamp(3, DBHelper.getTimestamp(submitTime));
+      statement.setTimestamp(4, DBHelper.getTimestamp(statusTime));
+      statement.setString(5, type);
+      statement.setString(6, clusterTemplateName);
+      statement.setString(7, userId);
+      statement.setString(8, tenantId);
+      statement.setLong(9, taskNum);
+      statement.setLong(10, jobNum);
       statement.setLong(11, clusterId);
-      return statement;
     }
 
     @Override
-    public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
-      PreparedStatement statement = conn.prepareStatement(
-        "INSERT INTO tasks (task_num, job_num, cluster_id, status, submit_time, task, type, " +
-          "cluster_template_name, user_id, tenant_id)" +
-          " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
-      statement.setLong(1, taskId.getTaskNum());
-      statement.setLong(2, taskId.getJobNum());
+    protected String getInsertSql() {
+      return "INSERT INTO tasks (task_num, job_num, cluster_id, status, submit_time, status_time, task, type, " +
+        "cluster_template_name, user_id, tenant_id)" +
+        " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    @Override
+    protected void setInsertParameters(PreparedStatement statement) throws SQLException {
+      statement.setLong(1, taskNum);
+      statement.setLong(2, jobNum);
       statement.setLong(3, clusterId);
-      statement.setString(4, clusterTask.getStatus().name());
-      statement.setTimestamp(5, DBHelper.getTimestamp(clusterTask.getSubmitTime()));
-      statement.setBytes(6, taskBytes);
-      statement.setString(7, clusterTask.getTaskName().name());
-      statement.setString(8, clusterTask.getClusterTemplateName());
-      statement.setString(9, clusterTask.getAccount().getUserId());
-      statement.setString(10, clusterTask.getAccount().getTenantId());
-      return statement;
+      statement.setString(4, status);
+      statement.setTimestamp(5, DBHelper.getTimestamp(submitTime));
+      statement.setTimestamp(6, DBHelper.getTimestamp(statusTime));
+      statement.setBytes(7, taskBytes);
+      statement.setString(8, type);
+      statement.setString(9, clusterTemplateName);
+      statement.setString(10, userId);
+      statement.setString(11, tenantId);
+    }
+
+    @Override
+    protected List<String> getUpdateColumns() {
+      return UPDATE_COLUMNS;
+    }
+
+    @Override
+    protected Object getRowKey() {
+      return ImmutableList.of("tasks", clusterId, jobNum, taskNum);
+    }
+  }
+
+  /**
+   * Write batch that sends the puts of all its jobs, tasks, nodes and node actions in JDBC batches. Node actions to
+   * delete are only old history that is trimmed, so they are deleted after the rest of the batch is written, outside
+   * of its transaction.
+   */
+  private class SQLClusterStoreWriteBatch implements ClusterStoreWriteBatch {
+    private final DBPutBatch batch = new DBPutBatch();
+    private final ListMultimap<String, Node.Action> actionDeletes = ArrayListMultimap.create();
+    private final Map<String, Service> unstoredDefinitions = Maps.newHashMap();
+
+    @Override
+    public void writeClusterJob(ClusterJob clusterJob) {
+      JobId jobId = JobId.fromString(clusterJob.getJobId());
+      long clusterId = Long.parseLong(jobId.getClusterId());
+      byte[] jobBytes = dbQueryExecutor.toBytes(clusterJob, ClusterJob.class);
+      batch.add(new ClusterJobDBPut(clusterJob, jobBytes, jobId, clusterId));
+    }
+
+    @Override
+    public void writeClusterTask(ClusterTask clusterTask) {
+      TaskId taskId = TaskId.fromString(clusterTask.getTaskId());
+      long clusterId = Long.parseLong(taskId.getClusterId());
+      byte[] taskBytes = dbQueryExecutor.toBytes(clusterTask, ClusterTask.class);
+      batch.add(new ClusterTaskDBPut(clusterTask, taskBytes, taskId, clusterId));
+    }
+
+    @Override
+    public void writeNode(Node node) {
+      dbQueryExecutor.getNodeServiceRegistry()
+        .addNodePuts(batch, NodeActionLog.withoutActions(node), unstoredDefinitions);
+      // actions read from the log are written on their own when they change, so only actions of nodes written with
+      // their actions before there was a log, and actions that may not have been logged yet, are logged here
+      for (Node.Action action : NodeActionLog.getUnloggedActions(node)) {
+        writeNodeAction(node, action);
+      }
+    }
+
+    @Override
+    public void writeNodeAction(Node node, Node.Action action) {
+      batch.add(NodeActionLog.getActionPut(dbQueryExecutor, node.getId(), action));
+    }
+
+    @Override
+    public void deleteNodeAction(Node node, Node.Action action) {
+      actionDeletes.put(node.getId(), action);
+      // an action that was not read from the log may still be in the serialized node, which is written without it
+      if (!action.isLogged()) {
+        writeNode(node);
+      }
+    }
+
+    @Override
+    public int size() {
+      return batch.size() + actionDeletes.size();
+    }
+
+    @Override
+    public void flush() throws IOException {
+      int numPuts = batch.size();
+      try {
+        batch.execute(dbConnectionPool);
+      } catch (SQLException e) {
+        throw new IOException("Exception writing batch of " + numPuts + " jobs, tasks, nodes and node actions", e);
+      }
+      dbQueryExecutor.getNodeServiceRegistry().addStoredDefinitions(unstoredDefinitions);
+      unstoredDefinitions.clear();
+      if (actionDeletes.isEmpty()) {
+        return;
+      }
+      try {
+        Connection conn = dbConnectionPool.getConnection();
+        try {
+          for (String nodeId : actionDeletes.keySet()) {
+            NodeActionLog.deleteActions(conn, nodeId, actionDeletes.get(nodeId));
+          }
+        } finally {
+          conn.close();
+        }
+      } catch (SQLException e) {
+        throw new IOException("Exception deleting " + actionDeletes.size() + " node actions", e);
+      }
+      actionDeletes.clear();
     }
   }
 
-  private class NodeDBPut extends DBPut {
-    private final Node node;
-    private final byte[] nodeBytes;
+  private static class NodeUsageBackfillDBPut extends DBPut {
+    private final long statusTime;
 
-    private NodeDBPut(Node node, byte[] nodeBytes) {
-      this.node = node;
-      this.nodeBytes = nodeBytes;
+    private NodeUsageBackfillDBPut(long statusTime) {
+      this.statusTime = statusTime;
     }
 
     @Override
-    public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
-      PreparedStatement statement = conn.prepareStatement("UPDATE nodes SET node=? WHERE id=?");
-      statement.setBytes(1, nodeBytes);
-      statement.setString(2, node.getId());
+    protected PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
+      PreparedStatement statement = conn.prepareStatement("UPDATE node_usage_backfill SET status_time=? WHERE id=?");
+      statement.setLong(1, statusTime);
+      statement.setInt(2, NODE_USAGE_BACKFILL_ID);
       return statement;
     }
 
     @Override
-    public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
-      PreparedStatement statement = conn.prepareStatement(
-        "INSERT INTO nodes (id, cluster_id, node) VALUES (?, ?, ?)");
-      statement.setString(1, node.getId());
-      statement.setLong(2, Long.parseLong(node.getClusterId()));
-      statement.setBytes(3, nodeBytes);
+    protected PreparedStatement createInsertStatement(Connection conn) throws SQLException {
+      PreparedStatement statement =
+        conn.prepareStatement("INSERT INTO node_usage_backfill (id, status_time) VALUES (?, ?)");
+      statement.setInt(1, NODE_USAGE_BACKFILL_ID);
+      statement.setLong(2, statusTime);
       return statement;
     }
   }
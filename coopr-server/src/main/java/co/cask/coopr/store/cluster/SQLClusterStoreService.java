@@ -42,6 +42,16 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
         stmt.execute("DELETE FROM tasks");
         stmt = conn.createStatement();
         stmt.execute("DELETE FROM nodes");
+        stmt = conn.createStatement();
+        stmt.execute("DELETE FROM node_actions");
+        stmt = conn.createStatement();
+        stmt.execute("DELETE FROM node_usage");
+        stmt = conn.createStatement();
+        stmt.execute("DELETE FROM node_usage_live");
+        stmt = conn.createStatement();
+        stmt.execute("DELETE FROM node_usage_backfill");
+        stmt = conn.createStatement();
+        stmt.execute("DELETE FROM tenant_cluster_usage");
       } finally {
         stmt.close();
       }
@@ -64,6 +74,9 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
                                                                "expire_time TIMESTAMP, " +
                                                                "status VARCHAR(32), " +
                                                                "latest_job_num BIGINT, " +
+                                                               "num_nodes INTEGER, " +
+                                                               "template_name VARCHAR(255), " +
+                                                               "summary BLOB, " +
                                                                "cluster BLOB, " +
                                                                "PRIMARY KEY (id) )",
                                                              dbConnectionPool);
@@ -72,6 +85,7 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
                                   "clusters_account_index", "clusters", "tenant_id", "owner_id", "id");
         DBHelper.createDerbyIndex(dbConnectionPool, "clusters_ctime_index", "clusters", "create_time");
         DBHelper.createDerbyIndex(dbConnectionPool, "clusters_status_index", "clusters", "status");
+        DBHelper.createDerbyIndex(dbConnectionPool, "clusters_template_index", "clusters", "template_name");
       }
 
       created = DBHelper.createDerbyTableIfNotExists("CREATE TABLE jobs ( " +
@@ -79,6 +93,9 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
                                                        "job_num BIGINT, " +
                                                        "status VARCHAR(32), " +
                                                        "create_time TIMESTAMP, " +
+                                                       "action VARCHAR(64), " +
+                                                       "num_tasks INTEGER, " +
+                                                       "num_completed_tasks INTEGER, " +
                                                        "job BLOB, " +
                                                        "PRIMARY KEY (job_num, cluster_id) )",
                                                      dbConnectionPool);
@@ -116,6 +133,69 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
       if (created) {
         DBHelper.createDerbyIndex(dbConnectionPool, "nodes_cluster_index", "nodes", "cluster_id", "id");
       }
+
+      // actions performed on nodes, kept apart from the nodes so that they can be written on their own
+      DBHelper.createDerbyTableIfNotExists("CREATE TABLE node_actions ( " +
+                                             "node_id VARCHAR(64) NOT NULL, " +
+                                             "task_id VARCHAR(255) NOT NULL, " +
+                                             "submit_time BIGINT NOT NULL, " +
+                                             "action BLOB, " +
+                                             "PRIMARY KEY (node_id, task_id, submit_time) )",
+                                           dbConnectionPool);
+
+      // definitions of services on nodes, referenced by their digest from nodes written with service references.
+      // they are never deleted, as interned definitions are assumed to remain stored
+      DBHelper.createDerbyTableIfNotExists("CREATE TABLE node_services ( " +
+                                             "digest VARCHAR(64) NOT NULL, " +
+                                             "service BLOB, " +
+                                             "PRIMARY KEY (digest) )",
+                                           dbConnectionPool);
+
+      // rollup of completed CREATE and DELETE tasks for node usage metrics
+      created = DBHelper.createDerbyTableIfNotExists("CREATE TABLE node_usage ( " +
+                                                       "tenant_id VARCHAR(64) NOT NULL, " +
+                                                       "user_id VARCHAR(255) NOT NULL, " +
+                                                       "cluster_template_name VARCHAR(255) NOT NULL, " +
+                                                       "bucket_length BIGINT NOT NULL, " +
+                                                       "bucket_start BIGINT NOT NULL, " +
+                                                       "creates INTEGER, " +
+                                                       "create_offsets BIGINT, " +
+                                                       "deletes INTEGER, " +
+                                                       "delete_offsets BIGINT, " +
+                                                       "first_create_time BIGINT, " +
+                                                       "last_create_time BIGINT, " +
+                                                       "last_delete_time BIGINT, " +
+                                                       "PRIMARY KEY (tenant_id, user_id, cluster_template_name, " +
+                                                       "bucket_length, bucket_start) )",
+                                                     dbConnectionPool);
+      if (created) {
+        DBHelper.createDerbyIndex(dbConnectionPool, "node_usage_bucket_index", "node_usage",
+                                  "bucket_length", "bucket_start");
+      }
+
+      // nodes recorded in the rollup, the delete time is null while the node is live
+      DBHelper.createDerbyTableIfNotExists("CREATE TABLE node_usage_live ( " +
+                                             "cluster_id BIGINT NOT NULL, " +
+                                             "node_id VARCHAR(64) NOT NULL, " +
+                                             "create_time BIGINT, " +
+                                             "delete_time BIGINT, " +
+                                             "PRIMARY KEY (cluster_id, node_id) )",
+                                           dbConnectionPool);
+
+      // progress of building the rollup from the tasks completed before it was enabled
+      DBHelper.createDerbyTableIfNotExists("CREATE TABLE node_usage_backfill ( " +
+                                             "id INTEGER NOT NULL, " +
+                                             "status_time BIGINT, " +
+                                             "PRIMARY KEY (id) )",
+                                           dbConnectionPool);
+
+      // number of clusters that are not terminated and nodes in them, kept per tenant for quota checks
+      DBHelper.createDerbyTableIfNotExists("CREATE TABLE tenant_cluster_usage ( " +
+                                             "tenant_id VARCHAR(255) NOT NULL, " +
+                                             "clusters INTEGER, " +
+                                             "nodes INTEGER, " +
+                                             "PRIMARY KEY (tenant_id) )",
+                                           dbConnectionPool);
     }
   }
 
@@ -9,7 +9,6 @@ import co.cask.coopr.store.DBQueryExecutor;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.Set;
 
 /**
  * The cluster store as viewed by the system. The system can do anything to any object.
@@ -50,17 +49,21 @@ public class SQLSystemClusterStoreView extends BaseSQLClusterStoreView {
 
   @Override
   protected PreparedStatement getSetClusterStatement(
-    Connection conn, long id, Cluster cluster, byte[] clusterBytes) throws SQLException {
+    Connection conn, long id, Cluster cluster, byte[] clusterBytes, byte[] summaryBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, latest_job_num=? WHERE id=?");
+      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, latest_job_num=?, num_nodes=?" +
+        ", template_name=?, summary=? WHERE id=?");
     statement.setBytes(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
     statement.setString(4, cluster.getStatus().name());
     statement.setTimestamp(5, DBHelper.getTimestamp(cluster.getExpireTime()));
     statement.setLong(6, JobId.fromString(cluster.getLatestJobId()).getJobNum());
+    statement.setInt(7, cluster.getNodeIDs().size());
+    statement.setString(8, getTemplateName(cluster));
+    statement.setBytes(9, summaryBytes);
     // where clause
-    statement.setLong(7, id);
+    statement.setLong(10, id);
     return statement;
   }
 
@@ -88,20 +91,13 @@ public class SQLSystemClusterStoreView extends BaseSQLClusterStoreView {
   }
 
   @Override
-  PreparedStatement getSelectAllClusterJobsStatement(Connection conn) throws SQLException {
-    PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J " +
-        "WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id ORDER BY C.create_time DESC");
-    return statement;
+  String getVisibleClustersCondition() {
+    return "";
   }
 
   @Override
-  PreparedStatement getSelectAllClusterJobsStatement(Connection conn, Set<Cluster.Status> states) throws SQLException {
-    PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
-        "AND C.status IN " + DBHelper.createInString(states.size()) + " ORDER BY C.create_time DESC");
-    setInClause(statement, states, 1);
-    return statement;
+  int setVisibleClustersParameters(PreparedStatement statement, int startIndex) throws SQLException {
+    return startIndex;
   }
 
   @Override
@@ -9,7 +9,6 @@ import co.cask.coopr.store.DBQueryExecutor;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.Set;
 
 /**
  * The cluster store as viewed by a tenant user. A tenant user can read, write, and delete any cluster
@@ -65,19 +64,22 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
 
   @Override
   protected PreparedStatement getSetClusterStatement(
-    Connection conn, long id, Cluster cluster, byte[] clusterBytes) throws SQLException {
+    Connection conn, long id, Cluster cluster, byte[] clusterBytes, byte[] summaryBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?" +
-        " WHERE id=? AND tenant_id=? AND owner_id=?");
+      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, num_nodes=?," +
+        " template_name=?, summary=? WHERE id=? AND tenant_id=? AND owner_id=?");
     statement.setBytes(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
     statement.setString(4, cluster.getStatus().name());
     statement.setTimestamp(5, DBHelper.getTimestamp(cluster.getExpireTime()));
+    statement.setInt(6, cluster.getNodeIDs().size());
+    statement.setString(7, getTemplateName(cluster));
+    statement.setBytes(8, summaryBytes);
     // where clause
-    statement.setLong(6, id);
-    statement.setString(7, tenantId);
-    statement.setString(8, userId);
+    statement.setLong(9, id);
+    statement.setString(10, tenantId);
+    statement.setString(11, userId);
     return statement;
   }
 
@@ -114,25 +116,15 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
   }
 
   @Override
-  PreparedStatement getSelectAllClusterJobsStatement(Connection conn) throws SQLException {
-    PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
-        "AND C.tenant_id=? AND C.owner_id=? ORDER BY C.create_time DESC");
-    statement.setString(1, tenantId);
-    statement.setString(2, userId);
-    return statement;
+  String getVisibleClustersCondition() {
+    return " AND C.tenant_id=? AND C.owner_id=?";
   }
 
   @Override
-  PreparedStatement getSelectAllClusterJobsStatement(Connection conn, Set<Cluster.Status> states) throws SQLException {
-    PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
-        "AND C.tenant_id=? AND C.owner_id=? AND C.status IN " + DBHelper.createInString(states.size()) +
-        "ORDER BY C.create_time DESC");
-    statement.setString(1, tenantId);
-    statement.setString(2, userId);
-    setInClause(statement, states, 3);
-    return statement;
+  int setVisibleClustersParameters(PreparedStatement statement, int startIndex) throws SQLException {
+    statement.setString(startIndex, tenantId);
+    statement.setString(startIndex + 1, userId);
+    return startIndex + 2;
   }
 
   @Override
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.cluster;
+
+import com.google.common.base.Objects;
+
+/**
+ * Number of clusters of a tenant that are not terminated, and the number of nodes in those clusters.
+ */
+public class TenantClusterUsage {
+  private final int numClusters;
+  private final int numNodes;
+
+  public TenantClusterUsage(int numClusters, int numNodes) {
+    this.numClusters = numClusters;
+    this.numNodes = numNodes;
+  }
+
+  /**
+   * Get the number of clusters that are not terminated.
+   *
+   * @return Number of clusters that are not terminated
+   */
+  public int getNumClusters() {
+    return numClusters;
+  }
+
+  /**
+   * Get the number of nodes in clusters that are not terminated.
+   *
+   * @return Number of nodes in clusters that are not terminated
+   */
+  public int getNumNodes() {
+    return numNodes;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof TenantClusterUsage)) {
+      return false;
+    }
+    TenantClusterUsage other = (TenantClusterUsage) o;
+    return numClusters == other.numClusters && numNodes == other.numNodes;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(numClusters, numNodes);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("numClusters", numClusters)
+      .add("numNodes", numNodes)
+      .toString();
+  }
+}
@@ -16,6 +16,7 @@
 package co.cask.coopr.store.entity;
 
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.spec.BaseEntity;
 import co.cask.coopr.spec.HardwareType;
 import co.cask.coopr.spec.ImageType;
 import co.cask.coopr.spec.Provider;
@@ -27,6 +28,7 @@ import co.cask.coopr.spec.template.PartialTemplate;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
@@ -34,10 +36,12 @@ import java.util.Collection;
 import javax.annotation.Nullable;
 
 /**
- * Abstract {@link EntityStoreView} that represents entities as json.
+ * Abstract {@link EntityStoreView} that represents entities as json. Entities read are kept in the given
+ * {@link EntityCache}, if any, until they are changed.
  */
 public abstract class BaseEntityStoreView implements EntityStoreView {
   private final Gson gson;
+  private final EntityCache cache;
   private final Function<byte[], Provider> providerTransform =
     new Function<byte[], Provider>() {
       @Nullable
@@ -127,7 +131,12 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
   }
 
   protected BaseEntityStoreView(Gson gson) {
+    this(gson, null);
+  }
+
+  BaseEntityStoreView(Gson gson, @Nullable EntityCache cache) {
     this.gson = gson;
+    this.cache = cache;
   }
 
   @Override
@@ -142,26 +151,24 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
 
   @Override
   public Collection<Provider> getAllProviders() throws IOException {
-    return getAllEntities(EntityType.PROVIDER, providerTransform);
+    return getAll(EntityType.PROVIDER, providerTransform);
   }
 
   @Override
   public void writeProvider(Provider provider) throws IOException, IllegalAccessException {
-    int version = getVersion(EntityType.PROVIDER, provider.getName());
-    provider.setVersion(version);
-    writeEntity(EntityType.PROVIDER, provider.getName(), version,
-                serialize(provider, Provider.class));
-    provider.setVersion(Constants.DEFAULT_VERSION);
+    write(EntityType.PROVIDER, provider, Provider.class);
   }
 
   @Override
   public void deleteProvider(String providerName) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.PROVIDER, providerName);
+    invalidate(EntityType.PROVIDER);
   }
 
   @Override
   public void deleteProvider(String providerName, int version) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.PROVIDER, providerName, version);
+    invalidate(EntityType.PROVIDER);
   }
 
   @Override
@@ -176,26 +183,24 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
 
   @Override
   public Collection<HardwareType> getAllHardwareTypes() throws IOException {
-    return getAllEntities(EntityType.HARDWARE_TYPE, hardwareTypeTransform);
+    return getAll(EntityType.HARDWARE_TYPE, hardwareTypeTransform);
   }
 
   @Override
   public void writeHardwareType(HardwareType hardwareType) throws IOException, IllegalAccessException {
-    int version = getVersion(EntityType.HARDWARE_TYPE, hardwareType.getName());
-    hardwareType.setVersion(version);
-    writeEntity(EntityType.HARDWARE_TYPE, hardwareType.getName(), version,
-                serialize(hardwareType, HardwareType.class));
-    hardwareType.setVersion(Constants.DEFAULT_VERSION);
+    write(EntityType.HARDWARE_TYPE, hardwareType, HardwareType.class);
   }
 
   @Override
   public void deleteHardwareType(String hardwareTypeName) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.HARDWARE_TYPE, hardwareTypeName);
+    invalidate(EntityType.HARDWARE_TYPE);
   }
 
   @Override
   public void deleteHardwareType(String hardwareTypeName, int version) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.HARDWARE_TYPE, hardwareTypeName, version);
+    invalidate(EntityType.HARDWARE_TYPE);
   }
 
   @Override
@@ -210,26 +215,24 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
 
   @Override
   public Collection<ImageType> getAllImageTypes() throws IOException {
-    return getAllEntities(EntityType.IMAGE_TYPE, imageTypeTransform);
+    return getAll(EntityType.IMAGE_TYPE, imageTypeTransform);
   }
 
   @Override
   public void writeImageType(ImageType imageType) throws IOException, IllegalAccessException {
-    int version = getVersion(EntityType.IMAGE_TYPE, imageType.getName());
-    imageType.setVersion(version);
-    writeEntity(EntityType.IMAGE_TYPE, imageType.getName(), version,
-                serialize(imageType, ImageType.class));
-    imageType.setVersion(Constants.DEFAULT_VERSION);
+    write(EntityType.IMAGE_TYPE, imageType, ImageType.class);
   }
 
   @Override
   public void deleteImageType(String imageTypeName) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.IMAGE_TYPE, imageTypeName);
+    invalidate(EntityType.IMAGE_TYPE);
   }
 
   @Override
   public void deleteImageType(String imageTypeName, int version) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.IMAGE_TYPE, imageTypeName, version);
+    invalidate(EntityType.IMAGE_TYPE);
   }
 
   @Override
@@ -244,26 +247,24 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
 
   @Override
   public Collection<Service> getAllServices() throws IOException {
-    return getAllEntities(EntityType.SERVICE, serviceTransform);
+    return getAll(EntityType.SERVICE, serviceTransform);
   }
 
   @Override
   public void writeService(Service service) throws IOException, IllegalAccessException {
-    int version = getVersion(EntityType.SERVICE, service.getName());
-    service.setVersion(version);
-    writeEntity(EntityType.SERVICE, service.getName(), version,
-                serialize(service, Service.class));
-    service.setVersion(Constants.DEFAULT_VERSION);
+    write(EntityType.SERVICE, service, Service.class);
   }
 
   @Override
   public void deleteService(String serviceName) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.SERVICE, serviceName);
+    invalidate(EntityType.SERVICE);
   }
 
   @Override
   public void deleteService(String serviceName, int version) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.SERVICE, serviceName, version);
+    invalidate(EntityType.SERVICE);
   }
 
   @Override
@@ -278,27 +279,25 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
 
   @Override
   public Collection<ClusterTemplate> getAllClusterTemplates() throws IOException {
-    return getAllEntities(EntityType.CLUSTER_TEMPLATE, clusterTemplateTransform);
+    return getAll(EntityType.CLUSTER_TEMPLATE, clusterTemplateTransform);
   }
 
   @Override
   public void writeClusterTemplate(ClusterTemplate clusterTemplate) throws IOException, IllegalAccessException {
-    int version = getVersion(EntityType.CLUSTER_TEMPLATE, clusterTemplate.getName());
-    clusterTemplate.setVersion(version);
-    writeEntity(EntityType.CLUSTER_TEMPLATE, clusterTemplate.getName(), version,
-                serialize(clusterTemplate, ClusterTemplate.class));
-    clusterTemplate.setVersion(Constants.DEFAULT_VERSION);
+    write(EntityType.CLUSTER_TEMPLATE, clusterTemplate, ClusterTemplate.class);
   }
 
   @Override
   public void deleteClusterTemplate(String clusterTemplateName) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.CLUSTER_TEMPLATE, clusterTemplateName);
+    invalidate(EntityType.CLUSTER_TEMPLATE);
   }
 
   @Override
   public void deleteClusterTemplate(String clusterTemplateName, int version)
     throws IOException, IllegalAccessException {
     deleteEntity(EntityType.CLUSTER_TEMPLATE, clusterTemplateName, version);
+    invalidate(EntityType.CLUSTER_TEMPLATE);
   }
 
   public PartialTemplate getPartialTemplate(String partialTemplateName) throws IOException {
@@ -311,27 +310,25 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
 
   @Override
   public Collection<PartialTemplate> getAllPartialTemplates() throws IOException {
-    return getAllEntities(EntityType.PARTIAL_TEMPLATE, partialTemplateTransform);
+    return getAll(EntityType.PARTIAL_TEMPLATE, partialTemplateTransform);
   }
 
   @Override
   public void writePartialTemplate(PartialTemplate partialTemplate) throws IOException, IllegalAccessException {
-    int version = getVersion(EntityType.PARTIAL_TEMPLATE, partialTemplate.getName());
-    partialTemplate.setVersion(version);
-    writeEntity(EntityType.PARTIAL_TEMPLATE, partialTemplate.getName(), version,
-                serialize(partialTemplate, PartialTemplate.class));
-    partialTemplate.setVersion(Constants.DEFAULT_VERSION);
+    write(EntityType.PARTIAL_TEMPLATE, partialTemplate, PartialTemplate.class);
   }
 
   @Override
   public void deletePartialTemplate(String partialTemplateName) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.PARTIAL_TEMPLATE, partialTemplateName);
+    invalidate(EntityType.PARTIAL_TEMPLATE);
   }
 
   @Override
   public void deletePartialTemplate(String partialTemplateName, int version)
     throws IOException, IllegalAccessException {
     deleteEntity(EntityType.PARTIAL_TEMPLATE, partialTemplateName, version);
+    invalidate(EntityType.PARTIAL_TEMPLATE);
   }
 
   @Override
@@ -346,26 +343,24 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
 
   @Override
   public Collection<ProviderType> getAllProviderTypes() throws IOException {
-    return getAllEntities(EntityType.PROVIDER_TYPE, providerTypeTransform);
+    return getAll(EntityType.PROVIDER_TYPE, providerTypeTransform);
   }
 
   @Override
   public void writeProviderType(ProviderType providerType) throws IOException, IllegalAccessException {
-    int version = getVersion(EntityType.PROVIDER_TYPE, providerType.getName());
-    providerType.setVersion(version);
-    writeEntity(EntityType.PROVIDER_TYPE, providerType.getName(), version,
-                serialize(providerType, ProviderType.class));
-    providerType.setVersion(Constants.DEFAULT_VERSION);
+    write(EntityType.PROVIDER_TYPE, providerType, ProviderType.class);
   }
 
   @Override
   public void deleteProviderType(String providerTypeName) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.PROVIDER_TYPE, providerTypeName);
+    invalidate(EntityType.PROVIDER_TYPE);
   }
 
   @Override
   public void deleteProviderType(String providerTypeName, int version) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.PROVIDER_TYPE, providerTypeName, version);
+    invalidate(EntityType.PROVIDER_TYPE);
   }
 
   @Override
@@ -380,42 +375,84 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
 
   @Override
   public Collection<AutomatorType> getAllAutomatorTypes() throws IOException {
-    return getAllEntities(EntityType.AUTOMATOR_TYPE, automatorTypeTransform);
+    return getAll(EntityType.AUTOMATOR_TYPE, automatorTypeTransform);
   }
 
   @Override
   public void writeAutomatorType(AutomatorType automatorType) throws IOException, IllegalAccessException {
-    int version = getVersion(EntityType.AUTOMATOR_TYPE, automatorType.getName());
-    automatorType.setVersion(version);
-    writeEntity(EntityType.AUTOMATOR_TYPE, automatorType.getName(), version,
-                serialize(automatorType, AutomatorType.class));
-    automatorType.setVersion(Constants.DEFAULT_VERSION);
+    write(EntityType.AUTOMATOR_TYPE, automatorType, AutomatorType.class);
   }
 
   @Override
   public void deleteAutomatorType(String automatorTypeName) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.AUTOMATOR_TYPE, automatorTypeName);
+    invalidate(EntityType.AUTOMATOR_TYPE);
   }
 
   @Override
   public void deleteAutomatorType(String automatorTypeName, int version) throws IOException, IllegalAccessException {
     deleteEntity(EntityType.AUTOMATOR_TYPE, automatorTypeName, version);
+    invalidate(EntityType.AUTOMATOR_TYPE);
   }
 
-  private <T> T get(EntityType entityType, String entityName, int entityVersion,
-                    Function<byte[], T> transform) throws IOException {
+  private <T extends BaseEntity> T get(EntityType entityType, String entityName, int entityVersion,
+                                       Function<byte[], T> transform) throws IOException {
+    EntityCache.TenantEntities cachedEntities = getCachedEntities(entityType);
+    if (cachedEntities != null && cachedEntities.contains(entityType, entityName, entityVersion)) {
+      return cachedEntities.get(entityType, entityName, entityVersion);
+    }
     byte[] data = getEntity(entityType, entityName, entityVersion);
-    return (data == null) ? null : transform.apply(data);
+    T entity = (data == null) ? null : transform.apply(data);
+    if (cachedEntities != null) {
+      cachedEntities.put(entityType, entityName, entityVersion, entity);
+    }
+    return entity;
+  }
+
+  private <T> Collection<T> getAll(EntityType entityType, Function<byte[], T> transform) throws IOException {
+    EntityCache.TenantEntities cachedEntities = getCachedEntities(entityType);
+    if (cachedEntities == null) {
+      return getAllEntities(entityType, transform);
+    }
+    Collection<T> entities = cachedEntities.getAll(entityType);
+    if (entities == null) {
+      entities = cachedEntities.putAll(entityType, getAllEntities(entityType, transform));
+    }
+    return entities;
   }
 
-  private <T> byte[] serialize(T object, Type type) {
-    return gson.toJson(object, type).getBytes(Charsets.UTF_8);
+  // the version is only added to the stored json, as the given entity may be one that is cached and shared
+  private <T extends BaseEntity> void write(EntityType entityType, T entity, Type type)
+    throws IOException, IllegalAccessException {
+    int version = getVersion(entityType, entity.getName());
+    JsonObject json = gson.toJsonTree(entity, type).getAsJsonObject();
+    json.addProperty("version", version);
+    writeEntity(entityType, entity.getName(), version, gson.toJson(json).getBytes(Charsets.UTF_8));
+    invalidate(entityType);
+  }
+
+  private EntityCache.TenantEntities getCachedEntities(EntityType entityType) {
+    return cache == null ? null : cache.getTenantEntities(getTenantId(entityType));
+  }
+
+  private void invalidate(EntityType entityType) {
+    if (cache != null) {
+      cache.invalidate(getTenantId(entityType));
+    }
   }
 
   private <T> T deserialize(byte[] bytes, Type type) {
     return gson.fromJson(new String(bytes, Charsets.UTF_8), type);
   }
 
+  /**
+   * Get the id of the tenant whose entities of the given type are read by this view.
+   *
+   * @param entityType Type of entity.
+   * @return Id of the tenant whose entities are read.
+   */
+  protected abstract String getTenantId(EntityType entityType);
+
   /**
    * Retrieves highest version of entity.
    *
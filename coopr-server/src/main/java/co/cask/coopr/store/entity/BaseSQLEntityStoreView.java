@@ -29,6 +29,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * Base implementation of {@link BaseEntityStoreView} using a sql database as the persistent store.
@@ -38,13 +39,22 @@ public abstract class BaseSQLEntityStoreView extends BaseEntityStoreView {
   protected final DBConnectionPool dbConnectionPool;
   protected final String accountErrorSnippet;
 
-  BaseSQLEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson) {
-    super(gson);
+  BaseSQLEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson,
+                         @Nullable EntityCache cache) {
+    super(gson, cache);
     this.account = account;
     this.dbConnectionPool = dbConnectionPool;
     this.accountErrorSnippet = " from tenant " + account.getTenantId();
   }
 
+  @Override
+  protected String getTenantId(EntityType entityType) {
+    // TODO: remove once types are defined through server instead of through provisioner
+    // automator and provider types are constant across tenants and defined only in the superadmin tenant.
+    return (entityType == EntityType.AUTOMATOR_TYPE || entityType == EntityType.PROVIDER_TYPE) ?
+      Constants.SUPERADMIN_TENANT : account.getTenantId();
+  }
+
   @Override
   protected int getVersion(EntityType entityType, String entityName) throws IOException {
     try {
@@ -158,8 +168,7 @@ public abstract class BaseSQLEntityStoreView extends BaseEntityStoreView {
     } else {
       queryStr.append("?");
     }
-    String tenantId = (entityType == EntityType.AUTOMATOR_TYPE || entityType == EntityType.PROVIDER_TYPE) ?
-      Constants.SUPERADMIN_TENANT : account.getTenantId();
+    String tenantId = getTenantId(entityType);
     PreparedStatement statement = conn.prepareStatement(queryStr.toString());
     statement.setString(1, entityName);
     statement.setString(2, tenantId);
@@ -181,13 +190,8 @@ public abstract class BaseSQLEntityStoreView extends BaseEntityStoreView {
     queryStr.append(" FROM ");
     queryStr.append(entityTypeId);
     queryStr.append("s WHERE tenant_id=?");
-    // TODO: remove once types are defined through server instead of through provisioner
-    // automator and provider types are constant across tenants and defined only in the superadmin tenant.
-    String tenantId = (entityType == EntityType.AUTOMATOR_TYPE || entityType == EntityType.PROVIDER_TYPE) ?
-      Constants.SUPERADMIN_TENANT : account.getTenantId();
-
     PreparedStatement statement = conn.prepareStatement(queryStr.toString());
-    statement.setString(1, tenantId);
+    statement.setString(1, getTenantId(entityType));
     return statement;
   }
 }
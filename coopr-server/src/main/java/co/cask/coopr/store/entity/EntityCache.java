@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.zookeeper.ZKClientExt;
+import co.cask.coopr.spec.BaseEntity;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * In memory cache of the entities of each tenant, shared by all views of an entity store. Entities are cached by
+ * type, name and version, which never change once written, along with the latest version of each entity that has
+ * been read. Any write or delete of an entity drops all cached entities of the tenant. When given a zookeeper client,
+ * writes also update a znode for the tenant that every server watches, so that other servers drop their cached
+ * entities of the tenant as well.
+ */
+class EntityCache {
+  private static final Logger LOG = LoggerFactory.getLogger(EntityCache.class);
+  private static final String ZK_NAMESPACE = "/entities";
+  private final ZKClient zkClient;
+  private final ConcurrentMap<String, TenantEntities> tenants;
+
+  EntityCache(@Nullable ZKClient zkClient) {
+    this.zkClient = zkClient;
+    this.tenants = Maps.newConcurrentMap();
+  }
+
+  /**
+   * Get the cached entities of the given tenant.
+   *
+   * @param tenantId Id of the tenant to get cached entities for
+   * @return Cached entities of the tenant, or null if they cannot be cached because the tenant could not be watched
+   */
+  @Nullable
+  TenantEntities getTenantEntities(final String tenantId) {
+    TenantEntities tenantEntities = tenants.get(tenantId);
+    if (tenantEntities != null) {
+      return tenantEntities;
+    }
+
+    final TenantEntities newTenantEntities = new TenantEntities();
+    // the watch is set before the entities are read, so that any write after this is seen
+    if (zkClient != null) {
+      try {
+        Futures.getUnchecked(zkClient.exists(getZKPath(tenantId), new Watcher() {
+          @Override
+          public void process(WatchedEvent event) {
+            // disconnects are also treated as a change, since changes can be missed while disconnected
+            invalidate(tenantId, newTenantEntities);
+          }
+        }));
+      } catch (Exception e) {
+        LOG.warn("Unable to watch entities of tenant {}, entities will not be cached.", tenantId, e);
+        return null;
+      }
+    }
+    tenantEntities = tenants.putIfAbsent(tenantId, newTenantEntities);
+    if (tenantEntities != null) {
+      return tenantEntities;
+    }
+    // the watch may have been triggered before the entities were added to the cache
+    return newTenantEntities.invalidated ? null : newTenantEntities;
+  }
+
+  /**
+   * Drop the cached entities of the given tenant, on this server and on all other servers.
+   *
+   * @param tenantId Id of the tenant whose entities were changed
+   */
+  void invalidate(String tenantId) {
+    TenantEntities tenantEntities = tenants.get(tenantId);
+    if (tenantEntities != null) {
+      invalidate(tenantId, tenantEntities);
+    }
+    if (zkClient != null) {
+      try {
+        Futures.getUnchecked(ZKClientExt.createOrSet(zkClient, getZKPath(tenantId), null, CreateMode.PERSISTENT));
+      } catch (Exception e) {
+        LOG.error("Unable to notify other servers of changed entities of tenant {}.", tenantId, e);
+      }
+    }
+  }
+
+  /**
+   * Drop the cached entities of all tenants on this server.
+   */
+  void invalidateAll() {
+    for (String tenantId : tenants.keySet()) {
+      TenantEntities tenantEntities = tenants.get(tenantId);
+      if (tenantEntities != null) {
+        invalidate(tenantId, tenantEntities);
+      }
+    }
+  }
+
+  private void invalidate(String tenantId, TenantEntities tenantEntities) {
+    tenantEntities.invalidated = true;
+    tenants.remove(tenantId, tenantEntities);
+  }
+
+  private String getZKPath(String tenantId) {
+    return ZK_NAMESPACE + "/" + tenantId;
+  }
+
+  /**
+   * Cached entities of a tenant. Entries are only ever added, since all entities of the tenant are dropped at once
+   * when any of them changes.
+   */
+  static final class TenantEntities {
+    // version that marks an entity as missing in the latest versions
+    private static final int MISSING_VERSION = 0;
+    private final ConcurrentMap<List<Object>, BaseEntity> entities = Maps.newConcurrentMap();
+    private final ConcurrentMap<List<Object>, Integer> latestVersions = Maps.newConcurrentMap();
+    private final ConcurrentMap<BaseEntityStoreView.EntityType, ImmutableList<?>> allEntities =
+      Maps.newConcurrentMap();
+    private volatile boolean invalidated;
+
+    /**
+     * Returns whether the entity of the given type, name and version is cached. An entity that was found missing
+     * when getting its latest version is cached as missing.
+     */
+    boolean contains(BaseEntityStoreView.EntityType entityType, String entityName, int entityVersion) {
+      if (entityVersion == Constants.FIND_MAX_VERSION) {
+        return latestVersions.containsKey(ImmutableList.<Object>of(entityType, entityName));
+      }
+      return entities.containsKey(ImmutableList.<Object>of(entityType, entityName, entityVersion));
+    }
+
+    /**
+     * Get the cached entity of the given type, name and version, or null if it is cached as missing.
+     */
+    @SuppressWarnings("unchecked")
+    <T extends BaseEntity> T get(BaseEntityStoreView.EntityType entityType, String entityName, int entityVersion) {
+      int version = entityVersion;
+      if (entityVersion == Constants.FIND_MAX_VERSION) {
+        Integer latestVersion = latestVersions.get(ImmutableList.<Object>of(entityType, entityName));
+        if (latestVersion == null || latestVersion == MISSING_VERSION) {
+          return null;
+        }
+        version = latestVersion;
+      }
+      return (T) entities.get(ImmutableList.<Object>of(entityType, entityName, version));
+    }
+
+    /**
+     * Cache an entity read from the store, or null if the entity was not found.
+     */
+    void put(BaseEntityStoreView.EntityType entityType, String entityName, int entityVersion,
+             @Nullable BaseEntity entity) {
+      // the entity is added before its latest version, so that the latest version always refers to a cached entity
+      if (entity != null) {
+        entities.put(ImmutableList.<Object>of(entityType, entityName, entity.getVersion()), entity);
+      }
+      if (entityVersion == Constants.FIND_MAX_VERSION) {
+        latestVersions.put(ImmutableList.<Object>of(entityType, entityName),
+                           entity == null ? MISSING_VERSION : entity.getVersion());
+      }
+    }
+
+    /**
+     * Get all cached entities of the given type, or null if they are not cached.
+     */
+    @SuppressWarnings("unchecked")
+    <T> Collection<T> getAll(BaseEntityStoreView.EntityType entityType) {
+      return (Collection<T>) allEntities.get(entityType);
+    }
+
+    /**
+     * Cache all entities of the given type read from the store, and return them as an immutable collection.
+     */
+    <T> Collection<T> putAll(BaseEntityStoreView.EntityType entityType, Collection<T> entitiesOfType) {
+      ImmutableList<T> immutableEntities = ImmutableList.copyOf(entitiesOfType);
+      allEntities.put(entityType, immutableEntities);
+      return immutableEntities;
+    }
+  }
+}
@@ -25,14 +25,16 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of {@link BaseSQLEntityStoreView} from the view of a tenant admin.
  */
 public class SQLAdminEntityStoreView extends BaseSQLEntityStoreView {
 
-  SQLAdminEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson) {
-    super(account, dbConnectionPool, gson);
+  SQLAdminEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson,
+                          @Nullable EntityCache cache) {
+    super(account, dbConnectionPool, gson, cache);
     Preconditions.checkArgument(account.isAdmin(), "Entity store only writable by admins");
   }
 
@@ -1,6 +1,8 @@
 package co.cask.coopr.store.entity;
 
 import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.spec.HardwareType;
 import co.cask.coopr.spec.ImageType;
 import co.cask.coopr.spec.Provider;
@@ -11,6 +13,7 @@ import co.cask.coopr.store.DBHelper;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
+import org.apache.twill.zookeeper.ZKClient;
 
 import java.io.IOException;
 import java.sql.Connection;
@@ -19,15 +22,33 @@ import java.sql.Statement;
 
 /**
  * Implementation of {@link EntityStoreService} that provides views of the entity store backed by a SQL database.
+ * Unless disabled, entities read through the views are cached in memory until they are changed.
  */
 public class SQLEntityStoreService extends AbstractIdleService implements EntityStoreService {
   private final DBConnectionPool dbConnectionPool;
   private final Gson gson;
+  private final boolean cacheEnabled;
+  private EntityCache cache;
 
   @Inject
-  private SQLEntityStoreService(DBConnectionPool dbConnectionPool, Gson gson) {
+  private SQLEntityStoreService(DBConnectionPool dbConnectionPool, Gson gson, Configuration conf) {
     this.dbConnectionPool = dbConnectionPool;
     this.gson = gson;
+    this.cacheEnabled = conf.getBoolean(Constants.ENTITY_CACHE_ENABLED);
+    this.cache = cacheEnabled ? new EntityCache(null) : null;
+  }
+
+  /**
+   * Set the zookeeper client used to drop entities cached by other servers when entities are changed. Without it,
+   * only entities cached by this server are dropped, which is only correct when there is a single server.
+   *
+   * @param zkClient Client for the zookeeper shared by all servers
+   */
+  @Inject(optional = true)
+  void setZKClient(ZKClient zkClient) {
+    if (cacheEnabled) {
+      this.cache = new EntityCache(zkClient);
+    }
   }
 
   // for unit tests only
@@ -45,6 +66,9 @@ public class SQLEntityStoreService extends AbstractIdleService implements Entity
     } finally {
       conn.close();
     }
+    if (cache != null) {
+      cache.invalidateAll();
+    }
   }
 
   @Override
@@ -69,9 +93,9 @@ public class SQLEntityStoreService extends AbstractIdleService implements Entity
   @Override
   public EntityStoreView getView(Account account) {
     if (account.isAdmin()) {
-      return new SQLAdminEntityStoreView(account, dbConnectionPool, gson);
+      return new SQLAdminEntityStoreView(account, dbConnectionPool, gson, cache);
     } else {
-      return new SQLUserEntityStoreView(account, dbConnectionPool, gson);
+      return new SQLUserEntityStoreView(account, dbConnectionPool, gson, cache);
     }
   }
 
@@ -20,14 +20,16 @@ import co.cask.coopr.store.DBConnectionPool;
 import com.google.gson.Gson;
 
 import java.io.IOException;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of {@link co.cask.coopr.store.entity.BaseEntityStoreView} from the view of a tenant user.
  */
 public class SQLUserEntityStoreView extends BaseSQLEntityStoreView {
 
-  SQLUserEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson) {
-    super(account, dbConnectionPool, gson);
+  SQLUserEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson,
+                         @Nullable EntityCache cache) {
+    super(account, dbConnectionPool, gson, cache);
   }
 
   @Override
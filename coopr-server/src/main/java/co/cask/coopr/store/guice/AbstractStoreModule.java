@@ -1,6 +1,7 @@
 package co.cask.coopr.store.guice;
 
 import co.cask.coopr.store.DBConnectionPool;
+import co.cask.coopr.store.DBQueryExecutor;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.cluster.SQLClusterStoreService;
 import co.cask.coopr.store.entity.EntityStoreService;
@@ -40,6 +41,7 @@ public abstract class AbstractStoreModule extends AbstractModule {
     bind(PluginMetaStoreService.class).to(SQLPluginMetaStoreService.class).in(Scopes.SINGLETON);
     bind(UserStore.class).to(SQLUserStore.class).in(Scopes.SINGLETON);
     bind(DBConnectionPool.class).in(Scopes.SINGLETON);
+    bind(DBQueryExecutor.class).in(Scopes.SINGLETON);
     bind(SQLClusterStoreService.class).in(Scopes.SINGLETON);
     bind(SQLEntityStoreService.class).in(Scopes.SINGLETON);
     bind(SQLTenantStore.class).in(Scopes.SINGLETON);
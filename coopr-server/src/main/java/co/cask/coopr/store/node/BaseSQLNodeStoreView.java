@@ -16,14 +16,20 @@
 package co.cask.coopr.store.node;
 
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.spec.service.Service;
 import co.cask.coopr.store.DBConnectionPool;
-import co.cask.coopr.store.DBPut;
+import co.cask.coopr.store.DBPutBatch;
 import co.cask.coopr.store.DBQueryExecutor;
+import co.cask.coopr.store.NodeActionLog;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -46,12 +52,6 @@ public abstract class BaseSQLNodeStoreView implements NodeStoreView {
 
   abstract PreparedStatement getNodeExistsStatement(Connection conn, String id) throws SQLException;
 
-  abstract PreparedStatement getSetNodeStatement(Connection conn, Node node, byte[] nodeBytes)
-  throws SQLException;
-
-  abstract PreparedStatement getInsertNodeStatement(Connection conn, Node node, byte[] nodeBytes)
-  throws SQLException;
-
   abstract boolean allowedToWrite(Node node);
 
   @Override
@@ -61,11 +61,14 @@ public abstract class BaseSQLNodeStoreView implements NodeStoreView {
       Connection conn = dbConnectionPool.getConnection();
       try {
         PreparedStatement statement = getSelectAllNodesStatement(conn);
+        Set<Node> nodes;
         try {
-          return dbQueryExecutor.getQuerySet(statement, Node.class);
+          nodes = ImmutableSet.copyOf(dbQueryExecutor.getNodeServiceRegistry().getQueryNodes(conn, statement));
         } finally {
           statement.close();
         }
+        NodeActionLog.addLoggedActions(dbConnectionPool, dbQueryExecutor, nodes);
+        return nodes;
       } finally {
         conn.close();
       }
@@ -80,11 +83,17 @@ public abstract class BaseSQLNodeStoreView implements NodeStoreView {
       Connection conn = dbConnectionPool.getConnection();
       try {
         PreparedStatement statement = getSelectNodeStatement(conn, nodeId);
+        List<Node> nodes;
         try {
-          return dbQueryExecutor.getQueryItem(statement, Node.class);
+          nodes = dbQueryExecutor.getNodeServiceRegistry().getQueryNodes(conn, statement);
         } finally {
           statement.close();
         }
+        if (nodes.isEmpty()) {
+          return null;
+        }
+        NodeActionLog.addLoggedActions(dbConnectionPool, dbQueryExecutor, nodes);
+        return nodes.get(0);
       } finally {
         conn.close();
       }
@@ -99,11 +108,15 @@ public abstract class BaseSQLNodeStoreView implements NodeStoreView {
       Connection conn = dbConnectionPool.getConnection();
       try {
         PreparedStatement statement = getDeleteNodeStatement(conn, nodeId);
+        int rowsDeleted;
         try {
-          statement.executeUpdate();
+          rowsDeleted = statement.executeUpdate();
         } finally {
           statement.close();
         }
+        if (rowsDeleted > 0) {
+          NodeActionLog.deleteAllActions(conn, nodeId);
+        }
       } finally {
         conn.close();
       }
@@ -118,25 +131,33 @@ public abstract class BaseSQLNodeStoreView implements NodeStoreView {
       throw new IllegalAccessException("Not allowed to write node " + node.getId());
     }
 
+    DBPutBatch batch = new DBPutBatch();
+    Map<String, Service> unstoredDefinitions = Maps.newHashMap();
+    addNodePuts(batch, node, unstoredDefinitions);
     try {
-      Connection conn = dbConnectionPool.getConnection();
-      try {
-        byte[] nodeBytes = dbQueryExecutor.toBytes(node, Node.class);
-        DBPut nodePut = new NodeDBPut(node, nodeBytes);
-        nodePut.executePut(conn);
-      } finally {
-        conn.close();
-      }
+      batch.execute(dbConnectionPool);
     } catch (SQLException e) {
       throw new IOException("Exception writing node " + node.getId(), e);
     }
+    dbQueryExecutor.getNodeServiceRegistry().addStoredDefinitions(unstoredDefinitions);
   }
 
   @Override
   public void writeNodes(Set<Node> nodes) throws IllegalAccessException, IOException {
+    DBPutBatch batch = new DBPutBatch();
+    Map<String, Service> unstoredDefinitions = Maps.newHashMap();
     for (Node node : nodes) {
-      writeNode(node);
+      if (!allowedToWrite(node)) {
+        throw new IllegalAccessException("Not allowed to write node " + node.getId());
+      }
+      addNodePuts(batch, node, unstoredDefinitions);
     }
+    try {
+      batch.execute(dbConnectionPool);
+    } catch (SQLException e) {
+      throw new IOException("Exception writing " + nodes.size() + " nodes", e);
+    }
+    dbQueryExecutor.getNodeServiceRegistry().addStoredDefinitions(unstoredDefinitions);
   }
 
   @Override
@@ -159,23 +180,12 @@ public abstract class BaseSQLNodeStoreView implements NodeStoreView {
     }
   }
 
-  private class NodeDBPut extends DBPut {
-    private final Node node;
-    private final byte[] nodeBytes;
-
-    private NodeDBPut(Node node, byte[] nodeBytes) {
-      this.node = node;
-      this.nodeBytes = nodeBytes;
-    }
-
-    @Override
-    public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
-      return getSetNodeStatement(conn, node, nodeBytes);
-    }
-
-    @Override
-    public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
-      return getInsertNodeStatement(conn, node, nodeBytes);
+  // nodes are written without their actions, which are logged apart from them, as done by the cluster store
+  private void addNodePuts(DBPutBatch batch, Node node, Map<String, Service> unstoredDefinitions) {
+    dbQueryExecutor.getNodeServiceRegistry()
+      .addNodePuts(batch, NodeActionLog.withoutActions(node), unstoredDefinitions);
+    for (Node.Action action : NodeActionLog.getUnloggedActions(node)) {
+      batch.add(NodeActionLog.getActionPut(dbQueryExecutor, node.getId(), action));
     }
   }
 }
@@ -62,7 +62,7 @@ public interface NodeStoreView {
   void writeNode(Node node) throws IllegalAccessException, IOException;
 
   /**
-   * Write a set of nodes to the store using its id.
+   * Write a set of nodes to the store using its id. Either all nodes are written or none of them is.
    * @param nodes Nodes to write.
    * @throws IOException if there was a problem writing the nodes.
    */
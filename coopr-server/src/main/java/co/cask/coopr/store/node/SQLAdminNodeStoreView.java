@@ -63,25 +63,6 @@ public class SQLAdminNodeStoreView extends BaseSQLNodeStoreView {
     return statement;
   }
 
-  @Override
-  PreparedStatement getSetNodeStatement(final Connection conn, final Node node, final byte[] nodeBytes)
-  throws SQLException {
-    PreparedStatement statement = conn.prepareStatement("UPDATE nodes SET node=? WHERE id=?");
-    statement.setBytes(1, nodeBytes);
-    statement.setString(2, node.getId());
-    return statement;
-  }
-
-  @Override
-  PreparedStatement getInsertNodeStatement(final Connection conn, final Node node, final byte[] nodeBytes)
-  throws SQLException {
-    PreparedStatement statement = conn.prepareStatement("INSERT INTO nodes (id, cluster_id, node) VALUES (?, ?, ?)");
-    statement.setString(1, node.getId());
-    statement.setLong(2, Long.parseLong(node.getClusterId()));
-    statement.setBytes(3, nodeBytes);
-    return statement;
-  }
-
   @Override
   boolean allowedToWrite(final Node node) {
     return true;
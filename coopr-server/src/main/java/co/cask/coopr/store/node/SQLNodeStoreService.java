@@ -65,6 +65,8 @@ public class SQLNodeStoreService extends AbstractIdleService implements NodeStor
       Statement stmt = conn.createStatement();
       try {
         stmt.execute("DELETE FROM nodes");
+        stmt = conn.createStatement();
+        stmt.execute("DELETE FROM node_actions");
       } finally {
         stmt.close();
       }
@@ -87,6 +89,18 @@ public class SQLNodeStoreService extends AbstractIdleService implements NodeStor
       if (created) {
         DBHelper.createDerbyIndex(dbConnectionPool, "nodes_cluster_index", "nodes", "cluster_id", "id");
       }
+
+      DBHelper.createDerbyTableIfNotExists("CREATE TABLE node_actions ( " +
+                                           "node_id VARCHAR(64) NOT NULL, " +
+                                           "task_id VARCHAR(255) NOT NULL, " +
+                                           "submit_time BIGINT NOT NULL, " +
+                                           "action BLOB, " +
+                                           "PRIMARY KEY (node_id, task_id, submit_time) )", dbConnectionPool);
+
+      DBHelper.createDerbyTableIfNotExists("CREATE TABLE node_services ( " +
+                                           "digest VARCHAR(64) NOT NULL, " +
+                                           "service BLOB, " +
+                                           "PRIMARY KEY (digest) )", dbConnectionPool);
     }
   }
 
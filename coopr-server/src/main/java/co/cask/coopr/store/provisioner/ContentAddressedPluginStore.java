@@ -0,0 +1,317 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.provisioner;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.provisioner.plugin.ResourceType;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin store that keeps the contents of resources on the local file system by their SHA-256 digest. Each version
+ * of a resource of an account is a reference to contents, so contents uploaded more than once and resources copied
+ * between accounts are only stored once. For example, with data directory '/var/coopr/data/plugins/content',
+ * version 2 of resource 'hadoop' of type 'cookbooks' for automator type 'chef-solo' of tenant 'tenant1' is a reference
+ * kept in '/var/coopr/data/plugins/content/refs/tenant1/automator/chef-solo/cookbooks/hadoop/2', containing the
+ * digest of contents kept in '/var/coopr/data/plugins/content/blobs/ab/abcdef...'.
+ *
+ * Contents that are no longer referenced are garbage collected after deletes, at most once per configured interval.
+ * Contents are only collected once they have been unreferenced for that interval, as references are added to them
+ * without any locking, so that multiple servers can share the data directory.
+ */
+public class ContentAddressedPluginStore implements FilePluginStore {
+  private static final Logger LOG = LoggerFactory.getLogger(ContentAddressedPluginStore.class);
+
+  private File refsDir;
+  private File blobsDir;
+  private File tmpDir;
+  private long gcIntervalMs;
+  private long lastGCTime;
+
+  @Override
+  public void initialize(Configuration conf) {
+    File baseDir = new File(conf.get(Constants.ContentAddressedPluginStore.DATA_DIR));
+    refsDir = new File(baseDir, "refs");
+    blobsDir = new File(baseDir, "blobs");
+    tmpDir = new File(baseDir, "tmp");
+    gcIntervalMs = TimeUnit.SECONDS.toMillis(conf.getLong(Constants.ContentAddressedPluginStore.GC_INTERVAL_SECS));
+    lastGCTime = 0;
+  }
+
+  /**
+   * Get an output stream for the given resource. Contents are written to a temporary file while their digest is
+   * computed. When the stream is closed, the contents are kept unless the same contents are already stored, and the
+   * resource is made to reference them.
+   *
+   * @param account Account that owns the plugin resource
+   * @param type Type of resource
+   * @param name Name of the resource being written
+   * @param version Version of the resource being written
+   * @return Output stream for the resource contents
+   * @throws IOException if there was an error creating the temporary file
+   */
+  @Override
+  public OutputStream getResourceOutputStream(final Account account, final ResourceType type,
+                                              final String name, final int version) throws IOException {
+    final File tmpFile = createTmpFile();
+    final MessageDigest digest = ContentDigests.newDigest();
+    return new FilterOutputStream(new DigestOutputStream(new FileOutputStream(tmpFile), digest)) {
+      private boolean closed;
+
+      @Override
+      public void write(byte[] bytes, int off, int len) throws IOException {
+        out.write(bytes, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        try {
+          super.close();
+          String contentDigest = ContentDigests.toHex(digest.digest());
+          addBlob(tmpFile, contentDigest);
+          writeRef(getRefFile(account, type, name, version), contentDigest);
+        } finally {
+          if (tmpFile.exists() && !tmpFile.delete()) {
+            LOG.warn("Unable to delete temporary file {}.", tmpFile.getAbsolutePath());
+          }
+        }
+      }
+    };
+  }
+
+  @Override
+  public InputStream getResourceInputStream(Account account, ResourceType type, String name, int version)
+    throws IOException {
+    File blobFile = getResourceFile(account, type, name, version);
+    return blobFile == null ? null : new FileInputStream(blobFile);
+  }
+
+  @Override
+  public File getResourceFile(Account account, ResourceType type, String name, int version) throws IOException {
+    String contentDigest = readRef(getRefFile(account, type, name, version));
+    if (contentDigest == null) {
+      return null;
+    }
+    File blobFile = getBlobFile(contentDigest);
+    return blobFile.isFile() ? blobFile : null;
+  }
+
+  /**
+   * Get the digest of the contents the resource refers to. It does not change when the resource is copied or its
+   * contents are uploaded again, as it is derived from the contents only.
+   *
+   * @param account Account that owns the plugin resource
+   * @param type Type of resource to get the tag of
+   * @param name Name of the resource to get the tag of
+   * @param version Version of the resource to get the tag of
+   * @return SHA-256 digest of the resource contents, or null if there is no such resource
+   * @throws IOException if there was an error reading the reference
+   */
+  @Override
+  public String getResourceETag(Account account, ResourceType type, String name, int version) throws IOException {
+    return readRef(getRefFile(account, type, name, version));
+  }
+
+  /**
+   * Copy a resource by adding a reference to its contents. The contents themselves are not copied.
+   *
+   * @param fromAccount Account that owns the plugin resource to copy
+   * @param toAccount Account to copy the plugin resource to
+   * @param type Type of resource to copy
+   * @param name Name of the resource to copy
+   * @param version Version of the resource to copy
+   * @throws IOException if the resource does not exist or there was an error writing the reference
+   */
+  @Override
+  public void copyResource(Account fromAccount, Account toAccount, ResourceType type, String name, int version)
+    throws IOException {
+    File fromRefFile = getRefFile(fromAccount, type, name, version);
+    String contentDigest = readRef(fromRefFile);
+    // touching the contents keeps garbage collection from deleting them while the reference is added
+    if (contentDigest == null || !getBlobFile(contentDigest).setLastModified(System.currentTimeMillis())) {
+      throw new IOException("Unable to get plugin data for " + fromRefFile.getAbsolutePath());
+    }
+    writeRef(getRefFile(toAccount, type, name, version), contentDigest);
+  }
+
+  @Override
+  public void deleteResource(Account account, ResourceType type, String name, int version) throws IOException {
+    File refFile = getRefFile(account, type, name, version);
+    if (refFile.exists() && !refFile.delete()) {
+      throw new IOException("Unable to delete " + refFile.getAbsolutePath());
+    }
+    if (shouldCollectGarbage()) {
+      collectGarbage();
+    }
+  }
+
+  /**
+   * Delete all contents that are not referenced by any resource, and have not been referenced for the configured
+   * garbage collection interval. Also deletes temporary files of uploads that were abandoned for that long.
+   *
+   * @throws IOException if there was an error reading the references
+   */
+  public synchronized void collectGarbage() throws IOException {
+    long collectBefore = System.currentTimeMillis() - gcIntervalMs;
+    lastGCTime = System.currentTimeMillis();
+
+    Set<String> referenced = Sets.newHashSet();
+    addRefs(refsDir, referenced);
+    int deleted = 0;
+    File[] blobDirs = blobsDir.listFiles();
+    for (File blobDir : blobDirs == null ? new File[0] : blobDirs) {
+      File[] blobFiles = blobDir.listFiles();
+      for (File blobFile : blobFiles == null ? new File[0] : blobFiles) {
+        if (!referenced.contains(blobFile.getName()) && blobFile.lastModified() <= collectBefore) {
+          if (blobFile.delete()) {
+            deleted++;
+          } else {
+            LOG.warn("Unable to delete unreferenced plugin data {}.", blobFile.getAbsolutePath());
+          }
+        }
+      }
+    }
+    File[] tmpFiles = tmpDir.listFiles();
+    for (File tmpFile : tmpFiles == null ? new File[0] : tmpFiles) {
+      if (tmpFile.lastModified() <= collectBefore && !tmpFile.delete()) {
+        LOG.warn("Unable to delete abandoned temporary file {}.", tmpFile.getAbsolutePath());
+      }
+    }
+    LOG.debug("Deleted {} unreferenced plugin data files.", deleted);
+  }
+
+  private synchronized boolean shouldCollectGarbage() {
+    return System.currentTimeMillis() - lastGCTime >= gcIntervalMs;
+  }
+
+  // adds the digests referenced by all reference files under the given directory
+  private void addRefs(File dir, Set<String> referenced) throws IOException {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        addRefs(file, referenced);
+      } else {
+        String contentDigest = readRef(file);
+        if (contentDigest != null) {
+          referenced.add(contentDigest);
+        }
+      }
+    }
+  }
+
+  // moves the uploaded contents into place, unless the same contents are already there
+  private void addBlob(File uploadedFile, String contentDigest) throws IOException {
+    File blobFile = getBlobFile(contentDigest);
+    // touching existing contents keeps garbage collection from deleting them while the reference is added
+    if (blobFile.setLastModified(System.currentTimeMillis())) {
+      return;
+    }
+    mkdirs(blobFile.getParentFile());
+    if (!uploadedFile.renameTo(blobFile) && !blobFile.isFile()) {
+      throw new IOException("Unable to move " + uploadedFile.getAbsolutePath() + " to " + blobFile.getAbsolutePath());
+    }
+  }
+
+  // reads the digest of the contents the reference file refers to, or null if there is no such reference
+  private String readRef(File refFile) throws IOException {
+    if (!refFile.isFile()) {
+      return null;
+    }
+    String contentDigest = Files.toString(refFile, Charsets.UTF_8).trim();
+    return contentDigest.isEmpty() ? null : contentDigest;
+  }
+
+  // references are written to a temporary file first and moved into place, so they are never read half written
+  private void writeRef(File refFile, String contentDigest) throws IOException {
+    File tmpFile = createTmpFile();
+    try {
+      Files.write(contentDigest, tmpFile, Charsets.UTF_8);
+      mkdirs(refFile.getParentFile());
+      if (!tmpFile.renameTo(refFile)) {
+        // renames do not replace existing files on every platform
+        if (!refFile.delete() || !tmpFile.renameTo(refFile)) {
+          throw new IOException("Unable to write " + refFile.getAbsolutePath());
+        }
+      }
+    } finally {
+      if (tmpFile.exists() && !tmpFile.delete()) {
+        LOG.warn("Unable to delete temporary file {}.", tmpFile.getAbsolutePath());
+      }
+    }
+  }
+
+  private File createTmpFile() throws IOException {
+    mkdirs(tmpDir);
+    File tmpFile = new File(tmpDir, UUID.randomUUID().toString());
+    if (!tmpFile.createNewFile()) {
+      throw new IOException("Unable to create file " + tmpFile.getAbsolutePath());
+    }
+    return tmpFile;
+  }
+
+  private File getRefFile(Account account, ResourceType type, String name, int version) {
+    String path = new StringBuilder()
+      .append(account.getTenantId())
+      .append(File.separator)
+      .append(type.getPluginType().name().toLowerCase())
+      .append(File.separator)
+      .append(type.getPluginName())
+      .append(File.separator)
+      .append(type.getTypeName())
+      .append(File.separator)
+      .append(name)
+      .append(File.separator)
+      .append(version)
+      .toString();
+    return new File(refsDir, path);
+  }
+
+  // contents are spread over directories by the first byte of their digest to keep directories small
+  private File getBlobFile(String contentDigest) {
+    return new File(new File(blobsDir, contentDigest.substring(0, 2)), contentDigest);
+  }
+
+  private static void mkdirs(File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Unable to create directory " + dir.getAbsolutePath());
+    }
+  }
+}
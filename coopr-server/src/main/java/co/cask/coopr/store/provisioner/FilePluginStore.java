@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.provisioner;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.provisioner.plugin.ResourceType;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Plugin store that keeps resources in local files. Implementing it is optional for plugin stores. Resources of a
+ * file plugin store are sent straight from their files, and are copied between accounts by the store itself. For
+ * other plugin stores, resources are streamed through their input and output streams instead.
+ */
+public interface FilePluginStore extends PluginStore {
+
+  /**
+   * Get the local file a plugin resource is kept in, so that it can be sent without copying it through memory.
+   * Returns null if the file is missing, in which case the resource must be read through
+   * {@link #getResourceInputStream(Account, ResourceType, String, int)}.
+   *
+   * @param account Account that owns the plugin resource
+   * @param type Type of resource to get
+   * @param name Name of the resource to get
+   * @param version Version of the resource to get
+   * @return Local file containing the plugin resource, or null if there is no such file
+   * @throws IOException if there is an error getting the file
+   */
+  File getResourceFile(Account account, ResourceType type, String name, int version) throws IOException;
+
+  /**
+   * Get a tag identifying the contents of a plugin resource, for clients to tell whether the contents they already
+   * have are current. The tag only changes when the contents change, so copying or touching the resource keeps it.
+   * Returns null if the store has no tag for the resource, for example while it is being written.
+   *
+   * @param account Account that owns the plugin resource
+   * @param type Type of resource to get the tag of
+   * @param name Name of the resource to get the tag of
+   * @param version Version of the resource to get the tag of
+   * @return Tag identifying the contents of the plugin resource, or null if there is none
+   * @throws IOException if there is an error getting the tag
+   */
+  String getResourceETag(Account account, ResourceType type, String name, int version) throws IOException;
+
+  /**
+   * Copy a plugin resource from one account to another without streaming it through the caller. Stores that keep
+   * resource contents by reference only add a reference to the contents instead of copying them.
+   *
+   * @param fromAccount Account that owns the plugin resource to copy
+   * @param toAccount Account to copy the plugin resource to
+   * @param type Type of resource to copy
+   * @param name Name of the resource to copy
+   * @param version Version of the resource to copy
+   * @throws IOException if the resource does not exist or there was an error copying it
+   */
+  void copyResource(Account fromAccount, Account toAccount, ResourceType type, String name, int version)
+    throws IOException;
+}
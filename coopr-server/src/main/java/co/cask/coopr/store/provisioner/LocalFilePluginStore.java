@@ -19,19 +19,27 @@ import co.cask.coopr.account.Account;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.provisioner.plugin.ResourceType;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 
 /**
  * Plugin store that writes resources to the local file system. Modules are namespaced by the data directory given
- * in the configuration, plugin type, plugin type id, resource type, name, and version.
+ * in the configuration, plugin type, plugin type id, resource type, name, and version. The SHA-256 digest of each
+ * resource is recorded next to it once it has been written completely, and is used as its tag.
  */
-public class LocalFilePluginStore implements PluginStore {
+public class LocalFilePluginStore implements FilePluginStore {
+  private static final String DIGEST_SUFFIX = ".sha256";
+
   private String baseDir;
 
   @Override
@@ -46,7 +54,8 @@ public class LocalFilePluginStore implements PluginStore {
    * Get an output stream for the given resource. Files are namespaced by base data directory,
    * plugin type, plugin name, resource type, resource name, and resource version. For example, version 2 of resource
    * 'hadoop' of type 'cookbook'' for automator type 'chef-solo' with data directory '/var/coopr/data/plugins' will be
-   * written to '/var/coopr/data/plugins/automatortypes/chef-solo/cookbook/hadoop/2'.
+   * written to '/var/coopr/data/plugins/automatortypes/chef-solo/cookbook/hadoop/2'. The digest of the contents is
+   * written to '/var/coopr/data/plugins/automatortypes/chef-solo/cookbook/hadoop/2.sha256' when the stream is closed.
    *
    * @param account Account that owns the plugin resource
    * @param type Type of resource
@@ -59,6 +68,9 @@ public class LocalFilePluginStore implements PluginStore {
   public OutputStream getResourceOutputStream(Account account, ResourceType type, String name, int version)
     throws IOException {
     File file = getFile(account, type, name, version);
+    // the digest of the previous contents no longer applies once they are overwritten
+    final File digestFile = getDigestFile(file);
+    deleteDigestFile(digestFile);
     File parent = file.getParentFile();
     if (!parent.exists()) {
       if (!parent.mkdirs()) {
@@ -70,7 +82,25 @@ public class LocalFilePluginStore implements PluginStore {
         throw new IOException("Unable to create file " + file.getAbsolutePath());
       }
     }
-    return new FileOutputStream(file);
+    final MessageDigest digest = ContentDigests.newDigest();
+    return new FilterOutputStream(new DigestOutputStream(new FileOutputStream(file), digest)) {
+      private boolean closed;
+
+      @Override
+      public void write(byte[] bytes, int off, int len) throws IOException {
+        out.write(bytes, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        super.close();
+        Files.write(ContentDigests.toHex(digest.digest()), digestFile, Charsets.UTF_8);
+      }
+    };
   }
 
   @Override
@@ -83,6 +113,37 @@ public class LocalFilePluginStore implements PluginStore {
     return new FileInputStream(file);
   }
 
+  @Override
+  public File getResourceFile(Account account, ResourceType type, String name, int version) throws IOException {
+    File file = getFile(account, type, name, version);
+    return file.isFile() ? file : null;
+  }
+
+  @Override
+  public String getResourceETag(Account account, ResourceType type, String name, int version) throws IOException {
+    File digestFile = getDigestFile(getFile(account, type, name, version));
+    if (!digestFile.isFile()) {
+      return null;
+    }
+    String contentDigest = Files.toString(digestFile, Charsets.UTF_8).trim();
+    return contentDigest.isEmpty() ? null : contentDigest;
+  }
+
+  @Override
+  public void copyResource(Account fromAccount, Account toAccount, ResourceType type, String name, int version)
+    throws IOException {
+    File fromFile = getFile(fromAccount, type, name, version);
+    if (!fromFile.isFile()) {
+      throw new IOException("Unable to get plugin data from " + fromFile.getAbsolutePath());
+    }
+    OutputStream outputStream = getResourceOutputStream(toAccount, type, name, version);
+    try {
+      Files.copy(fromFile, outputStream);
+    } finally {
+      outputStream.close();
+    }
+  }
+
   @Override
   public void deleteResource(Account account, ResourceType type, String name, int version) throws IOException {
     File file = getFile(account, type, name, version);
@@ -90,6 +151,17 @@ public class LocalFilePluginStore implements PluginStore {
       // TODO: delete directory structure if empty
       file.delete();
     }
+    deleteDigestFile(getDigestFile(file));
+  }
+
+  private File getDigestFile(File file) {
+    return new File(file.getParentFile(), file.getName() + DIGEST_SUFFIX);
+  }
+
+  private void deleteDigestFile(File digestFile) throws IOException {
+    if (digestFile.exists() && !digestFile.delete()) {
+      throw new IOException("Unable to delete " + digestFile.getAbsolutePath());
+    }
   }
 
   private File getFile(Account account, ResourceType type,  String name, int version) {
@@ -77,7 +77,7 @@ import java.util.Map.Entry;
 public class BaseTest {
   protected static final String HOSTNAME = "127.0.0.1";
 
-  private static InMemoryZKServer zkServer;
+  protected static InMemoryZKServer zkServer;
   private static SQLClusterStoreService sqlClusterStoreService;
   private static SQLProvisionerStore sqlProvisionerStore;
   private static SQLPluginMetaStoreService sqlMetaStoreService;
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.queue.internal;
+
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.common.queue.TrackingQueue;
+import co.cask.coopr.common.zookeeper.ZKClientExt;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.internal.zookeeper.InMemoryZKServer;
+import org.apache.twill.zookeeper.ForwardingZKClient;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.OperationFuture;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Watcher;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ */
+public class ElementsTrackingQueueIndexedZkTest extends ElementsTrackingQueueTestBase {
+  private static final String QUEUE_NAME = "/tracking-queue";
+  private static final String ENTRIES_PATH = QUEUE_NAME + "/queue/map/entries";
+  private static final int[] QUEUE_DEPTHS = { 100, 1000, 10000 };
+  private static final int[] BENCHMARK_QUEUE_DEPTHS = { 100, 1000, 10000, 100000 };
+  private static final int TAKES_PER_DEPTH = 50;
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+  private InMemoryZKServer zkServer;
+  private ZKClientService zkClient;
+
+  @Before
+  public void before() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(tmpFolder.newFolder()).setTickTime(1000).build();
+    zkServer.startAndWait();
+
+    zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+  }
+
+  @After
+  public void after() {
+    zkClient.stopAndWait();
+    zkServer.stopAndWait();
+  }
+
+  @Override
+  protected ElementsTrackingQueue getQueue() throws Exception {
+    return new ElementsTrackingQueue(new IndexedZKElementsTracking(zkClient, QUEUE_NAME));
+  }
+
+  @Test
+  public void testIndexSeesChangesFromOtherProcesses() throws Exception {
+    ElementsTrackingQueue queue1 = getQueue();
+    ElementsTrackingQueue queue2 = getQueue();
+
+    queue1.add(new Element("work1", "data1"));
+    Thread.sleep(1);
+    queue1.add(new Element("work2", "data2"));
+    Thread.sleep(1);
+
+    Element taken = queue2.take("worker1");
+    Assert.assertEquals("work1", taken.getId());
+    Assert.assertEquals(1, Iterators.size(queue1.getBeingConsumed()));
+    Assert.assertEquals("work2", queue1.getQueued().next().getElement().getId());
+
+    // only the consumer that took the element possesses it, regardless of which process it talks to
+    Assert.assertEquals(TrackingQueue.PossessionState.NOT_POSSESSES,
+                        queue1.recordProgress("worker2", "work1", TrackingQueue.ConsumingStatus.IN_PROGRESS, null));
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue1.recordProgress("worker1", "work1", TrackingQueue.ConsumingStatus.FAILED, null));
+
+    // failed element goes back to the queue with the priority it got when it was taken
+    Assert.assertEquals("work2", queue2.take("worker2").getId());
+    Assert.assertEquals("work1", queue1.take("worker3").getId());
+    Assert.assertNull(queue2.take("worker4"));
+
+    queue1.removeAll();
+    Assert.assertEquals(0, queue2.size());
+    Assert.assertEquals(0, Iterators.size(queue2.getBeingConsumed()));
+  }
+
+  @Test(timeout = 120000)
+  public void testTakeReadsOnlyChangedEntriesAcrossQueueDepths() throws Exception {
+    takeAcrossQueueDepths(QUEUE_DEPTHS, false);
+  }
+
+  @Test(timeout = 600000)
+  @Category(BenchmarkTests.class)
+  public void testTakeTimeAcrossQueueDepths() throws Exception {
+    takeAcrossQueueDepths(BENCHMARK_QUEUE_DEPTHS, true);
+  }
+
+  // takes elements from queues of the given depths, and checks that the entries read per take do not grow with depth
+  private void takeAcrossQueueDepths(int[] depths, boolean report) throws Exception {
+    ReadCountingZKClient countingClient = new ReadCountingZKClient(zkClient);
+    // two processes taking and finishing elements in turns, each picking up the changes made by the other one
+    ElementsTrackingQueue queue1 = new ElementsTrackingQueue(new IndexedZKElementsTracking(countingClient, QUEUE_NAME));
+    ElementsTrackingQueue queue2 = new ElementsTrackingQueue(new IndexedZKElementsTracking(countingClient, QUEUE_NAME));
+    int queued = 0;
+    for (int depth : depths) {
+      addEntries(queued, depth + TAKES_PER_DEPTH);
+      queued = depth + TAKES_PER_DEPTH;
+      // initial load of the new entries
+      Assert.assertEquals(queued, queue1.size());
+      Assert.assertEquals(queued, queue2.size());
+
+      countingClient.reads.set(0);
+      long start = System.nanoTime();
+      for (int i = 0; i < TAKES_PER_DEPTH; i++) {
+        ElementsTrackingQueue takingQueue = i % 2 == 0 ? queue1 : queue2;
+        ElementsTrackingQueue finishingQueue = i % 2 == 0 ? queue2 : queue1;
+        Element element = takingQueue.take("worker");
+        Assert.assertNotNull(element);
+        finishingQueue.recordProgress("worker", element.getId(), TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                      null);
+      }
+      if (report) {
+        long usPerTake = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / TAKES_PER_DEPTH;
+        System.out.println("Queue depth " + depth + ": " + usPerTake + " us and " +
+                             countingClient.reads.get() / (double) TAKES_PER_DEPTH + " node reads per take");
+      }
+      // each take changes a single entry, which the other process reads once, regardless of the depth of the queue
+      Assert.assertTrue("depth " + depth + " took " + countingClient.reads.get() + " reads",
+                        countingClient.reads.get() <= TAKES_PER_DEPTH);
+      queued -= TAKES_PER_DEPTH;
+      Assert.assertEquals(depth, queue1.size());
+    }
+  }
+
+  @Test
+  public void testEntryNodesAreNamedAfterKeys() throws Exception {
+    // servers of different versions share the queue during a rolling upgrade, so they must agree on the node names
+    ElementsTrackingQueue queue = getQueue();
+    queue.add(new Element("work1", "data1"));
+    queue.add(new Element("work2", "data2"));
+    Assert.assertEquals("work1", queue.take("worker1").getId());
+    Assert.assertEquals(ImmutableSet.of("work1", "work2"),
+                        ImmutableSet.copyOf(Futures.getUnchecked(zkClient.getChildren(ENTRIES_PATH)).getChildren()));
+  }
+
+  // writes entries straight to zookeeper, named after their keys like the queue does, which is much faster than adding
+  // them through the queue one at a time
+  private void addEntries(int fromId, int toId) throws Exception {
+    Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, ENTRIES_PATH));
+    List<ListenableFuture<String>> futures = Lists.newArrayList();
+    for (int id = fromId; id < toId; id++) {
+      Element element = new Element("work" + id, "data");
+      byte[] data = ZKElementsTracking.ENTRY_SERIALIZER.serialize(new ZKElementsTracking.Entry(element, id));
+      futures.add(zkClient.create(ENTRIES_PATH + "/" + element.getId(), data, CreateMode.PERSISTENT));
+      if (futures.size() == 1000) {
+        Futures.allAsList(futures).get();
+        futures.clear();
+      }
+    }
+    Futures.allAsList(futures).get();
+  }
+
+  /**
+   * Client that counts the number of nodes read.
+   */
+  private static final class ReadCountingZKClient extends ForwardingZKClient {
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private ReadCountingZKClient(ZKClient delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public OperationFuture<NodeData> getData(String path, Watcher watcher) {
+      reads.incrementAndGet();
+      return super.getData(path, watcher);
+    }
+  }
+}
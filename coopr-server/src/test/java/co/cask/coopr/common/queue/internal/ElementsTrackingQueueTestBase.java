@@ -18,6 +18,9 @@ package co.cask.coopr.common.queue.internal;
 import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.QueuedElement;
 import co.cask.coopr.common.queue.TrackingQueue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -25,7 +28,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -168,6 +173,49 @@ public abstract class ElementsTrackingQueueTestBase {
     Assert.assertNull(queue.take("worker6"));
   }
 
+  @Test
+  public void testBatchTakeAndFinish() throws Exception {
+    ElementsTrackingQueue queue = getQueue();
+    ListenableFuture<String> workResult1 = queue.add(new Element("work1", "data1"));
+    Thread.sleep(1);
+    ListenableFuture<String> workResult2 = queue.add(new Element("work2", "data2"));
+    Thread.sleep(1);
+    queue.add(new Element("work3", "data3"));
+
+    Assert.assertTrue(queue.take(ImmutableList.<String>of()).isEmpty());
+
+    // elements are handed out in priority order, one per consumer
+    List<Element> taken = queue.take(ImmutableList.of("worker1", "worker2"));
+    Assert.assertEquals(2, taken.size());
+    Assert.assertEquals("work1", taken.get(0).getId());
+    Assert.assertEquals("work2", taken.get(1).getId());
+    Assert.assertEquals(1, getQueuedCount(queue));
+    Assert.assertEquals(2, Iterators.size(queue.getBeingConsumed()));
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue.recordProgress("worker2", "work2", TrackingQueue.ConsumingStatus.IN_PROGRESS, null));
+
+    // the queue runs out of elements before it runs out of consumers
+    taken = queue.take(ImmutableList.of("worker3", "worker4"));
+    Assert.assertEquals(1, taken.size());
+    Assert.assertEquals("work3", taken.get(0).getId());
+    Assert.assertEquals(0, getQueuedCount(queue));
+
+    // only elements that belong to their consumer are finished
+    Set<String> finished = queue.finish(ImmutableMap.of("work1", "worker1", "work2", "worker3", "work3", "worker3"),
+                                        "result-7");
+    Assert.assertEquals(ImmutableSet.of("work1", "work3"), finished);
+    Assert.assertEquals("result-7", workResult1.get());
+    Assert.assertFalse(workResult2.isDone());
+    Assert.assertEquals(1, Iterators.size(queue.getBeingConsumed()));
+    Assert.assertEquals(TrackingQueue.PossessionState.NOT_POSSESSES,
+                        queue.recordProgress("worker1", "work1", TrackingQueue.ConsumingStatus.IN_PROGRESS, null));
+
+    Assert.assertEquals(ImmutableSet.of("work2"), queue.finish(ImmutableMap.of("work2", "worker2"), "result-8"));
+    Assert.assertEquals("result-8", workResult2.get());
+    Assert.assertEquals(0, Iterators.size(queue.getBeingConsumed()));
+    Assert.assertTrue(queue.take(ImmutableList.of("worker1", "worker2")).isEmpty());
+  }
+
   @Test(timeout = 90000)
   public void testConcurrentAccess() throws Exception {
     final ElementsTrackingQueue queue = getQueue();
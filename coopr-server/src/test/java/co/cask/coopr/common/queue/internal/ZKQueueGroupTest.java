@@ -4,6 +4,7 @@ import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.GroupElement;
 import co.cask.coopr.common.queue.QueueGroup;
 import co.cask.coopr.common.queue.QueueType;
+import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.common.queue.guice.QueueModule;
 import co.cask.coopr.common.zookeeper.guice.ZookeeperModule;
 import com.google.common.collect.Sets;
@@ -21,6 +22,8 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -107,6 +110,62 @@ public class ZKQueueGroupTest extends QueueGroupTest {
     instance2.stop();
   }
 
+  @Test(timeout = 20000)
+  public void testAddsSignaledAcrossInstances() throws Exception {
+    QueueGroup instance1 = new ZKQueueGroup(zkClient, QueueType.PROVISIONER);
+    QueueGroup instance2 = new ZKQueueGroup(zkClient, QueueType.PROVISIONER);
+    instance1.startAndWait();
+    instance2.startAndWait();
+
+    final BlockingQueue<String> addedQueues = new LinkedBlockingQueue<String>();
+    instance2.addListener(new QueueGroup.Listener() {
+      @Override
+      public void added(String queueName) {
+        addedQueues.add(queueName);
+      }
+    });
+
+    instance1.add("tenant1", new Element("val1"));
+    Assert.assertEquals("tenant1", addedQueues.take());
+
+    // adds that happen while a signal is being written are signaled together, the last add is always signaled
+    for (int i = 0; i < 20; i++) {
+      instance1.add("tenant" + (i % 5), new Element("val" + i));
+    }
+    instance1.add("tenantLast", new Element("valLast"));
+    String signaled;
+    do {
+      signaled = addedQueues.take();
+    } while (!"tenantLast".equals(signaled));
+    instance1.stop();
+    instance2.stop();
+  }
+
+  @Test(timeout = 20000)
+  public void testPutBackSignaledAcrossInstances() throws Exception {
+    QueueGroup instance1 = new ZKQueueGroup(zkClient, QueueType.PROVISIONER);
+    QueueGroup instance2 = new ZKQueueGroup(zkClient, QueueType.PROVISIONER);
+    instance1.startAndWait();
+    instance2.startAndWait();
+
+    final BlockingQueue<String> addedQueues = new LinkedBlockingQueue<String>();
+    instance2.addListener(new QueueGroup.Listener() {
+      @Override
+      public void added(String queueName) {
+        addedQueues.add(queueName);
+      }
+    });
+    instance1.add("tenant1", new Element("id1", "val1"));
+    Assert.assertEquals("tenant1", addedQueues.take());
+    Assert.assertEquals("id1", instance1.take("tenant1", "consumer1").getId());
+
+    instance1.recordProgress("consumer1", "tenant1", "id1", TrackingQueue.ConsumingStatus.FAILED, "failed");
+    Assert.assertEquals("tenant1", addedQueues.take());
+    Assert.assertEquals("id1", instance2.take("tenant1", "consumer2").getId());
+    instance1.stop();
+    instance2.stop();
+  }
+
   private void waitForQueueNames(Set<String> expectedQueueNames, QueueGroup queueGroup) throws InterruptedException {
     for (int i = 0; i < 20; i++) {
       Set<String> queueNames = queueGroup.getQueueNames();
@@ -15,7 +15,12 @@
  */
 package co.cask.coopr.common.zookeeper;
 
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.scheduler.task.JobId;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
 import org.apache.twill.zookeeper.ZKClientService;
 import org.junit.AfterClass;
@@ -23,14 +28,20 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -91,4 +102,96 @@ public class IdServiceTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testLeasedTaskIdsAreUniqueAcrossServers() throws Exception {
+    ZKClientService zkClient2 = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient2.startAndWait();
+    try {
+      IdService server1 = new IdService(zkClient, 3, 10, 100);
+      IdService server2 = new IdService(zkClient2, 3, 10, 100);
+      server1.startAndWait();
+      server2.startAndWait();
+
+      int idsPerThread = 500;
+      List<List<Long>> threadIds = generateTaskIds(ImmutableList.of(server1, server2), 8, idsPerThread);
+
+      Set<Long> allIds = Sets.newHashSet();
+      long firstId = threadIds.get(0).get(0);
+      for (List<Long> ids : threadIds) {
+        for (int i = 0; i < ids.size(); i++) {
+          // ids keep to the space given by the increment
+          Assert.assertEquals(firstId % 10, ids.get(i) % 10);
+          if (i > 0) {
+            Assert.assertTrue(ids.get(i) > ids.get(i - 1));
+          }
+        }
+        allIds.addAll(ids);
+      }
+      Assert.assertEquals(threadIds.size() * idsPerThread, allIds.size());
+    } finally {
+      zkClient2.stopAndWait();
+    }
+  }
+
+  @Test
+  @Category(BenchmarkTests.class)
+  public void testTaskIdThroughput() throws Exception {
+    ZKClientService zkClient2 = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient2.startAndWait();
+    try {
+      for (int leaseSize : ImmutableList.of(1, 1000)) {
+        // same start as the other tests, since whichever test runs first initializes the counters
+        IdService server1 = new IdService(zkClient, 3, 1, leaseSize);
+        IdService server2 = new IdService(zkClient2, 3, 1, leaseSize);
+        server1.startAndWait();
+        server2.startAndWait();
+        int idsPerThread = leaseSize == 1 ? 200 : 5000;
+        for (int numThreads : ImmutableList.of(1, 4, 16)) {
+          for (List<IdService> servers : ImmutableList.of(ImmutableList.of(server1),
+                                                          ImmutableList.of(server1, server2))) {
+            long start = System.nanoTime();
+            generateTaskIds(servers, numThreads, idsPerThread);
+            long nanos = System.nanoTime() - start;
+            System.out.println(String.format(
+              "lease size %d, %d threads, %d servers: %.0f ids/sec", leaseSize, numThreads, servers.size(),
+              numThreads * idsPerThread * (double) TimeUnit.SECONDS.toNanos(1) / nanos));
+          }
+        }
+      }
+    } finally {
+      zkClient2.stopAndWait();
+    }
+  }
+
+  // generate task ids from the given number of threads, spread over the given servers, returning the ids per thread
+  private List<List<Long>> generateTaskIds(List<IdService> servers, int numThreads,
+                                           final int idsPerThread) throws Exception {
+    final JobId jobId = new JobId("1", 1);
+    final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<List<Long>>> futures = Lists.newArrayList();
+      for (int i = 0; i < numThreads; i++) {
+        final IdService idService = servers.get(i % servers.size());
+        futures.add(executor.submit(new Callable<List<Long>>() {
+          @Override
+          public List<Long> call() throws Exception {
+            List<Long> ids = Lists.newArrayListWithCapacity(idsPerThread);
+            barrier.await();
+            for (int j = 0; j < idsPerThread; j++) {
+              ids.add(idService.getNewTaskId(jobId).getTaskNum());
+            }
+            return ids;
+          }
+        }));
+      }
+      List<List<Long>> threadIds = Lists.newArrayList();
+      for (Future<List<Long>> future : futures) {
+        threadIds.add(future.get());
+      }
+      return threadIds;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.zookeeper.lib;
+
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.common.zookeeper.BaseZKTest;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ */
+public class ConcurrentZKMapTest extends BaseZKTest {
+  private static final int STRESS_CLIENTS = 3;
+  private static final int STRESS_THREADS_PER_CLIENT = 4;
+  private static final int STRESS_KEYS = 200;
+  private static final long STRESS_DURATION_MS = 5000;
+  // one write per this many operations
+  private static final int STRESS_READS_PER_WRITE = 10;
+
+  @Test(timeout = 30000)
+  public void testBasics() throws Exception {
+    final String path = "/foo/map";
+    ZKClientService zkClient2 = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient2.startAndWait();
+    try {
+      ConcurrentZKMap<String> map1 = new ConcurrentZKMap<String>(zkClient, path, Serializers.stringSerializer());
+      ConcurrentZKMap<String> map2 = new ConcurrentZKMap<String>(zkClient2, path, Serializers.stringSerializer());
+      Assert.assertEquals(0, map1.size());
+      Assert.assertEquals(0, map2.size());
+
+      map2.remove("foo");
+      Assert.assertEquals(0, map1.size());
+
+      map1.put("key1", "value1");
+      map2.put("key2", "value2");
+      map1.put("key3", "value3");
+      // own writes are visible right away
+      Assert.assertEquals("value1", map1.get("key1"));
+      Assert.assertEquals("value2", map2.get("key2"));
+      waitForValue(map1, "key2", "value2");
+      waitForValue(map2, "key1", "value1");
+      waitForValue(map2, "key3", "value3");
+      Assert.assertEquals(3, map1.size());
+      Assert.assertEquals(3, map2.size());
+
+      map1.put("key2", "value2_m");
+      Assert.assertEquals("value2_m", map1.get("key2"));
+      waitForValue(map2, "key2", "value2_m");
+
+      map2.remove("key2");
+      Assert.assertNull(map2.get("key2"));
+      waitForValue(map1, "key2", null);
+      Assert.assertEquals(2, map1.size());
+
+      // removing non-existed should be ok
+      map1.remove("key2");
+      Assert.assertEquals(2, map1.size());
+
+      // re-creating removed key
+      map2.put("key2", "value2_r");
+      waitForValue(map1, "key2", "value2_r");
+
+      // map created later sees existing entries right away
+      ConcurrentZKMap<String> map3 = new ConcurrentZKMap<String>(zkClient, path, Serializers.stringSerializer());
+      Assert.assertEquals(3, map3.size());
+      Assert.assertEquals("value2_r", map3.get("key2"));
+
+      map2.clear();
+      Assert.assertEquals(0, map2.size());
+      waitForValue(map1, "key1", null);
+      waitForValue(map3, "key1", null);
+      waitForValue(map1, "key2", null);
+      waitForValue(map1, "key3", null);
+      Assert.assertEquals(0, map1.size());
+
+      // checking that we can clear an empty map
+      map1.clear();
+      Assert.assertEquals(0, map1.size());
+    } finally {
+      zkClient2.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testSyncSeesEarlierChanges() throws Exception {
+    final String path = "/foo/syncmap";
+    ZKClientService zkClient2 = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient2.startAndWait();
+    try {
+      ConcurrentZKMap<String> map1 = new ConcurrentZKMap<String>(zkClient, path, Serializers.stringSerializer());
+      ConcurrentZKMap<String> map2 = new ConcurrentZKMap<String>(zkClient2, path, Serializers.stringSerializer());
+      for (int i = 0; i < 20; i++) {
+        map2.put("key" + i, "value" + i);
+        map1.sync();
+        Assert.assertEquals("value" + i, map1.get("key" + i));
+        Assert.assertEquals(i + 1, map1.size());
+      }
+
+      map2.put("key0", "changed");
+      map2.remove("key1");
+      map1.sync();
+      Assert.assertEquals("changed", map1.get("key0"));
+      Assert.assertFalse(map1.containsKey("key1"));
+
+      // re-created entries replace the values read before they were removed
+      map2.remove("key0");
+      map2.put("key0", "recreated");
+      map1.sync();
+      Assert.assertEquals("recreated", map1.get("key0"));
+      Assert.assertEquals(19, map1.size());
+    } finally {
+      zkClient2.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 120000)
+  @Category(BenchmarkTests.class)
+  public void testStressComparedToSynchronizedZKMap() throws Exception {
+    double concurrentOpsPerSec = runStress("/stress/concurrent", true);
+    double synchronizedOpsPerSec = runStress("/stress/synchronized", false);
+    System.out.println(String.format("ops/sec with %d clients x %d threads, %d reads per write: " +
+                                       "ConcurrentZKMap %.1f, SynchronizedZKMap %.1f",
+                                     STRESS_CLIENTS, STRESS_THREADS_PER_CLIENT, STRESS_READS_PER_WRITE,
+                                     concurrentOpsPerSec, synchronizedOpsPerSec));
+    // reads are served from the local view without taking the zookeeper lock
+    Assert.assertTrue(concurrentOpsPerSec > synchronizedOpsPerSec);
+  }
+
+  private double runStress(String path, boolean concurrent) throws Exception {
+    List<ZKClientService> clients = Lists.newArrayList();
+    List<Thread> threads = Lists.newArrayList();
+    final AtomicLong ops = new AtomicLong();
+    final long endTime = System.currentTimeMillis() + STRESS_DURATION_MS;
+    try {
+      for (int i = 0; i < STRESS_CLIENTS; i++) {
+        ZKClientService client = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+        client.startAndWait();
+        clients.add(client);
+        final Map<String, String> map = concurrent ?
+          new ConcurrentZKMap<String>(client, path, Serializers.stringSerializer()) :
+          new SynchronizedZKMap<String>(client, path, Serializers.stringSerializer());
+        for (int j = 0; j < STRESS_THREADS_PER_CLIENT; j++) {
+          final Random random = new Random(i * STRESS_THREADS_PER_CLIENT + j);
+          threads.add(new Thread() {
+            @Override
+            public void run() {
+              while (System.currentTimeMillis() < endTime) {
+                String key = "key" + random.nextInt(STRESS_KEYS);
+                if (random.nextInt(STRESS_READS_PER_WRITE) == 0) {
+                  map.put(key, String.valueOf(random.nextInt()));
+                } else {
+                  map.get(key);
+                }
+                ops.incrementAndGet();
+              }
+            }
+          });
+        }
+      }
+
+      long start = System.currentTimeMillis();
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      return ops.get() * 1000.0 / (System.currentTimeMillis() - start);
+    } finally {
+      for (ZKClientService client : clients) {
+        client.stopAndWait();
+      }
+    }
+  }
+
+  private void waitForValue(Map<String, String> map, String key, String expected) throws InterruptedException {
+    for (int i = 0; i < 500 && !Objects.equal(expected, map.get(key)); i++) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    Assert.assertEquals(expected, map.get(key));
+  }
+}
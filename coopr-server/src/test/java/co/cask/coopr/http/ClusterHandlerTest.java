@@ -965,6 +965,56 @@ public class ClusterHandlerTest extends ServiceTestBase {
     Assert.assertEquals(5, clusterInfos.get(1).getNumNodes());
   }
 
+  @Test
+  public void testGetClusterPages() throws Exception {
+    for (Cluster cluster : clusterStoreService.getView(USER1_ACCOUNT).getAllClusters()) {
+      clusterStoreService.getView(USER1_ACCOUNT).deleteCluster(cluster.getId());
+    }
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 3; i++) {
+      String clusterId = String.valueOf(500 + i);
+      Cluster cluster = Cluster.builder()
+        .setID(clusterId)
+        .setAccount(USER1_ACCOUNT)
+        .setName("cluster" + i)
+        .setProvider(Entities.ProviderExample.RACKSPACE)
+        .setClusterTemplate(reactorTemplate)
+        .setCreateTime(now + i)
+        .setLatestJobID(new JobId(clusterId, 1).getId())
+        .build();
+      clusterStoreService.getView(USER1_ACCOUNT).writeCluster(cluster);
+      clusterStoreService.getSystemView().writeClusterJob(
+        new ClusterJob(new JobId(clusterId, 1), ClusterAction.CLUSTER_CREATE));
+    }
+
+    HttpResponse response = doGetExternalAPI("/clusters?limit=2", USER1_HEADERS);
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertEquals(ImmutableList.of("cluster2", "cluster1"), getClusterNames(response));
+    String cursor = response.getFirstHeader(Constants.NEXT_CURSOR_HEADER).getValue();
+
+    response = doGetExternalAPI("/clusters?limit=2&cursor=" + cursor, USER1_HEADERS);
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertEquals(ImmutableList.of("cluster0"), getClusterNames(response));
+    Assert.assertNull(response.getFirstHeader(Constants.NEXT_CURSOR_HEADER));
+
+    response = doGetExternalAPI("/clusters?template=" + reactorTemplate.getName() + "&owner=" + USER1, USER1_HEADERS);
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertEquals(ImmutableList.of("cluster2", "cluster1", "cluster0"), getClusterNames(response));
+
+    assertResponseStatus(doGetExternalAPI("/clusters?cursor=abc", USER1_HEADERS), HttpResponseStatus.BAD_REQUEST);
+    assertResponseStatus(doGetExternalAPI("/clusters?limit=abc", USER1_HEADERS), HttpResponseStatus.BAD_REQUEST);
+  }
+
+  private List<String> getClusterNames(HttpResponse response) throws IOException {
+    Reader reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
+    List<ClusterSummary> summaries = gson.fromJson(reader, new TypeToken<List<ClusterSummary>>() {}.getType());
+    List<String> names = Lists.newArrayList();
+    for (ClusterSummary summary : summaries) {
+      names.add(summary.getName());
+    }
+    return names;
+  }
+
   @Test
   public void testGetNonexistantClusterReturns404() throws Exception {
     assertResponseStatus(doGetExternalAPI("/clusters/567", USER1_HEADERS), HttpResponseStatus.NOT_FOUND);
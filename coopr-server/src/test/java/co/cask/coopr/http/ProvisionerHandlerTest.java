@@ -4,6 +4,8 @@ import co.cask.coopr.Entities;
 import co.cask.coopr.account.Account;
 import co.cask.coopr.provisioner.Provisioner;
 import co.cask.coopr.provisioner.ProvisionerHeartbeat;
+import co.cask.coopr.provisioner.plugin.PluginType;
+import co.cask.coopr.provisioner.plugin.ResourceMeta;
 import co.cask.coopr.provisioner.plugin.ResourceType;
 import co.cask.coopr.spec.Tenant;
 import co.cask.coopr.spec.TenantSpecification;
@@ -13,17 +15,21 @@ import co.cask.coopr.store.provisioner.SQLProvisionerStore;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -193,6 +199,124 @@ public class ProvisionerHandlerTest extends ServiceTestBase {
                          HttpResponseStatus.OK);
   }
 
+  @Test
+  public void testGetResourceWithETag() throws Exception {
+    String contents = "hadoop cookbook contents";
+    String resource = writeResource(PluginType.AUTOMATOR, "chef-solo", "cookbooks", "hadoop", 1, contents);
+
+    // streamed from the plugin store, without an etag
+    HttpResponse response = doGetInternalAPI(resource);
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertEquals(contents, EntityUtils.toString(response.getEntity()));
+    Assert.assertNull(response.getFirstHeader("ETag"));
+
+    // sent from a local file, with an etag
+    putResourceFile(PluginType.AUTOMATOR, "chef-solo", "cookbooks", "hadoop", 1, contents);
+    response = doGetInternalAPI(resource);
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertEquals(contents, EntityUtils.toString(response.getEntity()));
+    String etag = response.getFirstHeader("ETag").getValue();
+    Assert.assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+
+    // client already has the contents
+    response = doGetInternalAPI(resource, new Header[] { new BasicHeader("If-None-Match", etag) });
+    assertResponseStatus(response, HttpResponseStatus.NOT_MODIFIED);
+    Assert.assertEquals(etag, response.getFirstHeader("ETag").getValue());
+    response = doGetInternalAPI(resource, new Header[] { new BasicHeader("If-None-Match", "\"other\", " + etag) });
+    assertResponseStatus(response, HttpResponseStatus.NOT_MODIFIED);
+    response = doGetInternalAPI(resource, new Header[] { new BasicHeader("If-None-Match", "\"other\"") });
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertEquals(contents, EntityUtils.toString(response.getEntity()));
+
+    // the same contents in another file, as when the resource is copied, keep their etag
+    putResourceFile(PluginType.AUTOMATOR, "chef-solo", "cookbooks", "hadoop", 1, contents);
+    response = doGetInternalAPI(resource, new Header[] { new BasicHeader("If-None-Match", etag) });
+    assertResponseStatus(response, HttpResponseStatus.NOT_MODIFIED);
+
+    // the version number is reused for other contents, as when the latest version is deleted and uploaded again
+    String newContents = "new hadoop cookbook contents";
+    putResourceFile(PluginType.AUTOMATOR, "chef-solo", "cookbooks", "hadoop", 1, newContents);
+    response = doGetInternalAPI(resource, new Header[] { new BasicHeader("If-None-Match", etag) });
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertNotEquals(etag, response.getFirstHeader("ETag").getValue());
+    Assert.assertEquals(newContents, EntityUtils.toString(response.getEntity()));
+  }
+
+  @Test
+  public void testGetResourceRanges() throws Exception {
+    String contents = "0123456789";
+    String resource = writeResource(PluginType.AUTOMATOR, "chef-solo", "cookbooks", "hadoop", 1, contents);
+    putResourceFile(PluginType.AUTOMATOR, "chef-solo", "cookbooks", "hadoop", 1, contents);
+
+    assertRange(resource, "bytes=2-5", "2345", "bytes 2-5/10");
+    assertRange(resource, "bytes=7-", "789", "bytes 7-9/10");
+    assertRange(resource, "bytes=8-100", "89", "bytes 8-9/10");
+    assertRange(resource, "bytes=-3", "789", "bytes 7-9/10");
+    assertRange(resource, "bytes=-30", contents, "bytes 0-9/10");
+
+    HttpResponse response = doGetInternalAPI(resource, new Header[] { new BasicHeader("Range", "bytes=10-") });
+    assertResponseStatus(response, HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    Assert.assertEquals("bytes */10", response.getFirstHeader("Content-Range").getValue());
+
+    // invalid or multiple ranges are ignored
+    for (String range : new String[] { "bytes=5-2", "bytes=a-b", "lines=1-2", "bytes=0-1,4-5" }) {
+      response = doGetInternalAPI(resource, new Header[] { new BasicHeader("Range", range) });
+      assertResponseStatus(response, HttpResponseStatus.OK);
+      Assert.assertEquals(contents, EntityUtils.toString(response.getEntity()));
+    }
+
+    // a range for other contents gets the whole resource
+    response = doGetInternalAPI(resource, new Header[] {
+      new BasicHeader("Range", "bytes=2-5"), new BasicHeader("If-Range", "\"other\"") });
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    String etag = response.getFirstHeader("ETag").getValue();
+    Assert.assertEquals(contents, EntityUtils.toString(response.getEntity()));
+    response = doGetInternalAPI(resource, new Header[] {
+      new BasicHeader("Range", "bytes=2-5"), new BasicHeader("If-Range", etag) });
+    assertResponseStatus(response, HttpResponseStatus.PARTIAL_CONTENT);
+    Assert.assertEquals("2345", EntityUtils.toString(response.getEntity()));
+  }
+
+  @Test
+  public void testGetMissingResource() throws Exception {
+    String resource = writeResource(PluginType.AUTOMATOR, "chef-solo", "cookbooks", "hadoop", 1, "contents");
+    assertResponseStatus(doGetInternalAPI(resource.replace("versions/1", "versions/2")),
+                         HttpResponseStatus.NOT_FOUND);
+    assertResponseStatus(doGetInternalAPI(resource.replace("versions/1", "versions/x")),
+                         HttpResponseStatus.BAD_REQUEST);
+  }
+
+  private void assertRange(String resource, String range, String expectedContents,
+                           String expectedContentRange) throws Exception {
+    HttpResponse response = doGetInternalAPI(resource, new Header[] { new BasicHeader("Range", range) });
+    assertResponseStatus(response, HttpResponseStatus.PARTIAL_CONTENT);
+    Assert.assertEquals(expectedContentRange, response.getFirstHeader("Content-Range").getValue());
+    Assert.assertEquals(expectedContents, EntityUtils.toString(response.getEntity()));
+  }
+
+  // writes the resource metadata and contents, and returns the path to get the resource from
+  private String writeResource(PluginType pluginType, String pluginName, String type, String name,
+                               int version, String contents) throws IOException {
+    ResourceType resourceType = new ResourceType(pluginType, pluginName, type);
+    metaStoreService.getResourceTypeView(ADMIN_ACCOUNT, resourceType).add(new ResourceMeta(name, version));
+    OutputStream outputStream = pluginStore.getResourceOutputStream(ADMIN_ACCOUNT, resourceType, name, version);
+    try {
+      outputStream.write(contents.getBytes(Charsets.UTF_8));
+    } finally {
+      outputStream.close();
+    }
+    String pluginTypes = pluginType == PluginType.AUTOMATOR ? "automatortypes" : "providertypes";
+    return "/tenants/" + TENANT_ID + "/" + pluginTypes + "/" + pluginName + "/" + type + "/" + name +
+      "/versions/" + version;
+  }
+
+  private void putResourceFile(PluginType pluginType, String pluginName, String type, String name,
+                               int version, String contents) throws IOException {
+    File file = tmpFolder.newFile();
+    Files.write(contents, file, Charsets.UTF_8);
+    pluginStore.putResourceFile(ADMIN_ACCOUNT, new ResourceType(pluginType, pluginName, type), name, version, file);
+  }
+
   private void testNonPostRestAPIs(String entityType, JsonObject entity1, JsonObject entity2,
                                    Header[] headers) throws Exception {
     String base = "/plugins/" + entityType;
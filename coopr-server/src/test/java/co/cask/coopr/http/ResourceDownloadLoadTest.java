@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.http;
+
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.provisioner.plugin.PluginType;
+import co.cask.coopr.provisioner.plugin.ResourceMeta;
+import co.cask.coopr.provisioner.plugin.ResourceType;
+import com.google.common.collect.Lists;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares downloads of a big plugin resource by many provisioners at once when the resource is streamed through
+ * the heap in chunks, and when it is sent straight from its local file. Heap churn is measured as the number of
+ * garbage collections and the time spent in them while downloading.
+ */
+@Category(BenchmarkTests.class)
+public class ResourceDownloadLoadTest extends ServiceTestBase {
+  private static final int NUM_CLIENTS = 50;
+  private static final long RESOURCE_BYTES = 200L * 1024 * 1024;
+  private static final ResourceType RESOURCE_TYPE = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+  private File resourceFile;
+
+  @Before
+  public void beforeTest() throws Exception {
+    resourceFile = tmpFolder.newFile();
+    RandomAccessFile randomAccessFile = new RandomAccessFile(resourceFile, "rw");
+    try {
+      randomAccessFile.setLength(RESOURCE_BYTES);
+    } finally {
+      randomAccessFile.close();
+    }
+    metaStoreService.getResourceTypeView(ADMIN_ACCOUNT, RESOURCE_TYPE).add(new ResourceMeta("hadoop", 1));
+    pluginStore.putResourceFile(ADMIN_ACCOUNT, RESOURCE_TYPE, "hadoop", 1, resourceFile);
+  }
+
+  @Test(timeout = 600000)
+  public void testConcurrentDownloads() throws Exception {
+    pluginStore.setExposeFiles(false);
+    String chunked = download();
+    pluginStore.setExposeFiles(true);
+    String zeroCopy = download();
+
+    System.out.println(NUM_CLIENTS + " concurrent downloads of a " + RESOURCE_BYTES / 1024 / 1024 + " MB resource: " +
+                         chunked + " when streamed in chunks, " + zeroCopy + " when sent from the file");
+  }
+
+  // downloads the resource with all clients at once, and returns a description of the time and gc it took
+  private String download() throws Exception {
+    final String url = getBaseUrlInternalAPI() + "/tenants/" + TENANT_ID + "/automatortypes/" +
+      RESOURCE_TYPE.getPluginName() + "/" + RESOURCE_TYPE.getTypeName() + "/hadoop/versions/1";
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_CLIENTS);
+    try {
+      long startGCCount = getGCCount();
+      long startGCMs = getGCMs();
+      long start = System.currentTimeMillis();
+
+      List<Future<Long>> downloads = Lists.newArrayList();
+      for (int i = 0; i < NUM_CLIENTS; i++) {
+        downloads.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            CloseableHttpClient httpClient = HttpClients.createDefault();
+            try {
+              HttpResponse response = httpClient.execute(new HttpGet(url));
+              Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+              return countBytes(response.getEntity().getContent());
+            } finally {
+              httpClient.close();
+            }
+          }
+        }));
+      }
+      for (Future<Long> download : downloads) {
+        Assert.assertEquals(RESOURCE_BYTES, (long) download.get());
+      }
+
+      long durationMs = System.currentTimeMillis() - start;
+      long totalMB = NUM_CLIENTS * RESOURCE_BYTES / 1024 / 1024;
+      return durationMs + " ms (" + totalMB * 1000 / Math.max(1, durationMs) + " MB/sec, " +
+        (getGCCount() - startGCCount) + " gcs taking " + (getGCMs() - startGCMs) + " ms)";
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private long countBytes(InputStream inputStream) throws Exception {
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      long count = 0;
+      int bytesRead = inputStream.read(buffer);
+      while (bytesRead != -1) {
+        count += bytesRead;
+        bytesRead = inputStream.read(buffer);
+      }
+      return count;
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private long getGCCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gcBean.getCollectionCount());
+    }
+    return count;
+  }
+
+  private long getGCMs() {
+    long ms = 0;
+    for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      ms += Math.max(0, gcBean.getCollectionTime());
+    }
+    return ms;
+  }
+}
@@ -157,6 +157,10 @@ public class ServiceTestBase extends BaseTest {
     return doGet(resource, null, internalBase);
   }
 
+  public static HttpResponse doGetInternalAPI(String resource, Header[] headers) throws Exception {
+    return doGet(resource, headers, internalBase);
+  }
+
   public static HttpResponse doGetExternalAPI(String resource, Header[] headers) throws Exception {
     return doGet(resource, headers, externalBase);
   }
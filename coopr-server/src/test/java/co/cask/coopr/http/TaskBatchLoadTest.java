@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.http;
+
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.Entities;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.provisioner.mock.MockWorker;
+import co.cask.coopr.scheduler.ClusterAction;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.SchedulableTask;
+import co.cask.coopr.scheduler.task.TaskConfig;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.scheduler.task.TaskServiceAction;
+import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.spec.service.Service;
+import co.cask.coopr.spec.service.ServiceAction;
+import co.cask.coopr.store.cluster.ClusterStoreWriteBatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonObject;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how fast a worker pool gets through a queue of tasks when every worker takes and finishes its own tasks,
+ * and when the workers take and finish their tasks in batches. The pool has the same number of workers either way.
+ */
+@Category(BenchmarkTests.class)
+public class TaskBatchLoadTest extends ServiceTestBase {
+  private static final int NUM_TASKS = 2000;
+  private static final int POOL_SIZE = 50;
+  private static final int BATCH_SIZE = 10;
+  private static final long MS_BETWEEN_TAKES = 1;
+  private ScheduledExecutorService workerExecutor;
+  private final List<CloseableHttpClient> httpClients = Lists.newArrayList();
+  private final List<MockWorker> workers = Lists.newArrayList();
+
+  @After
+  public void cleanupTest() throws Exception {
+    stopWorkers();
+    provisionerQueues.removeAll();
+  }
+
+  @Test(timeout = 600000)
+  public void testSingleAndBatchTaskThroughput() throws Exception {
+    queueTasks(1);
+    long singleMs = runWorkers(POOL_SIZE, 1);
+    queueTasks(2);
+    long batchMs = runWorkers(POOL_SIZE / BATCH_SIZE, BATCH_SIZE);
+    System.out.println(NUM_TASKS + " tasks by " + POOL_SIZE + " workers: " + singleMs + " ms taking and finishing " +
+                         "tasks one by one, " + batchMs + " ms taking and finishing tasks in batches of " + BATCH_SIZE);
+  }
+
+  // runs the workers until the queue is empty, and returns the number of ms it took
+  private long runWorkers(int numWorkers, int batchSize) throws Exception {
+    workerExecutor = Executors.newScheduledThreadPool(numWorkers);
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < numWorkers; i++) {
+      CloseableHttpClient httpClient = HttpClients.createDefault();
+      httpClients.add(httpClient);
+      MockWorker worker = new MockWorker(PROVISIONER_ID, "worker" + i, TENANT_ID, getBaseUrlInternalAPI(),
+                                         workerExecutor, 0, MS_BETWEEN_TAKES, 0, httpClient);
+      worker.setBatchSize(batchSize);
+      worker.startAndWait();
+      workers.add(worker);
+    }
+    while (provisionerQueues.size(TENANT_ID) > 0) {
+      TimeUnit.MILLISECONDS.sleep(20);
+    }
+    long durationMs = System.currentTimeMillis() - start;
+    stopWorkers();
+    return durationMs;
+  }
+
+  private void stopWorkers() throws Exception {
+    for (MockWorker worker : workers) {
+      worker.stopAndWait();
+    }
+    if (workerExecutor != null) {
+      workerExecutor.shutdownNow();
+    }
+    for (CloseableHttpClient httpClient : httpClients) {
+      httpClient.close();
+    }
+    workers.clear();
+    httpClients.clear();
+  }
+
+  // queues a task on a node of its own for every task of the run, all in the same job
+  private void queueTasks(int run) throws Exception {
+    String clusterId = String.valueOf(run);
+    JobId jobId = new JobId(clusterId, 1);
+    ClusterStoreWriteBatch writes = clusterStore.startWriteBatch();
+    writes.writeClusterJob(new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE));
+    List<ClusterTask> clusterTasks = Lists.newArrayListWithCapacity(NUM_TASKS);
+    for (int i = 0; i < NUM_TASKS; i++) {
+      Node node = new Node("node" + i + ".cluster" + clusterId, clusterId, ImmutableSet.<Service>of(),
+                           NodeProperties.builder().build());
+      ClusterTask clusterTask = new ClusterTask(
+        ProvisionerAction.INSTALL, new TaskId(jobId, i), node.getId(), "service", ClusterAction.CLUSTER_CREATE,
+        "test", USER1_ACCOUNT);
+      writes.writeNode(node);
+      writes.writeClusterTask(clusterTask);
+      clusterTasks.add(clusterTask);
+    }
+    writes.flush();
+
+    TaskConfig taskConfig = new TaskConfig(
+      NodeProperties.builder().build(),
+      Entities.ProviderExample.JOYENT,
+      ImmutableMap.<String, NodeProperties>of(),
+      new TaskServiceAction("svcA", new ServiceAction("shell", ImmutableMap.<String, String>of())),
+      new JsonObject(),
+      new JsonObject()
+    );
+    for (ClusterTask clusterTask : clusterTasks) {
+      SchedulableTask schedulableTask = new SchedulableTask(clusterTask, taskConfig);
+      provisionerQueues.add(TENANT_ID, new Element(clusterTask.getTaskId(), gson.toJson(schedulableTask)));
+    }
+    Assert.assertEquals(NUM_TASKS, provisionerQueues.size(TENANT_ID));
+  }
+}
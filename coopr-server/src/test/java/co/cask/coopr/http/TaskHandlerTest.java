@@ -23,6 +23,7 @@ import co.cask.coopr.cluster.NodeProperties;
 import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.http.request.FinishTaskRequest;
 import co.cask.coopr.http.request.TakeTaskRequest;
+import co.cask.coopr.http.request.TakeTasksRequest;
 import co.cask.coopr.scheduler.ClusterAction;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
@@ -36,9 +37,12 @@ import co.cask.coopr.spec.service.Service;
 import co.cask.coopr.spec.service.ServiceAction;
 import co.cask.coopr.spec.template.ClusterTemplate;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
 import org.apache.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.junit.After;
@@ -48,6 +52,14 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -86,6 +98,36 @@ public class TaskHandlerTest extends ServiceTestBase {
     Assert.assertEquals(clusterTask.getTaskId(), responseJson.get("taskId").getAsString());
   }
 
+  @Test(timeout = 20000)
+  public void testTakeTaskWaitsForTask() throws Exception {
+    final TakeTaskRequest takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, 10000L);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<HttpResponse> responseFuture = executor.submit(new Callable<HttpResponse>() {
+        @Override
+        public HttpResponse call() throws Exception {
+          return doPostInternalAPI("/tasks/take", gson.toJson(takeRequest));
+        }
+      });
+      // give the take time to be parked
+      TimeUnit.MILLISECONDS.sleep(500);
+      Assert.assertFalse(responseFuture.isDone());
+
+      ClusterTask clusterTask = queueTask("1-1-2");
+      HttpResponse response = responseFuture.get(5, TimeUnit.SECONDS);
+      assertResponseStatus(response, HttpResponseStatus.OK);
+      Assert.assertEquals(clusterTask.getTaskId(), getResponseJson(response).get("taskId").getAsString());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testTakeTaskWaitTimesOut() throws Exception {
+    TakeTaskRequest takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, 200L);
+    assertResponseStatus(doPostInternalAPI("/tasks/take", gson.toJson(takeRequest)), HttpResponseStatus.NO_CONTENT);
+  }
+
   @Test
   public void testTakeTaskForDeadProvisionerErrors() throws Exception {
     TakeTaskRequest takeRequest = new TakeTaskRequest("workerX", "nonexistant-provider", "tenantY");
@@ -204,6 +246,108 @@ public class TaskHandlerTest extends ServiceTestBase {
     Assert.assertNull(element);
   }
 
+  @Test
+  public void testTakeAndFinishTaskBatch() throws Exception {
+    String tenantId = USER1_ACCOUNT.getTenantId();
+    Node node1 = new Node("node_id3", "1", ImmutableSet.<Service>of(), NodeProperties.builder().build());
+    Node node2 = new Node("node_id4", "1", ImmutableSet.<Service>of(), NodeProperties.builder().build());
+    clusterStore.writeNode(node1);
+    clusterStore.writeNode(node2);
+    ClusterTask task1 = queueTask("1-1-3", node1.getId());
+    ClusterTask task2 = queueTask("1-1-4", node2.getId());
+
+    // more workers than tasks, the last worker does not get a task
+    TakeTasksRequest takeRequest =
+      new TakeTasksRequest(ImmutableList.of("worker1", "worker2", "worker3"), PROVISIONER_ID, tenantId);
+    HttpResponse response = doPostInternalAPI("/tasks/takeBatch", gson.toJson(takeRequest));
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    JsonObject responseJson = getResponseJson(response);
+    Assert.assertEquals(2, responseJson.entrySet().size());
+    Map<String, String> workerTasks = Maps.newHashMap();
+    for (String workerId : ImmutableList.of("worker1", "worker2")) {
+      workerTasks.put(responseJson.getAsJsonObject(workerId).get("taskId").getAsString(), workerId);
+    }
+    Assert.assertEquals(ImmutableSet.of(task1.getTaskId(), task2.getTaskId()), workerTasks.keySet());
+    for (Node node : ImmutableList.of(node1, node2)) {
+      Node actualNode = clusterStore.getNode(node.getId());
+      Assert.assertEquals(Node.Status.IN_PROGRESS, actualNode.getActions().get(0).getStatus());
+    }
+
+    List<FinishTaskRequest> finishRequests = ImmutableList.of(
+      new FinishTaskRequest(workerTasks.get(task1.getTaskId()), PROVISIONER_ID, tenantId, task1.getTaskId(),
+                            null, null, 0, null, null, null),
+      new FinishTaskRequest(workerTasks.get(task2.getTaskId()), PROVISIONER_ID, tenantId, task2.getTaskId(),
+                            "some stdout", "some stderr", 1, null, null, null));
+    response = doPostInternalAPI("/tasks/finishBatch", gson.toJson(finishRequests));
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertEquals(ImmutableSet.of(task1.getTaskId(), task2.getTaskId()), getResponseTaskIds(response));
+
+    Assert.assertEquals(ClusterTask.Status.COMPLETE,
+                        clusterStore.getClusterTask(TaskId.fromString(task1.getTaskId())).getStatus());
+    Assert.assertEquals(ClusterTask.Status.FAILED,
+                        clusterStore.getClusterTask(TaskId.fromString(task2.getTaskId())).getStatus());
+    Assert.assertEquals(Node.Status.COMPLETE, clusterStore.getNode(node1.getId()).getActions().get(0).getStatus());
+    Node.Action failedAction = clusterStore.getNode(node2.getId()).getActions().get(0);
+    Assert.assertEquals(Node.Status.FAILED, failedAction.getStatus());
+    Assert.assertEquals("some stderr", failedAction.getStderr());
+    Assert.assertNull(provisionerQueues.take(tenantId, "worker1"));
+
+    // the tasks are no longer owned by the workers, so finishing them again does nothing
+    response = doPostInternalAPI("/tasks/finishBatch", gson.toJson(finishRequests));
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertTrue(getResponseTaskIds(response).isEmpty());
+  }
+
+  @Test
+  public void testTakeTaskBatchWithoutTasks() throws Exception {
+    TakeTasksRequest takeRequest = new TakeTasksRequest(ImmutableList.of("worker1", "worker2"), PROVISIONER_ID,
+                                                        TENANT_ID);
+    assertResponseStatus(doPostInternalAPI("/tasks/takeBatch", gson.toJson(takeRequest)),
+                         HttpResponseStatus.NO_CONTENT);
+  }
+
+  @Test
+  public void testTaskBatchForDeadProvisionerErrors() throws Exception {
+    TakeTasksRequest takeRequest = new TakeTasksRequest(ImmutableList.of("workerX"), "nonexistant-provider",
+                                                        "tenantY");
+    assertResponseStatus(doPostInternalAPI("/tasks/takeBatch", gson.toJson(takeRequest)),
+                         HttpResponseStatus.FORBIDDEN);
+    FinishTaskRequest finishRequest = new FinishTaskRequest("workerX", "nonexistant-provider", "tenantY", "taskId",
+                                                            "stdout", "stderr", 0, null, null, null);
+    assertResponseStatus(doPostInternalAPI("/tasks/finishBatch", gson.toJson(ImmutableList.of(finishRequest))),
+                         HttpResponseStatus.FORBIDDEN);
+  }
+
+  private ClusterTask queueTask(String taskId) throws Exception {
+    return queueTask(taskId, "node_id");
+  }
+
+  private ClusterTask queueTask(String taskId, String nodeId) throws Exception {
+    ClusterTask clusterTask = new ClusterTask(
+      ProvisionerAction.CREATE, TaskId.fromString(taskId), nodeId, "service", ClusterAction.CLUSTER_CREATE,
+      "test", USER1_ACCOUNT);
+    clusterStore.writeClusterTask(clusterTask);
+    ClusterJob clusterJob = new ClusterJob(JobId.fromString(clusterTask.getJobId()), ClusterAction.CLUSTER_CREATE);
+    clusterStore.writeClusterJob(clusterJob);
+    TaskConfig taskConfig = new TaskConfig(
+      NodeProperties.builder().build(),
+      Entities.ProviderExample.JOYENT,
+      ImmutableMap.<String, NodeProperties>of(),
+      new TaskServiceAction("svcA", new ServiceAction("shell", ImmutableMap.<String, String>of())),
+      new JsonObject(),
+      new JsonObject()
+    );
+    SchedulableTask schedulableTask = new SchedulableTask(clusterTask, taskConfig);
+    provisionerQueues.add(USER1_ACCOUNT.getTenantId(),
+                          new Element(clusterTask.getTaskId(), gson.toJson(schedulableTask)));
+    return clusterTask;
+  }
+
+  private Set<String> getResponseTaskIds(HttpResponse response) throws IOException {
+    Reader reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
+    return gson.fromJson(reader, new TypeToken<Set<String>>() { }.getType());
+  }
+
   private JsonObject getResponseJson(HttpResponse response) throws IOException {
     Reader reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
     return gson.fromJson(reader, JsonObject.class);
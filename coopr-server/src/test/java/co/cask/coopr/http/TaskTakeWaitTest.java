@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.http;
+
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.Entities;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.common.queue.QueueService;
+import co.cask.coopr.common.queue.QueueType;
+import co.cask.coopr.common.queue.guice.QueueModule;
+import co.cask.coopr.common.zookeeper.guice.ZookeeperModule;
+import co.cask.coopr.http.request.TakeTaskRequest;
+import co.cask.coopr.provisioner.mock.MockWorker;
+import co.cask.coopr.scheduler.ClusterAction;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.SchedulableTask;
+import co.cask.coopr.scheduler.task.TaskConfig;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.scheduler.task.TaskServiceAction;
+import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.spec.service.ServiceAction;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.CharStreams;
+import com.google.gson.JsonObject;
+import com.google.inject.Guice;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for workers that wait for tasks. Also compares the zookeeper traffic caused by idle workers that poll for tasks
+ * with the traffic caused by idle workers that wait for tasks. Traffic is measured as the number of requests received
+ * by the zookeeper server.
+ */
+public class TaskTakeWaitTest extends ServiceTestBase {
+  private static final int NUM_WORKERS = 500;
+  private static final long MS_BETWEEN_POLLS = 1000;
+  private static final long TAKE_WAIT_MS = 30000;
+  private static final long MEASURE_SECONDS = 5;
+  private static final Pattern RECEIVED_PATTERN = Pattern.compile("Received: (\\d+)");
+  private ScheduledExecutorService workerExecutor;
+  private List<CloseableHttpClient> httpClients;
+  private List<MockWorker> workers;
+
+  @Before
+  public void beforeTest() {
+    workerExecutor = Executors.newScheduledThreadPool(NUM_WORKERS);
+    httpClients = Lists.newArrayList();
+    workers = Lists.newArrayList();
+  }
+
+  @After
+  public void cleanupTest() throws Exception {
+    stopWorkers();
+    workerExecutor.shutdownNow();
+    provisionerQueues.removeAll();
+  }
+
+  @Test(timeout = 20000)
+  public void testTaskAddedThroughOtherServerEndsWait() throws Exception {
+    // the other server shares zookeeper with the server under test, but has its own instances of the queues
+    QueueService otherQueueService =
+      Guice.createInjector(new ZookeeperModule(zkClientService), new QueueModule(zkClientService))
+        .getInstance(QueueService.class);
+    otherQueueService.startAndWait();
+    try {
+      final TakeTaskRequest takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, TAKE_WAIT_MS);
+      Future<HttpResponse> responseFuture = workerExecutor.submit(new Callable<HttpResponse>() {
+        @Override
+        public HttpResponse call() throws Exception {
+          return doPostInternalAPI("/tasks/take", gson.toJson(takeRequest));
+        }
+      });
+      // give the take time to be parked
+      TimeUnit.MILLISECONDS.sleep(500);
+      Assert.assertFalse(responseFuture.isDone());
+
+      ClusterTask clusterTask = new ClusterTask(
+        ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node_id", "service", ClusterAction.CLUSTER_CREATE,
+        "test", USER1_ACCOUNT);
+      clusterStore.writeClusterTask(clusterTask);
+      clusterStore.writeClusterJob(new ClusterJob(JobId.fromString(clusterTask.getJobId()),
+                                                  ClusterAction.CLUSTER_CREATE));
+      TaskConfig taskConfig = new TaskConfig(
+        NodeProperties.builder().build(),
+        Entities.ProviderExample.JOYENT,
+        ImmutableMap.<String, NodeProperties>of(),
+        new TaskServiceAction("svcA", new ServiceAction("shell", ImmutableMap.<String, String>of())),
+        new JsonObject(),
+        new JsonObject()
+      );
+      otherQueueService.getQueueGroup(QueueType.PROVISIONER).add(
+        TENANT_ID, new Element(clusterTask.getTaskId(), gson.toJson(new SchedulableTask(clusterTask, taskConfig))));
+
+      HttpResponse response = responseFuture.get(5, TimeUnit.SECONDS);
+      assertResponseStatus(response, HttpResponseStatus.OK);
+      Reader reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
+      Assert.assertEquals(clusterTask.getTaskId(), gson.fromJson(reader, JsonObject.class).get("taskId").getAsString());
+    } finally {
+      otherQueueService.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 300000)
+  @Category(BenchmarkTests.class)
+  public void testIdleWorkerZKTraffic() throws Exception {
+    startWorkers(0);
+    double pollingOpsPerSec = measureZKOpsPerSecond();
+    stopWorkers();
+
+    startWorkers(TAKE_WAIT_MS);
+    double waitingOpsPerSec = measureZKOpsPerSecond();
+    stopWorkers();
+
+    System.out.println(NUM_WORKERS + " idle workers: " + pollingOpsPerSec + " zookeeper ops/sec when polling, " +
+                         waitingOpsPerSec + " zookeeper ops/sec when waiting for tasks");
+    Assert.assertTrue(waitingOpsPerSec < pollingOpsPerSec / 10);
+  }
+
+  private void startWorkers(long takeWaitMs) throws Exception {
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      CloseableHttpClient httpClient = HttpClients.createDefault();
+      httpClients.add(httpClient);
+      MockWorker worker = new MockWorker(PROVISIONER_ID, "worker" + i, TENANT_ID, getBaseUrlInternalAPI(),
+                                         workerExecutor, 0, MS_BETWEEN_POLLS, 0, httpClient);
+      worker.setTakeWaitMs(takeWaitMs);
+      worker.start();
+      workers.add(worker);
+    }
+    for (MockWorker worker : workers) {
+      worker.startAndWait();
+    }
+    // let every worker make its first take
+    TimeUnit.MILLISECONDS.sleep(2 * MS_BETWEEN_POLLS);
+  }
+
+  private void stopWorkers() throws Exception {
+    // closing the clients ends any take that is waiting for a task
+    for (CloseableHttpClient httpClient : httpClients) {
+      httpClient.close();
+    }
+    for (MockWorker worker : workers) {
+      worker.stop();
+    }
+    for (MockWorker worker : workers) {
+      worker.stopAndWait();
+    }
+    httpClients.clear();
+    workers.clear();
+  }
+
+  private double measureZKOpsPerSecond() throws Exception {
+    long start = System.nanoTime();
+    long startReceived = getZKRequestsReceived();
+    TimeUnit.SECONDS.sleep(MEASURE_SECONDS);
+    long received = getZKRequestsReceived() - startReceived;
+    return received * (double) TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+  }
+
+  // uses the srvr four letter command of zookeeper, which includes the number of requests received by the server
+  private long getZKRequestsReceived() throws Exception {
+    InetSocketAddress address = zkServer.getLocalAddress();
+    Socket socket = new Socket(address.getAddress(), address.getPort());
+    try {
+      OutputStream out = socket.getOutputStream();
+      out.write("srvr".getBytes(Charsets.US_ASCII));
+      out.flush();
+      String stats = CharStreams.toString(new InputStreamReader(socket.getInputStream(), Charsets.US_ASCII));
+      Matcher matcher = RECEIVED_PATTERN.matcher(stats);
+      Assert.assertTrue("Unexpected zookeeper stats: " + stats, matcher.find());
+      return Long.parseLong(matcher.group(1));
+    } finally {
+      socket.close();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.codec.json.guice.CodecModules;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.common.zookeeper.guice.ZookeeperModule;
+import co.cask.coopr.http.request.ClusterCreateRequest;
+import co.cask.coopr.store.entity.EntityStoreService;
+import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the number of clusters the solver can lay out per second when entities are read from the entity cache,
+ * and when every entity the solver needs is read from the database.
+ */
+@Category(BenchmarkTests.class)
+public class SolverThroughputTest extends BaseSolverTest {
+  private static final int NUM_WARMUP_SOLVES = 50;
+  private static final int NUM_SOLVES = 500;
+
+  @Test(timeout = 600000)
+  public void testSolverThroughput() throws Exception {
+    double uncachedSolvesPerSec = measureSolvesPerSecond(createSolver(false));
+    double cachedSolvesPerSec = measureSolvesPerSecond(createSolver(true));
+
+    System.out.println("Solver throughput: " + uncachedSolvesPerSec + " solves/sec without the entity cache, " +
+                         cachedSolvesPerSec + " solves/sec with the entity cache");
+  }
+
+  private Solver createSolver(boolean cacheEnabled) {
+    Configuration solverConf = createTestConf();
+    solverConf.setBoolean(Constants.ENTITY_CACHE_ENABLED, cacheEnabled);
+    Injector solverInjector = Guice.createInjector(
+      new ConfigurationModule(solverConf),
+      new ZookeeperModule(zkClientService),
+      new TestStoreModule(),
+      new CodecModules().getModule()
+    );
+    solverInjector.getInstance(EntityStoreService.class).startAndWait();
+    return solverInjector.getInstance(Solver.class);
+  }
+
+  private double measureSolvesPerSecond(Solver solver) throws Exception {
+    for (int i = 0; i < NUM_WARMUP_SOLVES; i++) {
+      solve(solver);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < NUM_SOLVES; i++) {
+      solve(solver);
+    }
+    return NUM_SOLVES * (double) TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+  }
+
+  private void solve(Solver solver) throws Exception {
+    ClusterCreateRequest request = ClusterCreateRequest.builder()
+      .setName("mycluster")
+      .setClusterTemplateName(reactorTemplate.getName())
+      .setNumMachines(5)
+      .setInitialLeaseDuration(0L)
+      .build();
+    Cluster cluster = Cluster.builder()
+      .setID("123")
+      .setAccount(account)
+      .setName("cluster")
+      .setClusterTemplate(reactorTemplate)
+      .setProvider(provider)
+      .build();
+    Assert.assertEquals(5, solver.solveClusterNodes(cluster, request).size());
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Node;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests for the index of cluster nodes by service.
+ */
+public class ClusterTopologyTest {
+  private static final ClusterTopology TOPOLOGY = new ClusterTopology(ExpressionTest.clusterNodes);
+
+  @Test
+  public void testServiceNodes() {
+    // in the order of the cluster nodes, which are sorted by id
+    Assert.assertEquals(ImmutableList.of("bar", "foo", "one"), getIds(TOPOLOGY.getServiceNodes("svc1")));
+    Assert.assertEquals(ImmutableList.of("foo", "two"), getIds(TOPOLOGY.getServiceNodes("svc2")));
+    Assert.assertTrue(TOPOLOGY.getServiceNodes("svc4").isEmpty());
+  }
+
+  @Test
+  public void testSortedServiceNodes() {
+    Assert.assertEquals(ImmutableList.of("foo", "bar", "one"), getIds(TOPOLOGY.getSortedServiceNodes("svc1")));
+    Assert.assertEquals(ImmutableList.of("thr"), getIds(TOPOLOGY.getSortedServiceNodes("svc3")));
+    Assert.assertTrue(TOPOLOGY.getSortedServiceNodes("svc4").isEmpty());
+  }
+
+  @Test
+  public void testServiceInstanceNum() {
+    Assert.assertEquals(1, TOPOLOGY.getServiceInstanceNum("svc1", ExpressionTest.node1));
+    Assert.assertEquals(2, TOPOLOGY.getServiceInstanceNum("svc1", ExpressionTest.node2));
+    Assert.assertEquals(1, TOPOLOGY.getServiceInstanceNum("svc2", ExpressionTest.node1));
+    Assert.assertEquals(-1, TOPOLOGY.getServiceInstanceNum("svc2", ExpressionTest.node2));
+    Assert.assertEquals(-1, TOPOLOGY.getServiceInstanceNum("svc4", ExpressionTest.node1));
+  }
+
+  private List<String> getIds(List<Node> nodes) {
+    return Lists.transform(nodes, new Function<Node, String>() {
+      @Override
+      public String apply(Node node) {
+        return node.getId();
+      }
+    });
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Set;
+
+/**
+ * Tests expansion with a compiled plan.
+ */
+public class ExpansionPlanTest {
+  private static final int NUM_SERVICES = 5;
+
+  @Test
+  public void testSameAsExpander() throws Exception {
+    JsonObject input = new Gson().fromJson(ExpanderTest.jsonIn, JsonObject.class);
+    input.addProperty("invalid-cluster-macro", "%host.service.svc4%");
+    JsonArray array = new JsonArray();
+    array.add(new Gson().toJsonTree("%host.self%"));
+    array.add(new Gson().toJsonTree("no macro"));
+    input.add("array", array);
+
+    ExpansionPlan.Binding binding = ExpansionPlan.compile(input).bind(ExpressionTest.cluster,
+                                                                      ExpressionTest.clusterNodes);
+    for (Node node : ExpressionTest.clusterNodes) {
+      JsonElement expected = Expander.expand(input, null, ExpressionTest.cluster, ExpressionTest.clusterNodes, node);
+      Assert.assertEquals(expected, binding.expand(node));
+    }
+  }
+
+  @Test
+  public void testUnexpandedSubtreesAreShared() throws Exception {
+    JsonObject input = new Gson().fromJson(ExpanderTest.jsonIn, JsonObject.class);
+    ExpansionPlan plan = ExpansionPlan.compile(input);
+    Assert.assertTrue(plan.hasMacros());
+    JsonObject output = plan.bind(ExpressionTest.cluster, ExpressionTest.clusterNodes)
+      .expand(ExpressionTest.node1).getAsJsonObject();
+    Assert.assertNotSame(input, output);
+    Assert.assertSame(input.getAsJsonObject("defaults").get("services"),
+                      output.getAsJsonObject("defaults").get("services"));
+    Assert.assertEquals(new Gson().fromJson(ExpanderTest.jsonIn, JsonObject.class), input);
+
+    JsonObject noMacros = new JsonObject();
+    noMacros.addProperty("key", "value with %% escaped percent");
+    ExpansionPlan plan2 = ExpansionPlan.compile(noMacros);
+    Assert.assertFalse(plan2.hasMacros());
+    Assert.assertSame(noMacros, plan2.bind(ExpressionTest.cluster, ExpressionTest.clusterNodes)
+      .expand(ExpressionTest.node1));
+  }
+
+  @Test(expected = SyntaxException.class)
+  public void testSyntaxErrorOnCompile() throws Exception {
+    JsonObject input = new JsonObject();
+    input.addProperty("key", "%unknown.macro%");
+    ExpansionPlan.compile(input);
+  }
+
+  @Test
+  @Category(BenchmarkTests.class)
+  public void testExpansionTimeForLargeCluster() throws Exception {
+    JsonObject config = createLargeConfig();
+    System.out.println("config size: " + config.toString().length() + " bytes");
+    for (int numNodes : new int[] { 100, 500, 1000, 2000 }) {
+      benchmarkExpansion(config, numNodes);
+    }
+  }
+
+  private void benchmarkExpansion(JsonObject config, int numNodes) throws Exception {
+    Set<Service> services = Sets.newHashSet();
+    for (int i = 0; i < NUM_SERVICES; i++) {
+      services.add(Service.builder().setName("svc" + i).build());
+    }
+    Set<Node> nodes = Sets.newTreeSet();
+    Set<String> nodeIds = Sets.newHashSet();
+    for (int i = 0; i < numNodes; i++) {
+      Node node = new Node("node" + i, "1", services,
+                           NodeProperties.builder()
+                             .setHostname("host" + i + ".company.net")
+                             .addIPAddress("access_v4", "10.0." + (i / 256) + "." + (i % 256))
+                             .setNodenum(i).build());
+      nodes.add(node);
+      nodeIds.add(node.getId());
+    }
+    Cluster cluster = Cluster.builder()
+      .setID("large")
+      .setAccount(new Account("user", "tenant"))
+      .setName("large")
+      .setNodes(nodeIds)
+      .setServices(ImmutableSet.of("svc0", "svc1", "svc2", "svc3", "svc4"))
+      .build();
+
+    // expanding for a sample of the nodes is enough to compare, expanding cluster wide macros is the dominant cost
+    int numExpansions = 50;
+    long start = System.nanoTime();
+    ExpansionPlan.Binding binding = ExpansionPlan.compile(config).bind(cluster, nodes);
+    int i = 0;
+    for (Node node : nodes) {
+      if (i++ == numExpansions) {
+        break;
+      }
+      Assert.assertTrue(binding.expand(node) != config);
+    }
+    long planMicros = (System.nanoTime() - start) / 1000;
+
+    // the index of the cluster nodes is built once and shared by all tasks
+    start = System.nanoTime();
+    ClusterTopology topology = new ClusterTopology(nodes);
+    i = 0;
+    for (Node node : nodes) {
+      if (i++ == numExpansions) {
+        break;
+      }
+      Assert.assertTrue(Expander.expand(config, null, cluster, topology, node) != config);
+    }
+    long sharedTopologyMicros = (System.nanoTime() - start) / 1000;
+
+    // the index of the cluster nodes is built again for every task
+    start = System.nanoTime();
+    i = 0;
+    for (Node node : nodes) {
+      if (i++ == numExpansions) {
+        break;
+      }
+      Assert.assertTrue(Expander.expand(config, null, cluster, nodes, node) != config);
+    }
+    long expanderMicros = (System.nanoTime() - start) / 1000;
+    System.out.println(numNodes + " nodes, expansion for " + numExpansions + " nodes: plan " + planMicros +
+                         " us, per task with shared topology " + sharedTopologyMicros + " us, per task " +
+                         expanderMicros + " us");
+  }
+
+  // roughly 200KB, every tenth value contains macros
+  private JsonObject createLargeConfig() {
+    JsonObject config = new JsonObject();
+    String padding = Strings.repeat("x", 64);
+    for (int i = 0; i < 100; i++) {
+      JsonObject section = new JsonObject();
+      for (int j = 0; j < 20; j++) {
+        String value;
+        if (j % 10 == 0) {
+          value = "%join(map(host.service.svc" + (i % NUM_SERVICES) + ",'$:2181'),',')%/" + padding;
+        } else if (j % 10 == 5) {
+          value = "%instance.self.service.svc" + (i % NUM_SERVICES) + "%-%host.self%";
+        } else {
+          value = padding + i + "." + j;
+        }
+        section.addProperty("property." + j, value);
+      }
+      config.add("section" + i, section);
+    }
+    return config;
+  }
+}
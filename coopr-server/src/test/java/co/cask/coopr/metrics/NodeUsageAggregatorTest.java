@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.metrics;
+
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.scheduler.ClusterAction;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests aggregation of node usage.
+ */
+public class NodeUsageAggregatorTest {
+  private static final Account ACCOUNT = new Account("user1", "tenant1");
+  private static final TaskId TASK_ID = TaskId.fromString("1-1-1");
+
+  @Test
+  public void testUnalignedStart() {
+    NodeUsageAggregator aggregator = new NodeUsageAggregator(DateUtils.MILLIS_PER_HOUR / 2,
+                                                             2 * DateUtils.MILLIS_PER_HOUR,
+                                                             DateUtils.MILLIS_PER_HOUR, TimeUnit.SECONDS,
+                                                             System.currentTimeMillis());
+    aggregator.visit(createTask(ProvisionerAction.CREATE, "node1", 0));
+    aggregator.visit(createTask(ProvisionerAction.CREATE, "node2", DateUtils.MILLIS_PER_HOUR));
+    aggregator.visit(createTask(ProvisionerAction.DELETE, "node1", 2 * DateUtils.MILLIS_PER_HOUR));
+    // deleting again must not count the node twice
+    aggregator.visit(createTask(ProvisionerAction.DELETE, "node1", 3 * DateUtils.MILLIS_PER_HOUR));
+
+    Interval first = new Interval(1800);
+    first.increaseValue(1800);
+    Interval second = new Interval(3600);
+    second.increaseValue(3600);
+    second.increaseValue(3600);
+    Assert.assertEquals(new TimeSeries(1800, 7200, Arrays.asList(first, second)), aggregator.getTimeSeries());
+  }
+
+  @Test
+  public void testNoTasks() {
+    NodeUsageAggregator aggregator = new NodeUsageAggregator(5000L, 22000L, 0, TimeUnit.SECONDS,
+                                                             System.currentTimeMillis());
+    Assert.assertEquals(new TimeSeries(5, 22, Arrays.asList(new Interval(5))), aggregator.getTimeSeries());
+  }
+
+  @Test(timeout = 120000)
+  @Category(BenchmarkTests.class)
+  public void testMillionTasks() {
+    int numNodes = 500000;
+    int openNodes = 100;
+    long step = TimeUnit.MINUTES.toMillis(1);
+    NodeUsageAggregator aggregator = new NodeUsageAggregator(null, null, DateUtils.MILLIS_PER_HOUR, TimeUnit.SECONDS,
+                                                             System.currentTimeMillis());
+    long start = System.nanoTime();
+    for (int i = 0; i < numNodes; i++) {
+      if (i >= openNodes) {
+        aggregator.visit(createTask(ProvisionerAction.DELETE, "node" + (i - openNodes), i * step));
+      }
+      aggregator.visit(createTask(ProvisionerAction.CREATE, "node" + i, i * step));
+    }
+    TimeSeries timeSeries = aggregator.getTimeSeries();
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    System.out.println("aggregated " + (2 * numNodes - openNodes) + " tasks in " + millis + " ms");
+
+    long endDate = (numNodes - 1) * step;
+    Assert.assertEquals(0, timeSeries.getStart());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toSeconds(endDate), timeSeries.getEnd());
+    Assert.assertEquals((endDate - 1) / DateUtils.MILLIS_PER_HOUR + 1, timeSeries.getData().size());
+    long total = 0;
+    for (Interval interval : timeSeries.getData()) {
+      total += interval.getValue();
+    }
+    // deleted nodes lived for openNodes steps each, nodes still open live until the last delete
+    long expected = (numNodes - openNodes) * openNodes * step + step * openNodes * (openNodes - 1) / 2;
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toSeconds(expected), total);
+  }
+
+  private ClusterTask createTask(ProvisionerAction action, String nodeId, long statusTime) {
+    ClusterTask task = new ClusterTask(action, TASK_ID, nodeId, "service", ClusterAction.CLUSTER_CREATE,
+                                       "template", ACCOUNT);
+    task.setStatus(ClusterTask.Status.COMPLETE);
+    task.setStatusTime(statusTime);
+    return task;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.metrics;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.codec.json.guice.CodecModules;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.scheduler.ClusterAction;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.store.DBHelper;
+import co.cask.coopr.store.cluster.ClusterStore;
+import co.cask.coopr.store.cluster.ClusterTaskFilter;
+import co.cask.coopr.store.cluster.SQLClusterStoreService;
+import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that node usage read from the rollup is the same as node usage calculated from the tasks.
+ */
+public class NodeUsageRollupTest {
+  // midnight of 2014-01-01
+  private static final long START = 1388534400000L;
+  private static final long DAYS = 3;
+  private static final Account ACCOUNT1 = new Account("user1", "tenant1");
+  private static final Account ACCOUNT2 = new Account("user2", "tenant2");
+  private static SQLClusterStoreService clusterStoreService;
+  private ClusterStore clusterStore;
+  private int nextTaskNum;
+  private List<ClusterTask> writtenTasks;
+
+  @BeforeClass
+  public static void setupNodeUsageRollupTest() throws Exception {
+    Configuration conf = BaseTest.createTestConf();
+    Injector injector = Guice.createInjector(
+      new ConfigurationModule(conf),
+      new TestStoreModule(),
+      new CodecModules().getModule()
+    );
+    clusterStoreService = injector.getInstance(SQLClusterStoreService.class);
+    clusterStoreService.startAndWait();
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    DBHelper.dropDerbyDB();
+  }
+
+  @Before
+  public void setupTest() throws Exception {
+    clusterStoreService.clearData();
+    clusterStore = clusterStoreService.getSystemView();
+    nextTaskNum = 1;
+    writtenTasks = Lists.newArrayList();
+  }
+
+  @Test
+  public void testRollupMatchesTasks() throws Exception {
+    Random random = new Random(0);
+    long end = START + DAYS * DateUtils.MILLIS_PER_DAY;
+    for (int i = 0; i < 100; i++) {
+      Account account = i % 3 == 0 ? ACCOUNT2 : ACCOUNT1;
+      // whole seconds, as usage is reported in seconds
+      long created = START + TimeUnit.SECONDS.toMillis(random.nextInt((int) (DAYS * DateUtils.MILLIS_PER_DAY / 1000)));
+      long deleted = created + TimeUnit.SECONDS.toMillis(random.nextInt((int) ((end - created) / 1000) + 1));
+      writeTask(ProvisionerAction.CREATE, account, "node" + i, created);
+      writeTask(ProvisionerAction.DELETE, account, "node" + i, deleted);
+    }
+    // recording tasks again, as a backfill running concurrently does, must not change the usage
+    for (ClusterTask task : writtenTasks) {
+      clusterStore.writeNodeUsage(task);
+    }
+
+    long startSecs = TimeUnit.MILLISECONDS.toSeconds(START);
+    long endSecs = TimeUnit.MILLISECONDS.toSeconds(end);
+    long hourSecs = TimeUnit.HOURS.toSeconds(1);
+    long daySecs = TimeUnit.DAYS.toSeconds(1);
+    assertSameUsage(filter(null, null, null, MetricService.Periodicity.hour));
+    assertSameUsage(filter(null, null, null, MetricService.Periodicity.day));
+    assertSameUsage(filter(null, null, null, MetricService.Periodicity.week));
+    assertSameUsage(filter(null, startSecs + hourSecs, startSecs + daySecs + 5 * hourSecs,
+                           MetricService.Periodicity.hour));
+    assertSameUsage(filter(null, startSecs + daySecs, endSecs, MetricService.Periodicity.day));
+    assertSameUsage(filter(null, startSecs + 3 * hourSecs, null, MetricService.Periodicity.day));
+    assertSameUsage(filter("tenant1", null, null, MetricService.Periodicity.hour));
+    assertSameUsage(filter("tenant2", startSecs, startSecs + 2 * daySecs, MetricService.Periodicity.day));
+    // end in the middle of a bucket, which the rollup cannot answer by itself
+    assertSameUsage(filter(null, startSecs, startSecs + daySecs + 1234, MetricService.Periodicity.hour));
+  }
+
+  @Test
+  public void testBackfill() throws Exception {
+    ClusterTask create = createTask(ProvisionerAction.CREATE, ACCOUNT1, "node1", START);
+    ClusterTask delete = createTask(ProvisionerAction.DELETE, ACCOUNT1, "node1", START + DateUtils.MILLIS_PER_DAY);
+    clusterStore.writeClusterTask(create);
+    clusterStore.writeClusterTask(delete);
+    // tasks that complete once the rollup is enabled are recorded before the backfill gets to run
+    writeTask(ProvisionerAction.CREATE, ACCOUNT2, "node2", START + 2 * DateUtils.MILLIS_PER_DAY);
+    ClusterTaskFilter filter = filter(null, null, null, MetricService.Periodicity.hour);
+    Assert.assertNull(clusterStore.getNodeUsageBackfillTime());
+
+    new NodeUsageRollupBackfill(clusterStore).run();
+    Assert.assertEquals(START, (long) clusterStore.getNodeUsageTotal(filter, DateUtils.MILLIS_PER_HOUR, Long.MAX_VALUE)
+      .getFirstCreateTime());
+    Assert.assertEquals(NodeUsageRollupBackfill.COMPLETE, (long) clusterStore.getNodeUsageBackfillTime());
+    assertSameUsage(filter);
+    // backfill does nothing once it is complete
+    writeTask(ProvisionerAction.DELETE, ACCOUNT2, "node2", START + 3 * DateUtils.MILLIS_PER_DAY);
+    new NodeUsageRollupBackfill(clusterStore).run();
+    assertSameUsage(filter);
+  }
+
+  @Test
+  public void testBackfillResumes() throws Exception {
+    ClusterTask create = createTask(ProvisionerAction.CREATE, ACCOUNT1, "node1", START);
+    ClusterTask delete = createTask(ProvisionerAction.DELETE, ACCOUNT1, "node1", START + DateUtils.MILLIS_PER_DAY);
+    clusterStore.writeClusterTask(create);
+    clusterStore.writeClusterTask(delete);
+    // backfill interrupted after recording the create
+    clusterStore.writeNodeUsage(create);
+    clusterStore.writeNodeUsageBackfillTime(START + DateUtils.MILLIS_PER_HOUR);
+
+    new NodeUsageRollupBackfill(clusterStore).run();
+    Assert.assertEquals(NodeUsageRollupBackfill.COMPLETE, (long) clusterStore.getNodeUsageBackfillTime());
+    assertSameUsage(filter(null, null, null, MetricService.Periodicity.hour));
+    assertSameUsage(filter(null, null, null, MetricService.Periodicity.day));
+  }
+
+  @Test
+  public void testRecreatedNode() throws Exception {
+    // nodes are deleted and created again with the same id when a task on them is rolled back
+    writeTask(ProvisionerAction.CREATE, ACCOUNT1, "node1", START);
+    writeTask(ProvisionerAction.DELETE, ACCOUNT1, "node1", START + DateUtils.MILLIS_PER_HOUR);
+    writeTask(ProvisionerAction.CREATE, ACCOUNT1, "node1", START + 2 * DateUtils.MILLIS_PER_HOUR);
+    writeTask(ProvisionerAction.DELETE, ACCOUNT1, "node1", START + DateUtils.MILLIS_PER_DAY);
+    // recording tasks again, in any order, must not change the usage
+    for (ClusterTask task : Lists.reverse(writtenTasks)) {
+      clusterStore.writeNodeUsage(task);
+    }
+    for (ClusterTask task : writtenTasks) {
+      clusterStore.writeNodeUsage(task);
+    }
+
+    assertSameUsage(filter(null, null, null, MetricService.Periodicity.hour));
+    assertSameUsage(filter(null, null, null, MetricService.Periodicity.day));
+  }
+
+  @Test
+  public void testLiveNodes() throws Exception {
+    writeTask(ProvisionerAction.CREATE, ACCOUNT1, "node1", START);
+    writeTask(ProvisionerAction.CREATE, ACCOUNT1, "node2", START + DateUtils.MILLIS_PER_HOUR);
+    writeTask(ProvisionerAction.DELETE, ACCOUNT1, "node1", START + DateUtils.MILLIS_PER_DAY);
+
+    long startSecs = TimeUnit.MILLISECONDS.toSeconds(START);
+    long endSecs = startSecs + TimeUnit.DAYS.toSeconds(2);
+    TimeSeries timeSeries = new MetricService(clusterStore, true)
+      .getNodesUsage(filter(null, startSecs, endSecs, MetricService.Periodicity.day));
+    Assert.assertEquals(2, timeSeries.getData().size());
+    Assert.assertEquals(TimeUnit.HOURS.toSeconds(24 + 23), timeSeries.getData().get(0).getValue());
+    Assert.assertEquals(TimeUnit.HOURS.toSeconds(24), timeSeries.getData().get(1).getValue());
+    assertSameUsage(filter(null, startSecs, endSecs, MetricService.Periodicity.day));
+  }
+
+  private void assertSameUsage(ClusterTaskFilter filter) throws Exception {
+    Assert.assertEquals(new MetricService(clusterStore, false).getNodesUsage(filter),
+                        new MetricService(clusterStore, true).getNodesUsage(filter));
+  }
+
+  private ClusterTaskFilter filter(String tenantId, Long start, Long end, MetricService.Periodicity periodicity) {
+    return new ClusterTaskFilter(tenantId, null, null, null, start, end, periodicity, TimeUnit.SECONDS);
+  }
+
+  private void writeTask(ProvisionerAction action, Account account, String nodeId, long statusTime) throws Exception {
+    ClusterTask task = createTask(action, account, nodeId, statusTime);
+    clusterStore.writeClusterTask(task);
+    clusterStore.writeNodeUsage(task);
+    writtenTasks.add(task);
+  }
+
+  private ClusterTask createTask(ProvisionerAction action, Account account, String nodeId, long statusTime) {
+    TaskId taskId = TaskId.fromString("1-1-" + nextTaskNum++);
+    ClusterTask task = new ClusterTask(action, taskId, nodeId, "service", ClusterAction.CLUSTER_CREATE,
+                                       "template", account);
+    task.setStatus(ClusterTask.Status.COMPLETE);
+    task.setStatusTime(statusTime);
+    return task;
+  }
+}
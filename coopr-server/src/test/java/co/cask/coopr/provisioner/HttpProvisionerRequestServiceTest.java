@@ -3,6 +3,8 @@ package co.cask.coopr.provisioner;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.guice.ConfigurationModule;
 import co.cask.coopr.provisioner.plugin.ResourceCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.AfterClass;
@@ -11,12 +13,15 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.net.ServerSocket;
+
 /**
  *
  */
 public class HttpProvisionerRequestServiceTest {
   private static ProvisionerRequestService provisionerRequestService;
   private static StubProvisioner stubProvisioner;
+  private static StubProvisioner stubProvisioner2;
   private static int port;
   private static String host;
 
@@ -31,16 +36,20 @@ public class HttpProvisionerRequestServiceTest {
     stubProvisioner.startAndWait();
     port = stubProvisioner.getBindAddress().getPort();
     host = stubProvisioner.getBindAddress().getHostName();
+    stubProvisioner2 = new StubProvisioner();
+    stubProvisioner2.startAndWait();
   }
 
   @AfterClass
   public static void cleanupTestClass() {
     stubProvisioner.stopAndWait();
+    stubProvisioner2.stopAndWait();
   }
 
   @Before
   public void setupTest() {
     stubProvisioner.reset();
+    stubProvisioner2.reset();
   }
 
   @Test
@@ -68,4 +77,36 @@ public class HttpProvisionerRequestServiceTest {
       Assert.assertEquals(2, stubProvisioner.getDeleteCount("tenant" + i));
     }
   }
+
+  @Test
+  public void testPutTenantOnProvisionersInParallel() {
+    long delayMs = 1000;
+    stubProvisioner.setPutDelayMs(delayMs);
+    stubProvisioner2.setPutDelayMs(delayMs);
+    Provisioner provisioner1 = new Provisioner("p1", host, port, 100, null, null);
+    int port2 = stubProvisioner2.getBindAddress().getPort();
+    Provisioner provisioner2 = new Provisioner("p2", host, port2, 100, null, null);
+
+    long start = System.currentTimeMillis();
+    Assert.assertTrue(provisionerRequestService.putTenant(ImmutableList.of(provisioner1, provisioner2), "tenant1",
+                                                          new ResourceCollection()).isEmpty());
+    Assert.assertTrue(System.currentTimeMillis() - start < 2 * delayMs);
+    Assert.assertEquals(1, stubProvisioner.getPutCount("tenant1"));
+    Assert.assertEquals(1, stubProvisioner2.getPutCount("tenant1"));
+  }
+
+  @Test
+  public void testPutTenantOnProvisionersReturnsFailures() throws Exception {
+    // nothing listens on the port once the socket is closed
+    ServerSocket socket = new ServerSocket(0);
+    int deadPort = socket.getLocalPort();
+    socket.close();
+    Provisioner provisioner1 = new Provisioner("p1", host, port, 100, null, null);
+    Provisioner deadProvisioner = new Provisioner("dead", host, deadPort, 100, null, null);
+
+    Assert.assertEquals(ImmutableSet.of("dead"),
+                        provisionerRequestService.putTenant(ImmutableList.of(provisioner1, deadProvisioner), "tenant1",
+                                                            new ResourceCollection()));
+    Assert.assertEquals(1, stubProvisioner.getPutCount("tenant1"));
+  }
 }
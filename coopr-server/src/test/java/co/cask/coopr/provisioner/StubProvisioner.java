@@ -19,6 +19,7 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -30,6 +31,7 @@ public class StubProvisioner extends AbstractIdleService {
   private Multiset<String> tenantWorkerPutCounts;
   private Multiset<String> tenantResourcePutCounts;
   private Multiset<String> tenantDeleteCounts;
+  private volatile long putDelayMs;
 
   public StubProvisioner() {
     NettyHttpService.Builder builder = NettyHttpService.builder();
@@ -82,6 +84,16 @@ public class StubProvisioner extends AbstractIdleService {
     tenantWorkerPutCounts.clear();
     tenantResourcePutCounts.clear();
     tenantDeleteCounts.clear();
+    putDelayMs = 0;
+  }
+
+  /**
+   * Set how long the provisioner takes to respond to tenant puts.
+   *
+   * @param putDelayMs Milliseconds to wait before responding to a tenant put.
+   */
+  public void setPutDelayMs(long putDelayMs) {
+    this.putDelayMs = putDelayMs;
   }
 
   /**
@@ -98,7 +110,9 @@ public class StubProvisioner extends AbstractIdleService {
 
     @PUT
     @Path("/tenants/{tenant-id}")
-    public void putTenant(HttpRequest request, HttpResponder responder, @PathParam("tenant-id") String tenantId) {
+    public void putTenant(HttpRequest request, HttpResponder responder,
+                          @PathParam("tenant-id") String tenantId) throws InterruptedException {
+      TimeUnit.MILLISECONDS.sleep(putDelayMs);
       tenantPutCounts.add(tenantId);
       responder.sendStatus(HttpResponseStatus.OK);
     }
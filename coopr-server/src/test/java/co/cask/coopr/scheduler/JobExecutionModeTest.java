@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.Entities;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.http.ServiceTestBase;
+import co.cask.coopr.provisioner.mock.MockWorker;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that a cluster create completes both when its tasks are executed stage by stage, and when each task is
+ * executed as soon as the tasks it depends on are complete, without ever running two tasks on a node at once. Also
+ * compares how long a big cluster create takes in both modes. Tasks are run by mock workers that take a random amount
+ * of time for each task.
+ */
+public class JobExecutionModeTest extends ServiceTestBase {
+  private static final int NUM_NODES = 20;
+  private static final int BENCHMARK_NUM_NODES = 200;
+  private static final int NUM_WORKERS = 50;
+  private static final long MIN_TASK_MS = 0;
+  private static final long MAX_TASK_MS = 50;
+  private Scheduler scheduler;
+  private ScheduledExecutorService workerExecutor;
+  private List<CloseableHttpClient> httpClients;
+  private List<MockWorker> workers;
+
+  @Before
+  public void beforeTest() throws Exception {
+    scheduler = injector.getInstance(Scheduler.class);
+    scheduler.startAndWait();
+
+    workerExecutor = Executors.newScheduledThreadPool(NUM_WORKERS);
+    httpClients = Lists.newArrayList();
+    workers = Lists.newArrayList();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      CloseableHttpClient httpClient = HttpClients.createDefault();
+      httpClients.add(httpClient);
+      MockWorker worker = new MockWorker(PROVISIONER_ID, "worker" + i, TENANT_ID, getBaseUrlInternalAPI(),
+                                         workerExecutor, MIN_TASK_MS, MAX_TASK_MS, 10, 0, httpClient);
+      worker.startAndWait();
+      workers.add(worker);
+    }
+  }
+
+  @After
+  public void cleanupTest() throws Exception {
+    for (MockWorker worker : workers) {
+      worker.stopAndWait();
+    }
+    workerExecutor.shutdownNow();
+    for (CloseableHttpClient httpClient : httpClients) {
+      httpClient.close();
+    }
+    scheduler.stopAndWait();
+    conf.set(Constants.JOB_EXECUTION_MODE, ClusterJob.ExecutionMode.STAGED.name().toLowerCase());
+    jobQueues.removeAll();
+    clusterQueues.removeAll();
+    solverQueues.removeAll();
+    provisionerQueues.removeAll();
+    callbackQueues.removeAll();
+    mockClusterCallback.clear();
+  }
+
+  @Test(timeout = 120000)
+  public void testStagedAndDataflowClusterCreate() throws Exception {
+    createCluster("301", ClusterJob.ExecutionMode.STAGED, NUM_NODES);
+    createCluster("302", ClusterJob.ExecutionMode.DATAFLOW, NUM_NODES);
+  }
+
+  @Test(timeout = 600000)
+  @Category(BenchmarkTests.class)
+  public void testStagedAndDataflowClusterCreateTime() throws Exception {
+    long stagedMs = createCluster("303", ClusterJob.ExecutionMode.STAGED, BENCHMARK_NUM_NODES);
+    long dataflowMs = createCluster("304", ClusterJob.ExecutionMode.DATAFLOW, BENCHMARK_NUM_NODES);
+    System.out.println("Created " + BENCHMARK_NUM_NODES + " node cluster in " + stagedMs + " ms in staged mode, in " +
+                         dataflowMs + " ms in dataflow mode");
+  }
+
+  // creates a cluster with the given number of nodes in the given mode, and returns the number of ms it took
+  private long createCluster(String clusterId, ClusterJob.ExecutionMode executionMode, int numNodes) throws Exception {
+    conf.set(Constants.JOB_EXECUTION_MODE, executionMode.name().toLowerCase());
+    Cluster cluster = writeCluster(clusterId, numNodes);
+    JobId jobId = JobId.fromString(cluster.getLatestJobId());
+
+    long start = System.currentTimeMillis();
+    clusterQueues.add(TENANT_ID, new Element(clusterId, ClusterAction.CLUSTER_CREATE.name()));
+    ClusterJob job = clusterStore.getClusterJob(jobId);
+    while (job.getJobStatus() != ClusterJob.Status.COMPLETE) {
+      Assert.assertNotEquals(ClusterJob.Status.FAILED, job.getJobStatus());
+      TimeUnit.MILLISECONDS.sleep(20);
+      job = clusterStore.getClusterJob(jobId);
+    }
+    long durationMs = System.currentTimeMillis() - start;
+
+    Assert.assertEquals(executionMode, job.getExecutionMode());
+    assertOneTaskAtATimePerNode(job, numNodes);
+    return durationMs;
+  }
+
+  // every task on a node must have been submitted after the previous task on the node was done
+  private void assertOneTaskAtATimePerNode(ClusterJob job, int numNodes) throws Exception {
+    ListMultimap<String, ClusterTask> nodeTasks = ArrayListMultimap.create();
+    for (ClusterTask task : clusterStore.getClusterTasks(job.getTaskStatus().keySet()).values()) {
+      nodeTasks.put(task.getNodeId(), task);
+    }
+    Assert.assertEquals(numNodes, nodeTasks.keySet().size());
+    for (String nodeId : nodeTasks.keySet()) {
+      List<ClusterTask> tasks = Lists.newArrayList(nodeTasks.get(nodeId));
+      Collections.sort(tasks, SUBMIT_TIME_COMPARATOR);
+      for (int i = 1; i < tasks.size(); i++) {
+        Assert.assertTrue(tasks.get(i).getSubmitTime() >= tasks.get(i - 1).getStatusTime());
+      }
+    }
+  }
+
+  private Cluster writeCluster(String clusterId, int numNodes) throws Exception {
+    Set<String> nodeIds = Sets.newHashSet();
+    for (int i = 0; i < numNodes; i++) {
+      String nodeId = "node" + i + ".cluster" + clusterId;
+      // one master, and slaves for the rest
+      Set<Service> services = i == 0 ?
+        ImmutableSet.of(Entities.ServiceExample.NAMENODE, Entities.ServiceExample.HOSTS) :
+        ImmutableSet.of(Entities.ServiceExample.DATANODE, Entities.ServiceExample.HOSTS);
+      clusterStore.writeNode(new Node(nodeId, clusterId, services,
+                                      NodeProperties.builder()
+                                        .setHardwaretype(Entities.HardwareTypeExample.LARGE.getName())
+                                        .setImagetype(Entities.ImageTypeExample.CENTOS_6.getName()).build()));
+      nodeIds.add(nodeId);
+    }
+    Cluster cluster = Cluster.builder()
+      .setID(clusterId)
+      .setAccount(new Account(USER1, TENANT_ID))
+      .setName("cluster" + clusterId)
+      .setCreateTime(System.currentTimeMillis())
+      .setProvider(Entities.ProviderExample.RACKSPACE)
+      .setClusterTemplate(Entities.ClusterTemplateExample.HDFS)
+      .setNodes(nodeIds)
+      .setServices(ImmutableSet.of(
+        Entities.ServiceExample.NAMENODE.getName(),
+        Entities.ServiceExample.DATANODE.getName(),
+        Entities.ServiceExample.HOSTS.getName()
+      ))
+      .build();
+    ClusterJob job = new ClusterJob(new JobId(clusterId, 0), ClusterAction.CLUSTER_CREATE);
+    cluster.setLatestJobId(job.getJobId());
+    clusterStoreService.getView(cluster.getAccount()).writeCluster(cluster);
+    clusterStore.writeClusterJob(job);
+    return cluster;
+  }
+
+  private static final Comparator<ClusterTask> SUBMIT_TIME_COMPARATOR = new Comparator<ClusterTask>() {
+    @Override
+    public int compare(ClusterTask task1, ClusterTask task2) {
+      return Long.valueOf(task1.getSubmitTime()).compareTo(task2.getSubmitTime());
+    }
+  };
+}
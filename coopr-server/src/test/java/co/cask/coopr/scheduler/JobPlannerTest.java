@@ -15,6 +15,8 @@
  */
 package co.cask.coopr.scheduler;
 
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.Entities;
 import co.cask.coopr.TestHelper;
 import co.cask.coopr.account.Account;
 import co.cask.coopr.cluster.Node;
@@ -33,14 +35,19 @@ import co.cask.coopr.spec.service.ServiceStageDependencies;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -928,6 +935,106 @@ public class JobPlannerTest {
     Assert.assertTrue(linearizedTasks.get(0).contains(taskNode2));
   }
 
+  @Test
+  public void testTaskDependencies() {
+    Service s1 = Service.builder()
+      .setName("s1")
+      .setProvisionerActions(ImmutableMap.<ProvisionerAction, ServiceAction>of(
+        ProvisionerAction.INSTALL, CHEF_ACTION,
+        ProvisionerAction.CONFIGURE, CHEF_ACTION,
+        ProvisionerAction.START, CHEF_ACTION))
+      .build();
+    Node node1 = new Node("node1", "1", ImmutableSet.<Service>of(s1),
+                          NodeProperties.builder().setHostname("host1").addIPAddress("access_v4", "ip1").build());
+    JobId jobId = JobId.fromString("123-001");
+    ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE, null, null);
+    JobPlanner planner = new JobPlanner(job, ImmutableSet.of(node1));
+
+    // create tasks for everything but configure, as if the service did not define it
+    Map<ProvisionerAction, String> taskIds = Maps.newHashMap();
+    List<Set<ClusterTask>> clusterTasks = Lists.newArrayList();
+    int taskNum = 0;
+    for (Set<TaskNode> stage : planner.linearizeDependentTasks()) {
+      Set<ClusterTask> stageTasks = Sets.newHashSet();
+      for (TaskNode taskNode : stage) {
+        ProvisionerAction action = ProvisionerAction.valueOf(taskNode.getTaskName());
+        if (action == ProvisionerAction.CONFIGURE) {
+          continue;
+        }
+        TaskId taskId = new TaskId(jobId, ++taskNum);
+        stageTasks.add(new ClusterTask(action, taskId, taskNode.getHostId(), taskNode.getService(),
+                                       ClusterAction.CLUSTER_CREATE, "test", new Account("testUser", "testTenant")));
+        taskIds.put(action, taskId.getId());
+      }
+      clusterTasks.add(stageTasks);
+    }
+
+    Map<String, Set<String>> dependencies = planner.getTaskDependencies(clusterTasks);
+    Assert.assertEquals(5, dependencies.size());
+    Assert.assertEquals(ImmutableSet.of(), dependencies.get(taskIds.get(ProvisionerAction.CREATE)));
+    Assert.assertEquals(ImmutableSet.of(taskIds.get(ProvisionerAction.CREATE)),
+                        dependencies.get(taskIds.get(ProvisionerAction.CONFIRM)));
+    Assert.assertEquals(ImmutableSet.of(taskIds.get(ProvisionerAction.CONFIRM)),
+                        dependencies.get(taskIds.get(ProvisionerAction.BOOTSTRAP)));
+    Assert.assertEquals(ImmutableSet.of(taskIds.get(ProvisionerAction.BOOTSTRAP)),
+                        dependencies.get(taskIds.get(ProvisionerAction.INSTALL)));
+    // start depends on install through configure, which has no task
+    Assert.assertEquals(ImmutableSet.of(taskIds.get(ProvisionerAction.INSTALL)),
+                        dependencies.get(taskIds.get(ProvisionerAction.START)));
+  }
+
+  @Test
+  @Category(BenchmarkTests.class)
+  public void testPlanningSpeed() {
+    // a hadoop style template, with hdfs and yarn masters on the first node and slaves on all other nodes
+    Service resourceManager = Service.builder()
+      .setName("resourcemanager")
+      .setDependencies(ServiceDependencies.runtimeRequires("hosts", "namenode"))
+      .setProvisionerActions(ImmutableMap.<ProvisionerAction, ServiceAction>of(
+        ProvisionerAction.INSTALL, CHEF_ACTION,
+        ProvisionerAction.CONFIGURE, CHEF_ACTION,
+        ProvisionerAction.START, CHEF_ACTION,
+        ProvisionerAction.STOP, CHEF_ACTION))
+      .build();
+    Service nodeManager = Service.builder()
+      .setName("nodemanager")
+      .setDependencies(ServiceDependencies.runtimeRequires("hosts", "resourcemanager", "datanode"))
+      .setProvisionerActions(ImmutableMap.<ProvisionerAction, ServiceAction>of(
+        ProvisionerAction.INSTALL, CHEF_ACTION,
+        ProvisionerAction.CONFIGURE, CHEF_ACTION,
+        ProvisionerAction.START, CHEF_ACTION,
+        ProvisionerAction.STOP, CHEF_ACTION))
+      .build();
+    Set<Service> masterServices = ImmutableSet.of(Entities.ServiceExample.HOSTS, Entities.ServiceExample.NAMENODE,
+                                                  resourceManager);
+    Set<Service> slaveServices = ImmutableSet.of(Entities.ServiceExample.HOSTS, Entities.ServiceExample.DATANODE,
+                                                 nodeManager);
+
+    for (int numNodes : new int[] { 50, 500, 5000 }) {
+      Set<Node> clusterNodes = Sets.newHashSet();
+      for (int i = 0; i < numNodes; i++) {
+        clusterNodes.add(new Node("node" + i, "1", i == 0 ? masterServices : slaveServices,
+                                  NodeProperties.builder().setHostname("host" + i).build()));
+      }
+      ClusterJob job = new ClusterJob(JobId.fromString("123-001"), ClusterAction.CLUSTER_CREATE, null, null);
+
+      long start = System.nanoTime();
+      List<Set<TaskNode>> linearizedTasks = new JobPlanner(job, clusterNodes).linearizeDependentTasks();
+      long planMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      int numTasks = 0;
+      Set<TaskNode> plannedTasks = Sets.newHashSet();
+      for (Set<TaskNode> stage : linearizedTasks) {
+        numTasks += stage.size();
+        plannedTasks.addAll(stage);
+      }
+      // every task is planned exactly once
+      Assert.assertEquals(plannedTasks.size(), numTasks);
+      System.out.println("Planned cluster create of " + numNodes + " nodes in " + planMs + " ms: " + numTasks +
+                           " tasks in " + linearizedTasks.size() + " stages");
+    }
+  }
+
   private ClusterTask createClusterTask(String name, String taskId, String hostId) {
     return new ClusterTask(
       ProvisionerAction.valueOf(name), TaskId.fromString(taskId), hostId, "service", ClusterAction.CLUSTER_CREATE,
@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.Entities;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.http.ServiceTestBase;
+import co.cask.coopr.provisioner.mock.MockWorker;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.TreeMultimap;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many cluster jobs the {@link Scheduler} gets through when many tenants create clusters at the same
+ * time, with one tenant creating a much bigger cluster than the others. Tasks are run by mock workers.
+ */
+public class JobSchedulerThroughputTest extends ServiceTestBase {
+  private static final int NUM_TENANTS = 10;
+  private static final int WORKERS_PER_TENANT = 2;
+  private static final int NODES_PER_CLUSTER = 2;
+  private static final int NODES_IN_BIG_CLUSTER = 20;
+  private static final int JOB_SCHEDULER_THREADS = 4;
+  private int jobSchedulerThreads;
+  private Scheduler scheduler;
+  private ScheduledExecutorService workerExecutor;
+  private List<CloseableHttpClient> httpClients;
+  private List<MockWorker> workers;
+
+  @Before
+  public void beforeTest() throws Exception {
+    jobSchedulerThreads = conf.getInt(Constants.JOB_SCHEDULER_NUM_THREADS);
+    conf.setInt(Constants.JOB_SCHEDULER_NUM_THREADS, JOB_SCHEDULER_THREADS);
+    scheduler = injector.getInstance(Scheduler.class);
+    scheduler.startAndWait();
+
+    workerExecutor = Executors.newScheduledThreadPool(NUM_TENANTS * WORKERS_PER_TENANT);
+    httpClients = Lists.newArrayList();
+    workers = Lists.newArrayList();
+    for (int i = 0; i < NUM_TENANTS; i++) {
+      for (int j = 0; j < WORKERS_PER_TENANT; j++) {
+        CloseableHttpClient httpClient = HttpClients.createDefault();
+        httpClients.add(httpClient);
+        MockWorker worker = new MockWorker(PROVISIONER_ID, "worker" + i + "." + j, getTenantId(i),
+                                           getBaseUrlInternalAPI(), workerExecutor, 0, 10, 0, httpClient);
+        worker.startAndWait();
+        workers.add(worker);
+      }
+    }
+  }
+
+  @After
+  public void cleanupTest() throws Exception {
+    for (MockWorker worker : workers) {
+      worker.stopAndWait();
+    }
+    workerExecutor.shutdownNow();
+    workerExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    for (CloseableHttpClient httpClient : httpClients) {
+      httpClient.close();
+    }
+    scheduler.stopAndWait();
+    conf.setInt(Constants.JOB_SCHEDULER_NUM_THREADS, jobSchedulerThreads);
+    jobQueues.removeAll();
+    clusterQueues.removeAll();
+    solverQueues.removeAll();
+    provisionerQueues.removeAll();
+    callbackQueues.removeAll();
+    mockClusterCallback.clear();
+  }
+
+  @Test(timeout = 120000)
+  public void testJobThroughputAcrossTenants() throws Exception {
+    Map<JobId, String> jobTenants = Maps.newHashMap();
+    for (int i = 0; i < NUM_TENANTS; i++) {
+      Cluster cluster = createCluster(String.valueOf(100 + i), getTenantId(i),
+                                      i == 0 ? NODES_IN_BIG_CLUSTER : NODES_PER_CLUSTER);
+      jobTenants.put(JobId.fromString(cluster.getLatestJobId()), getTenantId(i));
+    }
+
+    long start = System.currentTimeMillis();
+    for (JobId jobId : jobTenants.keySet()) {
+      clusterQueues.add(jobTenants.get(jobId), new Element(jobId.getClusterId(), ClusterAction.CLUSTER_CREATE.name()));
+    }
+
+    Map<String, Long> tenantTimes = Maps.newTreeMap();
+    Map<String, ClusterJob> tenantJobs = Maps.newHashMap();
+    Set<JobId> running = Sets.newHashSet(jobTenants.keySet());
+    while (!running.isEmpty()) {
+      TimeUnit.MILLISECONDS.sleep(20);
+      for (JobId jobId : ImmutableSet.copyOf(running)) {
+        ClusterJob job = clusterStore.getClusterJob(jobId);
+        Assert.assertNotEquals(ClusterJob.Status.FAILED, job.getJobStatus());
+        if (job.getJobStatus() == ClusterJob.Status.COMPLETE) {
+          tenantTimes.put(jobTenants.get(jobId), System.currentTimeMillis() - start);
+          tenantJobs.put(jobTenants.get(jobId), job);
+          running.remove(jobId);
+        }
+      }
+    }
+    long totalMs = System.currentTimeMillis() - start;
+
+    System.out.println("Completed " + jobTenants.size() + " cluster jobs in " + totalMs + " ms, " +
+                         (jobTenants.size() * 1000.0 / totalMs) + " jobs/sec");
+    System.out.println("Time to complete per tenant (ms): " + tenantTimes);
+    // the small clusters should not have to wait for the big one, but run alongside it
+    long bigClusterTime = tenantTimes.get(getTenantId(0));
+    long[] bigJobSpan = getJobSpan(tenantJobs.get(getTenantId(0)));
+    for (int i = 1; i < NUM_TENANTS; i++) {
+      Assert.assertTrue(tenantTimes.get(getTenantId(i)) <= bigClusterTime);
+      long[] jobSpan = getJobSpan(tenantJobs.get(getTenantId(i)));
+      Assert.assertTrue("job of " + getTenantId(i) + " did not overlap with the big job",
+                        jobSpan[0] < bigJobSpan[1] && bigJobSpan[0] < jobSpan[1]);
+    }
+    // jobs of more tenants than there are job scheduler threads were in progress at the same time
+    Assert.assertTrue(getMaxJobsInProgress(tenantJobs.values()) > JOB_SCHEDULER_THREADS);
+  }
+
+  // time the first task of the job was submitted and time the last task of the job completed
+  private long[] getJobSpan(ClusterJob job) throws Exception {
+    long[] span = { Long.MAX_VALUE, 0 };
+    for (Set<String> stage : job.getStagedTasks()) {
+      for (ClusterTask task : clusterStore.getClusterTasks(stage).values()) {
+        span[0] = Math.min(span[0], task.getSubmitTime());
+        span[1] = Math.max(span[1], task.getStatusTime());
+      }
+    }
+    return span;
+  }
+
+  private int getMaxJobsInProgress(Collection<ClusterJob> jobs) throws Exception {
+    // +1 when a job starts and -1 when it ends, ordered by time with ends before starts at the same time
+    TreeMultimap<Long, Integer> changes = TreeMultimap.create();
+    for (ClusterJob job : jobs) {
+      long[] span = getJobSpan(job);
+      changes.put(span[0], 1);
+      changes.put(span[1], -1);
+    }
+    int inProgress = 0;
+    int maxInProgress = 0;
+    for (int change : changes.values()) {
+      inProgress += change;
+      maxInProgress = Math.max(maxInProgress, inProgress);
+    }
+    return maxInProgress;
+  }
+
+  private Cluster createCluster(String clusterId, String tenantId, int numNodes) throws Exception {
+    Set<String> nodeIds = Sets.newHashSet();
+    for (int i = 0; i < numNodes; i++) {
+      String nodeId = "node" + i + ".cluster" + clusterId;
+      // one master, and slaves for the rest
+      Set<Service> services = i == 0 ?
+        ImmutableSet.of(Entities.ServiceExample.NAMENODE, Entities.ServiceExample.HOSTS) :
+        ImmutableSet.of(Entities.ServiceExample.DATANODE, Entities.ServiceExample.HOSTS);
+      clusterStore.writeNode(new Node(nodeId, clusterId, services,
+                                      NodeProperties.builder()
+                                        .setHardwaretype(Entities.HardwareTypeExample.LARGE.getName())
+                                        .setImagetype(Entities.ImageTypeExample.CENTOS_6.getName()).build()));
+      nodeIds.add(nodeId);
+    }
+    Cluster cluster = Cluster.builder()
+      .setID(clusterId)
+      .setAccount(new Account(USER1, tenantId))
+      .setName("cluster" + clusterId)
+      .setCreateTime(System.currentTimeMillis())
+      .setProvider(Entities.ProviderExample.RACKSPACE)
+      .setClusterTemplate(Entities.ClusterTemplateExample.HDFS)
+      .setNodes(nodeIds)
+      .setServices(ImmutableSet.of(
+        Entities.ServiceExample.NAMENODE.getName(),
+        Entities.ServiceExample.DATANODE.getName(),
+        Entities.ServiceExample.HOSTS.getName()
+      ))
+      .build();
+    ClusterJob job = new ClusterJob(new JobId(clusterId, 0), ClusterAction.CLUSTER_CREATE);
+    cluster.setLatestJobId(job.getJobId());
+    clusterStoreService.getView(cluster.getAccount()).writeCluster(cluster);
+    clusterStore.writeClusterJob(job);
+    return cluster;
+  }
+
+  private String getTenantId(int i) {
+    return "tenant" + i;
+  }
+}
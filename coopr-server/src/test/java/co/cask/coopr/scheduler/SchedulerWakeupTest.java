@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.Entities;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.http.ServiceTestBase;
+import co.cask.coopr.provisioner.mock.MockWorker;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import com.google.common.collect.Lists;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that the {@link Scheduler} moves jobs along as soon as elements are added to queues, instead of waiting for
+ * its periodic runs, and measures the time between the stages of a job whose tasks are run by a mock worker.
+ */
+public class SchedulerWakeupTest extends ServiceTestBase {
+  // long enough that the job could not finish within the test timeout if it only moved on periodic runs
+  private static final int RUN_INTERVAL_SECS = 600;
+  private Cluster cluster;
+  private Scheduler scheduler;
+  private ScheduledExecutorService workerExecutor;
+  private CloseableHttpClient httpClient;
+  private MockWorker worker;
+
+  @Before
+  public void beforeTest() throws Exception {
+    cluster = Entities.ClusterExample.createCluster();
+    ClusterJob job = new ClusterJob(new JobId(cluster.getId(), 0), ClusterAction.CLUSTER_CREATE);
+    cluster.setLatestJobId(job.getJobId());
+    clusterStoreService.getView(cluster.getAccount()).writeCluster(cluster);
+    clusterStore.writeClusterJob(job);
+    clusterStore.writeNode(Entities.ClusterExample.NODE1);
+    clusterStore.writeNode(Entities.ClusterExample.NODE2);
+
+    int runInterval = conf.getInt(Constants.SCHEDULER_INTERVAL_SECS);
+    conf.setInt(Constants.SCHEDULER_INTERVAL_SECS, RUN_INTERVAL_SECS);
+    try {
+      scheduler = injector.getInstance(Scheduler.class);
+    } finally {
+      conf.setInt(Constants.SCHEDULER_INTERVAL_SECS, runInterval);
+    }
+    scheduler.startAndWait();
+
+    workerExecutor = Executors.newSingleThreadScheduledExecutor();
+    httpClient = HttpClients.createDefault();
+    worker = new MockWorker(PROVISIONER_ID, "worker1", cluster.getAccount().getTenantId(), getBaseUrlInternalAPI(),
+                            workerExecutor, 0, 10, 0, httpClient);
+    worker.startAndWait();
+  }
+
+  @After
+  public void cleanupTest() throws Exception {
+    worker.stopAndWait();
+    workerExecutor.shutdownNow();
+    httpClient.close();
+    scheduler.stopAndWait();
+    jobQueues.removeAll();
+    clusterQueues.removeAll();
+    solverQueues.removeAll();
+    provisionerQueues.removeAll();
+    callbackQueues.removeAll();
+    mockClusterCallback.clear();
+  }
+
+  @Test(timeout = 60000)
+  public void testStagesStartWithoutWaitingForRunInterval() throws Exception {
+    clusterQueues.add(cluster.getAccount().getTenantId(),
+                      new Element(cluster.getId(), ClusterAction.CLUSTER_CREATE.name()));
+
+    JobId jobId = JobId.fromString(cluster.getLatestJobId());
+    ClusterJob job = clusterStore.getClusterJob(jobId);
+    while (job.getJobStatus() != ClusterJob.Status.COMPLETE) {
+      Assert.assertNotEquals(ClusterJob.Status.FAILED, job.getJobStatus());
+      TimeUnit.MILLISECONDS.sleep(20);
+      job = clusterStore.getClusterJob(jobId);
+    }
+
+    // gap between a stage is the time between the last task of the previous stage finishing,
+    // and the first task of the stage being submitted
+    List<Long> gaps = Lists.newArrayList();
+    long previousStageEnd = -1;
+    for (Set<String> stage : job.getStagedTasks()) {
+      long stageStart = Long.MAX_VALUE;
+      long stageEnd = 0;
+      for (ClusterTask task : clusterStore.getClusterTasks(stage).values()) {
+        stageStart = Math.min(stageStart, task.getSubmitTime());
+        stageEnd = Math.max(stageEnd, task.getStatusTime());
+      }
+      if (previousStageEnd >= 0) {
+        gaps.add(stageStart - previousStageEnd);
+      }
+      previousStageEnd = stageEnd;
+    }
+
+    Assert.assertTrue(Collections.max(gaps) < TimeUnit.SECONDS.toMillis(RUN_INTERVAL_SECS));
+  }
+}
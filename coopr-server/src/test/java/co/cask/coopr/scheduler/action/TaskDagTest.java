@@ -147,4 +147,37 @@ public class TaskDagTest {
     //noinspection AssertEqualsBetweenInconvertibleTypes
     Assert.assertEquals(expected, actual);
   }
+
+  @Test
+  public void testBarrier() {
+    List<TaskNode> namenodes = ImmutableList.of(new TaskNode("1", "start", "namenode"),
+                                                new TaskNode("2", "start", "namenode"));
+    TaskDag withBarrier = new TaskDag();
+    TaskDag withoutBarrier = new TaskDag();
+    for (String host : ImmutableList.of("1", "2", "3")) {
+      for (TaskDag taskDag : ImmutableList.of(withBarrier, withoutBarrier)) {
+        taskDag.addDependency(new TaskNode(host, "install", "datanode"), new TaskNode(host, "start", "datanode"));
+      }
+      for (TaskNode namenode : namenodes) {
+        withoutBarrier.addDependency(namenode, new TaskNode(host, "start", "datanode"));
+      }
+      withBarrier.addBarrierDependency("namenode/start", namenodes, new TaskNode(host, "start", "datanode"));
+    }
+
+    Assert.assertEquals(withoutBarrier, withBarrier);
+    Assert.assertEquals(ImmutableSet.of(namenodes.get(0), namenodes.get(1), new TaskNode("3", "install", "datanode")),
+                        withBarrier.getDependencies(new TaskNode("3", "start", "datanode")));
+
+    // the barrier does not take up a stage
+    List<ImmutableSet<TaskNode>> expected =
+      ImmutableList.of(
+        ImmutableSet.of(new TaskNode("1", "install", "datanode"), new TaskNode("2", "install", "datanode"),
+                        new TaskNode("3", "install", "datanode"), namenodes.get(0), namenodes.get(1)),
+        ImmutableSet.of(new TaskNode("1", "start", "datanode"), new TaskNode("2", "start", "datanode"),
+                        new TaskNode("3", "start", "datanode"))
+      );
+    //noinspection AssertEqualsBetweenInconvertibleTypes
+    Assert.assertEquals(expected, withBarrier.linearize());
+    Assert.assertEquals(withoutBarrier.linearize(), withBarrier.linearize());
+  }
 }
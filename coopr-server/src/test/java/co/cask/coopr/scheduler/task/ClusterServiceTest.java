@@ -159,6 +159,34 @@ public class ClusterServiceTest extends BaseTest {
     Assert.assertEquals(expectedSensitiveFields, credentialStore.get(account.getTenantId(), clusterId));
   }
 
+  @Test
+  public void testClusterCreatesKeepTheirOwnProviderFields() throws Exception {
+    ClusterCreateRequest createRequest1 = ClusterCreateRequest.builder()
+      .setName("clusty1")
+      .setClusterTemplateName(basicTemplate.getName())
+      .setNumMachines(1)
+      .setProviderFields(ImmutableMap.<String, Object>of("keyname", "name1", "key", "keycontents", "region", "dfw"))
+      .build();
+    ClusterCreateRequest createRequest2 = ClusterCreateRequest.builder()
+      .setName("clusty2")
+      .setClusterTemplateName(basicTemplate.getName())
+      .setNumMachines(1)
+      .setProviderFields(ImmutableMap.<String, Object>of("keyname", "name2", "key", "keycontents"))
+      .build();
+    String clusterId1 = clusterService.requestClusterCreate(createRequest1, account);
+    String clusterId2 = clusterService.requestClusterCreate(createRequest2, account);
+
+    Assert.assertEquals(
+      ImmutableMap.<String, Object>of("keyname", "name1", "region", "dfw", "url", "http://abc.com/api"),
+      clusterStore.getCluster(clusterId1).getProvider().getProvisionerFields());
+    Assert.assertEquals(
+      ImmutableMap.<String, Object>of("keyname", "name2", "region", "iad", "url", "http://abc.com/api"),
+      clusterStore.getCluster(clusterId2).getProvider().getProvisionerFields());
+    // the provider itself is left as it was written
+    Assert.assertEquals(provider.getProvisionerFields(),
+                        entityStoreService.getView(account).getProvider(provider.getName()).getProvisionerFields());
+  }
+
   @Test(expected = MissingEntityException.class)
   public void testInvalidProviderClusterCreate() throws Exception {
     String name = "clusty";
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler.task;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.TestHelper;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.spec.service.Service;
+import co.cask.coopr.spec.service.ServiceAction;
+import co.cask.coopr.store.DBQueryExecutor;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Set;
+
+/**
+ * Compares the bytes serialized for a task when only the changed action of a node is written, and when the whole node
+ * is written every time its actions change, and checks that the bytes for the action do not grow with the history of
+ * the node. The node has many services and big provisioner results, and is measured with histories of actions of
+ * different lengths, as those are what the size of the whole node depends on. That the store only writes the action
+ * is tested in {@link NodeServiceTest}.
+ */
+@Category(BenchmarkTests.class)
+public class NodeActionWriteBytesTest extends BaseTest {
+  private static final int NUM_SERVICES = 30;
+  private static final int[] NUM_PAST_ACTIONS = { 0, 50, 200 };
+
+  @Test
+  public void testWriteBytesPerTask() throws Exception {
+    DBQueryExecutor dbQueryExecutor = injector.getInstance(DBQueryExecutor.class);
+    Long actionBytesPerTask = null;
+    for (int numPastActions : NUM_PAST_ACTIONS) {
+      Node node = createNode(numPastActions);
+      Node.Action action = new Node.Action("00000001-001-100", "service0", "INSTALL");
+      // key columns written along with the action
+      int actionKeyBytes = node.getId().length() + action.getTaskId().length() + 8;
+
+      // once when the task is started, and once when it is finished
+      node.addAction(action);
+      long nodeBytes = dbQueryExecutor.toBytes(node, Node.class).length;
+      long actionBytes = dbQueryExecutor.toBytes(action, Node.Action.class).length + actionKeyBytes;
+      action.setStatus(Node.Status.COMPLETE);
+      action.setStatusTime(System.currentTimeMillis());
+      nodeBytes += dbQueryExecutor.toBytes(node, Node.class).length;
+      actionBytes += dbQueryExecutor.toBytes(action, Node.Action.class).length + actionKeyBytes;
+
+      System.out.println(numPastActions + " past actions: " + nodeBytes + " bytes per task writing the node, " +
+                           actionBytes + " bytes per task writing the action");
+      Assert.assertTrue(actionBytes < nodeBytes);
+      if (actionBytesPerTask == null) {
+        actionBytesPerTask = actionBytes;
+      }
+      Assert.assertEquals((long) actionBytesPerTask, actionBytes);
+    }
+  }
+
+  private Node createNode(int numPastActions) {
+    Set<Service> services = Sets.newHashSet();
+    for (int i = 0; i < NUM_SERVICES; i++) {
+      services.add(Service.builder()
+                     .setName("service" + i)
+                     .setDescription("Service number " + i)
+                     .setProvisionerActions(ImmutableMap.<ProvisionerAction, ServiceAction>of(
+                       ProvisionerAction.INSTALL,
+                       new ServiceAction("chef-solo", TestHelper.actionMapOf("recipe[service" + i + "::install]",
+                                                                             null)),
+                       ProvisionerAction.CONFIGURE,
+                       new ServiceAction("chef-solo", TestHelper.actionMapOf("recipe[service" + i + "::config]",
+                                                                             null))))
+                     .build());
+    }
+    JsonObject results = new JsonObject();
+    results.addProperty("ssh-host-key", Strings.repeat("k", 2048));
+    Node node = new Node("node1", "00000001", services, TestHelper.EMPTY_NODE_PROPERTIES);
+    node.addResults(results);
+    for (int i = 0; i < numPastActions; i++) {
+      Node.Action action = new Node.Action("00000001-001-" + i, "service" + (i % NUM_SERVICES), "CONFIGURE");
+      action.setStatus(Node.Status.COMPLETE);
+      action.setStatusTime(System.currentTimeMillis());
+      node.addAction(action);
+    }
+    return node;
+  }
+}
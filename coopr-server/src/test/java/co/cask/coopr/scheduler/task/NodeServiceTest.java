@@ -20,6 +20,7 @@ import co.cask.coopr.cluster.Node;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.http.ServiceTestBase;
 import co.cask.coopr.spec.service.Service;
+import co.cask.coopr.store.DBConnectionPool;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -27,6 +28,11 @@ import com.google.common.collect.Lists;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 /**
  * Test NodeService
  */
@@ -85,6 +91,33 @@ public class NodeServiceTest extends ServiceTestBase {
                         })));
   }
 
+  @Test
+  public void testActionsAreWrittenWithoutNode() throws Exception {
+    conf.setInt(Constants.MAX_PER_NODE_NUM_ACTIONS, 100);
+    conf.setInt(Constants.MAX_PER_NODE_LOG_LENGTH, 100);
+    NodeService nodeService = injector.getInstance(NodeService.class);
+
+    Node node = new Node("node-with-history", "1", ImmutableSet.<Service>of(), TestHelper.EMPTY_NODE_PROPERTIES);
+    for (int i = 0; i < 10; i++) {
+      nodeService.startAction(node, "1-1-" + i, "service" + i, "CONFIGURE");
+      nodeService.completeAction(node);
+    }
+    clusterStore.writeNode(node);
+    byte[] nodeBytes = getStoredNode(node.getId());
+
+    // starting and finishing an action on a node read from the store only writes the action
+    node = clusterStore.getNode(node.getId());
+    nodeService.startAction(node, "1-1-10", "service10", "INSTALL");
+    Assert.assertEquals(Node.Status.IN_PROGRESS, getLastAction(clusterStore.getNode(node.getId())).getStatus());
+    nodeService.completeAction(node);
+    Assert.assertArrayEquals(nodeBytes, getStoredNode(node.getId()));
+
+    Node read = clusterStore.getNode(node.getId());
+    Assert.assertEquals(11, read.getActions().size());
+    Assert.assertEquals("INSTALL", getLastAction(read).getAction());
+    Assert.assertEquals(Node.Status.COMPLETE, getLastAction(read).getStatus());
+  }
+
   @Test
   public void testTruncateLog1() throws Exception {
     conf.setInt(Constants.MAX_PER_NODE_NUM_ACTIONS, 3);
@@ -126,4 +159,30 @@ public class NodeServiceTest extends ServiceTestBase {
     Assert.assertEquals("[snipped]ing \nwith newlines", NodeService.truncateLog(newLineString, 18));
     Assert.assertEquals("[snipped]is a string \nwith newlines", NodeService.truncateLog(newLineString, 26));
   }
+
+  private Node.Action getLastAction(Node node) {
+    return Iterables.getLast(node.getActions());
+  }
+
+  // the node as kept in the store, without its actions
+  private byte[] getStoredNode(String nodeId) throws SQLException {
+    Connection conn = injector.getInstance(DBConnectionPool.class).getConnection();
+    try {
+      PreparedStatement statement = conn.prepareStatement("SELECT node FROM nodes WHERE id=?");
+      try {
+        statement.setString(1, nodeId);
+        ResultSet rs = statement.executeQuery();
+        try {
+          Assert.assertTrue(rs.next());
+          return rs.getBytes(1);
+        } finally {
+          rs.close();
+        }
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
 }
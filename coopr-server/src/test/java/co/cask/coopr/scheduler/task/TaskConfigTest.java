@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler.task;
+
+import co.cask.coopr.Entities;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.spec.ProvisionerAction;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests for creating task configs.
+ */
+public class TaskConfigTest {
+  private static final List<Node> CLUSTER_NODES =
+    ImmutableList.of(Entities.ClusterExample.NODE1, Entities.ClusterExample.NODE2);
+
+  @Test
+  public void testServiceActionIncludesClusterNodes() {
+    Cluster cluster = Entities.ClusterExample.createCluster();
+    TaskConfig config = TaskConfig.from(cluster, Entities.ClusterExample.NODE1, Entities.ServiceExample.NAMENODE,
+                                        cluster.getConfig(), ProvisionerAction.START, CLUSTER_NODES);
+
+    Assert.assertEquals(Entities.ServiceExample.NAMENODE.getName(), config.getTaskServiceAction().getName());
+    Assert.assertEquals(ImmutableSet.of(Entities.ClusterExample.NODE1.getId(), Entities.ClusterExample.NODE2.getId()),
+                        config.getNodes().keySet());
+  }
+
+  @Test
+  public void testNodeActionOnlyIncludesItsNode() {
+    Cluster cluster = Entities.ClusterExample.createCluster();
+    TaskConfig config = TaskConfig.from(cluster, Entities.ClusterExample.NODE1, null,
+                                        cluster.getConfig(), ProvisionerAction.BOOTSTRAP, CLUSTER_NODES);
+
+    Assert.assertNull(config.getTaskServiceAction());
+    Assert.assertTrue(config.getNodes().isEmpty());
+    Assert.assertEquals(Entities.ClusterExample.NODE1.getProperties(), config.getNodeProperties());
+  }
+}
@@ -22,9 +22,14 @@ import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.QueueGroup;
 import co.cask.coopr.common.queue.QueueMetrics;
 import co.cask.coopr.common.queue.QueueType;
+import co.cask.coopr.http.request.TakeTaskRequest;
+import co.cask.coopr.provisioner.Provisioner;
+import co.cask.coopr.provisioner.TenantProvisionerService;
 import co.cask.coopr.spec.Tenant;
 import co.cask.coopr.spec.TenantSpecification;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -39,11 +44,13 @@ import java.util.Map;
 public class TaskQueueServiceTest extends BaseTest {
   private static TaskQueueService service;
   private static QueueGroup provisionerQueues;
+  private static TenantProvisionerService tenantProvisionerService;
 
   @BeforeClass
   public static void setupTestClass() {
     service = injector.getInstance(TaskQueueService.class);
     provisionerQueues = queueService.getQueueGroup(QueueType.PROVISIONER);
+    tenantProvisionerService = injector.getInstance(TenantProvisionerService.class);
   }
 
   @After
@@ -82,4 +89,25 @@ public class TaskQueueServiceTest extends BaseTest {
     Assert.assertEquals(new QueueMetrics(0, 0), service.getTaskQueueMetricsSnapshot("non-id"));
     Assert.assertEquals(expected, service.getTaskQueueMetricsSnapshot());
   }
+
+  @Test(timeout = 20000)
+  public void testGivenUpTakeDoesNotTakeTask() throws Exception {
+    tenantProvisionerService.writeProvisioner(new Provisioner("p1", "host", 12345, 100, null, null));
+    try {
+      ListenableFuture<String> take =
+        service.waitForNextClusterTask(new TakeTaskRequest("worker1", "p1", "tenant1", 60000L));
+      waitForPendingTakes();
+      take.cancel(false);
+      provisionerQueues.add("tenant1", new Element("task1")).get();
+      waitForPendingTakes();
+      Assert.assertEquals(1, Iterators.size(provisionerQueues.getQueued("tenant1")));
+    } finally {
+      tenantProvisionerService.deleteProvisioner("p1");
+    }
+  }
+
+  // pending takes are handled one after the other, so once a new take is over, all earlier ones have been handled
+  private void waitForPendingTakes() throws Exception {
+    Assert.assertNull(service.waitForNextClusterTask(new TakeTaskRequest("worker2", "p1", "tenant2", 1L)).get());
+  }
 }
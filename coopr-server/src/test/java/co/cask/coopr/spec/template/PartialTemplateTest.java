@@ -213,6 +213,44 @@ public class PartialTemplateTest extends BaseTest {
                         rt.getDescription());
   }
 
+  @Test
+  public void test_06_resolveTemplateByNameReturnsCopies() throws Exception {
+    ClusterTemplate secure = clusterService.resolveTemplate(account, secureTemplate.getName());
+    ClusterTemplate secureAgain = clusterService.resolveTemplate(account, secureTemplate.getName());
+    Assert.assertNotSame(secure, secureAgain);
+    Assert.assertEquals(secure, secureAgain);
+
+    // changes to a resolved template are not seen by later callers
+    secure.getClusterDefaults().getConfig().addProperty("changed", true);
+    ClusterTemplate resolved = clusterService.resolveTemplate(account, secureTemplate.getName());
+    Assert.assertFalse(resolved.getClusterDefaults().getConfig().has("changed"));
+    Assert.assertEquals(secureAgain, resolved);
+
+    // a new version of a partial is picked up by the templates that include it
+    entityStoreView.writePartialTemplate(ldapPartial);
+    Assert.assertEquals(secureAgain, clusterService.resolveTemplate(account, secureTemplate.getName()));
+  }
+
+  @Test
+  public void test_06_resolveDeletedTemplateByName() throws Exception {
+    ClusterTemplate template = ClusterTemplate.builder()
+      .setName("deleted")
+      .setClusterDefaults(distributedTemplate.getClusterDefaults())
+      .setCompatibilities(distributedTemplate.getCompatibilities())
+      .build();
+    entityStoreView.writeClusterTemplate(template);
+    clusterService.resolveTemplate(account, template.getName());
+
+    // deleted directly through the store, as it would be through another server
+    entityStoreView.deleteClusterTemplate(template.getName());
+    try {
+      clusterService.resolveTemplate(account, template.getName());
+      Assert.fail();
+    } catch (TemplateNotFoundException e) {
+      // expected
+    }
+  }
+
   @Test
   public void test_07_not_persisted_resolveTemplate() throws Exception {
     InputStream notPersistedIn = classLoader.getResourceAsStream("partials/cdap-not-persisted.json");
@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.BenchmarkTests;
+import co.cask.coopr.Entities;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.codec.json.guice.CodecModules;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.scheduler.ClusterAction;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.inject.Guice;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.lang.reflect.Type;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.sql.rowset.serial.SerialBlob;
+
+/**
+ * Tests for serialization of blobs in the different blob formats.
+ */
+public class DBQueryExecutorTest {
+  private static final List<String> FORMATS = ImmutableList.of("json", "binary", "deflate");
+  private static final int BENCHMARK_ITERATIONS = 20;
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    ClusterTask task = new ClusterTask(ProvisionerAction.INSTALL, TaskId.fromString("2-1-1"), "node1", "datanode",
+                                       ClusterAction.CLUSTER_CREATE, "hdfs", new Account("user1", "tenant1"));
+    task.setStatusTime(1234567890123L);
+    for (String format : FORMATS) {
+      DBQueryExecutor executor = createExecutor(format);
+      assertRoundTrip(executor, Entities.ClusterExample.NODE1, Node.class);
+      assertRoundTrip(executor, Entities.ClusterExample.createCluster(), Cluster.class);
+      assertRoundTrip(executor, createJob(100), ClusterJob.class);
+      assertRoundTrip(executor, task, ClusterTask.class);
+      Assert.assertNull(executor.deserializeBlob(null, Node.class));
+    }
+  }
+
+  @Test
+  public void testReadsAllFormats() throws Exception {
+    Node node = Entities.ClusterExample.NODE1;
+    for (String writeFormat : FORMATS) {
+      byte[] bytes = createExecutor(writeFormat).toBytes(node, Node.class);
+      for (String readFormat : FORMATS) {
+        Assert.assertEquals(node, createExecutor(readFormat).deserializeBlob(new SerialBlob(bytes), Node.class));
+      }
+    }
+    // rows written before there were other formats are plain json
+    Gson gson = Guice.createInjector(new CodecModules().getModule()).getInstance(Gson.class);
+    byte[] legacyBytes = gson.toJson(node).getBytes(Charsets.UTF_8);
+    Assert.assertEquals(node, createExecutor("binary").deserializeBlob(new SerialBlob(legacyBytes), Node.class));
+  }
+
+  @Test(expected = SQLException.class)
+  public void testTruncatedBlob() throws Exception {
+    DBQueryExecutor executor = createExecutor("binary");
+    byte[] bytes = executor.toBytes(Entities.ClusterExample.NODE1, Node.class);
+    byte[] truncated = new byte[bytes.length / 2];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    executor.deserializeBlob(new SerialBlob(truncated), Node.class);
+  }
+
+  @Test
+  @Category(BenchmarkTests.class)
+  public void testFormatSizesAndSpeed() throws Exception {
+    ClusterJob job = createJob(1000);
+    for (String format : FORMATS) {
+      DBQueryExecutor executor = createExecutor(format);
+      benchmark(executor, format, job, ClusterJob.class);
+      benchmark(executor, format, Entities.ClusterExample.NODE1, Node.class);
+    }
+  }
+
+  private <T> void benchmark(DBQueryExecutor executor, String format, T object, Class<T> clazz) throws Exception {
+    // warm up
+    byte[] bytes = executor.toBytes(object, clazz);
+    executor.deserializeBlob(new SerialBlob(bytes), clazz);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+      bytes = executor.toBytes(object, clazz);
+    }
+    long encodeMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / BENCHMARK_ITERATIONS;
+    start = System.nanoTime();
+    for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+      Assert.assertEquals(object, executor.deserializeBlob(new SerialBlob(bytes), clazz));
+    }
+    long decodeMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / BENCHMARK_ITERATIONS;
+    System.out.println(clazz.getSimpleName() + " in " + format + ": " + bytes.length + " bytes, encode " +
+                         encodeMicros + " us, decode " + decodeMicros + " us");
+  }
+
+  private <T> void assertRoundTrip(DBQueryExecutor executor, T object, Type type) throws SQLException {
+    byte[] bytes = executor.toBytes(object, type);
+    @SuppressWarnings("unchecked")
+    Class<T> clazz = (Class<T>) object.getClass();
+    Assert.assertEquals(object, executor.deserializeBlob(new SerialBlob(bytes), clazz));
+  }
+
+  // a cluster create job with a stage per provisioner action, and a task per node in every stage
+  private ClusterJob createJob(int numNodes) {
+    JobId jobId = new JobId("2", 1);
+    Set<String> nodes = Sets.newHashSet();
+    for (int i = 0; i < numNodes; i++) {
+      nodes.add("node" + i + ".cluster2.example.com");
+    }
+    ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE,
+                                    Sets.newHashSet("hosts", "namenode", "datanode"), nodes);
+    int taskNum = 0;
+    for (ProvisionerAction action : ImmutableList.of(ProvisionerAction.CREATE, ProvisionerAction.CONFIRM,
+                                                     ProvisionerAction.BOOTSTRAP, ProvisionerAction.INSTALL,
+                                                     ProvisionerAction.CONFIGURE, ProvisionerAction.START)) {
+      Set<String> stage = Sets.newHashSet();
+      for (int i = 0; i < numNodes; i++) {
+        String taskId = new TaskId(jobId, taskNum++).getId();
+        stage.add(taskId);
+        job.setTaskStatus(taskId, action == ProvisionerAction.START ?
+          ClusterTask.Status.NOT_SUBMITTED : ClusterTask.Status.COMPLETE);
+      }
+      job.addStage(stage);
+    }
+    job.setJobStatus(ClusterJob.Status.RUNNING);
+    return job;
+  }
+
+  private DBQueryExecutor createExecutor(String format) {
+    Configuration conf = BaseTest.createTestConf();
+    conf.set(Constants.DB_BLOB_FORMAT, format);
+    return Guice.createInjector(
+      new ConfigurationModule(conf),
+      new CodecModules().getModule()
+    ).getInstance(DBQueryExecutor.class);
+  }
+}
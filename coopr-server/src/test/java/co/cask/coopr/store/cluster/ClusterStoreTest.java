@@ -15,6 +15,7 @@
  */
 package co.cask.coopr.store.cluster;
 
+import co.cask.coopr.BenchmarkTests;
 import co.cask.coopr.Entities;
 import co.cask.coopr.account.Account;
 import co.cask.coopr.cluster.Cluster;
@@ -27,14 +28,19 @@ import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.spec.ProvisionerAction;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -186,6 +192,145 @@ public abstract class ClusterStoreTest {
     Assert.assertNull(systemView.getClusterTask(id));
   }
 
+  @Test
+  public void testGetClusterTasksByIds() throws IOException {
+    JobId jobId1 = new JobId("1", 1);
+    JobId jobId2 = new JobId("1", 2);
+    List<String> taskIds = Lists.newArrayList();
+    for (int i = 1; i <= 5; i++) {
+      for (JobId jobId : ImmutableList.of(jobId1, jobId2)) {
+        ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, new TaskId(jobId, i),
+                                           "node" + i, "service", ClusterAction.CLUSTER_CREATE,
+                                           "test", new Account("testUser", "testTenant"));
+        systemView.writeClusterTask(task);
+        taskIds.add(task.getTaskId());
+      }
+    }
+
+    Map<String, ClusterTask> tasks = systemView.getClusterTasks(taskIds);
+    Assert.assertEquals(ImmutableSet.copyOf(taskIds), tasks.keySet());
+    for (String taskId : taskIds) {
+      Assert.assertEquals(systemView.getClusterTask(TaskId.fromString(taskId)), tasks.get(taskId));
+    }
+
+    // ids that don't exist are left out
+    String missingId = new TaskId(jobId1, 100).getId();
+    tasks = systemView.getClusterTasks(ImmutableList.of(taskIds.get(0), missingId));
+    Assert.assertEquals(ImmutableSet.of(taskIds.get(0)), tasks.keySet());
+    Assert.assertTrue(systemView.getClusterTasks(ImmutableList.<String>of()).isEmpty());
+  }
+
+  @Test
+  @Category(BenchmarkTests.class)
+  public void testStageTaskLookupLatency() throws IOException {
+    JobId jobId = new JobId("1", 1);
+    int taskNum = 0;
+    for (int stageSize : new int[] { 10, 100, 500 }) {
+      List<String> stage = Lists.newArrayList();
+      for (int i = 0; i < stageSize; i++) {
+        ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, new TaskId(jobId, taskNum++),
+                                           "node" + i, "service", ClusterAction.CLUSTER_CREATE,
+                                           "test", new Account("testUser", "testTenant"));
+        systemView.writeClusterTask(task);
+        stage.add(task.getTaskId());
+      }
+
+      long start = System.nanoTime();
+      for (String taskId : stage) {
+        Assert.assertNotNull(systemView.getClusterTask(TaskId.fromString(taskId)));
+      }
+      long perTaskMicros = (System.nanoTime() - start) / 1000;
+
+      start = System.nanoTime();
+      Assert.assertEquals(stageSize, systemView.getClusterTasks(stage).size());
+      long batchMicros = (System.nanoTime() - start) / 1000;
+      System.out.println("stage size: " + stageSize + ", per task lookups: " + perTaskMicros +
+                           " us, batch lookup: " + batchMicros + " us");
+    }
+  }
+
+  @Test
+  public void testWriteBatch() throws Exception {
+    JobId jobId = new JobId("1", 1);
+    ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE);
+    TaskId existingId = new TaskId(jobId, 1);
+    ClusterTask existing = new ClusterTask(ProvisionerAction.CREATE, existingId, "node1", "service",
+                                           ClusterAction.CLUSTER_CREATE, "test", tenant1_user1);
+    systemView.writeClusterTask(existing);
+
+    ClusterStoreWriteBatch batch = systemView.startWriteBatch();
+    batch.writeClusterJob(job);
+    // updates an existing row
+    existing.setStatus(ClusterTask.Status.IN_PROGRESS);
+    batch.writeClusterTask(existing);
+    List<ClusterTask> tasks = Lists.newArrayList();
+    for (int i = 2; i <= 10; i++) {
+      ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, new TaskId(jobId, i), "node" + i, "service",
+                                         ClusterAction.CLUSTER_CREATE, "test", tenant1_user1);
+      batch.writeClusterTask(task);
+      tasks.add(task);
+    }
+    // the last write of the same task wins
+    ClusterTask rewritten = tasks.get(0);
+    rewritten.setStatus(ClusterTask.Status.COMPLETE);
+    batch.writeClusterTask(rewritten);
+    Node node = Entities.ClusterExample.NODE1;
+    batch.writeNode(node);
+    Assert.assertEquals(12, batch.size());
+
+    // nothing is written before the flush
+    Assert.assertNull(systemView.getClusterJob(jobId));
+    Assert.assertNull(systemView.getNode(node.getId()));
+    batch.flush();
+    Assert.assertEquals(0, batch.size());
+
+    Assert.assertEquals(job, systemView.getClusterJob(jobId));
+    Assert.assertEquals(node, systemView.getNode(node.getId()));
+    Assert.assertEquals(ClusterTask.Status.IN_PROGRESS, systemView.getClusterTask(existingId).getStatus());
+    for (ClusterTask task : tasks) {
+      Assert.assertEquals(task, systemView.getClusterTask(TaskId.fromString(task.getTaskId())));
+    }
+    Assert.assertEquals(ClusterTask.Status.COMPLETE,
+                        systemView.getClusterTask(TaskId.fromString(rewritten.getTaskId())).getStatus());
+
+    // flushing an empty batch is a no-op
+    batch.flush();
+  }
+
+  @Test
+  @Category(BenchmarkTests.class)
+  public void testWriteBatchLatency() throws IOException {
+    // tasks of creating a 1000 node cluster
+    int numNodes = 1000;
+    List<ProvisionerAction> actions = ImmutableList.of(ProvisionerAction.CREATE, ProvisionerAction.CONFIRM,
+                                                       ProvisionerAction.BOOTSTRAP, ProvisionerAction.INSTALL,
+                                                       ProvisionerAction.CONFIGURE, ProvisionerAction.START);
+    long[] millis = new long[2];
+    for (int jobNum = 1; jobNum <= 2; jobNum++) {
+      boolean batched = jobNum == 2;
+      JobId jobId = new JobId("1", jobNum);
+      ClusterStoreWriteBatch batch = systemView.startWriteBatch();
+      long start = System.nanoTime();
+      int taskNum = 0;
+      for (int i = 0; i < numNodes; i++) {
+        for (ProvisionerAction action : actions) {
+          ClusterTask task = new ClusterTask(action, new TaskId(jobId, taskNum++), "node" + i, "service",
+                                             ClusterAction.CLUSTER_CREATE, "test", tenant1_user1);
+          if (batched) {
+            batch.writeClusterTask(task);
+          } else {
+            systemView.writeClusterTask(task);
+          }
+        }
+      }
+      batch.flush();
+      millis[jobNum - 1] = (System.nanoTime() - start) / 1000000;
+      Assert.assertNotNull(systemView.getClusterTask(new TaskId(jobId, taskNum - 1)));
+    }
+    System.out.println("writing " + numNodes * actions.size() + " tasks of a " + numNodes + " node cluster: " +
+                         "one by one " + millis[0] + " ms, batched " + millis[1] + " ms");
+  }
+
   @Test
   public void testGetAllClusters() throws Exception {
     Assert.assertEquals(0, systemView.getAllClusters().size());
@@ -314,6 +459,54 @@ public abstract class ClusterStoreTest {
     Assert.assertNull(systemView.getNode(node1.getId()));
   }
 
+  @Test
+  public void testNodeActionsAreWrittenApartFromNode() throws Exception {
+    Cluster cluster = Entities.ClusterExample.createCluster();
+    ClusterStoreView store = clusterStoreService.getView(cluster.getAccount());
+    store.writeCluster(cluster);
+    Node stored = Entities.ClusterExample.NODE1;
+    Node node = new Node(stored.getId(), stored.getClusterId(), stored.getServices(), stored.getProperties());
+    systemView.writeNode(node);
+
+    Node.Action create = new Node.Action("task1", "", "CREATE");
+    Node.Action install = new Node.Action("task2", "hosts", "INSTALL");
+    ClusterStoreWriteBatch writes = systemView.startWriteBatch();
+    writes.writeNodeAction(node, create);
+    writes.writeNodeAction(node, install);
+    writes.flush();
+    Assert.assertEquals(ImmutableList.of("CREATE", "INSTALL"), getActionNames(systemView.getNode(node.getId())));
+
+    // actions are kept when the rest of the node is written
+    install.setStatus(Node.Status.COMPLETE);
+    writes.writeNodeAction(node, install);
+    writes.flush();
+    systemView.writeNode(node);
+    Node read = systemView.getNode(node.getId());
+    Assert.assertEquals(ImmutableList.of("CREATE", "INSTALL"), getActionNames(read));
+    Assert.assertEquals(Node.Status.COMPLETE, read.getActions().get(1).getStatus());
+    Assert.assertEquals(ImmutableList.of("CREATE", "INSTALL"),
+                        getActionNames(systemView.getNodes(ImmutableSet.of(node.getId())).get(node.getId())));
+    Assert.assertEquals(ImmutableList.of("CREATE", "INSTALL"),
+                        getActionNames(Iterables.getOnlyElement(store.getClusterNodes(cluster.getId()))));
+
+    writes.deleteNodeAction(node, create);
+    writes.flush();
+    Assert.assertEquals(ImmutableList.of("INSTALL"), getActionNames(systemView.getNode(node.getId())));
+
+    systemView.deleteNode(node.getId());
+    systemView.writeNode(new Node(node.getId(), node.getClusterId(), node.getServices(), node.getProperties()));
+    Assert.assertTrue(systemView.getNode(node.getId()).getActions().isEmpty());
+    systemView.deleteNode(node.getId());
+  }
+
+  protected List<String> getActionNames(Node node) {
+    List<String> names = Lists.newArrayList();
+    for (Node.Action action : node.getActions()) {
+      names.add(action.getAction());
+    }
+    return names;
+  }
+
   @Test
   public void testGetClusterSummaries() throws Exception {
     ClusterStore clusterStore = clusterStoreService.getSystemView();
@@ -374,6 +567,104 @@ public abstract class ClusterStoreTest {
     Assert.assertEquals(ImmutableSet.of(summary2), ImmutableSet.copyOf(view.getAllClusterSummaries(states)));
   }
 
+  @Test
+  public void testGetClusterSummaryPages() throws Exception {
+    List<ClusterSummary> expected = Lists.newArrayList();
+    long now = System.currentTimeMillis();
+    // from the most recently created cluster, with the last two created at the same time
+    for (int i = 0; i < 5; i++) {
+      String clusterId = String.valueOf(200 - i);
+      Cluster cluster = Cluster.builder()
+        .setID(clusterId)
+        .setAccount(i % 2 == 0 ? tenant1_user1 : tenant1_user2)
+        .setName("cluster" + i)
+        .setProvider(Entities.ProviderExample.RACKSPACE)
+        .setClusterTemplate(i < 3 ? Entities.ClusterTemplateExample.HDFS : Entities.ClusterTemplateExample.REACTOR)
+        .setStatus(i == 1 ? Cluster.Status.ACTIVE : Cluster.Status.PENDING)
+        .setNodes(ImmutableSet.of("node1", "node2"))
+        .setServices(ImmutableSet.of("s1", "s2"))
+        .setCreateTime(now - Math.min(i, 3) * 1000)
+        .build();
+      JobId jobId = new JobId(clusterId, 1);
+      cluster.setLatestJobId(jobId.getId());
+      ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE);
+      job.setTaskStatus(new TaskId(jobId, 1).getId(), ClusterTask.Status.COMPLETE);
+      job.setTaskStatus(new TaskId(jobId, 2).getId(), ClusterTask.Status.IN_PROGRESS);
+      systemView.writeCluster(cluster);
+      systemView.writeClusterJob(job);
+      expected.add(new ClusterSummary(cluster, job));
+    }
+    ClusterStoreView adminView = clusterStoreService.getView(tenant1_admin);
+    Assert.assertEquals(expected, adminView.getAllClusterSummaries());
+
+    // pages continue after the last cluster of the previous page, also between clusters created at the same time
+    ClusterSummaryPage page = adminView.getClusterSummaries(new ClusterSummaryFilter(null, null, null, null, 2));
+    Assert.assertEquals(expected.subList(0, 2), page.getSummaries());
+    page = adminView.getClusterSummaries(new ClusterSummaryFilter(null, null, null, page.getNextCursor(), 2));
+    Assert.assertEquals(expected.subList(2, 4), page.getSummaries());
+    page = adminView.getClusterSummaries(new ClusterSummaryFilter(null, null, null, page.getNextCursor(), 2));
+    Assert.assertEquals(expected.subList(4, 5), page.getSummaries());
+    Assert.assertNull(page.getNextCursor());
+
+    // filters
+    Assert.assertEquals(
+      expected.subList(3, 5),
+      adminView.getClusterSummaries(new ClusterSummaryFilter(null, "hadoop-reactor", null, null, 0)).getSummaries());
+    Assert.assertEquals(
+      ImmutableList.of(expected.get(1), expected.get(3)),
+      adminView.getClusterSummaries(
+        new ClusterSummaryFilter(null, null, tenant1_user2.getUserId(), null, 0)).getSummaries());
+    Assert.assertEquals(
+      ImmutableList.of(expected.get(1)),
+      adminView.getClusterSummaries(new ClusterSummaryFilter(ImmutableSet.of(Cluster.Status.ACTIVE),
+                                                             null, null, null, 0)).getSummaries());
+    page = adminView.getClusterSummaries(new ClusterSummaryFilter(null, "hdfs", tenant1_user1.getUserId(), null, 1));
+    Assert.assertEquals(ImmutableList.of(expected.get(0)), page.getSummaries());
+    Assert.assertEquals(
+      ImmutableList.of(expected.get(2)),
+      adminView.getClusterSummaries(new ClusterSummaryFilter(null, "hdfs", tenant1_user1.getUserId(),
+                                                             page.getNextCursor(), 1)).getSummaries());
+
+    // users only see their own clusters
+    Assert.assertEquals(
+      ImmutableList.of(expected.get(1), expected.get(3)),
+      clusterStoreService.getView(tenant1_user2).getClusterSummaries(ClusterSummaryFilter.ALL).getSummaries());
+    ClusterStoreView tenant2View = clusterStoreService.getView(tenant2_admin);
+    Assert.assertTrue(tenant2View.getClusterSummaries(ClusterSummaryFilter.ALL).getSummaries().isEmpty());
+  }
+
+  @Test
+  public void testClusterSummaryPagesContinueAfterCursorClusterIsDeleted() throws Exception {
+    List<ClusterSummary> expected = Lists.newArrayList();
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 4; i++) {
+      String clusterId = String.valueOf(210 - i);
+      Cluster cluster = Cluster.builder()
+        .setID(clusterId)
+        .setAccount(tenant1_user1)
+        .setName("cluster" + i)
+        .setProvider(Entities.ProviderExample.RACKSPACE)
+        .setClusterTemplate(Entities.ClusterTemplateExample.HDFS)
+        .setCreateTime(now - i * 1000)
+        .build();
+      JobId jobId = new JobId(clusterId, 1);
+      cluster.setLatestJobId(jobId.getId());
+      ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE);
+      systemView.writeCluster(cluster);
+      systemView.writeClusterJob(job);
+      expected.add(new ClusterSummary(cluster, job));
+    }
+    ClusterStoreView adminView = clusterStoreService.getView(tenant1_admin);
+
+    ClusterSummaryPage page = adminView.getClusterSummaries(new ClusterSummaryFilter(null, null, null, null, 2));
+    Assert.assertEquals(expected.subList(0, 2), page.getSummaries());
+
+    // the next page does not depend on the cluster of the cursor still being there
+    adminView.deleteCluster(expected.get(1).getId());
+    page = adminView.getClusterSummaries(new ClusterSummaryFilter(null, null, null, page.getNextCursor(), 2));
+    Assert.assertEquals(expected.subList(2, 4), page.getSummaries());
+  }
+
   @Test
   public void testGetRunningTasks() throws Exception {
     ClusterTask task1 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
@@ -445,6 +736,60 @@ public abstract class ClusterStoreTest {
                         systemView.getExpiringClusters(System.currentTimeMillis() + 500000));
   }
 
+  @Test
+  public void testTenantClusterUsage() throws Exception {
+    ClusterStoreView adminView = clusterStoreService.getView(tenant1_admin);
+    Cluster cluster1 = createClusterObj("1001");
+    Cluster cluster2 = createClusterObj("1002");
+    Cluster tenant2Cluster = createClusterObj("1003", tenant2_user1);
+    adminView.writeCluster(cluster1);
+    clusterStoreService.getView(tenant1_user1).writeCluster(cluster2);
+    clusterStoreService.getView(tenant2_user1).writeCluster(tenant2Cluster);
+    Assert.assertEquals(new TenantClusterUsage(2, 4), systemView.getTenantClusterUsage("tenant1"));
+    Assert.assertEquals(new TenantClusterUsage(1, 2), systemView.getTenantClusterUsage("tenant2"));
+    Assert.assertEquals(new TenantClusterUsage(0, 0), systemView.getTenantClusterUsage("tenant3"));
+
+    // overwriting a cluster only counts the difference
+    adminView.writeCluster(cluster1);
+    Assert.assertEquals(new TenantClusterUsage(2, 4), systemView.getTenantClusterUsage("tenant1"));
+    cluster1.setNodes(ImmutableSet.of("node1", "node2", "node3"));
+    adminView.writeCluster(cluster1);
+    Assert.assertEquals(new TenantClusterUsage(2, 5), systemView.getTenantClusterUsage("tenant1"));
+
+    // terminated clusters do not count
+    cluster2.setStatus(Cluster.Status.TERMINATED);
+    adminView.writeCluster(cluster2);
+    Assert.assertEquals(new TenantClusterUsage(1, 3), systemView.getTenantClusterUsage("tenant1"));
+    adminView.deleteCluster(cluster2.getId());
+    Assert.assertEquals(new TenantClusterUsage(1, 3), systemView.getTenantClusterUsage("tenant1"));
+
+    adminView.deleteCluster(cluster1.getId());
+    Assert.assertEquals(new TenantClusterUsage(0, 0), systemView.getTenantClusterUsage("tenant1"));
+
+    // a view that is not allowed to delete a cluster does not change the usage
+    adminView.deleteCluster(tenant2Cluster.getId());
+    Assert.assertEquals(new TenantClusterUsage(1, 2), systemView.getTenantClusterUsage("tenant2"));
+  }
+
+  @Test
+  public void testRebuildTenantClusterUsage() throws Exception {
+    Cluster cluster1 = createClusterObj("1001");
+    Cluster cluster2 = createClusterObj("1002");
+    cluster2.setStatus(Cluster.Status.TERMINATED);
+    Cluster tenant2Cluster = createClusterObj("1003", tenant2_user1);
+    clusterStoreService.getView(tenant1_user1).writeCluster(cluster1);
+    clusterStoreService.getView(tenant1_user1).writeCluster(cluster2);
+    clusterStoreService.getView(tenant2_user1).writeCluster(tenant2Cluster);
+
+    systemView.rebuildTenantClusterUsage();
+    Assert.assertEquals(new TenantClusterUsage(1, 2), systemView.getTenantClusterUsage("tenant1"));
+    Assert.assertEquals(new TenantClusterUsage(1, 2), systemView.getTenantClusterUsage("tenant2"));
+
+    // counting continues from the rebuilt counters
+    clusterStoreService.getView(tenant1_user1).deleteCluster(cluster1.getId());
+    Assert.assertEquals(new TenantClusterUsage(0, 0), systemView.getTenantClusterUsage("tenant1"));
+  }
+
   private Cluster createCluster(String id, long createTime, long expireTime, Cluster.Status status) throws Exception {
     Cluster cluster = Cluster.builder()
       .setID(id)
@@ -466,9 +811,17 @@ public abstract class ClusterStoreTest {
   }
 
   private Cluster createClusterObj(String id, long createTime) {
+    return createClusterObj(id, createTime, tenant1_user1);
+  }
+
+  private Cluster createClusterObj(String id, Account account) {
+    return createClusterObj(id, System.currentTimeMillis(), account);
+  }
+
+  private Cluster createClusterObj(String id, long createTime, Account account) {
     return Cluster.builder()
       .setID(id)
-      .setAccount(tenant1_user1)
+      .setAccount(account)
       .setName("example-hdfs-delete")
       .setProvider(Entities.ProviderExample.RACKSPACE)
       .setClusterTemplate(Entities.ClusterTemplateExample.HDFS)
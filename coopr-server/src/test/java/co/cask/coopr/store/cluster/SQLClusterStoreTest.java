@@ -16,22 +16,48 @@
 package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.BaseTest;
+import co.cask.coopr.Entities;
+import co.cask.coopr.TestHelper;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.ClusterSummary;
+import co.cask.coopr.cluster.Node;
 import co.cask.coopr.codec.json.guice.CodecModules;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.scheduler.ClusterAction;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.spec.service.Service;
+import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.DBHelper;
+import co.cask.coopr.store.DBQueryExecutor;
 import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *
  */
 public class SQLClusterStoreTest extends ClusterStoreTest {
   private static SQLClusterStoreService sqlClusterStoreService;
+  private static DBConnectionPool dbConnectionPool;
+  private static DBQueryExecutor dbQueryExecutor;
 
   @BeforeClass
   public static void setupSQLClusterStoreTest() throws Exception {
@@ -44,6 +70,8 @@ public class SQLClusterStoreTest extends ClusterStoreTest {
       new CodecModules().getModule()
     );
     sqlClusterStoreService = injector.getInstance(SQLClusterStoreService.class);
+    dbConnectionPool = injector.getInstance(DBConnectionPool.class);
+    dbQueryExecutor = injector.getInstance(DBQueryExecutor.class);
     sqlClusterStoreService.startAndWait();
   }
 
@@ -57,6 +85,187 @@ public class SQLClusterStoreTest extends ClusterStoreTest {
     return sqlClusterStoreService;
   }
 
+  @Test
+  public void testRebuildDriftedTenantClusterUsage() throws Exception {
+    Account account = new Account("user1", "tenant1");
+    Cluster cluster = Cluster.builder()
+      .setID("1001")
+      .setAccount(account)
+      .setName("usage")
+      .setProvider(Entities.ProviderExample.RACKSPACE)
+      .setClusterTemplate(Entities.ClusterTemplateExample.HDFS)
+      .setNodes(ImmutableSet.of("node1", "node2"))
+      .build();
+    sqlClusterStoreService.getView(account).writeCluster(cluster);
+
+    // as if the cluster was written before its nodes were counted
+    execute("UPDATE clusters SET num_nodes=NULL");
+    execute("DELETE FROM tenant_cluster_usage");
+    Assert.assertEquals(new TenantClusterUsage(0, 0), systemView.getTenantClusterUsage("tenant1"));
+
+    systemView.rebuildTenantClusterUsage();
+    Assert.assertEquals(new TenantClusterUsage(1, 2), systemView.getTenantClusterUsage("tenant1"));
+    sqlClusterStoreService.getView(account).deleteCluster(cluster.getId());
+    Assert.assertEquals(new TenantClusterUsage(0, 0), systemView.getTenantClusterUsage("tenant1"));
+  }
+
+  @Test
+  public void testSummariesOfClustersWrittenBeforeSummaryColumns() throws Exception {
+    Account account = new Account("user1", "tenant1");
+    Cluster cluster = Cluster.builder()
+      .setID("1002")
+      .setAccount(account)
+      .setName("summary")
+      .setProvider(Entities.ProviderExample.RACKSPACE)
+      .setClusterTemplate(Entities.ClusterTemplateExample.HDFS)
+      .setNodes(ImmutableSet.of("node1", "node2"))
+      .setCreateTime(System.currentTimeMillis())
+      .build();
+    JobId jobId = new JobId(cluster.getId(), 1);
+    cluster.setLatestJobId(jobId.getId());
+    ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE);
+    systemView.writeCluster(cluster);
+    systemView.writeClusterJob(job);
+
+    // as if the cluster and job were written before their summaries were kept in columns
+    execute("UPDATE clusters SET summary=NULL");
+    execute("UPDATE jobs SET action=NULL, num_tasks=NULL, num_completed_tasks=NULL");
+    Assert.assertEquals(ImmutableList.of(new ClusterSummary(cluster, job)),
+                        sqlClusterStoreService.getView(account).getAllClusterSummaries());
+  }
+
+  @Test
+  public void testActionsOfNodesWrittenBeforeActionLog() throws Exception {
+    Node node = new Node("legacy-node", "1003", ImmutableSet.<Service>of(), TestHelper.EMPTY_NODE_PROPERTIES);
+    node.addAction(new Node.Action("task1", "", "CREATE"));
+    writeNodeWithActions(node);
+
+    Node read = systemView.getNode(node.getId());
+    Assert.assertEquals(ImmutableList.of("CREATE"), getActionNames(read));
+    ClusterStoreWriteBatch writes = systemView.startWriteBatch();
+    Node.Action confirm = new Node.Action("task2", "", "CONFIRM");
+    read.addAction(confirm);
+    writes.writeNodeAction(read, confirm);
+    writes.flush();
+    Assert.assertEquals(ImmutableList.of("CREATE", "CONFIRM"), getActionNames(systemView.getNode(node.getId())));
+
+    // writing the node moves its old actions to the log, only logging the ones that are not logged yet
+    writes.writeNode(systemView.getNode(node.getId()));
+    Assert.assertEquals(2, writes.size());
+    writes.flush();
+    read = systemView.getNode(node.getId());
+    Assert.assertEquals(ImmutableList.of("CREATE", "CONFIRM"), getActionNames(read));
+    writes.writeNode(read);
+    Assert.assertEquals(1, writes.size());
+    writes.flush();
+  }
+
+  @Test
+  public void testTrimActionOfNodeWrittenBeforeActionLog() throws Exception {
+    Node node = new Node("legacy-node2", "1003", ImmutableSet.<Service>of(), TestHelper.EMPTY_NODE_PROPERTIES);
+    node.addAction(new Node.Action("task1", "", "CREATE"));
+    node.addAction(new Node.Action("task2", "", "CONFIRM"));
+    writeNodeWithActions(node);
+
+    // the trimmed action is dropped from the serialized node as well
+    Node read = systemView.getNode(node.getId());
+    ClusterStoreWriteBatch writes = systemView.startWriteBatch();
+    writes.deleteNodeAction(read, read.removeFirstAction());
+    writes.flush();
+    Assert.assertEquals(ImmutableList.of("CONFIRM"), getActionNames(systemView.getNode(node.getId())));
+  }
+
+  // writes the node with its actions, as nodes were written before their actions were logged apart from them
+  private void writeNodeWithActions(Node node) throws SQLException {
+    Connection conn = dbConnectionPool.getConnection();
+    try {
+      PreparedStatement statement = conn.prepareStatement("INSERT INTO nodes (id, cluster_id, node) VALUES (?, ?, ?)");
+      try {
+        statement.setString(1, node.getId());
+        statement.setLong(2, Long.parseLong(node.getClusterId()));
+        statement.setBytes(3, dbQueryExecutor.toBytes(node, Node.class));
+        statement.executeUpdate();
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
+  @Test
+  public void testNodesWrittenWithServiceReferences() throws Exception {
+    Configuration refsConf = BaseTest.createTestConf();
+    refsConf.setBoolean(Constants.NODE_SERVICE_REFS_ENABLED, true);
+    DBQueryExecutor refsQueryExecutor = Guice.createInjector(
+      new ConfigurationModule(refsConf),
+      new CodecModules().getModule()
+    ).getInstance(DBQueryExecutor.class);
+    SQLClusterStore refsStore = new SQLClusterStore(dbConnectionPool, refsQueryExecutor);
+
+    Set<Service> services = ImmutableSet.of(Entities.ServiceExample.NAMENODE, Entities.ServiceExample.DATANODE);
+    Node node1 = new Node("ref-node1", "1004", services, TestHelper.EMPTY_NODE_PROPERTIES);
+    Node node2 = new Node("ref-node2", "1004", services, TestHelper.EMPTY_NODE_PROPERTIES);
+    Assert.assertTrue(refsQueryExecutor.getNodeServiceRegistry().toBytes(node1, Maps.<String, Service>newHashMap())
+                        .length < dbQueryExecutor.toBytes(node1, Node.class).length);
+    ClusterStoreWriteBatch writes = refsStore.startWriteBatch();
+    writes.writeNode(node1);
+    writes.writeNode(node2);
+    writes.flush();
+    // each definition is only stored once, no matter how many nodes it is on
+    Assert.assertEquals(2, getNum("SELECT COUNT(*) FROM node_services"));
+    refsStore.writeNode(refsStore.getNode(node1.getId()));
+    Assert.assertEquals(2, getNum("SELECT COUNT(*) FROM node_services"));
+
+    // nodes written with references can be read whether references are written or not
+    Map<String, Node> nodes = systemView.getNodes(ImmutableSet.of(node1.getId(), node2.getId()));
+    Assert.assertEquals(services, nodes.get(node1.getId()).getServices());
+    Assert.assertEquals(services, nodes.get(node2.getId()).getServices());
+    Assert.assertEquals(services, systemView.getNode(node2.getId()).getServices());
+
+    // nodes share a single instance of each service
+    nodes = refsStore.getNodes(ImmutableSet.of(node1.getId(), node2.getId()));
+    Service namenode = getService(nodes.get(node1.getId()), Entities.ServiceExample.NAMENODE.getName());
+    Assert.assertSame(namenode, getService(nodes.get(node2.getId()), Entities.ServiceExample.NAMENODE.getName()));
+  }
+
+  private Service getService(Node node, String name) {
+    for (Service service : node.getServices()) {
+      if (service.getName().equals(name)) {
+        return service;
+      }
+    }
+    return null;
+  }
+
+  private int getNum(String sql) throws Exception {
+    Connection conn = dbConnectionPool.getConnection();
+    try {
+      PreparedStatement statement = conn.prepareStatement(sql);
+      try {
+        return dbQueryExecutor.getNum(statement);
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
+  private void execute(String sql) throws Exception {
+    Connection conn = dbConnectionPool.getConnection();
+    try {
+      Statement statement = conn.createStatement();
+      try {
+        statement.execute(sql);
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
   @AfterClass
   public static void afterClass() {
     DBHelper.dropDerbyDB();
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.Entities;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.codec.json.guice.CodecModules;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.common.zookeeper.guice.ZookeeperModule;
+import co.cask.coopr.spec.Provider;
+import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.inject.Guice;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for caching of entities, with two entity store services sharing a database and zookeeper like two servers.
+ */
+public class EntityCacheTest extends BaseTest {
+  private static final Account ACCOUNT = new Account(Constants.ADMIN_USER, "tenant1");
+  private static final Provider PROVIDER = Entities.ProviderExample.JOYENT;
+  private static SQLEntityStoreService server1;
+  private static SQLEntityStoreService server2;
+
+  @BeforeClass
+  public static void setupEntityCacheTest() {
+    server1 = createServer();
+    server2 = createServer();
+  }
+
+  @Before
+  public void setupTest() throws Exception {
+    server1.clearData();
+    server2.clearData();
+  }
+
+  @Test
+  public void testReadsAreCached() throws Exception {
+    server1.getView(ACCOUNT).writeProvider(PROVIDER);
+
+    EntityStoreView view = server2.getView(ACCOUNT);
+    Provider provider = view.getProvider(PROVIDER.getName());
+    Assert.assertEquals(PROVIDER, provider);
+    Assert.assertSame(provider, view.getProvider(PROVIDER.getName()));
+    Assert.assertSame(provider, server2.getView(ACCOUNT).getProvider(PROVIDER.getName(), 1));
+    Assert.assertSame(view.getAllProviders(), view.getAllProviders());
+  }
+
+  @Test
+  public void testWritesAfterMissingReadsAreSeen() throws Exception {
+    EntityStoreView view = server2.getView(ACCOUNT);
+    Assert.assertNull(view.getProvider(PROVIDER.getName()));
+
+    // writes on the same server are seen right away
+    view.writeProvider(PROVIDER);
+    Assert.assertEquals(PROVIDER, view.getProvider(PROVIDER.getName()));
+  }
+
+  @Test(timeout = 20000)
+  public void testWritesInvalidateOtherServers() throws Exception {
+    EntityStoreView view1 = server1.getView(ACCOUNT);
+    EntityStoreView view2 = server2.getView(ACCOUNT);
+    view1.writeProvider(PROVIDER);
+    Assert.assertEquals(1, view2.getProvider(PROVIDER.getName()).getVersion());
+    Assert.assertEquals(1, view2.getAllProviders().size());
+
+    view1.writeProvider(PROVIDER);
+    while (view2.getProvider(PROVIDER.getName()).getVersion() != 2) {
+      TimeUnit.MILLISECONDS.sleep(20);
+    }
+    Assert.assertEquals(2, view2.getAllProviders().size());
+
+    view1.deleteProvider(PROVIDER.getName());
+    while (view2.getProvider(PROVIDER.getName()) != null) {
+      TimeUnit.MILLISECONDS.sleep(20);
+    }
+    Assert.assertTrue(view2.getAllProviders().isEmpty());
+  }
+
+  @Test
+  public void testWritesDoNotChangeCachedEntities() throws Exception {
+    EntityStoreView view = server1.getView(ACCOUNT);
+    view.writeProvider(PROVIDER);
+    Provider provider = view.getProvider(PROVIDER.getName());
+
+    view.writeProvider(provider);
+    Assert.assertEquals(1, provider.getVersion());
+    Assert.assertEquals(2, view.getProvider(PROVIDER.getName()).getVersion());
+  }
+
+  private static SQLEntityStoreService createServer() {
+    SQLEntityStoreService server = Guice.createInjector(
+      new ConfigurationModule(conf),
+      new ZookeeperModule(zkClientService),
+      new TestStoreModule(),
+      new CodecModules().getModule()
+    ).getInstance(SQLEntityStoreService.class);
+    server.startAndWait();
+    return server;
+  }
+}
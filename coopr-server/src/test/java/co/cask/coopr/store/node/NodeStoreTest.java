@@ -16,14 +16,20 @@
 package co.cask.coopr.store.node;
 
 import co.cask.coopr.Entities;
+import co.cask.coopr.TestHelper;
 import co.cask.coopr.account.Account;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -114,6 +120,29 @@ public abstract class NodeStoreTest {
     assertGetStoreDeleteNode(systemView, Entities.NodeExample.NODE1);
   }
 
+  @Test
+  public void testWriteNodeKeepsActions() throws Exception {
+    Node node = new Node("node-with-actions", "123", ImmutableSet.<Service>of(), TestHelper.EMPTY_NODE_PROPERTIES);
+    node.addAction(new Node.Action("task1", "", "CREATE"));
+    systemView.writeNode(node);
+    Node read = systemView.getNode(node.getId());
+    Assert.assertEquals(ImmutableList.of("CREATE"), getActionNames(read));
+
+    read.addAction(new Node.Action("task2", "", "CONFIRM"));
+    systemView.writeNode(read);
+    Assert.assertEquals(ImmutableList.of("CREATE", "CONFIRM"), getActionNames(systemView.getNode(node.getId())));
+    Assert.assertEquals(ImmutableList.of("CREATE", "CONFIRM"),
+                        getActionNames(systemView.getAllNodes().iterator().next()));
+  }
+
+  protected List<String> getActionNames(Node node) {
+    List<String> names = Lists.newArrayList();
+    for (Node.Action action : node.getActions()) {
+      names.add(action.getAction());
+    }
+    return names;
+  }
+
   private void assertNodeSetWritten(Set<Node> nodes) throws IOException {
     for (Node node : nodes) {
       assertNodeWritten(node);
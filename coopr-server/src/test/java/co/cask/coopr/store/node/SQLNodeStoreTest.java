@@ -16,16 +16,30 @@
 package co.cask.coopr.store.node;
 
 import co.cask.coopr.BaseTest;
+import co.cask.coopr.TestHelper;
+import co.cask.coopr.cluster.Node;
 import co.cask.coopr.codec.json.guice.CodecModules;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.spec.service.Service;
+import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.DBHelper;
+import co.cask.coopr.store.DBQueryExecutor;
+import co.cask.coopr.store.NodeActionLog;
 import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 /**
@@ -33,6 +47,9 @@ import java.sql.SQLException;
  */
 public class SQLNodeStoreTest extends NodeStoreTest {
   private static SQLNodeStoreService sqlNodeStoreService;
+  private static DBConnectionPool dbConnectionPool;
+  private static DBQueryExecutor dbQueryExecutor;
+  private static Gson gson;
 
   @BeforeClass
   public static void setupSQLNodeStoreTest() throws SQLException {
@@ -41,6 +58,9 @@ public class SQLNodeStoreTest extends NodeStoreTest {
                                              new TestStoreModule(),
                                              new CodecModules().getModule());
     sqlNodeStoreService = injector.getInstance(SQLNodeStoreService.class);
+    dbConnectionPool = injector.getInstance(DBConnectionPool.class);
+    dbQueryExecutor = injector.getInstance(DBQueryExecutor.class);
+    gson = injector.getInstance(Gson.class);
     sqlNodeStoreService.startAndWait();
   }
 
@@ -49,6 +69,61 @@ public class SQLNodeStoreTest extends NodeStoreTest {
     DBHelper.dropDerbyDB();
   }
 
+  @Test
+  public void testNodesAreWrittenWithoutActions() throws Exception {
+    Node node = new Node("node-with-actions", "123", ImmutableSet.<Service>of(), TestHelper.EMPTY_NODE_PROPERTIES);
+    node.addAction(new Node.Action("task1", "", "CREATE"));
+    systemView.writeNode(node);
+
+    Connection conn = dbConnectionPool.getConnection();
+    try {
+      PreparedStatement statement = conn.prepareStatement("SELECT node FROM nodes WHERE id=?");
+      try {
+        statement.setString(1, node.getId());
+        Assert.assertTrue(dbQueryExecutor.getQueryItem(statement, Node.class).getActions().isEmpty());
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+    Assert.assertEquals(ImmutableList.of("CREATE"), getActionNames(systemView.getNode(node.getId())));
+  }
+
+  @Test
+  public void testActionsAreReadOnceNeeded() throws Exception {
+    Node node = new Node("node-read-lazily", "123", ImmutableSet.<Service>of(), TestHelper.EMPTY_NODE_PROPERTIES);
+    node.addAction(new Node.Action("task1", "", "CREATE"));
+    systemView.writeNode(node);
+
+    // the log is not read by reading the node, but once its actions are used
+    Node read = systemView.getNode(node.getId());
+    deleteLoggedActions(node.getId());
+    Assert.assertTrue(read.getActions().isEmpty());
+
+    // serializing the node reads its actions too
+    systemView.writeNode(node);
+    read = systemView.getNode(node.getId());
+    JsonArray actions = gson.toJsonTree(read).getAsJsonObject().getAsJsonArray("actions");
+    Assert.assertEquals(1, actions.size());
+    Assert.assertEquals("CREATE", actions.get(0).getAsJsonObject().get("action").getAsString());
+
+    // writing a node whose actions were not used does not write them again
+    read = systemView.getNode(node.getId());
+    deleteLoggedActions(node.getId());
+    systemView.writeNode(read);
+    Assert.assertTrue(systemView.getNode(node.getId()).getActions().isEmpty());
+  }
+
+  private void deleteLoggedActions(String nodeId) throws SQLException {
+    Connection conn = dbConnectionPool.getConnection();
+    try {
+      NodeActionLog.deleteAllActions(conn, nodeId);
+    } finally {
+      conn.close();
+    }
+  }
+
   @Override
   public void clearState() throws Exception {
     sqlNodeStoreService.clearData();
@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2012-2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.provisioner;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.provisioner.plugin.PluginType;
+import co.cask.coopr.provisioner.plugin.ResourceType;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Tests for the content addressed plugin store, in addition to the tests all plugin stores must pass.
+ */
+public class ContentAddressedPluginStoreTest extends PluginStoreTest {
+  private static final Account ACCOUNT1 = new Account(Constants.ADMIN_USER, "tenant1");
+  private static final Account ACCOUNT2 = new Account(Constants.ADMIN_USER, "tenant2");
+  private static final ResourceType RESOURCE_TYPE = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+  private ContentAddressedPluginStore store;
+  private File dataDir;
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Before
+  public void setupContentAddressedPluginStoreTest() throws Exception {
+    dataDir = tmpFolder.newFolder();
+    store = createStore(0);
+  }
+
+  @Override
+  FilePluginStore getInitializedStore() throws IOException {
+    return store;
+  }
+
+  @Override
+  void clearData() {
+    // tmp folder will get deleted itself.
+  }
+
+  @Test
+  public void testSameContentsAreStoredOnce() throws Exception {
+    write(ACCOUNT1, "hadoop", 1, "cookbook contents");
+    write(ACCOUNT1, "hadoop", 2, "cookbook contents");
+    write(ACCOUNT2, "hadoop", 1, "cookbook contents");
+    write(ACCOUNT2, "mysql", 1, "other contents");
+
+    Assert.assertEquals(2, numBlobs());
+    File file = store.getResourceFile(ACCOUNT1, RESOURCE_TYPE, "hadoop", 1);
+    Assert.assertEquals(file, store.getResourceFile(ACCOUNT1, RESOURCE_TYPE, "hadoop", 2));
+    Assert.assertEquals(file, store.getResourceFile(ACCOUNT2, RESOURCE_TYPE, "hadoop", 1));
+    Assert.assertEquals("cookbook contents", Files.toString(file, Charsets.UTF_8));
+  }
+
+  @Test
+  public void testCopyOnlyAddsReference() throws Exception {
+    write(ACCOUNT1, "hadoop", 1, "cookbook contents");
+    store.copyResource(ACCOUNT1, ACCOUNT2, RESOURCE_TYPE, "hadoop", 1);
+
+    Assert.assertEquals(1, numBlobs());
+    Assert.assertEquals(store.getResourceFile(ACCOUNT1, RESOURCE_TYPE, "hadoop", 1),
+                        store.getResourceFile(ACCOUNT2, RESOURCE_TYPE, "hadoop", 1));
+  }
+
+  @Test
+  public void testUnreferencedContentsAreCollected() throws Exception {
+    write(ACCOUNT1, "hadoop", 1, "cookbook contents");
+    store.copyResource(ACCOUNT1, ACCOUNT2, RESOURCE_TYPE, "hadoop", 1);
+    write(ACCOUNT1, "mysql", 1, "first contents");
+    // overwriting leaves the first contents unreferenced
+    write(ACCOUNT1, "mysql", 1, "second contents");
+    Assert.assertEquals(3, numBlobs());
+
+    // contents are kept while some resource still references them
+    store.deleteResource(ACCOUNT1, RESOURCE_TYPE, "hadoop", 1);
+    Assert.assertEquals(2, numBlobs());
+    Assert.assertEquals("cookbook contents", read(ACCOUNT2, "hadoop", 1));
+
+    store.deleteResource(ACCOUNT2, RESOURCE_TYPE, "hadoop", 1);
+    Assert.assertEquals(1, numBlobs());
+    Assert.assertEquals("second contents", read(ACCOUNT1, "mysql", 1));
+  }
+
+  @Test
+  public void testRecentlyReferencedContentsAreNotCollected() throws Exception {
+    store = createStore(3600);
+    write(ACCOUNT1, "hadoop", 1, "cookbook contents");
+    store.deleteResource(ACCOUNT1, RESOURCE_TYPE, "hadoop", 1);
+    store.collectGarbage();
+    Assert.assertEquals(1, numBlobs());
+
+    // contents uploaded again are referenced by the new upload
+    write(ACCOUNT1, "hadoop", 2, "cookbook contents");
+    Assert.assertEquals(1, numBlobs());
+    Assert.assertEquals("cookbook contents", read(ACCOUNT1, "hadoop", 2));
+  }
+
+  private ContentAddressedPluginStore createStore(long gcIntervalSecs) {
+    Configuration conf = Configuration.create();
+    conf.set(Constants.ContentAddressedPluginStore.DATA_DIR, dataDir.getAbsolutePath());
+    conf.setLong(Constants.ContentAddressedPluginStore.GC_INTERVAL_SECS, gcIntervalSecs);
+    ContentAddressedPluginStore contentAddressedStore = new ContentAddressedPluginStore();
+    contentAddressedStore.initialize(conf);
+    return contentAddressedStore;
+  }
+
+  private void write(Account account, String name, int version, String contents) throws IOException {
+    OutputStream outputStream = store.getResourceOutputStream(account, RESOURCE_TYPE, name, version);
+    try {
+      outputStream.write(contents.getBytes(Charsets.UTF_8));
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  private String read(Account account, String name, int version) throws IOException {
+    return Files.toString(store.getResourceFile(account, RESOURCE_TYPE, name, version), Charsets.UTF_8);
+  }
+
+  private int numBlobs() {
+    int num = 0;
+    File[] blobDirs = new File(dataDir, "blobs").listFiles();
+    for (File blobDir : blobDirs == null ? new File[0] : blobDirs) {
+      num += blobDir.listFiles().length;
+    }
+    return num;
+  }
+}
@@ -20,9 +20,13 @@ import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.provisioner.plugin.ResourceType;
 import com.google.common.base.Objects;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -30,17 +34,36 @@ import java.util.concurrent.ConcurrentMap;
 
 /**
  * Plugin store that keeps plugin modules in memory. Used for testing since nothing is persisted to disk.
+ * Tests can also place resources in local files, to exercise the paths used for stores that keep resources on disk.
  */
-public class MemoryPluginStore implements PluginStore {
+public class MemoryPluginStore implements FilePluginStore {
   private final ConcurrentMap<Key, ByteArrayOutputStream> store;
+  private final ConcurrentMap<Key, File> files;
+  private volatile boolean exposeFiles;
 
   public MemoryPluginStore() {
     this.store = Maps.newConcurrentMap();
+    this.files = Maps.newConcurrentMap();
+    this.exposeFiles = true;
   }
 
   // for unit tests
   public void clearData() {
     store.clear();
+    files.clear();
+    exposeFiles = true;
+  }
+
+  // for unit tests, whether resources put in local files are given out as files, or only as input streams
+  public void setExposeFiles(boolean exposeFiles) {
+    this.exposeFiles = exposeFiles;
+  }
+
+  // for unit tests, serve the resource from the given local file instead of from memory
+  public void putResourceFile(Account account, ResourceType type, String name, int version, File file) {
+    Key key = new Key(account, type, name, version);
+    store.remove(key);
+    files.put(key, file);
   }
 
   @Override
@@ -51,8 +74,10 @@ public class MemoryPluginStore implements PluginStore {
   @Override
   public OutputStream getResourceOutputStream(Account account, ResourceType type, String name, int version)
     throws IOException {
+    Key key = new Key(account, type, name, version);
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    store.put(new Key(account, type, name, version), outputStream);
+    files.remove(key);
+    store.put(key, outputStream);
     return outputStream;
   }
 
@@ -60,15 +85,54 @@ public class MemoryPluginStore implements PluginStore {
   public InputStream getResourceInputStream(Account account, ResourceType type, String name, int version)
     throws IOException {
     Key key = new Key(account, type, name, version);
+    if (files.containsKey(key)) {
+      return new FileInputStream(files.get(key));
+    }
     if (!store.containsKey(key)) {
       return null;
     }
     return new ByteArrayInputStream(store.get(key).toByteArray());
   }
 
+  @Override
+  public File getResourceFile(Account account, ResourceType type, String name, int version) throws IOException {
+    return exposeFiles ? files.get(new Key(account, type, name, version)) : null;
+  }
+
+  @Override
+  public String getResourceETag(Account account, ResourceType type, String name, int version) throws IOException {
+    Key key = new Key(account, type, name, version);
+    if (files.containsKey(key)) {
+      return Files.hash(files.get(key), Hashing.sha256()).toString();
+    }
+    if (!store.containsKey(key)) {
+      return null;
+    }
+    return Hashing.sha256().hashBytes(store.get(key).toByteArray()).toString();
+  }
+
+  @Override
+  public void copyResource(Account fromAccount, Account toAccount, ResourceType type, String name, int version)
+    throws IOException {
+    Key fromKey = new Key(fromAccount, type, name, version);
+    Key toKey = new Key(toAccount, type, name, version);
+    if (files.containsKey(fromKey)) {
+      putResourceFile(toAccount, type, name, version, files.get(fromKey));
+    } else if (store.containsKey(fromKey)) {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      store.get(fromKey).writeTo(outputStream);
+      files.remove(toKey);
+      store.put(toKey, outputStream);
+    } else {
+      throw new IOException("Unable to get plugin data.");
+    }
+  }
+
   @Override
   public void deleteResource(Account account, ResourceType type,  String name, int version) throws IOException {
-    store.remove(new Key(account, type, name, version));
+    Key key = new Key(account, type, name, version);
+    store.remove(key);
+    files.remove(key);
   }
 
   private class Key {
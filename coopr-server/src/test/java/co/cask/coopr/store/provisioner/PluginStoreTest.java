@@ -25,6 +25,7 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -37,7 +38,7 @@ public abstract class PluginStoreTest {
   private final Account account1 = new Account(Constants.ADMIN_USER, "tenant1");
   private final Account account2 = new Account(Constants.ADMIN_USER, "tenant2");
 
-  abstract PluginStore getInitializedStore() throws Exception;
+  abstract FilePluginStore getInitializedStore() throws Exception;
 
   abstract void clearData();
 
@@ -48,7 +49,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testBasicInputOutputStreams() throws Exception {
-    PluginStore store = getInitializedStore();
+    FilePluginStore store = getInitializedStore();
     String contents = "this is the cookbook\nthis is the second line";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
     String name = "hadoop";
@@ -61,7 +62,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testMultipleWrites() throws Exception {
-    PluginStore store = getInitializedStore();
+    FilePluginStore store = getInitializedStore();
     String contents = "these are the first contents";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
     String name = "hadoop";
@@ -78,7 +79,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testWriteDifferentVersions() throws Exception {
-    PluginStore store = getInitializedStore();
+    FilePluginStore store = getInitializedStore();
     String contents1 = "v1 contents";
     String contents2 = "v2 contents";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
@@ -97,7 +98,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testWritesFromDifferentTenants() throws Exception {
-    PluginStore store = getInitializedStore();
+    FilePluginStore store = getInitializedStore();
     String contents1 = "tenant1 contents";
     String contents2 = "tenant2 contents";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
@@ -115,7 +116,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testWriteDifferentModules() throws Exception {
-    PluginStore store = getInitializedStore();
+    FilePluginStore store = getInitializedStore();
     String contents1 = "hadoop cookbook";
     String contents2 = "mysql cookbook";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
@@ -134,7 +135,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testDeleteWithinTenant() throws Exception {
-    PluginStore store = getInitializedStore();
+    FilePluginStore store = getInitializedStore();
     String contents = "hadoop cookbook";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
     String name = "hadoop";
@@ -153,7 +154,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testDeleteOnlyAffectsTenant() throws Exception {
-    PluginStore store = getInitializedStore();
+    FilePluginStore store = getInitializedStore();
     String contents = "hadoop cookbook";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
     String name = "hadoop";
@@ -173,6 +174,60 @@ public abstract class PluginStoreTest {
     Assert.assertEquals(contents, readFromStore(store, account2, resourceType, name, version));
   }
 
+  @Test
+  public void testCopyResource() throws Exception {
+    FilePluginStore store = getInitializedStore();
+    String contents = "hadoop cookbook";
+    ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+    String name = "hadoop";
+    int version = 1;
+
+    writeToStore(store, account1, resourceType, name, version, contents);
+    store.copyResource(account1, account2, resourceType, name, version);
+    Assert.assertEquals(contents, readFromStore(store, account2, resourceType, name, version));
+
+    // the copy is independent of the original
+    store.deleteResource(account1, resourceType, name, version);
+    Assert.assertNull(store.getResourceInputStream(account1, resourceType, name, version));
+    Assert.assertEquals(contents, readFromStore(store, account2, resourceType, name, version));
+  }
+
+  @Test
+  public void testETagFollowsContents() throws Exception {
+    FilePluginStore store = getInitializedStore();
+    ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+    String name = "hadoop";
+    Assert.assertNull(store.getResourceETag(account1, resourceType, name, 1));
+
+    writeToStore(store, account1, resourceType, name, 1, "hadoop cookbook");
+    String etag = store.getResourceETag(account1, resourceType, name, 1);
+    Assert.assertNotNull(etag);
+
+    // the same contents keep their tag when written again, copied, or when the file is touched
+    writeToStore(store, account1, resourceType, name, 2, "hadoop cookbook");
+    Assert.assertEquals(etag, store.getResourceETag(account1, resourceType, name, 2));
+    store.copyResource(account1, account2, resourceType, name, 1);
+    Assert.assertEquals(etag, store.getResourceETag(account2, resourceType, name, 1));
+    File file = store.getResourceFile(account1, resourceType, name, 1);
+    if (file != null) {
+      Assert.assertTrue(file.setLastModified(System.currentTimeMillis() + 60000));
+    }
+    Assert.assertEquals(etag, store.getResourceETag(account1, resourceType, name, 1));
+
+    // other contents get another tag, and deleted resources have none
+    writeToStore(store, account1, resourceType, name, 1, "new hadoop cookbook");
+    Assert.assertNotEquals(etag, store.getResourceETag(account1, resourceType, name, 1));
+    store.deleteResource(account1, resourceType, name, 1);
+    Assert.assertNull(store.getResourceETag(account1, resourceType, name, 1));
+  }
+
+  @Test(expected = IOException.class)
+  public void testCopyMissingResourceFails() throws Exception {
+    FilePluginStore store = getInitializedStore();
+    ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+    store.copyResource(account1, account2, resourceType, "hadoop", 1);
+  }
+
   private void writeToStore(PluginStore store, Account account, ResourceType resourceType,
                             String name, int version, String content) throws IOException {
     OutputStream outputStream = store.getResourceOutputStream(account, resourceType, name, version);